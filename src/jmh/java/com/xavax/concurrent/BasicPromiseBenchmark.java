@@ -0,0 +1,101 @@
+//
+// Copyright 2018 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the latency of BasicPromise. The handoff benchmark passes a new
+ * promise to a responder thread and waits for the responder to fulfill it;
+ * the ready benchmark reads a promise fulfilled by the same thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BasicPromiseBenchmark {
+  private final static String NAME = "benchmark";
+  private final static Integer RESULT = 42;
+
+  private final AtomicReference<BasicPromise<Integer>> slot = new AtomicReference<>();
+  private volatile boolean running;
+  private Thread responder;
+
+  /**
+   * Start the responder thread.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    running = true;
+    responder = new Thread(() -> {
+      while ( running ) {
+	final BasicPromise<Integer> promise = slot.getAndSet(null);
+	if ( promise == null ) {
+	  Thread.yield();
+	}
+	else {
+	  promise.set(RESULT);
+	}
+      }
+    }, "responder");
+    responder.setDaemon(true);
+    responder.start();
+  }
+
+  /**
+   * Stop the responder thread.
+   *
+   * @throws InterruptedException if interrupted while joining the responder.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    running = false;
+    responder.join();
+  }
+
+  /**
+   * Hand a promise to the responder and wait for the result.
+   *
+   * @return the result of the promise.
+   */
+  @Benchmark
+  public Integer handoff() {
+    final BasicPromise<Integer> promise = new BasicPromise<>(NAME);
+    slot.set(promise);
+    return promise.get();
+  }
+
+  /**
+   * Fulfill a promise and read the result on the same thread.
+   *
+   * @return the result of the promise.
+   */
+  @Benchmark
+  public Integer ready() {
+    final BasicPromise<Integer> promise = new BasicPromise<>(NAME);
+    promise.set(RESULT);
+    return promise.get();
+  }
+}
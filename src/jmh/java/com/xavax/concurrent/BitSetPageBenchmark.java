@@ -0,0 +1,109 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.BITS_PER_PAGE;
+
+/**
+ * Compare BitSetPage with the original synchronized byte array page when
+ * one thread per processor sets and clears bits in the same page. Each
+ * thread owns a disjoint range of bits, so the threads contend only for
+ * the page, not for the bits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BitSetPageBenchmark {
+  private final static int THREAD_RANGES = 64;
+  private final static int BITS_PER_THREAD = BITS_PER_PAGE / THREAD_RANGES;
+
+  @Param({ "atomic", "bytes" })
+  public String page;
+
+  private BitSetPage atomicPage;
+  private ByteArrayBitSetPage bytePage;
+  private final AtomicInteger threads = new AtomicInteger();
+
+  /**
+   * Create the page under test.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    atomicPage = new BitSetPage();
+    bytePage = new ByteArrayBitSetPage();
+  }
+
+  /**
+   * Cursor walks the range of bits owned by one thread.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int first;
+    private int offset;
+
+    /**
+     * Assign the thread its range of bits.
+     *
+     * @param benchmark  the benchmark state.
+     */
+    @Setup(Level.Trial)
+    public void setUp(final BitSetPageBenchmark benchmark) {
+      first = (benchmark.threads.getAndIncrement() % THREAD_RANGES) * BITS_PER_THREAD;
+    }
+
+    /**
+     * Returns the next index in the range owned by this thread.
+     *
+     * @return the next index.
+     */
+    int next() {
+      offset = offset + 1 == BITS_PER_THREAD ? 0 : offset + 1;
+      return first + offset;
+    }
+  }
+
+  /**
+   * Set a bit and then clear it if it is odd, with one thread per
+   * processor.
+   *
+   * @param cursor  the index generator.
+   */
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void setAndClear(final Cursor cursor) {
+    final int index = cursor.next();
+    final boolean flag = (index & 1) == 0;
+    if ( "atomic".equals(page) ) {
+      atomicPage.set(index, true);
+      atomicPage.set(index, flag);
+    }
+    else {
+      bytePage.set(index, true);
+      bytePage.set(index, flag);
+    }
+  }
+}
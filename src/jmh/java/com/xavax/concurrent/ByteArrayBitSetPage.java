@@ -0,0 +1,55 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * ByteArrayBitSetPage is the original byte array implementation of a
+ * page that synchronizes on every update. It is kept only as the
+ * baseline BitSetPageBenchmark compares BitSetPage with under contention.
+ */
+class ByteArrayBitSetPage {
+  private final static int BIT_MAP_ARRAY_SIZE = 1 << (LOG2_BITS_PER_PAGE - LOG2_BITS_PER_BYTE);
+  private final static int BIT_MAP_INDEX_MASK = (1 << LOG2_BITS_PER_BYTE) - 1;
+
+  private final byte[] bits;
+
+  /**
+   * Construct a ByteArrayBitSetPage.
+   */
+  ByteArrayBitSetPage() {
+    bits = new byte[BIT_MAP_ARRAY_SIZE];
+  }
+
+  /**
+   * Returns the value of the specified bit as a boolean.
+   *
+   * @param index  the index of a bit within the page.
+   * @return the value of the specified bit.
+   */
+  boolean get(final int index) {
+    return (bits[index >>> LOG2_BITS_PER_BYTE] & (1 << (~index & BIT_MAP_INDEX_MASK))) != 0;
+  }
+
+  /**
+   * Sets the value of the specified bit.
+   *
+   * @param index  the index of a bit within the page.
+   * @param flag   the new value of the specified bit.
+   */
+  void set(final int index, final boolean flag) {
+    final int byteIndex = index >>> LOG2_BITS_PER_BYTE;
+    final int mask = 1 << (~index & BIT_MAP_INDEX_MASK);
+    synchronized (this) {
+      final boolean current = (bits[byteIndex] & mask) != 0;
+      if ( flag != current ) {
+	bits[byteIndex] ^= mask;
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure get and set throughput of ConcurrentBitSet with one thread and
+ * with one thread per processor. The pattern parameter selects how the
+ * bits are spread: dense keeps every index within a few segments so pages
+ * become bitmaps, sparse spreads the indices over a large range so most
+ * pages hold only a few bits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentBitSetBenchmark {
+  private final static long DENSE_RANGE = 1L << 20;
+  private final static long SPARSE_RANGE = 1L << 32;
+  private final static int SPARSE_STRIDE = 4099;
+  private final static int FILL_COUNT = 1 << 16;
+
+  @Param({ "dense", "sparse" })
+  public String pattern;
+
+  private ConcurrentBitSet bitSet;
+  private long range;
+
+  /**
+   * Create the bit set and fill it according to the pattern.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    final boolean dense = "dense".equals(pattern);
+    range = dense ? DENSE_RANGE : SPARSE_RANGE;
+    bitSet = new ConcurrentBitSet(range, ConcurrentBitSetConstants.LOG2_DEFAULT_SEGMENT_SIZE, false);
+    final long stride = dense ? 2 : range / FILL_COUNT + SPARSE_STRIDE;
+    for ( long index = 0; index < range; index += stride ) {
+      bitSet.set(index);
+    }
+  }
+
+  /**
+   * Cursor generates a per-thread sequence of pseudo-random indices.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private long seed;
+
+    /**
+     * Seed the generator differently for each thread.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+      seed = System.nanoTime() | 1;
+    }
+
+    /**
+     * Returns the next index in the range [0, range).
+     *
+     * @param range  the size of the range (a power of two).
+     * @return the next index.
+     */
+    long next(final long range) {
+      seed ^= seed << 13;
+      seed ^= seed >>> 7;
+      seed ^= seed << 17;
+      return seed & (range - 1);
+    }
+  }
+
+  /**
+   * Read a random bit with one thread.
+   *
+   * @param cursor  the index generator.
+   * @return the state of the bit.
+   */
+  @Benchmark
+  @Threads(1)
+  public boolean get1(final Cursor cursor) {
+    return bitSet.get(cursor.next(range));
+  }
+
+  /**
+   * Read a random bit with one thread per processor.
+   *
+   * @param cursor  the index generator.
+   * @return the state of the bit.
+   */
+  @Benchmark
+  @Threads(Threads.MAX)
+  public boolean getN(final Cursor cursor) {
+    return bitSet.get(cursor.next(range));
+  }
+
+  /**
+   * Set a random bit with one thread.
+   *
+   * @param cursor  the index generator.
+   */
+  @Benchmark
+  @Threads(1)
+  public void set1(final Cursor cursor) {
+    bitSet.set(cursor.next(range));
+  }
+
+  /**
+   * Set a random bit with one thread per processor.
+   *
+   * @param cursor  the index generator.
+   */
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void setN(final Cursor cursor) {
+    bitSet.set(cursor.next(range));
+  }
+}
@@ -0,0 +1,61 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * Measure the time to grow an empty ConcurrentBitSet with the smallest
+ * segment size while every processor sets bits in new segments, so the
+ * segment map is resized repeatedly under contention.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = SegmentMapResizeBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = SegmentMapResizeBenchmark.BATCH_SIZE)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class SegmentMapResizeBenchmark {
+  final static int BATCH_SIZE = 1 << 16;
+
+  private final AtomicLong counter = new AtomicLong();
+  private ConcurrentBitSet bitSet;
+
+  /**
+   * Start each iteration with a new, empty bit set.
+   */
+  @Setup(Level.Iteration)
+  public void setUp() {
+    bitSet = new ConcurrentBitSet(0, LOG2_MIN_SEGMENT_SIZE, false);
+    counter.set(0);
+  }
+
+  /**
+   * Set one bit in the next unused segment.
+   */
+  @Benchmark
+  public void grow() {
+    bitSet.set(counter.getAndIncrement() << LOG2_MIN_SEGMENT_SIZE);
+  }
+}
@@ -0,0 +1,127 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure EventQueue throughput, both for a single thread that enqueues
+ * and dequeues each event and for producers and consumers running
+ * concurrently. The types parameter sets the number of event types, and
+ * so the number of queues in the type map.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventQueueBenchmark {
+  @Param({ "1", "64" })
+  public int types;
+
+  private EventQueue queue;
+  private Event[] events;
+
+  /**
+   * Create the queue and one event of each type.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    queue = new EventQueue();
+    events = new Event[types];
+    for ( int i = 0; i < types; ++i ) {
+      events[i] = new BasicEvent(i);
+      queue.enqueue(events[i]);
+      queue.dequeue(i);
+    }
+  }
+
+  /**
+   * Discard events left over from each iteration.
+   */
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    queue.flush();
+  }
+
+  /**
+   * Counter selects the next event type for each thread.
+   */
+  @State(Scope.Thread)
+  public static class Counter {
+    private int next;
+
+    /**
+     * Returns the next event type.
+     *
+     * @param types  the number of event types.
+     * @return the next event type.
+     */
+    int next(final int types) {
+      final int result = next;
+      next = result + 1 == types ? 0 : result + 1;
+      return result;
+    }
+  }
+
+  /**
+   * Enqueue an event and dequeue it again on the same thread.
+   *
+   * @param counter  the event type selector.
+   * @return the dequeued event.
+   */
+  @Benchmark
+  @Threads(1)
+  public Event roundTrip(final Counter counter) {
+    final int type = counter.next(types);
+    queue.enqueue(events[type]);
+    return queue.dequeue(type);
+  }
+
+  /**
+   * Enqueue events concurrently with a consumer.
+   *
+   * @param counter  the event type selector.
+   */
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public void enqueue(final Counter counter) {
+    queue.enqueue(events[counter.next(types)]);
+  }
+
+  /**
+   * Dequeue events concurrently with a producer.
+   *
+   * @param counter  the event type selector.
+   * @return the dequeued event, or null if the queue was empty.
+   */
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public Event dequeue(final Counter counter) {
+    return queue.dequeue(counter.next(types));
+  }
+}
@@ -0,0 +1,158 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measure RingEventQueue throughput with the same workloads as
+ * EventQueueBenchmark, plus a consumer that drains events in batches.
+ * Run with -prof gc to confirm that no memory is allocated per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RingEventQueueBenchmark {
+  private final static int BATCH = 64;
+
+  @Param({ "1", "64" })
+  public int types;
+
+  @Param({ "SINGLE", "MULTI" })
+  public ProducerMode mode;
+
+  private RingEventQueue queue;
+
+  /**
+   * Create the queue and the ring for each type.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    queue = new RingEventQueue(RingEventQueue.DEFAULT_CAPACITY, mode);
+    for ( int i = 0; i < types; ++i ) {
+      queue.enqueue(i, null, null);
+      queue.flush(i);
+    }
+  }
+
+  /**
+   * Discard events left over from each iteration.
+   */
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    queue.flush();
+  }
+
+  /**
+   * Worker holds the reusable event and type selector of each thread.
+   */
+  @State(Scope.Thread)
+  public static class Worker {
+    final MutableEvent event = new MutableEvent();
+    private int next;
+
+    /**
+     * Returns the next event type.
+     *
+     * @param types  the number of event types.
+     * @return the next event type.
+     */
+    int next(final int types) {
+      final int result = next;
+      next = result + 1 == types ? 0 : result + 1;
+      return result;
+    }
+  }
+
+  /**
+   * Enqueue an event and dequeue it again on the same thread.
+   *
+   * @param worker  the reusable event and type selector.
+   * @return true if an event was dequeued.
+   */
+  @Benchmark
+  @Threads(1)
+  public boolean roundTrip(final Worker worker) {
+    final int type = worker.next(types);
+    queue.enqueue(worker.event.set(type, null, worker));
+    return queue.dequeue(type, worker.event);
+  }
+
+  /**
+   * Enqueue events concurrently with a consumer.
+   *
+   * @param worker  the reusable event and type selector.
+   * @return false if the queue was full.
+   */
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public boolean enqueue(final Worker worker) {
+    return queue.enqueue(worker.event.set(worker.next(types), null, worker));
+  }
+
+  /**
+   * Dequeue events concurrently with a producer.
+   *
+   * @param worker  the reusable event and type selector.
+   * @return true if an event was dequeued.
+   */
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public boolean dequeue(final Worker worker) {
+    return queue.dequeue(worker.next(types), worker.event);
+  }
+
+  /**
+   * Enqueue events concurrently with a batch consumer.
+   *
+   * @param worker  the reusable event and type selector.
+   * @return false if the queue was full.
+   */
+  @Benchmark
+  @Group("producerBatch")
+  @GroupThreads(1)
+  public boolean produce(final Worker worker) {
+    return queue.enqueue(worker.event.set(worker.next(types), null, worker));
+  }
+
+  /**
+   * Drain a batch of events concurrently with a producer.
+   *
+   * @param worker  the type selector.
+   * @param hole    the blackhole that consumes the events.
+   * @return the number of events drained.
+   */
+  @Benchmark
+  @Group("producerBatch")
+  @GroupThreads(1)
+  public int drain(final Worker worker, final Blackhole hole) {
+    return queue.drainTo(worker.next(types), hole::consume, BATCH);
+  }
+}
@@ -0,0 +1,219 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the time to parse a document of about one megabyte, laid out
+ * either one item per line or as a single line, from a string, a reader,
+ * UTF-8 bytes in an array, a direct buffer, and a stream, and to stream its
+ * tokens with a JSONReader. A second document of numeric telemetry
+ * records measures the cost of parsing numbers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JSONParserBenchmark {
+  private final static int ITEMS = 12000;
+
+  @Param({ "lines", "single" })
+  public String layout;
+
+  private String document;
+  private String telemetry;
+  private byte[] bytes;
+  private ByteBuffer direct;
+  private JSONParser parser;
+  private JSONParser uninterned;
+
+  /**
+   * Create the document and the parser.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    final String separator = "lines".equals(layout) ? ",\n" : ",";
+    final StringBuilder builder = new StringBuilder("{ \"items\": [");
+    for ( int i = 0; i < ITEMS; ++i ) {
+      builder.append(i == 0 ? "" : separator)
+	     .append(String.format(Locale.US,
+		 "{ \"id\": %d, \"name\": \"item %d\", \"active\": %b, \"price\": %d.25,"
+		 + " \"tags\": [\"red\", \"green\"], \"note\": null }", i, i, i % 2 == 0, i));
+    }
+    document = builder.append("] }").toString();
+    bytes = document.getBytes(StandardCharsets.UTF_8);
+    final StringBuilder numbers = new StringBuilder("{ \"samples\": [");
+    for ( int i = 0; i < ITEMS; ++i ) {
+      numbers.append(i == 0 ? "" : separator)
+	     .append(String.format(Locale.US,
+		 "{ \"t\": %d, \"lat\": %.6f, \"lon\": %.6f, \"alt\": %.2f,"
+		 + " \"v\": [%.4e, %.4e, %d] }", 1700000000000L + i * 250L,
+		 33.748995 + i * 1e-6, -84.387982 - i * 1e-6, 320.5 + i % 100,
+		 i * 0.0173, -i * 1.37e5, i % 1000));
+    }
+    telemetry = numbers.append("] }").toString();
+    direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    parser = new JSONParser();
+    uninterned = new JSONParser().symbolTable(null);
+  }
+
+  /**
+   * Parse the document from a string.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseString() {
+    return parser.parse(document);
+  }
+
+  /**
+   * Parse the document from a string without interning field names, for
+   * comparison with parseString.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseUninterned() {
+    return uninterned.parse(document);
+  }
+
+  /**
+   * Parse the document from a reader.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseReader() {
+    return new JSONParser(new StringReader(document), null).parse();
+  }
+
+  /**
+   * Parse the document from UTF-8 in a byte array.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseBytes() {
+    return parser.parse(bytes);
+  }
+
+  /**
+   * Parse the document from UTF-8 in a direct buffer.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseDirect() {
+    return parser.parse(direct);
+  }
+
+  /**
+   * Parse the document from a stream of UTF-8.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseStream() {
+    return new JSONParser(new ByteArrayInputStream(bytes), null).parse();
+  }
+
+  /**
+   * Parse the document from a stream of UTF-8 decoded by an
+   * InputStreamReader, for comparison with parseStream.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseStreamReader() {
+    return new JSONParser(new InputStreamReader(new ByteArrayInputStream(bytes),
+						StandardCharsets.UTF_8), null).parse();
+  }
+
+  /**
+   * Read every token of the document with a JSONReader.
+   *
+   * @return the number of tokens.
+   */
+  @Benchmark
+  public int streamTokens() {
+    final JSONReader reader = new JSONReader(document);
+    int count = 0;
+    while ( reader.nextToken() != null ) {
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Read every token of the document from UTF-8 in a byte array with a
+   * JSONReader.
+   *
+   * @return the number of tokens.
+   */
+  @Benchmark
+  public int streamBytes() {
+    final JSONReader reader = new JSONReader(bytes);
+    int count = 0;
+    while ( reader.nextToken() != null ) {
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Parse the telemetry document from a string.
+   *
+   * @return the parsed document.
+   */
+  @Benchmark
+  public JSON parseNumbers() {
+    return parser.parse(telemetry);
+  }
+
+  /**
+   * Read every number in the telemetry document as a double with a
+   * JSONReader.
+   *
+   * @return the sum of the numbers.
+   */
+  @Benchmark
+  public double streamNumbers() {
+    final JSONReader reader = new JSONReader(telemetry);
+    double sum = 0;
+    JSONToken token = reader.nextToken();
+    while ( token != null ) {
+      if ( token == JSONToken.VALUE_NUMBER_INT || token == JSONToken.VALUE_NUMBER_FLOAT ) {
+	sum += reader.getDouble();
+      }
+      token = reader.nextToken();
+    }
+    return sum;
+  }
+}
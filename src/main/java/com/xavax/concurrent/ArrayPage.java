@@ -0,0 +1,192 @@
+package com.xavax.concurrent;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * ArrayPage is an immutable page container that stores the indices of the
+ * set bits in a sorted array of shorts. It is used for sparse pages, where
+ * a few indices take less memory than a bitmap of the whole page.
+ */
+final class ArrayPage extends PageContainer {
+  private final short[] values;
+
+  /**
+   * Construct an ArrayPage with the specified bit indices.
+   *
+   * @param values  the indices of the set bits in ascending order.
+   */
+  private ArrayPage(final short[] values) {
+    this.values = values;
+  }
+
+  /**
+   * Create an ArrayPage with a single set bit.
+   *
+   * @param index  the index of the set bit.
+   * @return the new page.
+   */
+  static ArrayPage create(final int index) {
+    return new ArrayPage(new short[] { (short) index });
+  }
+
+  /**
+   * Create an ArrayPage with the specified bit indices.
+   *
+   * @param values  the indices of the set bits in ascending order.
+   * @return the new page.
+   */
+  static ArrayPage create(final short[] values) {
+    return new ArrayPage(values);
+  }
+
+  /**
+   * Create an ArrayPage containing the set bits of the specified words.
+   *
+   * @param words        the words of the page.
+   * @param cardinality  the number of set bits in the words.
+   * @return the new page.
+   */
+  static ArrayPage create(final long[] words, final int cardinality) {
+    final short[] values = new short[cardinality];
+    int count = 0;
+    for ( int i = 0; i < words.length; ++i ) {
+      long word = words[i];
+      while ( word != 0 ) {
+	values[count++] = (short) ((i << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word));
+	word &= word - 1;
+      }
+    }
+    return new ArrayPage(values);
+  }
+
+  /**
+   * Returns the estimated size in bytes of an ArrayPage with the specified
+   * number of set bits.
+   *
+   * @param cardinality  the number of set bits.
+   * @return the estimated size in bytes.
+   */
+  static int memoryUsage(final int cardinality) {
+    return align(OBJECT_HEADER_SIZE + REFERENCE_SIZE)
+	 + align(ARRAY_HEADER_SIZE + cardinality * Short.BYTES);
+  }
+
+  /**
+   * Returns the value of the specified bit as a boolean.
+   *
+   * @param index  the index of a bit within the page.
+   * @return the value of the specified bit.
+   */
+  @Override
+  public boolean get(final int index) {
+    return Arrays.binarySearch(values, (short) index) >= 0;
+  }
+
+  /**
+   * Returns the word of the page with the specified index.
+   *
+   * @param wordIndex  the index of the desired word.
+   * @return the word with the specified index.
+   */
+  @Override
+  public long word(final int wordIndex) {
+    final int first = wordIndex << LOG2_BITS_PER_LONG;
+    final int end = first + BITS_PER_LONG;
+    long result = 0;
+    for ( int i = search(first); i < values.length && values[i] < end; ++i ) {
+      result |= 1L << values[i];
+    }
+    return result;
+  }
+
+  /**
+   * Finds the next set bit starting at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next set bit, or -1 if not found.
+   */
+  @Override
+  public int nextSetBit(final int fromIndex) {
+    int result = -1;
+    if ( fromIndex < BITS_PER_PAGE ) {
+      final int i = search(fromIndex);
+      if ( i < values.length ) {
+	result = values[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the next clear bit starting at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next clear bit, or -1 if not found.
+   */
+  @Override
+  public int nextClearBit(final int fromIndex) {
+    int result = fromIndex;
+    for ( int i = search(fromIndex); i < values.length && values[i] == result; ++i ) {
+      ++result;
+    }
+    return result < BITS_PER_PAGE ? result : -1;
+  }
+
+  /**
+   * Returns the number of set bits in this page.
+   *
+   * @return the number of set bits in this page.
+   */
+  @Override
+  public int cardinality() {
+    return values.length;
+  }
+
+  /**
+   * Returns an estimate of the heap memory used by this page in bytes.
+   *
+   * @return the estimated size of this page in bytes.
+   */
+  @Override
+  public int memoryUsage() {
+    return memoryUsage(values.length);
+  }
+
+  /**
+   * Writes the serialized form of this page.
+   *
+   * @param output  the output to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  public void write(final DataOutput output) throws IOException {
+    output.writeByte(TYPE_ARRAY);
+    writeShorts(output, values.length, values);
+  }
+
+  /**
+   * Returns this page, since it is immutable and may be shared.
+   *
+   * @return this page.
+   */
+  @Override
+  public ArrayPage copy() {
+    return this;
+  }
+
+  /**
+   * Returns the position of the first value greater than or equal to
+   * the specified bit index.
+   *
+   * @param index  the bit index.
+   * @return the position of the first value not less than index.
+   */
+  private int search(final int index) {
+    final int position = Arrays.binarySearch(values, (short) index);
+    return position >= 0 ? position : -position - 1;
+  }
+}
@@ -0,0 +1,561 @@
+//
+// Copyright 2018 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.xavax.util.AbstractJoinableObject;
+import com.xavax.util.Joiner;
+
+/**
+ * AsyncPromise<T> is a promise of a future value of type T that never
+ * requires a thread to wait for the result. Continuations registered with
+ * onComplete, thenApply, thenCompose, or any other CompletionStage method
+ * run when the promise is fulfilled with set or failed with fail, so long
+ * chains of pending promises hold no threads. The blocking get method is
+ * still available to callers that need the result immediately.
+ *
+ * AsyncPromise is backed by a CompletableFuture, and the stages returned by
+ * the CompletionStage methods are AsyncPromises with the same name, so an
+ * AsyncPromise can be passed anywhere a CompletionStage is expected, and
+ * toCompletableFuture or from convert between the two.
+ *
+ * @param <T>  the class of object promised.
+ */
+public class AsyncPromise<T> extends AbstractJoinableObject
+    implements Promise<T>, CompletionStage<T> {
+  private final static String NAME = "name";
+  private final static String READY = "ready";
+  private final static String RESULT = "result";
+  private final static String FAILURE = "failure";
+
+  private volatile boolean interrupted;
+  private final CompletableFuture<T> future;
+  private final String name;
+
+  /**
+   * Construct an AsyncPromise.
+   *
+   * @param name  the name or description of this promise.
+   */
+  public AsyncPromise(final String name) {
+    this(name, new CompletableFuture<>());
+  }
+
+  /**
+   * Construct an AsyncPromise backed by the specified future.
+   *
+   * @param name    the name or description of this promise.
+   * @param future  the future holding the result.
+   */
+  private AsyncPromise(final String name, final CompletableFuture<T> future) {
+    this.name = name;
+    this.future = future;
+    interrupted = false;
+  }
+
+  /**
+   * Returns a new AsyncPromise that completes when the specified stage
+   * completes, with the same result or failure. Completing the promise
+   * does not complete the stage.
+   *
+   * @param name   the name or description of the promise.
+   * @param stage  the stage providing the result.
+   * @param <T>    the class of object promised.
+   * @return a new AsyncPromise.
+   */
+  public static <T> AsyncPromise<T> from(final String name,
+					 final CompletionStage<? extends T> stage) {
+    final AsyncPromise<T> promise = new AsyncPromise<>(name);
+    stage.whenComplete((result, cause) -> {
+      if ( cause == null ) {
+	promise.set(result);
+      }
+      else {
+	promise.fail(unwrap(cause));
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Returns a new AsyncPromise that is already fulfilled.
+   *
+   * @param name    the name or description of the promise.
+   * @param result  the result.
+   * @param <T>     the class of object promised.
+   * @return a new AsyncPromise.
+   */
+  public static <T> AsyncPromise<T> completed(final String name, final T result) {
+    return new AsyncPromise<>(name, CompletableFuture.completedFuture(result));
+  }
+
+  /**
+   * Returns a new AsyncPromise that has already failed.
+   *
+   * @param name   the name or description of the promise.
+   * @param cause  the cause of the failure.
+   * @param <T>    the class of object promised.
+   * @return a new AsyncPromise.
+   */
+  public static <T> AsyncPromise<T> failed(final String name, final Throwable cause) {
+    final AsyncPromise<T> promise = new AsyncPromise<>(name);
+    promise.fail(cause);
+    return promise;
+  }
+
+  /**
+   * Returns the result of type T, waiting if necessary. If the promise
+   * failed, throws a PromiseFailedException with the cause of the failure.
+   * If the thread is interrupted while waiting, returns null with the
+   * interrupt status set, as described by Promise.get.
+   *
+   * @return the result of type T.
+   */
+  @Override
+  public T get() {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      interrupted = true;
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    catch (ExecutionException e) {
+      throw new PromiseFailedException(e.getCause(), this);
+    }
+    catch (CancellationException e) {
+      throw new PromiseFailedException(e, this);
+    }
+  }
+
+  /**
+   * Returns the result of type T, waiting at most the specified time.
+   *
+   * @param time  the maximum time to wait.
+   * @param unit  the unit of the time argument.
+   * @return the result of type T.
+   * @throws PromiseTimeoutException if the time expires first.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
+   * @throws InterruptedPromiseException if the thread is interrupted.
+   */
+  @Override
+  public T get(final long time, final TimeUnit unit) {
+    try {
+      return future.get(time, unit);
+    }
+    catch (InterruptedException e) {
+      interrupted = true;
+      Thread.currentThread().interrupt();
+      throw new InterruptedPromiseException(e, this);
+    }
+    catch (ExecutionException e) {
+      throw new PromiseFailedException(e.getCause(), this);
+    }
+    catch (CancellationException e) {
+      throw new PromiseFailedException(e, this);
+    }
+    catch (TimeoutException e) {
+      throw new PromiseTimeoutException(this, time, unit);
+    }
+  }
+
+  /**
+   * Returns the name or description of this promise.
+   *
+   * @return the name or description of this promise.
+   */
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns true if this promise has been fulfilled or has failed.
+   *
+   * @return true if the result of this promise is ready.
+   */
+  @Override
+  public boolean isReady() {
+    return future.isDone();
+  }
+
+  /**
+   * Returns true if this promise failed or was cancelled.
+   *
+   * @return true if this promise failed or was cancelled.
+   */
+  @Override
+  public boolean isFailed() {
+    return future.isCompletedExceptionally();
+  }
+
+  /**
+   * Returns true if this promise was cancelled.
+   *
+   * @return true if this promise was cancelled.
+   */
+  @Override
+  public boolean isCancelled() {
+    return future.isCancelled();
+  }
+
+  /**
+   * Cancels this promise if it is not already complete. Continuations see
+   * a CancellationException as the cause.
+   *
+   * @return true if this call cancelled the promise.
+   */
+  @Override
+  public boolean cancel() {
+    return future.cancel(false);
+  }
+
+  /**
+   * Sets the result, making it available and running any continuations.
+   * A result set earlier is replaced, but continuations that already ran
+   * with it do not run again. Has no effect if the promise failed or was
+   * cancelled.
+   *
+   * @param result  the result.
+   */
+  @Override
+  public void set(final T result) {
+    // Once completed normally, the future can no longer fail or be
+    // cancelled, so replacing the value cannot hide a failure.
+    if ( !future.complete(result) && !future.isCompletedExceptionally() ) {
+      future.obtrudeValue(result);
+    }
+  }
+
+  /**
+   * Completes this promise with a failure, running any continuations.
+   * Has no effect if the promise is already complete.
+   *
+   * @param cause  the cause of the failure.
+   * @return true if this call completed the promise.
+   */
+  @Override
+  public boolean fail(final Throwable cause) {
+    return future.completeExceptionally(cause);
+  }
+
+  /**
+   * Returns true if a thread was interrupted waiting for this promise.
+   *
+   * @return true if the promise was interrupted.
+   */
+  @Override
+  public boolean wasInterrupted() {
+    return interrupted;
+  }
+
+  /**
+   * Register an action to run when this promise completes. The action
+   * receives the result and a null cause if the promise was fulfilled, or
+   * a null result and the cause of the failure. If the promise is already
+   * complete, the action runs immediately on the calling thread; otherwise
+   * it runs on the thread that completes the promise.
+   *
+   * @param action  the action to run.
+   * @return this promise.
+   */
+  @Override
+  public AsyncPromise<T> onComplete(final BiConsumer<? super T, ? super Throwable> action) {
+    future.whenComplete((result, cause) -> action.accept(result, unwrap(cause)));
+    return this;
+  }
+
+  /**
+   * Register an action to run on the specified executor when this promise
+   * completes.
+   *
+   * @param action    the action to run.
+   * @param executor  the executor used to run the action.
+   * @return this promise.
+   */
+  public AsyncPromise<T> onComplete(final BiConsumer<? super T, ? super Throwable> action,
+				    final Executor executor) {
+    future.whenCompleteAsync((result, cause) -> action.accept(result, unwrap(cause)), executor);
+    return this;
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenApply(final Function<? super T, ? extends U> fn) {
+    return wrap(future.thenApply(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenApplyAsync(final Function<? super T, ? extends U> fn) {
+    return wrap(future.thenApplyAsync(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenApplyAsync(final Function<? super T, ? extends U> fn,
+					    final Executor executor) {
+    return wrap(future.thenApplyAsync(fn, executor));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenAccept(final Consumer<? super T> action) {
+    return wrap(future.thenAccept(action));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenAcceptAsync(final Consumer<? super T> action) {
+    return wrap(future.thenAcceptAsync(action));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenAcceptAsync(final Consumer<? super T> action,
+					    final Executor executor) {
+    return wrap(future.thenAcceptAsync(action, executor));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenRun(final Runnable action) {
+    return wrap(future.thenRun(action));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenRunAsync(final Runnable action) {
+    return wrap(future.thenRunAsync(action));
+  }
+
+  @Override
+  public AsyncPromise<Void> thenRunAsync(final Runnable action, final Executor executor) {
+    return wrap(future.thenRunAsync(action, executor));
+  }
+
+  @Override
+  public <U, V> AsyncPromise<V> thenCombine(final CompletionStage<? extends U> other,
+					    final BiFunction<? super T, ? super U, ? extends V> fn) {
+    return wrap(future.thenCombine(other, fn));
+  }
+
+  @Override
+  public <U, V> AsyncPromise<V> thenCombineAsync(final CompletionStage<? extends U> other,
+						 final BiFunction<? super T, ? super U, ? extends V> fn) {
+    return wrap(future.thenCombineAsync(other, fn));
+  }
+
+  @Override
+  public <U, V> AsyncPromise<V> thenCombineAsync(final CompletionStage<? extends U> other,
+						 final BiFunction<? super T, ? super U, ? extends V> fn,
+						 final Executor executor) {
+    return wrap(future.thenCombineAsync(other, fn, executor));
+  }
+
+  @Override
+  public <U> AsyncPromise<Void> thenAcceptBoth(final CompletionStage<? extends U> other,
+					       final BiConsumer<? super T, ? super U> action) {
+    return wrap(future.thenAcceptBoth(other, action));
+  }
+
+  @Override
+  public <U> AsyncPromise<Void> thenAcceptBothAsync(final CompletionStage<? extends U> other,
+						    final BiConsumer<? super T, ? super U> action) {
+    return wrap(future.thenAcceptBothAsync(other, action));
+  }
+
+  @Override
+  public <U> AsyncPromise<Void> thenAcceptBothAsync(final CompletionStage<? extends U> other,
+						    final BiConsumer<? super T, ? super U> action,
+						    final Executor executor) {
+    return wrap(future.thenAcceptBothAsync(other, action, executor));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterBoth(final CompletionStage<?> other, final Runnable action) {
+    return wrap(future.runAfterBoth(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterBothAsync(final CompletionStage<?> other,
+					      final Runnable action) {
+    return wrap(future.runAfterBothAsync(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterBothAsync(final CompletionStage<?> other,
+					      final Runnable action,
+					      final Executor executor) {
+    return wrap(future.runAfterBothAsync(other, action, executor));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> applyToEither(final CompletionStage<? extends T> other,
+					   final Function<? super T, U> fn) {
+    return wrap(future.applyToEither(other, fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> applyToEitherAsync(final CompletionStage<? extends T> other,
+						final Function<? super T, U> fn) {
+    return wrap(future.applyToEitherAsync(other, fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> applyToEitherAsync(final CompletionStage<? extends T> other,
+						final Function<? super T, U> fn,
+						final Executor executor) {
+    return wrap(future.applyToEitherAsync(other, fn, executor));
+  }
+
+  @Override
+  public AsyncPromise<Void> acceptEither(final CompletionStage<? extends T> other,
+					 final Consumer<? super T> action) {
+    return wrap(future.acceptEither(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> acceptEitherAsync(final CompletionStage<? extends T> other,
+					      final Consumer<? super T> action) {
+    return wrap(future.acceptEitherAsync(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> acceptEitherAsync(final CompletionStage<? extends T> other,
+					      final Consumer<? super T> action,
+					      final Executor executor) {
+    return wrap(future.acceptEitherAsync(other, action, executor));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterEither(final CompletionStage<?> other, final Runnable action) {
+    return wrap(future.runAfterEither(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterEitherAsync(final CompletionStage<?> other,
+						final Runnable action) {
+    return wrap(future.runAfterEitherAsync(other, action));
+  }
+
+  @Override
+  public AsyncPromise<Void> runAfterEitherAsync(final CompletionStage<?> other,
+						final Runnable action,
+						final Executor executor) {
+    return wrap(future.runAfterEitherAsync(other, action, executor));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenCompose(final Function<? super T, ? extends CompletionStage<U>> fn) {
+    return wrap(future.thenCompose(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn) {
+    return wrap(future.thenComposeAsync(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn,
+					      final Executor executor) {
+    return wrap(future.thenComposeAsync(fn, executor));
+  }
+
+  @Override
+  public AsyncPromise<T> exceptionally(final Function<Throwable, ? extends T> fn) {
+    return wrap(future.exceptionally(fn));
+  }
+
+  @Override
+  public AsyncPromise<T> whenComplete(final BiConsumer<? super T, ? super Throwable> action) {
+    return wrap(future.whenComplete(action));
+  }
+
+  @Override
+  public AsyncPromise<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action) {
+    return wrap(future.whenCompleteAsync(action));
+  }
+
+  @Override
+  public AsyncPromise<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action,
+					   final Executor executor) {
+    return wrap(future.whenCompleteAsync(action, executor));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> handle(final BiFunction<? super T, Throwable, ? extends U> fn) {
+    return wrap(future.handle(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn) {
+    return wrap(future.handleAsync(fn));
+  }
+
+  @Override
+  public <U> AsyncPromise<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn,
+					 final Executor executor) {
+    return wrap(future.handleAsync(fn, executor));
+  }
+
+  /**
+   * Returns the CompletableFuture backing this promise. Completing the
+   * future completes this promise.
+   *
+   * @return the CompletableFuture backing this promise.
+   */
+  @Override
+  public CompletableFuture<T> toCompletableFuture() {
+    return future;
+  }
+
+  /**
+   * Returns a new AsyncPromise with the same name as this promise backed
+   * by the specified future.
+   *
+   * @param stage  the future backing the new promise.
+   * @param <U>    the class of object promised.
+   * @return a new AsyncPromise.
+   */
+  private <U> AsyncPromise<U> wrap(final CompletableFuture<U> stage) {
+    return new AsyncPromise<>(name, stage);
+  }
+
+  /**
+   * Returns the underlying cause of a failure reported by a dependent
+   * stage, which wraps it in a CompletionException.
+   *
+   * @param cause  the failure reported by the stage.
+   * @return the underlying cause.
+   */
+  static Throwable unwrap(final Throwable cause) {
+    return cause instanceof CompletionException && cause.getCause() != null
+	? cause.getCause() : cause;
+  }
+
+  /**
+   * Output this object to the specified joiner.
+   *
+   * @param joiner the joiner to use for output.
+   * @return this joiner.
+   */
+  @Override
+  protected Joiner doJoin(final Joiner joiner) {
+    final boolean ready = future.isDone();
+    final boolean failed = future.isCompletedExceptionally();
+    joiner.append(NAME, name)
+	  .append(READY, ready)
+	  .append(RESULT, ready && !failed ? future.join() : null)
+	  .append(FAILURE, failed);
+    return joiner;
+  }
+}
@@ -5,9 +5,12 @@
 //
 package com.xavax.concurrent;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 import com.xavax.util.AbstractJoinableObject;
 import com.xavax.util.Joiner;
@@ -15,21 +18,40 @@ import com.xavax.util.Joiner;
 /**
  * BasicPromise<T> is a promise of a future value of type T.
  *
+ * The state of the promise is a single volatile field. While the promise
+ * is pending, the field is null or the top of a stack of waiting threads;
+ * once the result is set, it holds the outcome. Reading a completed promise
+ * is a single volatile read, and only threads that must wait for a pending
+ * promise push themselves on the stack and park. Actions registered with
+ * onComplete share the same stack and run when the promise completes.
+ *
+ * A promise is completed by setting the result, by failing it with a
+ * cause, or by cancelling it. Failure and cancellation are final; setting
+ * the result again replaces the previous result. The timed get method
+ * waits until a deadline and reports a timeout, a failure, and an
+ * interruption with distinct exceptions.
+ *
+ * Waiting threads block with LockSupport and never hold a monitor, so a
+ * promise can be awaited by virtual threads without pinning their carrier
+ * threads.
+ *
  * @param <T>  the class of object promised.
  */
 public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T> {
   private final static String NAME = "name";
   private final static String READY = "ready";
   private final static String RESULT = "result";
-  private final static String SENTINEL = "sentinel";
+  private final static String WAITERS = "waiters";
+  private final static String FAILED = "failed";
 
-  private boolean ready;
-  private boolean interrupted;
-  private long timeout;
-  private final Condition condition;
-  private final Lock sentinel;
+  @SuppressWarnings("rawtypes")
+  private final static AtomicReferenceFieldUpdater<BasicPromise, Object> STATE =
+      AtomicReferenceFieldUpdater.newUpdater(BasicPromise.class, Object.class, "state");
+
+  private volatile boolean interrupted;
+  private final long timeout;
   private final String name;
-  private T result;
+  private volatile Object state;
 
   /**
    * Construct a BasicPromise.
@@ -50,9 +72,6 @@ public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T
     this.name = name;
     this.timeout = timeout;
     interrupted = false;
-    ready = false;
-    sentinel = new ReentrantLock();
-    condition = sentinel.newCondition();
   }
 
   /**
@@ -61,10 +80,28 @@ public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T
    * @return true if the result of this promise is ready.
    */
   public boolean isReady() {
-    sentinel.lock();
-    final boolean readyFlag = ready;
-    sentinel.unlock();
-    return readyFlag;
+    return state instanceof Outcome;
+  }
+
+  /**
+   * Returns true if this promise failed or was cancelled.
+   *
+   * @return true if this promise failed or was cancelled.
+   */
+  public boolean isFailed() {
+    final Object current = state;
+    return current instanceof Outcome && ((Outcome<?>) current).failure != null;
+  }
+
+  /**
+   * Returns true if this promise was cancelled.
+   *
+   * @return true if this promise was cancelled.
+   */
+  public boolean isCancelled() {
+    final Object current = state;
+    return current instanceof Outcome
+	&& ((Outcome<?>) current).failure instanceof CancellationException;
   }
 
   /**
@@ -77,49 +114,73 @@ public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T
   }
 
   /**
-   * Returns the result of type T, waiting if necessary.
+   * Returns the result of type T, waiting if necessary. If the promise has
+   * a maximum timeout, returns null when the timeout expires. If the thread
+   * is interrupted, returns null with the interrupt status set.
+   *
+   * @return the result of type T.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
    */
   public T get() {
-    T rvalue = result;
-    sentinel.lock();
-    try {
-      boolean first = true;
-      while ( first && !ready ) {
-	if ( timeout == 0 ) {
-	  condition.await();
-	}
-	else {
-	  condition.awaitNanos(timeout);
-	}
-	first = false;
-      }
-      rvalue = result;
+    Object current = state;
+    if ( !(current instanceof Outcome) ) {
+      current = await(timeout != 0, timeout, false);
     }
-    catch (InterruptedException e) {
-      interrupted = true;
-      // TODO: handle(e, INTERRUPTED_PROMISE, name);
-    }
-    finally {
-      sentinel.unlock();
+    return current instanceof Outcome ? value(current) : null;
+  }
+
+  /**
+   * Returns the result of type T, waiting until the result is ready or the
+   * specified time has elapsed.
+   *
+   * @param time  the maximum time to wait.
+   * @param unit  the unit of the time argument.
+   * @return the result of type T.
+   * @throws PromiseTimeoutException if the time expires first.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
+   * @throws InterruptedPromiseException if the thread is interrupted.
+   */
+  public T get(final long time, final TimeUnit unit) {
+    Object current = state;
+    if ( !(current instanceof Outcome) ) {
+      current = await(true, unit.toNanos(time), true);
+      if ( !(current instanceof Outcome) ) {
+	throw new PromiseTimeoutException(this, time, unit);
+      }
     }
-    return rvalue;
+    return value(current);
   }
 
   /**
    * Sets the result making it available and waking up any waiting threads.
+   * A result set earlier is replaced, but actions that already ran with it
+   * do not run again. Has no effect if the promise failed or was cancelled.
    *
    * @param result the result.
    */
   public void set(final T result) {
-    try {
-      sentinel.lock();
-      this.result = result;
-      ready = true;
-      condition.signalAll();
-    }
-    finally {
-      sentinel.unlock();
-    }
+    complete(new Outcome<>(result, null), true);
+  }
+
+  /**
+   * Completes this promise with a failure if it is not already complete,
+   * waking up any waiting threads.
+   *
+   * @param cause  the cause of the failure.
+   * @return true if this call completed the promise.
+   */
+  public boolean fail(final Throwable cause) {
+    return complete(new Outcome<>(null, cause), false);
+  }
+
+  /**
+   * Cancels this promise if it is not already complete, waking up any
+   * waiting threads.
+   *
+   * @return true if this call cancelled the promise.
+   */
+  public boolean cancel() {
+    return complete(new Outcome<>(null, new CancellationException(name)), false);
   }
 
   /**
@@ -131,6 +192,218 @@ public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T
     return interrupted;
   }
 
+  /**
+   * Install an outcome and wake up any waiting threads. A pending promise
+   * is always completed; a complete promise is only updated if replace is
+   * true and the promise did not fail.
+   *
+   * @param outcome  the new outcome.
+   * @param replace  true if a previous result may be replaced.
+   * @return true if the outcome was installed.
+   */
+  private boolean complete(final Outcome<T> outcome, final boolean replace) {
+    Object current;
+    do {
+      current = state;
+      if ( current instanceof Outcome
+	   && (!replace || ((Outcome<?>) current).failure != null) ) {
+	return false;
+      }
+    } while ( !STATE.compareAndSet(this, current, outcome) );
+    if ( !(current instanceof Outcome) ) {
+      release((Waiter) current, outcome);
+    }
+    return true;
+  }
+
+  /**
+   * Register an action to run when this promise completes. The action
+   * receives the result and a null cause if the result was set, or a null
+   * result and the cause if the promise failed or was cancelled. If the
+   * promise is already complete, the action runs immediately on the calling
+   * thread; otherwise it runs on the thread that completes the promise,
+   * after any waiting threads are woken up. Exceptions thrown by the action
+   * are ignored.
+   *
+   * @param action  the action to run.
+   * @return this promise.
+   */
+  @Override
+  public BasicPromise<T> onComplete(final BiConsumer<? super T, ? super Throwable> action) {
+    final Waiter waiter = new Waiter(action);
+    Object current = state;
+    while ( !(current instanceof Outcome) ) {
+      waiter.next = live((Waiter) current);
+      if ( STATE.compareAndSet(this, current, waiter) ) {
+	return this;
+      }
+      current = state;
+    }
+    run(waiter, (Outcome<?>) current);
+    return this;
+  }
+
+  /**
+   * Register an action to run on the specified executor when this promise
+   * completes. An executor from TaskExecutors runs each action on its own
+   * virtual thread when the JVM supports them.
+   *
+   * @param action    the action to run.
+   * @param executor  the executor used to run the action.
+   * @return this promise.
+   */
+  public BasicPromise<T> onComplete(final BiConsumer<? super T, ? super Throwable> action,
+				    final Executor executor) {
+    return onComplete((result, cause) -> executor.execute(() -> action.accept(result, cause)));
+  }
+
+  /**
+   * Wait until the promise is ready, the deadline passes, or the thread is
+   * interrupted, and return the state of the promise.
+   *
+   * @param timed          true if the wait is limited to nanos.
+   * @param nanos          the maximum time to wait in nanoseconds.
+   * @param interruptible  true if an interrupt should throw an exception.
+   * @return the state of the promise.
+   */
+  private Object await(final boolean timed, final long nanos, final boolean interruptible) {
+    Object current = state;
+    if ( current instanceof Outcome || timed && nanos <= 0 ) {
+      return current;
+    }
+    final long deadline = timed ? System.nanoTime() + nanos : 0;
+    final Waiter waiter = new Waiter(Thread.currentThread());
+    boolean queued = false;
+    boolean wasInterrupted = false;
+    while ( !((current = state) instanceof Outcome) ) {
+      if ( !queued ) {
+	waiter.next = live((Waiter) current);
+	queued = STATE.compareAndSet(this, current, waiter);
+      }
+      else if ( Thread.interrupted() ) {
+	wasInterrupted = true;
+	break;
+      }
+      else if ( !timed ) {
+	LockSupport.park(this);
+      }
+      else {
+	final long remaining = deadline - System.nanoTime();
+	if ( remaining <= 0 ) {
+	  break;
+	}
+	LockSupport.parkNanos(this, remaining);
+      }
+    }
+    waiter.thread = null;
+    if ( wasInterrupted ) {
+      interrupted = true;
+      Thread.currentThread().interrupt();
+      if ( interruptible ) {
+	throw new InterruptedPromiseException(new InterruptedException(), this);
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the first waiter in the stack that is still waiting. Waiters
+   * that gave up are unlinked when the next waiter is pushed.
+   *
+   * @param waiter  the top of the stack of waiters.
+   * @return the first waiter still waiting, or null.
+   */
+  private static Waiter live(final Waiter waiter) {
+    Waiter result = waiter;
+    while ( result != null && result.thread == null && result.action == null ) {
+      result = result.next;
+    }
+    return result;
+  }
+
+  /**
+   * Wake up every thread in a stack of waiters, then run every action.
+   *
+   * @param waiter   the top of the stack of waiters.
+   * @param outcome  the outcome of the promise.
+   */
+  private static void release(final Waiter waiter, final Outcome<?> outcome) {
+    for ( Waiter next = waiter; next != null; next = next.next ) {
+      final Thread thread = next.thread;
+      if ( thread != null ) {
+	next.thread = null;
+	LockSupport.unpark(thread);
+      }
+    }
+    for ( Waiter next = waiter; next != null; next = next.next ) {
+      if ( next.action != null ) {
+	run(next, outcome);
+      }
+    }
+  }
+
+  /**
+   * Run the action of a waiter with the specified outcome.
+   *
+   * @param waiter   the waiter holding the action.
+   * @param outcome  the outcome of the promise.
+   */
+  @SuppressWarnings({ "unchecked", "PMD.AvoidCatchingGenericException" })
+  private static void run(final Waiter waiter, final Outcome<?> outcome) {
+    try {
+      ((BiConsumer<Object, Throwable>) waiter.action).accept(outcome.result, outcome.failure);
+    }
+    catch (RuntimeException e) {
+      // The failure of one action must not prevent the others from running.
+    }
+  }
+
+  /**
+   * Returns the result held in the specified state, or null if the
+   * promise is not ready.
+   *
+   * @param current  the state of the promise.
+   * @return the result.
+   */
+  @SuppressWarnings("unchecked")
+  private T result(final Object current) {
+    return current instanceof Outcome ? ((Outcome<T>) current).result : null;
+  }
+
+  /**
+   * Returns the result of a complete promise, or throws if it failed.
+   *
+   * @param current  the outcome of the promise.
+   * @return the result.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
+   */
+  @SuppressWarnings("unchecked")
+  private T value(final Object current) {
+    final Outcome<T> outcome = (Outcome<T>) current;
+    if ( outcome.failure != null ) {
+      throw new PromiseFailedException(outcome.failure, this);
+    }
+    return outcome.result;
+  }
+
+  /**
+   * Returns the number of threads waiting for this promise.
+   *
+   * @return the number of threads waiting for this promise.
+   */
+  private int waiters() {
+    int count = 0;
+    final Object current = state;
+    if ( !(current instanceof Outcome) ) {
+      for ( Waiter next = (Waiter) current; next != null; next = next.next ) {
+	if ( next.thread != null ) {
+	  ++count;
+	}
+      }
+    }
+    return count;
+  }
+
   /**
    * Output this object to the specified joiner.
    *
@@ -139,10 +412,64 @@ public class BasicPromise<T> extends AbstractJoinableObject implements Promise<T
    */
   @Override
   protected Joiner doJoin(final Joiner joiner) {
+    final Object current = state;
     joiner.append(NAME, name)
-	  .append(READY, ready)
-	  .append(RESULT, result)
-	  .append(SENTINEL, sentinel);
+	  .append(READY, current instanceof Outcome)
+	  .append(RESULT, result(current))
+	  .append(WAITERS, waiters())
+	  .append(FAILED, current instanceof Outcome && ((Outcome<?>) current).failure != null);
     return joiner;
   }
+
+  /**
+   * Outcome holds the result or failure of a promise that is ready.
+   *
+   * @param <T>  the class of object promised.
+   */
+  private final static class Outcome<T> {
+    final T result;
+    final Throwable failure;
+
+    /**
+     * Construct an Outcome.
+     *
+     * @param result   the result.
+     * @param failure  the cause of the failure, or null.
+     */
+    Outcome(final T result, final Throwable failure) {
+      this.result = result;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * Waiter is a node in the stack of threads waiting for a promise or of
+   * actions to run when it completes. The thread is cleared when the
+   * waiter is released or gives up.
+   */
+  private final static class Waiter {
+    volatile Thread thread;
+    final BiConsumer<?, ?> action;
+    Waiter next;
+
+    /**
+     * Construct a Waiter for a thread.
+     *
+     * @param thread  the waiting thread.
+     */
+    Waiter(final Thread thread) {
+      this.thread = thread;
+      this.action = null;
+    }
+
+    /**
+     * Construct a Waiter for an action.
+     *
+     * @param action  the action to run.
+     */
+    Waiter(final BiConsumer<?, ?> action) {
+      this.thread = null;
+      this.action = action;
+    }
+  }
 }
@@ -1,7 +1,11 @@
 package com.xavax.concurrent;
 
-import static com.xavax.concurrent.ConcurrentBitSetConstants.BITS_PER_PAGE;
-import static com.xavax.concurrent.ConcurrentBitSetConstants.LOG2_BITS_PER_PAGE;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+import static com.xavax.concurrent.PageContainer.LAST_BIT;
+import static com.xavax.concurrent.PageContainer.align;
 
 import com.xavax.util.AbstractJoinableObject;
 import com.xavax.util.Joinable;
@@ -9,29 +13,57 @@ import com.xavax.util.Joiner;
 
 /**
  * Segment encapsulates a fixed-size segment of the bit set. Segment sizes are
- * always a power of 2 to simplify calculations.
+ * always a power of 2 to simplify calculations. Pages are installed in the
+ * page map with compare-and-swap, so neither reading nor creating a page
+ * requires a lock.
+ *
+ * Each page is stored in the container that uses the least memory (see
+ * PageContainer). Immutable containers are replaced with compare-and-swap
+ * when they are updated, so a sparse page grows into a bitmap once it holds
+ * too many bits. A bitmap is updated in place and is only replaced when a
+ * range operation covers the whole page, since the new contents of the page
+ * do not depend on the old ones in that case.
  */
 class BitMapSegment extends AbstractJoinableObject implements Joinable {
   final static int BIT_INDEX_MASK = (1 << LOG2_BITS_PER_PAGE) - 1;
   final static int SEGMENT_BUFFER_SIZE = 8192;
+  final static int SEGMENT_MEMORY_USAGE = align(OBJECT_HEADER_SIZE + REFERENCE_SIZE * 3)
+					+ align(OBJECT_HEADER_SIZE + Integer.BYTES)
+					+ align(OBJECT_HEADER_SIZE + REFERENCE_SIZE);
 
-  private int pageCount;
-  private final BitSetPage[] map;
+  private final long firstPage;
+  private final AtomicInteger pageCount;
+  private final AtomicReferenceArray<PageContainer> map;
   private final ConcurrentBitSet parent;
 
   /**
    * Construct a segment with a bitmap of size 2 ^ logSize. The bitmap
-   * is stored in an array of Page objects. Each Page has a small array
-   * of longs that store BITS_PER_PAGE bits, so the array size is:
+   * is stored in an array of Page objects. Each Page stores BITS_PER_PAGE
+   * bits, so the array size is:
    *   2 ^ (logSize - log2(BITS_PER_PAGE))
    *
    * @param parent  the parent of this segment.
    * @param logSize log2 of the size of the bitmap.
    */
   public BitMapSegment(final ConcurrentBitSet parent, final int logSize) {
+    this(parent, logSize, 0);
+  }
+
+  /**
+   * Construct a segment with a bitmap of size 2 ^ logSize for the
+   * segment at the specified index in the segment map.
+   *
+   * @param parent        the parent of this segment.
+   * @param logSize       log2 of the size of the bitmap.
+   * @param segmentIndex  the index of this segment in the segment map.
+   */
+  public BitMapSegment(final ConcurrentBitSet parent, final int logSize,
+		       final int segmentIndex) {
     this.parent = parent;
     final int size = 1 << (logSize - LOG2_BITS_PER_PAGE);
-    map = new BitSetPage[size];
+    firstPage = (long) segmentIndex * size;
+    map = new AtomicReferenceArray<>(size);
+    pageCount = new AtomicInteger();
   }
 
   /**
@@ -44,8 +76,12 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
   public boolean get(final int index) {
     boolean result = false;
     final int bitIndex = index & BIT_INDEX_MASK;
-    final BitSetPage page = getPageContaining(index, false);
-    if ( page != null ) {
+    final PageContainer page = getPageContaining(index, false);
+    if ( page == null ) {
+	parent.metrics.pageMiss();
+    }
+    else {
+	parent.metrics.pageHit();
 	result = page.get(bitIndex);
     }
     return result;
@@ -60,16 +96,30 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
    * @param value  the new value of the bit.
    */
   public void set(final int index, final boolean value) {
+    final int pageIndex = index >>> LOG2_BITS_PER_PAGE;
     final int bitIndex = index & BIT_INDEX_MASK;
-    final BitSetPage page = getPageContaining(index, value);
-    if ( page != null ) {
-	page.set(bitIndex, value);
+    PageContainer page = map.get(pageIndex);
+    if ( page == null ) {
+	parent.metrics.pageMiss();
+    }
+    else {
+	parent.metrics.pageHit();
+    }
+    for ( ;; ) {
+	preserve(pageIndex, page);
+	final PageContainer result = page != null ? page.set(bitIndex, value)
+	    : value ? ArrayPage.create(bitIndex) : null;
+	if ( result == page || replace(pageIndex, page, result) ) {
+	  break;
+	}
+	page = map.get(pageIndex);
     }
   }
 
   /**
    * Sets a range of bits beginning with the bit at fromIndex and
-   * ending with the bit at toIndex (inclusive).
+   * ending with the bit at toIndex (inclusive). Whole pages in the
+   * range are replaced by the shared full page.
    *
    * @param fromIndex  index of the first bit to set.
    * @param toIndex    index of the last bit to set.
@@ -80,19 +130,16 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
     final int lastPage = toIndex >>> LOG2_BITS_PER_PAGE;
     int firstBit = fromIndex & BIT_INDEX_MASK;
     final int lastBit = toIndex & BIT_INDEX_MASK;
-    final int end = BITS_PER_PAGE - 1;
     for ( ; pageIndex <= lastPage; ++pageIndex ) {
-	final BitSetPage page = getPage(pageIndex, true);
-	if ( page != null ) {
-	  page.set(firstBit, pageIndex == lastPage ? lastBit : end);
-	}
+	update(pageIndex, firstBit, pageIndex == lastPage ? lastBit : LAST_BIT, true);
 	firstBit = 0;
     }
   }
 
   /**
    * Clears a range of bits beginning with the bit at fromIndex and
-   * ending with the bit at toIndex (inclusive).
+   * ending with the bit at toIndex (inclusive). Whole pages in the
+   * range are removed.
    *
    * @param fromIndex  index of the first bit to clear.
    * @param toIndex    index of the last bit to clear.
@@ -103,16 +150,60 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
     final int lastPage = toIndex >>> LOG2_BITS_PER_PAGE;
     int firstBit = fromIndex & BIT_INDEX_MASK;
     final int lastBit = toIndex & BIT_INDEX_MASK;
-    final int end = BITS_PER_PAGE - 1;
     for ( ; pageIndex <= lastPage; ++pageIndex ) {
-	final BitSetPage page = getPage(pageIndex, false);
-	if ( page != null ) {
-	  page.clear(firstBit, pageIndex == lastPage ? lastBit : end);
-	}
+	update(pageIndex, firstBit, pageIndex == lastPage ? lastBit : LAST_BIT, false);
 	firstBit = 0;
     }
   }
 
+  /**
+   * Set or clear a range of bits within one page.
+   *
+   * @param pageIndex  the index of the page.
+   * @param fromIndex  index of the first bit within the page.
+   * @param toIndex    index of the last bit within the page.
+   * @param value      true if the bits should be set.
+   */
+  private void update(final int pageIndex, final int fromIndex, final int toIndex,
+		      final boolean value) {
+    final boolean whole = fromIndex == 0 && toIndex == LAST_BIT;
+    PageContainer page;
+    PageContainer result;
+    do {
+	page = map.get(pageIndex);
+	preserve(pageIndex, page);
+	if ( whole ) {
+	  result = value ? RunPage.FULL : null;
+	}
+	else if ( page == null ) {
+	  result = value ? RunPage.create(fromIndex, toIndex) : null;
+	}
+	else {
+	  result = value ? page.set(fromIndex, toIndex) : page.clear(fromIndex, toIndex);
+	}
+    } while ( result != page && !replace(pageIndex, page, result) );
+  }
+
+  /**
+   * Combine the page at the specified index with a page from another bit
+   * set. The page is replaced with compare-and-swap if the operation
+   * produces a new container.
+   *
+   * @param pageIndex  the index of the page in this segment.
+   * @param operation  the operation to perform.
+   * @param source     the page from the other bit set, or null.
+   */
+  void combine(final int pageIndex, final ConcurrentBitSet.BulkOperation operation,
+	       final PageContainer source) {
+    PageContainer page;
+    PageContainer result;
+    do {
+	page = map.get(pageIndex);
+	preserve(pageIndex, page);
+	result = operation.apply(page, source);
+    } while ( result != page && !replace(pageIndex, page, result) );
+  }
+
   /**
    * Finds the next set bit starting at fromIndex.
    *
@@ -123,16 +214,16 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
     int result = -1;
     int bitIndex = fromIndex & BIT_INDEX_MASK;
     int pageIndex = fromIndex >>> LOG2_BITS_PER_PAGE;
-    for ( ; pageIndex < map.length; ++pageIndex ) {
-	final BitSetPage page = map[pageIndex];
+    for ( ; pageIndex < map.length(); ++pageIndex ) {
+	final PageContainer page = map.get(pageIndex);
 	if ( page != null ) {
 	  final int index = page.nextSetBit(bitIndex);
 	  if ( index >= 0 ) {
 	    result = index;
 	    break;
 	  }
-	  bitIndex = 0;
 	}
+	bitIndex = 0;
     }
     if ( result >= 0 ) {
 	result += pageIndex << LOG2_BITS_PER_PAGE;
@@ -150,10 +241,10 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
     int result = -1;
     int bitIndex = fromIndex & BIT_INDEX_MASK;
     int pageIndex = fromIndex >>> LOG2_BITS_PER_PAGE;
-    for ( ; pageIndex < map.length; ++pageIndex ) {
-	final BitSetPage page = map[pageIndex];
+    for ( ; pageIndex < map.length(); ++pageIndex ) {
+	final PageContainer page = map.get(pageIndex);
 	if ( page == null ) {
-	  result = 0;
+	  result = bitIndex;
 	  break;
 	}
 	else {
@@ -171,13 +262,57 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
     return result;
   }
 
+  /**
+   * Returns the number of set bits in this segment.
+   *
+   * @return the number of set bits in this segment.
+   */
+  public long cardinality() {
+    long result = 0;
+    for ( int pageIndex = 0; pageIndex < map.length(); ++pageIndex ) {
+      final PageContainer page = map.get(pageIndex);
+      if ( page != null ) {
+	result += page.cardinality();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns an estimate of the heap memory used by this segment and its
+   * pages in bytes.
+   *
+   * @return the estimated size of this segment in bytes.
+   */
+  long memoryUsage() {
+    long result = SEGMENT_MEMORY_USAGE
+		+ align(ARRAY_HEADER_SIZE + map.length() * REFERENCE_SIZE);
+    for ( int pageIndex = 0; pageIndex < map.length(); ++pageIndex ) {
+      final PageContainer page = map.get(pageIndex);
+      if ( page != null ) {
+	result += page.memoryUsage();
+      }
+    }
+    return result;
+  }
+
   /**
    * Returns the number of pages in this segment.
    * 
    * @return the number of pages in this segment.
    */
   int pageCount() {
-    return pageCount;
+    return pageCount.get();
+  }
+
+  /**
+   * Returns the size of the page map (the number of pages this segment
+   * can hold).
+   *
+   * @return the size of the page map.
+   */
+  int pageMapSize() {
+    return map.length();
   }
 
   /**
@@ -198,8 +333,12 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
    */
   @Override
   public Joiner doJoin(final Joiner joiner) {
-    joiner.append("pageCount", pageCount)
-          .append("map", (Object) map);
+    final PageContainer[] pages = new PageContainer[map.length()];
+    for ( int i = 0; i < pages.length; ++i ) {
+      pages[i] = map.get(i);
+    }
+    joiner.append("pageCount", pageCount.get())
+	  .append("map", (Object) pages);
     return joiner;
   }
 
@@ -213,7 +352,7 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
    * @return the page containing the specified bit, or null if no
    *         such page exists and was not created.
    */
-  BitSetPage getPageContaining(final int index, final boolean require) {
+  PageContainer getPageContaining(final int index, final boolean require) {
     return getPage(index >>> LOG2_BITS_PER_PAGE, require);
   }
 
@@ -225,8 +364,8 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
    * @param mapIndex  the index of the desired page.
    * @return the page at the specified index.
    */
-  BitSetPage getPage(final int mapIndex, final boolean require) {
-    BitSetPage page = map[mapIndex];
+  PageContainer getPage(final int mapIndex, final boolean require) {
+    PageContainer page = map.get(mapIndex);
     if ( page == null && require ) {
 	page = createPage(mapIndex);
     }
@@ -234,22 +373,66 @@ class BitMapSegment extends AbstractJoinableObject implements Joinable {
   }
 
   /**
-   * Create a new page at the specified index in the page map.
+   * Create a new, empty bitmap page at the specified index in the page
+   * map. If another thread installs a page first, that page is returned
+   * instead.
    *
    * @param mapIndex  the index for the new page.
-   * @return a new page.
-   */
-  BitSetPage createPage(final int mapIndex) {
-    BitSetPage page = null;
-    synchronized ( map ) {
-      page = map[mapIndex];
-      if ( page == null ) {
-        page = new BitSetPage();
-        map[mapIndex] = page;
-        ++pageCount;
-        parent.metrics.pageCreated();
+   * @return the page at the specified index.
+   */
+  PageContainer createPage(final int mapIndex) {
+    preserve(mapIndex, null);
+    final PageContainer page = new BitSetPage();
+    return replace(mapIndex, null, page) ? page : map.get(mapIndex);
+  }
+
+  /**
+   * Install a page read from a snapshot at the specified index in the
+   * page map, which must be empty.
+   *
+   * @param mapIndex  the index for the page.
+   * @param page      the page.
+   * @return true if the page was installed.
+   */
+  boolean install(final int mapIndex, final PageContainer page) {
+    return replace(mapIndex, null, page);
+  }
+
+  /**
+   * If a snapshot of the parent bit set is in progress, save the current
+   * contents of a page before it is modified (see ConcurrentBitSet.Snapshot).
+   *
+   * @param mapIndex  the index of the page.
+   * @param page      the current contents of the page, or null.
+   */
+  private void preserve(final int mapIndex, final PageContainer page) {
+    final ConcurrentBitSet.Snapshot snapshot = parent.snapshot;
+    if ( snapshot != null ) {
+      snapshot.preserve(firstPage + mapIndex, page);
+    }
+  }
+
+  /**
+   * Replace the page at the specified index with compare-and-swap and
+   * update the page count if a page was added or removed.
+   *
+   * @param mapIndex  the index of the page.
+   * @param expected  the page expected at that index.
+   * @param page      the new page, or null to remove the page.
+   * @return true if the page was replaced.
+   */
+  private boolean replace(final int mapIndex, final PageContainer expected,
+			  final PageContainer page) {
+    final boolean result = map.compareAndSet(mapIndex, expected, page);
+    if ( result ) {
+      if ( expected == null ) {
+	pageCount.incrementAndGet();
+	parent.metrics.pageCreated();
+      }
+      else if ( page == null ) {
+	pageCount.decrementAndGet();
       }
     }
-    return page;
+    return result;
   }
 }
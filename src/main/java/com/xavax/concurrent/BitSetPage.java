@@ -1,41 +1,38 @@
 package com.xavax.concurrent;
 
-import com.xavax.util.AbstractJoinableObject;
-import com.xavax.util.Joinable;
-import com.xavax.util.Joiner;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
-import static com.xavax.util.Constants.*;
 
 /**
  * Page encapsulates a small array of longs used to represent a portion
- * of a bit set.
+ * of a bit set. The words are updated with compare-and-swap so setting
+ * or clearing bits never blocks, even when several threads are writing
+ * to the same page. This is the only mutable page container, so every
+ * update is applied in place and returns this page.
  */
-class BitSetPage extends AbstractJoinableObject implements Joinable {
-  final static int BIT_MAP_ARRAY_SIZE = 1 << (LOG2_BITS_PER_PAGE - LOG2_BITS_PER_BYTE);
-  final static int BIT_MAP_INDEX_MASK = (1 << LOG2_BITS_PER_BYTE) - 1;
-  final static int PAGE_BUFFER_SIZE = 8192;
+class BitSetPage extends PageContainer {
+  final static int MEMORY_USAGE = align(OBJECT_HEADER_SIZE + REFERENCE_SIZE) * 2
+				+ align(ARRAY_HEADER_SIZE + WORDS_PER_PAGE * BYTES_PER_LONG);
 
-  private final static String[] NIBBLES = new String[] {
-      "0000", "0001", "0010", "0011", "0100", "0101", "0110", "0111",
-      "1000", "1001", "1010", "1011", "1100", "1101", "1110", "1111"
-  };
-
-  private final static short[] LEFT_MASKS = new short[] {
-    0xFF, 0x7F, 0x3F, 0x1F, 0x0F, 0x07, 0x03, 0x01
-  };
-
-  private final static short[] RIGHT_MASKS = new short[] {
-    0x80, 0xC0, 0xE0, 0xF0, 0xF8, 0xFC, 0xFE, 0xFF
-  };
-
-  private byte[] bits;
+  private final AtomicLongArray words;
 
   /**
    * Construct a Page.
    */
   public BitSetPage() {
-    bits = new byte[BIT_MAP_ARRAY_SIZE];
+    words = new AtomicLongArray(WORDS_PER_PAGE);
+  }
+
+  /**
+   * Construct a Page initialized with the specified words.
+   *
+   * @param words  the initial words of the page.
+   */
+  public BitSetPage(final long[] words) {
+    this.words = new AtomicLongArray(words);
   }
 
   /**
@@ -44,9 +41,10 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    * @param index  the index of a bit within the page.
    * @return the value of the specified bit.
    */
+  @Override
   public boolean get(final int index) {
     // assert(index >= 0 && index < BITS_PER_PAGE);
-    return (bits[index >>> LOG2_BITS_PER_BYTE] & (1 << (~index & BIT_MAP_INDEX_MASK))) != 0;
+    return (words.get(index >>> LOG2_BITS_PER_LONG) & (1L << index)) != 0;
   }
 
   /**
@@ -54,17 +52,20 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    *
    * @param index  the index of a bit within the page.
    * @param flag   the new value of the specified bit.
+   * @return this page.
    */
-  public void set(final int index, final boolean flag) {
+  @Override
+  public BitSetPage set(final int index, final boolean flag) {
     // assert(index >= 0 && index < BITS_PER_PAGE);
-    final int byteIndex = index >>> LOG2_BITS_PER_BYTE;
-    final int mask = 1 << (~index & BIT_MAP_INDEX_MASK);
-    synchronized (this) {
-	final boolean current = (bits[byteIndex] & mask) != 0;
-	if ( flag != current ) {
-	  bits[byteIndex] ^= mask;
-	}
+    final int wordIndex = index >>> LOG2_BITS_PER_LONG;
+    final long mask = 1L << index;
+    if ( flag ) {
+      setBits(wordIndex, mask);
+    }
+    else {
+      clearBits(wordIndex, mask);
     }
+    return this;
   }
 
   /**
@@ -73,26 +74,26 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    *
    * @param fromIndex  index of the first bit to set.
    * @param toIndex    index of the last bit to set.
+   * @return this page.
    */
-  public void set(final int fromIndex, final int toIndex) {
-    // assert(fromIndex >= 0 && toIndex > fromIndex);
-    final int firstByte = fromIndex >>> LOG2_BITS_PER_BYTE;
-    final int lastByte = toIndex >>> LOG2_BITS_PER_BYTE;
-    final int leftMask = LEFT_MASKS[fromIndex & BIT_MAP_INDEX_MASK];
-    final int rightMask = RIGHT_MASKS[toIndex & BIT_MAP_INDEX_MASK];
-    synchronized ( this ) {
-	for ( int i = firstByte; i <= lastByte; ++i ) {
-	  if ( i == firstByte ) {
-	    bits[i] |= leftMask;
-	  }
-	  else if ( i == lastByte ) {
-	    bits[i] |= rightMask;
-	  }
-	  else {
-	    bits[i] = (byte) 0x0FF;
-	  }
-	}
+  @Override
+  public BitSetPage set(final int fromIndex, final int toIndex) {
+    // assert(fromIndex >= 0 && toIndex >= fromIndex);
+    final int firstWord = fromIndex >>> LOG2_BITS_PER_LONG;
+    final int lastWord = toIndex >>> LOG2_BITS_PER_LONG;
+    final long leftMask = -1L << fromIndex;
+    final long rightMask = -1L >>> (WORD_INDEX_MASK - (toIndex & WORD_INDEX_MASK));
+    if ( firstWord == lastWord ) {
+      setBits(firstWord, leftMask & rightMask);
+    }
+    else {
+      setBits(firstWord, leftMask);
+      for ( int i = firstWord + 1; i < lastWord; ++i ) {
+	words.set(i, -1L);
+      }
+      setBits(lastWord, rightMask);
     }
+    return this;
   }
 
   /**
@@ -101,27 +102,27 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    *
    * @param fromIndex  index of the first bit to clear.
    * @param toIndex    index of the last bit to clear.
+   * @return this page.
    */
-  public void clear(final int fromIndex, final int toIndex) {
-    if ( fromIndex >= 0 && toIndex > fromIndex ) {
-	final int firstByte = fromIndex >>> LOG2_BITS_PER_BYTE;
-	final int lastByte = toIndex >>> LOG2_BITS_PER_BYTE;
-	final int leftMask = ~LEFT_MASKS[fromIndex & BIT_MAP_INDEX_MASK] & 0x0FF;
-	final int rightMask = ~RIGHT_MASKS[toIndex & BIT_MAP_INDEX_MASK] & 0x0FF;
-  	synchronized (this) {
-  	  for ( int i = firstByte; i <= lastByte; ++i ) {
-  	    if ( i == firstByte ) {
-  	      bits[i] &= leftMask;
-  	    }
-  	    else if ( i == lastByte ) {
-  	      bits[i] &= rightMask;
-  	    }
-  	    else {
-  	      bits[i] = 0;
-  	    }
-  	  }
-  	}
+  @Override
+  public BitSetPage clear(final int fromIndex, final int toIndex) {
+    if ( fromIndex >= 0 && toIndex >= fromIndex ) {
+      final int firstWord = fromIndex >>> LOG2_BITS_PER_LONG;
+      final int lastWord = toIndex >>> LOG2_BITS_PER_LONG;
+      final long leftMask = -1L << fromIndex;
+      final long rightMask = -1L >>> (WORD_INDEX_MASK - (toIndex & WORD_INDEX_MASK));
+      if ( firstWord == lastWord ) {
+	clearBits(firstWord, leftMask & rightMask);
+      }
+      else {
+	clearBits(firstWord, leftMask);
+	for ( int i = firstWord + 1; i < lastWord; ++i ) {
+	  words.set(i, 0);
+	}
+	clearBits(lastWord, rightMask);
+      }
     }
+    return this;
   }
 
   /**
@@ -130,24 +131,18 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    * @param fromIndex  the index of the bit to begin searching.
    * @return the index of the next set bit, or -1 if not found.
    */
+  @Override
   public int nextSetBit(final int fromIndex) {
-    boolean run = true;
     int result = -1;
-    final int firstByte = fromIndex >>> LOG2_BITS_PER_BYTE;
-    final int leftMask = LEFT_MASKS[fromIndex & BIT_MAP_INDEX_MASK];
-    for ( int i = firstByte; run && i < BIT_MAP_ARRAY_SIZE; ++i ) {
-	final int masked = (i == firstByte ? leftMask : 0xFF) & bits[i];
-	if ( masked != 0 ) {
-	  int mask = 0x80;
-	  for ( int j = 0; j < 8; ++j ) {
-	    if ( (mask & masked) != 0 ) {
-	      result = (i << LOG2_BITS_PER_BYTE) + j;
-	      run = false;
-	      break;
-	    }
-	    mask >>>= 1;
-	  }
-	}
+    if ( fromIndex < BITS_PER_PAGE ) {
+      int wordIndex = fromIndex >>> LOG2_BITS_PER_LONG;
+      long word = words.get(wordIndex) & (-1L << fromIndex);
+      while ( word == 0 && ++wordIndex < WORDS_PER_PAGE ) {
+	word = words.get(wordIndex);
+      }
+      if ( word != 0 ) {
+	result = (wordIndex << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word);
+      }
     }
     return result;
   }
@@ -158,60 +153,188 @@ class BitSetPage extends AbstractJoinableObject implements Joinable {
    * @param fromIndex  the index of the bit to begin searching.
    * @return the index of the next clear bit, or -1 if not found.
    */
+  @Override
   public int nextClearBit(final int fromIndex) {
-    boolean run = true;
     int result = -1;
-    final int firstByte = fromIndex >>> LOG2_BITS_PER_BYTE;
-    final int leftMask = LEFT_MASKS[fromIndex & BIT_MAP_INDEX_MASK];
-    for ( int i = firstByte; run && i < BIT_MAP_ARRAY_SIZE; ++i ) {
-	final int masked = (i == firstByte ? leftMask : 0xFF) & ~bits[i];
-	if ( masked != 0 ) {
-	  int mask = 0x80;
-	  for ( int j = 0; j < 8; ++j ) {
-	    if ( (mask & masked) != 0 ) {
-	      result = (i << LOG2_BITS_PER_BYTE) + j;
-	      run = false;
-	      break;
-	    }
-	    mask >>>= 1;
-	  }
-	}
+    if ( fromIndex < BITS_PER_PAGE ) {
+      int wordIndex = fromIndex >>> LOG2_BITS_PER_LONG;
+      long word = ~words.get(wordIndex) & (-1L << fromIndex);
+      while ( word == 0 && ++wordIndex < WORDS_PER_PAGE ) {
+	word = ~words.get(wordIndex);
+      }
+      if ( word != 0 ) {
+	result = (wordIndex << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word);
+      }
     }
     return result;
   }
 
   /**
-   * Returns a string representation of this page.
+   * Performs a logical AND of this page with another page. Bits that are
+   * clear in the other page are cleared in this page.
    *
-   * @return a string representation of this page.
+   * @param other  the other page.
+   * @return this page.
    */
   @Override
-  public String toString() {
-    return doJoin(Joiner.create(PAGE_BUFFER_SIZE)).toString();
+  public BitSetPage and(final PageContainer other) {
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      clearBits(i, ~other.word(i));
+    }
+    return this;
   }
 
   /**
-   * Join this object to the specified joiner.
+   * Performs a logical OR of this page with another page.
    *
-   * @param joiner  the joiner to use.
-   * @return the joiner.
+   * @param other  the other page.
+   * @return this page.
    */
   @Override
-  public Joiner doJoin(final Joiner joiner) {
-    boolean first = true;
-    joiner.appendRaw(LEFT_BRACKET);
-    for ( final byte b : bits ) {
-	if ( first ) {
-	  first = false;
-	}
-	else {
-	  joiner.appendRaw(PERIOD);
-	}
-	joiner.appendRaw(NIBBLES[(b & 0xF0) >>> 4])
-	      .appendRaw(NIBBLES[b & 0x0F]);
+  public BitSetPage or(final PageContainer other) {
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = other.word(i);
+      if ( word != 0 ) {
+	setBits(i, word);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Performs a logical XOR of this page with another page.
+   *
+   * @param other  the other page.
+   * @return this page.
+   */
+  @Override
+  public BitSetPage xor(final PageContainer other) {
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = other.word(i);
+      if ( word != 0 ) {
+	flipBits(i, word);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Clears all bits in this page that are set in another page.
+   *
+   * @param other  the other page.
+   * @return this page.
+   */
+  @Override
+  public BitSetPage andNot(final PageContainer other) {
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = other.word(i);
+      if ( word != 0 ) {
+	clearBits(i, word);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Returns the number of set bits in this page.
+   *
+   * @return the number of set bits in this page.
+   */
+  @Override
+  public int cardinality() {
+    int result = 0;
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      result += Long.bitCount(words.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Atomically set the bits selected by mask in the specified word.
+   * The word is not written if the bits are already set.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be set.
+   */
+  private void setBits(final int wordIndex, final long mask) {
+    long current = words.get(wordIndex);
+    while ( (current & mask) != mask
+	    && !words.compareAndSet(wordIndex, current, current | mask) ) {
+      current = words.get(wordIndex);
     }
-    joiner.appendRaw(RIGHT_BRACKET);
-    return joiner;
   }
-}
 
+  /**
+   * Atomically clear the bits selected by mask in the specified word.
+   * The word is not written if the bits are already clear.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be cleared.
+   */
+  private void clearBits(final int wordIndex, final long mask) {
+    long current = words.get(wordIndex);
+    while ( (current & mask) != 0
+	    && !words.compareAndSet(wordIndex, current, current & ~mask) ) {
+      current = words.get(wordIndex);
+    }
+  }
+
+  /**
+   * Atomically flip the bits selected by mask in the specified word.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be flipped.
+   */
+  private void flipBits(final int wordIndex, final long mask) {
+    long current = words.get(wordIndex);
+    while ( !words.compareAndSet(wordIndex, current, current ^ mask) ) {
+      current = words.get(wordIndex);
+    }
+  }
+
+  /**
+   * Returns the word of the page with the specified index.
+   *
+   * @param wordIndex  the index of the desired word.
+   * @return the word with the specified index.
+   */
+  @Override
+  public long word(final int wordIndex) {
+    return words.get(wordIndex);
+  }
+
+  /**
+   * Returns an estimate of the heap memory used by this page in bytes.
+   *
+   * @return the estimated size of this page in bytes.
+   */
+  @Override
+  public int memoryUsage() {
+    return MEMORY_USAGE;
+  }
+
+  /**
+   * Writes the serialized form of this page. The words are read one at a
+   * time, so concurrent updates to other words may or may not be included.
+   *
+   * @param output  the output to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  public void write(final DataOutput output) throws IOException {
+    output.writeByte(TYPE_BITMAP);
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      output.writeLong(words.get(i));
+    }
+  }
+
+  /**
+   * Returns a new page with the same bits as this page.
+   *
+   * @return a copy of this page.
+   */
+  @Override
+  public BitSetPage copy() {
+    return new BitSetPage(words());
+  }
+}
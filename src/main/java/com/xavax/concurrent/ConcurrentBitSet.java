@@ -6,9 +6,28 @@
 
 package com.xavax.concurrent;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import com.xavax.exception.RangeException;
 import com.xavax.util.AbstractJoinableObject;
@@ -27,27 +46,49 @@ import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
  * are created only when an attempt is made to set a bit to true in a
  * corresponding region of the bit set.
  * 
- * To reduce thread contention, synchronization is performed at the page
- * level when setting or clearing a bit in an existing page. If a page needs
- * to be created, only the page map entry in the segment is locked, and
- * only long enough to update the map. If a segment must be created, only
- * the corresponding segment map entry is locked. If the entire segment map
- * must grow, the segment map is locked but can continue to be used to find
- * existing segments. Only subsequent attempts to enlarge the map will block
- * waiting for a resize.
+ * Reading a bit never locks. Bits in an existing page are set or cleared
+ * with compare-and-swap on the word containing them, and a missing page
+ * is installed in the page map of its segment with compare-and-swap. If a
+ * segment must be created, only the corresponding segment map entry is
+ * locked. If the entire segment map must grow, a larger copy of the map is
+ * built while the segment map lock is held and then published through a
+ * volatile reference, so readers continue to use the old map (which shares
+ * its entries with the new one) until the new map is visible. Only other
+ * attempts to enlarge the map block waiting for a resize.
+ * 
+ * Each page is stored in an adaptive container: a sorted array of bit
+ * indices for sparse pages, a list of runs for pages filled by ranges (one
+ * shared instance represents every full page), or a bitmap for dense pages.
+ * The array and run containers are immutable and are swapped into the page
+ * map with compare-and-swap when they change, switching to whichever
+ * representation needs the least memory. The estimated memory used per set
+ * bit is reported by getMetrics(true).
+ * 
+ * A bit set can be written to a stream in a compact binary form containing
+ * only the pages that exist, and read back with readFrom. Writing a bit set
+ * (or copying it with snapshot) produces a consistent point-in-time image
+ * while other threads continue to update it: while a snapshot is in
+ * progress, a writer saves the old contents of a page the first time it
+ * modifies the page, and the snapshot uses the saved contents.
  * 
  * @author alvitar@xavax.com Phillip L Harbison
  */
 public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable {
+  final static int SNAPSHOT_MAGIC = 0x58434253;
+  final static int SNAPSHOT_VERSION = 1;
+  final static int SNAPSHOT_BUFFER_SIZE = 65536;
+  final static int END_OF_LIST = -1;
+  final static long PAGE_MASK = BITS_PER_PAGE - 1;
 
   private int logSegmentSize;
-  private int currentMapSize;
   private long segmentMask;
   // private long segmentSize;
-  // private long maxBitIndex;
-  final InternalMetrics metrics = new InternalMetrics();
+  private long maxBitIndex;
+  final InternalMetrics metrics;
   private ReentrantLock segmentMapLock;
-  private SegmentMapEntry[] segmentMap;
+  private volatile SegmentMapEntry[] segmentMap;
+  private final ReentrantLock snapshotLock;
+  volatile Snapshot snapshot;
 
   /**
    * Construct a ConcurrentBitSet with the default initial bit set size and
@@ -75,20 +116,37 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
    * @param logSegmentSize  log2 of the segment size.
    */
   public ConcurrentBitSet(final long initialSize, final int logSegmentSize) {
-    if ( initialSize < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, initialSize);
-    }
-    if ( logSegmentSize < 0 || logSegmentSize > LOG2_MAX_SEGMENT_SIZE ) {
-      throw new RangeException(0, LOG2_MAX_SEGMENT_SIZE, logSegmentSize);
+    this(initialSize, logSegmentSize, true);
+  }
+
+  /**
+   * Construct a ConcurrentBitSet with the specified segment size and initial
+   * bit set size. If collectMetrics is false, no counters are updated and
+   * getMetrics returns a snapshot of zeroes.
+   *
+   * @param initialSize     the initial size of the bit set.
+   * @param logSegmentSize  log2 of the segment size.
+   * @param collectMetrics  true if metrics should be collected.
+   */
+  public ConcurrentBitSet(final long initialSize, final int logSegmentSize,
+			  final boolean collectMetrics) {
+    if ( logSegmentSize < LOG2_MIN_SEGMENT_SIZE || logSegmentSize > LOG2_MAX_SEGMENT_SIZE ) {
+      throw new RangeException(LOG2_MIN_SEGMENT_SIZE, LOG2_MAX_SEGMENT_SIZE, logSegmentSize);
     }
     this.logSegmentSize = logSegmentSize;
-    final long segmentSize = 1 << this.logSegmentSize;
+    final long segmentSize = 1L << this.logSegmentSize;
     this.segmentMask = segmentSize - 1;
-    final int size = (int) (initialSize + segmentSize - 1) >>> logSegmentSize;
-    this.currentMapSize = size;
-    this.segmentMap = new SegmentMapEntry[size];
+    this.maxBitIndex = ((long) MAX_SEGMENTS << logSegmentSize) - 1;
+    if ( initialSize < 0 || initialSize > maxBitIndex + 1 ) {
+      throw new RangeException(0, maxBitIndex + 1, initialSize);
+    }
+    final int size = (int) ((initialSize + segmentSize - 1) >>> logSegmentSize);
+    final SegmentMapEntry[] map = new SegmentMapEntry[size];
+    initMap(map, 0, size);
+    this.metrics = new InternalMetrics(collectMetrics);
     this.segmentMapLock = new ReentrantLock();
-    initMap(segmentMap, 0, size);
+    this.segmentMap = map;
+    this.snapshotLock = new ReentrantLock();
   }
 
   /**
@@ -113,12 +171,14 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
    * @return the value of the bit at the specified index.
    */
   public boolean get(final long index) {
-    if ( index < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, index);
-    }
-    metrics.incrementOperations();
+    checkIndex(index);
+    metrics.get();
     final BitMapSegment segment = getSegment(index, false);
-    return segment != null && segment.get((int) (index & segmentMask));
+    if ( segment == null ) {
+      metrics.pageMiss();
+      return false;
+    }
+    return segment.get((int) (index & segmentMask));
   }
 
   /**
@@ -128,12 +188,13 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
    * @param value  the new value of the specified bit.
    */
   public void set(final long index, final boolean value) {
-    if ( index < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, index);
-    }
-    metrics.incrementOperations();
+    checkIndex(index);
+    metrics.set(value);
     final BitMapSegment segment = getSegment(index, value);
-    if ( segment != null ) {
+    if ( segment == null ) {
+      metrics.pageMiss();
+    }
+    else {
       segment.set((int) (index & segmentMask), value);
     }
   }
@@ -149,19 +210,24 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
 
   /**
    * Sets a range of bits beginning with the bit at fromIndex and
-   * ending with the bit at toIndex (exclusive).
+   * ending with the bit at toIndex (exclusive). Missing segments and
+   * pages in the range are created and whole pages are filled a word
+   * at a time.
    *
    * @param fromIndex  index of the first bit to set.
-   * @param toIndex    index of the last bit to set.
+   * @param toIndex    index after the last bit to set.
    */
-  public void set(final int fromIndex, final int toIndex) {
-    if ( fromIndex < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+  public void set(final long fromIndex, final long toIndex) {
+    checkRange(fromIndex, toIndex);
+    metrics.set(true);
+    final long lastIndex = toIndex - 1;
+    final int firstSegment = (int) (fromIndex >>> logSegmentSize);
+    final int lastSegment = (int) (lastIndex >>> logSegmentSize);
+    for ( int segmentIndex = firstSegment; segmentIndex <= lastSegment; ++segmentIndex ) {
+      final BitMapSegment segment = getSegmentAt(segmentIndex, true);
+      segment.set(segmentIndex == firstSegment ? (int) (fromIndex & segmentMask) : 0,
+		  segmentIndex == lastSegment ? (int) (lastIndex & segmentMask) : (int) segmentMask);
     }
-    if ( toIndex <= fromIndex ) {
-      throw new RangeException(fromIndex + 1, Long.MAX_VALUE, toIndex);
-    }
-    // int segmentIndex = (int) (fromIndex >>> logSegmentSize);
   }
 
   /**
@@ -173,63 +239,695 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
     set(index, false);
   }
 
+  /**
+   * Clears a range of bits beginning with the bit at fromIndex and
+   * ending with the bit at toIndex (exclusive). Segments and pages
+   * that do not exist are already clear and are skipped.
+   *
+   * @param fromIndex  index of the first bit to clear.
+   * @param toIndex    index after the last bit to clear.
+   */
+  public void clear(final long fromIndex, final long toIndex) {
+    checkRange(fromIndex, toIndex);
+    metrics.set(false);
+    final long lastIndex = toIndex - 1;
+    final int firstSegment = (int) (fromIndex >>> logSegmentSize);
+    final int lastSegment = (int) (lastIndex >>> logSegmentSize);
+    final SegmentMapEntry[] map = segmentMap;
+    final int end = Math.min(lastSegment, map.length - 1);
+    for ( int segmentIndex = firstSegment; segmentIndex <= end; ++segmentIndex ) {
+      final BitMapSegment segment = map[segmentIndex].get();
+      if ( segment != null ) {
+	segment.clear(segmentIndex == firstSegment ? (int) (fromIndex & segmentMask) : 0,
+		      segmentIndex == lastSegment ? (int) (lastIndex & segmentMask) : (int) segmentMask);
+      }
+    }
+  }
+
   /**
    * Finds the next set bit beginning with the bit at fromIndex.
+   * Segments and pages that do not exist are skipped.
    *
    * @param fromIndex  the index of the bit to begin the search.
-   * @return the index of the next set bit.
+   * @return the index of the next set bit, or -1 if there is none.
    */
   public long nextSetBit(final long fromIndex) {
-    if ( fromIndex < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+    checkIndex(fromIndex);
+    long result = -1;
+    int bitIndex = (int) (fromIndex & segmentMask);
+    final SegmentMapEntry[] map = segmentMap;
+    for ( int segmentIndex = (int) (fromIndex >>> logSegmentSize);
+	  segmentIndex < map.length; ++segmentIndex ) {
+      final BitMapSegment segment = map[segmentIndex].get();
+      if ( segment != null ) {
+	final int index = segment.nextSetBit(bitIndex);
+	if ( index >= 0 ) {
+	  result = ((long) segmentIndex << logSegmentSize) + index;
+	  break;
+	}
+      }
+      bitIndex = 0;
     }
-    // TODO: finish implementing this method.
-    return 0;
+    return result;
   }
 
   /**
    * Finds the next clear bit beginning with the bit at fromIndex.
+   * A segment or page that does not exist is entirely clear, so the
+   * search ends as soon as one is found.
    *
    * @param fromIndex  the index of the bit to begin the search.
    * @return the index of the next clear bit.
    */
   public long nextClearBit(final long fromIndex) {
-    if ( fromIndex < 0 ) {
-      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+    checkIndex(fromIndex);
+    long result = fromIndex;
+    int bitIndex = (int) (fromIndex & segmentMask);
+    final SegmentMapEntry[] map = segmentMap;
+    for ( int segmentIndex = (int) (fromIndex >>> logSegmentSize);
+	  segmentIndex < map.length; ++segmentIndex ) {
+      final BitMapSegment segment = map[segmentIndex].get();
+      final int index = segment == null ? bitIndex : segment.nextClearBit(bitIndex);
+      if ( index >= 0 ) {
+	result = ((long) segmentIndex << logSegmentSize) + index;
+	break;
+      }
+      bitIndex = 0;
+      result = (long) (segmentIndex + 1) << logSegmentSize;
+    }
+    return result;
+  }
+
+  /**
+   * Finds the next set bit in the range from fromIndex to toIndex
+   * (exclusive), visiting only the pages in that range.
+   *
+   * @param fromIndex  the index of the bit to begin the search.
+   * @param toIndex    the index after the last bit to search.
+   * @return the index of the next set bit, or -1 if there is none.
+   */
+  long nextSetBit(final long fromIndex, final long toIndex) {
+    final SegmentMapEntry[] map = segmentMap;
+    long index = fromIndex;
+    while ( index < toIndex ) {
+      final int segmentIndex = (int) (index >>> logSegmentSize);
+      if ( segmentIndex >= map.length ) {
+	break;
+      }
+      final BitMapSegment segment = map[segmentIndex].get();
+      if ( segment == null ) {
+	index = (long) (segmentIndex + 1) << logSegmentSize;
+      }
+      else {
+	final PageContainer page = segment.getPage(pageOffset(index), false);
+	final int bitIndex = page == null ? -1 : page.nextSetBit((int) (index & PAGE_MASK));
+	if ( bitIndex >= 0 ) {
+	  final long result = (index & ~PAGE_MASK) + bitIndex;
+	  return result < toIndex ? result : -1;
+	}
+	index = (index | PAGE_MASK) + 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a stream of the indices of the set bits in ascending order.
+   * The stream is weakly consistent: bits set or cleared while the stream
+   * is in use may or may not be reflected. A parallel stream splits the
+   * bit set along segment and page boundaries.
+   *
+   * @return a stream of the indices of the set bits.
+   */
+  public LongStream stream() {
+    final long end = (long) segmentMap.length << logSegmentSize;
+    return StreamSupport.longStream(new BitSpliterator(this, 0, end), false);
+  }
+
+  /**
+   * Returns the index of the last bit this bit set can address. The
+   * segment map holds at most MAX_SEGMENTS segments, so the limit depends
+   * on the segment size.
+   *
+   * @return the largest valid bit index.
+   */
+  public long maxBitIndex() {
+    return maxBitIndex;
+  }
+
+  /**
+   * Verify that index is a valid bit index.
+   *
+   * @param index  the index of a bit.
+   */
+  private void checkIndex(final long index) {
+    if ( index < 0 || index > maxBitIndex ) {
+      throw new RangeException(0, maxBitIndex, index);
     }
-    // TODO: finish implementing this method.    
-    return 0;
   }
 
   /**
-   * Returns a snapshot of the metrics for this bit set.
+   * Verify that fromIndex and toIndex describe a valid range.
+   *
+   * @param fromIndex  index of the first bit in the range.
+   * @param toIndex    index after the last bit in the range.
+   */
+  private void checkRange(final long fromIndex, final long toIndex) {
+    checkIndex(fromIndex);
+    if ( toIndex <= fromIndex || toIndex > maxBitIndex + 1 ) {
+      throw new RangeException(fromIndex + 1, maxBitIndex + 1, toIndex);
+    }
+  }
+
+  /**
+   * Returns the number of bits set to true in this bit set.
+   *
+   * @return the number of set bits.
+   */
+  public long cardinality() {
+    return cardinality(null);
+  }
+
+  /**
+   * Returns the number of bits set to true in this bit set. If pool is not
+   * null, the segments are counted in parallel on that pool.
+   *
+   * @param pool  the pool used to count segments in parallel, or null.
+   * @return the number of set bits.
+   */
+  public long cardinality(final ForkJoinPool pool) {
+    final SegmentMapEntry[] map = segmentMap;
+    return visitSegments(map.length, pool, new SegmentVisitor() {
+      @Override
+      public long visit(final int segmentIndex) {
+	final BitMapSegment segment = map[segmentIndex].get();
+	return segment == null ? 0 : segment.cardinality();
+      }
+    });
+  }
+
+  /**
+   * Returns true if this bit set and another bit set have any set bits
+   * in common.
+   *
+   * @param other  the other bit set.
+   * @return true if the bit sets intersect.
+   */
+  public boolean intersects(final ConcurrentBitSet other) {
+    final SegmentMapEntry[] map = segmentMap;
+    final int logPagesPerSegment = logSegmentSize - LOG2_BITS_PER_PAGE;
+    for ( int segmentIndex = 0; segmentIndex < map.length; ++segmentIndex ) {
+      final BitMapSegment segment = map[segmentIndex].get();
+      if ( segment != null ) {
+	final long firstPage = (long) segmentIndex << logPagesPerSegment;
+	for ( int pageIndex = 0; pageIndex < segment.pageMapSize(); ++pageIndex ) {
+	  final PageContainer page = segment.getPage(pageIndex, false);
+	  if ( page != null ) {
+	    final PageContainer otherPage = other.getPageAt(firstPage + pageIndex);
+	    if ( otherPage != null && page.intersects(otherPage) ) {
+	      return true;
+	    }
+	  }
+	}
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Performs a logical AND of this bit set with another bit set. Only
+   * the pages that exist in this bit set are visited.
+   *
+   * @param other  the other bit set.
+   */
+  public void and(final ConcurrentBitSet other) {
+    combine(other, BulkOperation.AND, null);
+  }
+
+  /**
+   * Performs a logical AND of this bit set with another bit set,
+   * processing segments in parallel on the specified pool.
+   *
+   * @param other  the other bit set.
+   * @param pool   the pool used to process segments in parallel, or null.
+   */
+  public void and(final ConcurrentBitSet other, final ForkJoinPool pool) {
+    combine(other, BulkOperation.AND, pool);
+  }
+
+  /**
+   * Performs a logical OR of this bit set with another bit set. Only
+   * the pages that exist in the other bit set are visited.
+   *
+   * @param other  the other bit set.
+   */
+  public void or(final ConcurrentBitSet other) {
+    combine(other, BulkOperation.OR, null);
+  }
+
+  /**
+   * Performs a logical OR of this bit set with another bit set,
+   * processing segments in parallel on the specified pool.
+   *
+   * @param other  the other bit set.
+   * @param pool   the pool used to process segments in parallel, or null.
+   */
+  public void or(final ConcurrentBitSet other, final ForkJoinPool pool) {
+    combine(other, BulkOperation.OR, pool);
+  }
+
+  /**
+   * Performs a logical XOR of this bit set with another bit set. Only
+   * the pages that exist in the other bit set are visited.
+   *
+   * @param other  the other bit set.
+   */
+  public void xor(final ConcurrentBitSet other) {
+    combine(other, BulkOperation.XOR, null);
+  }
+
+  /**
+   * Performs a logical XOR of this bit set with another bit set,
+   * processing segments in parallel on the specified pool.
+   *
+   * @param other  the other bit set.
+   * @param pool   the pool used to process segments in parallel, or null.
+   */
+  public void xor(final ConcurrentBitSet other, final ForkJoinPool pool) {
+    combine(other, BulkOperation.XOR, pool);
+  }
+
+  /**
+   * Clears all bits in this bit set that are set in another bit set.
+   * Only the pages that exist in the other bit set are visited.
+   *
+   * @param other  the other bit set.
+   */
+  public void andNot(final ConcurrentBitSet other) {
+    combine(other, BulkOperation.AND_NOT, null);
+  }
+
+  /**
+   * Clears all bits in this bit set that are set in another bit set,
+   * processing segments in parallel on the specified pool.
+   *
+   * @param other  the other bit set.
+   * @param pool   the pool used to process segments in parallel, or null.
+   */
+  public void andNot(final ConcurrentBitSet other, final ForkJoinPool pool) {
+    combine(other, BulkOperation.AND_NOT, pool);
+  }
+
+  /**
+   * Combine another bit set with this bit set a page at a time. AND walks
+   * the pages of this bit set; the other operations walk the pages of the
+   * other bit set. Pages are matched by their position in the bit set, so
+   * the two bit sets may have different segment sizes. Each page is
+   * updated atomically, but the operation as a whole is not atomic with
+   * respect to concurrent updates of either bit set.
+   *
+   * @param other      the other bit set.
+   * @param operation  the operation to perform.
+   * @param pool       the pool used to process segments in parallel, or null.
+   */
+  private void combine(final ConcurrentBitSet other, final BulkOperation operation,
+		       final ForkJoinPool pool) {
+    final ConcurrentBitSet driver = operation == BulkOperation.AND ? this : other;
+    final SegmentMapEntry[] map = driver.segmentMap;
+    final int logPagesPerSegment = driver.logSegmentSize - LOG2_BITS_PER_PAGE;
+    visitSegments(map.length, pool, new SegmentVisitor() {
+      @Override
+      public long visit(final int segmentIndex) {
+	final BitMapSegment segment = map[segmentIndex].get();
+	if ( segment != null ) {
+	  final long firstPage = (long) segmentIndex << logPagesPerSegment;
+	  for ( int pageIndex = 0; pageIndex < segment.pageMapSize(); ++pageIndex ) {
+	    final PageContainer page = segment.getPage(pageIndex, false);
+	    if ( page != null ) {
+	      combine(other, operation, firstPage + pageIndex, page);
+	    }
+	  }
+	}
+	return 0;
+      }
+    });
+  }
+
+  /**
+   * Combine one page of the driving bit set with the corresponding page of
+   * the other bit set.
+   *
+   * @param other      the other bit set.
+   * @param operation  the operation to perform.
+   * @param pageIndex  the index of the page within the whole bit set.
+   * @param page       the page from the driving bit set.
+   */
+  private void combine(final ConcurrentBitSet other, final BulkOperation operation,
+		       final long pageIndex, final PageContainer page) {
+    final long index = pageIndex << LOG2_BITS_PER_PAGE;
+    if ( operation == BulkOperation.AND ) {
+      final BitMapSegment segment = getSegment(index, false);
+      segment.combine(pageOffset(index), operation, other.getPageAt(pageIndex));
+    }
+    else {
+      final BitMapSegment segment = getSegment(index, operation != BulkOperation.AND_NOT);
+      if ( segment != null ) {
+	segment.combine(pageOffset(index), operation, page);
+      }
+    }
+  }
+
+  /**
+   * Returns the index within its segment of the page containing the
+   * specified bit.
+   *
+   * @param index  the index of a bit.
+   * @return the index of the page within its segment.
+   */
+  private int pageOffset(final long index) {
+    return (int) (index & segmentMask) >>> LOG2_BITS_PER_PAGE;
+  }
+
+  /**
+   * Visit the segments with indices from 0 to count - 1 and return the sum
+   * of the visitor results. If pool is not null, the segments are visited
+   * in parallel on that pool.
+   *
+   * @param count    the number of segments to visit.
+   * @param pool     the pool used to visit segments in parallel, or null.
+   * @param visitor  the visitor to apply to each segment.
+   * @return the sum of the visitor results.
+   */
+  private static long visitSegments(final int count, final ForkJoinPool pool,
+				    final SegmentVisitor visitor) {
+    long result = 0;
+    if ( pool == null ) {
+      for ( int segmentIndex = 0; segmentIndex < count; ++segmentIndex ) {
+	result += visitor.visit(segmentIndex);
+      }
+    }
+    else if ( count > 0 ) {
+      result = pool.invoke(new SegmentTask(visitor, 0, count));
+    }
+    return result;
+  }
+
+  /**
+   * Writes a point-in-time snapshot of this bit set to the specified
+   * stream. The stream is flushed but not closed. The format is:
+   * <pre>
+   *   int magic, int version, int logSegmentSize
+   *   for each segment with pages:
+   *     int segmentIndex
+   *     for each page: int pageIndex, page (see PageContainer.write)
+   *     int -1
+   *   int -1
+   * </pre>
+   *
+   * @param stream  the stream to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTo(final OutputStream stream) throws IOException {
+    final DataOutputStream output =
+	new DataOutputStream(new BufferedOutputStream(stream, SNAPSHOT_BUFFER_SIZE));
+    output.writeInt(SNAPSHOT_MAGIC);
+    output.writeInt(SNAPSHOT_VERSION);
+    output.writeInt(logSegmentSize);
+    visitSnapshot(new PageVisitor() {
+      private int current = END_OF_LIST;
+
+      @Override
+      public void visit(final int segmentIndex, final int pageIndex,
+			final PageContainer page) throws IOException {
+	if ( segmentIndex != current ) {
+	  if ( current != END_OF_LIST ) {
+	    output.writeInt(END_OF_LIST);
+	  }
+	  output.writeInt(segmentIndex);
+	  current = segmentIndex;
+	}
+	output.writeInt(pageIndex);
+	page.write(output);
+      }
+
+      @Override
+      public void finish() throws IOException {
+	if ( current != END_OF_LIST ) {
+	  output.writeInt(END_OF_LIST);
+	}
+	output.writeInt(END_OF_LIST);
+      }
+    });
+    output.flush();
+  }
+
+  /**
+   * Writes a point-in-time snapshot of this bit set to the specified
+   * channel. The channel is not closed.
+   *
+   * @param channel  the channel to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTo(final WritableByteChannel channel) throws IOException {
+    writeTo(Channels.newOutputStream(channel));
+  }
+
+  /**
+   * Reads a bit set written by writeTo from the specified stream. Pages
+   * are installed directly in the new bit set. The stream is buffered, so
+   * bytes following the bit set may also be consumed.
+   *
+   * @param stream  the stream to read from.
+   * @return the new bit set.
+   * @throws IOException if an I/O error occurs or the data is invalid.
+   */
+  public static ConcurrentBitSet readFrom(final InputStream stream) throws IOException {
+    return readFrom(stream, Long.MAX_VALUE);
+  }
+
+  /**
+   * Reads a bit set written by writeTo from the specified stream,
+   * rejecting a snapshot with bits at or beyond maxSize. The header and
+   * every segment and page index are validated, segments must appear in
+   * ascending order, and a segment is only added to the segment map once
+   * one of its pages has been read, so a corrupt index cannot make the
+   * map grow without data to back it.
+   *
+   * @param stream   the stream to read from.
+   * @param maxSize  the size of the largest bit set to accept.
+   * @return the new bit set.
+   * @throws IOException if an I/O error occurs or the data is invalid.
+   */
+  public static ConcurrentBitSet readFrom(final InputStream stream, final long maxSize)
+      throws IOException {
+    final DataInputStream input =
+	new DataInputStream(new BufferedInputStream(stream, SNAPSHOT_BUFFER_SIZE));
+    if ( input.readInt() != SNAPSHOT_MAGIC ) {
+      throw new IOException("not a ConcurrentBitSet snapshot");
+    }
+    final int version = input.readInt();
+    if ( version != SNAPSHOT_VERSION ) {
+      throw new IOException("unsupported snapshot version " + version);
+    }
+    final int logSegmentSize = input.readInt();
+    if ( logSegmentSize < LOG2_MIN_SEGMENT_SIZE || logSegmentSize > LOG2_MAX_SEGMENT_SIZE ) {
+      throw new IOException("invalid segment size " + logSegmentSize);
+    }
+    final ConcurrentBitSet result = new ConcurrentBitSet(0, logSegmentSize);
+    final long segmentLimit = maxSize <= 0 ? 0
+	: Math.min(MAX_SEGMENTS, ((maxSize - 1) >>> logSegmentSize) + 1);
+    final int pagesPerSegment = 1 << (logSegmentSize - LOG2_BITS_PER_PAGE);
+    int previous = END_OF_LIST;
+    for ( int segmentIndex = input.readInt(); segmentIndex != END_OF_LIST;
+	  segmentIndex = input.readInt() ) {
+      if ( segmentIndex <= previous || segmentIndex >= segmentLimit ) {
+	throw new IOException("invalid segment index " + segmentIndex);
+      }
+      previous = segmentIndex;
+      BitMapSegment segment = null;
+      for ( int pageIndex = input.readInt(); pageIndex != END_OF_LIST;
+	    pageIndex = input.readInt() ) {
+	if ( pageIndex < 0 || pageIndex >= pagesPerSegment ) {
+	  throw new IOException("invalid page index " + pageIndex);
+	}
+	final PageContainer page = PageContainer.read(input);
+	if ( segment == null ) {
+	  segment = result.getSegmentAt(segmentIndex, true);
+	}
+	if ( !segment.install(pageIndex, page) ) {
+	  throw new IOException("duplicate page index " + pageIndex);
+	}
+      }
+      if ( segment == null ) {
+	throw new IOException("empty segment " + segmentIndex);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads a bit set written by writeTo from the specified channel.
+   *
+   * @param channel  the channel to read from.
+   * @return the new bit set.
+   * @throws IOException if an I/O error occurs or the data is invalid.
+   */
+  public static ConcurrentBitSet readFrom(final ReadableByteChannel channel)
+      throws IOException {
+    return readFrom(Channels.newInputStream(channel));
+  }
+
+  /**
+   * Returns a copy of this bit set as of a single point in time. Other
+   * threads may continue to update this bit set while it is copied.
+   * Immutable pages are shared by the copy.
+   *
+   * @return a copy of this bit set.
+   */
+  public ConcurrentBitSet snapshot() {
+    final ConcurrentBitSet result = new ConcurrentBitSet(0, logSegmentSize, metrics.enabled);
+    try {
+      visitSnapshot(new PageVisitor() {
+	@Override
+	public void visit(final int segmentIndex, final int pageIndex,
+			  final PageContainer page) {
+	  result.getSegmentAt(segmentIndex, true).install(pageIndex, page);
+	}
+
+	@Override
+	public void finish() {
+	  // Nothing to do.
+	}
+      });
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  /**
+   * Visit every page of a point-in-time snapshot of this bit set in
+   * order. Only one snapshot is taken at a time; other snapshots wait.
+   *
+   * @param visitor  the visitor to apply to each page.
+   * @throws IOException if the visitor throws IOException.
+   */
+  private void visitSnapshot(final PageVisitor visitor) throws IOException {
+    snapshotLock.lock();
+    try {
+      final Snapshot current = new Snapshot();
+      snapshot = current;
+      try {
+	final SegmentMapEntry[] map = segmentMap;
+	for ( int segmentIndex = 0; segmentIndex < map.length; ++segmentIndex ) {
+	  final BitMapSegment segment = map[segmentIndex].get();
+	  if ( segment != null ) {
+	    final long firstPage = (long) segmentIndex * segment.pageMapSize();
+	    for ( int pageIndex = 0; pageIndex < segment.pageMapSize(); ++pageIndex ) {
+	      final PageContainer page =
+		  current.capture(firstPage + pageIndex, segment.getPage(pageIndex, false));
+	      if ( page != null ) {
+		visitor.visit(segmentIndex, pageIndex, page);
+	      }
+	    }
+	  }
+	}
+	visitor.finish();
+      }
+      finally {
+	snapshot = null;
+      }
+    }
+    finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the counters for this bit set. The snapshot does
+   * not include the memory usage or the cardinality; see
+   * getMetrics(boolean).
    *
    * @return a snapshot of the metrics for this bit set.
    */
   public Metrics getMetrics() {
-    return new Metrics(metrics);
+    return getMetrics(false);
+  }
+
+  /**
+   * Returns a snapshot of the metrics for this bit set. If includeMemory
+   * is true, the snapshot also includes the estimated memory usage, the
+   * cardinality, and the memory used per set bit; computing them walks
+   * every segment, so it costs as much as cardinality().
+   *
+   * @param includeMemory  true if the memory usage should be included.
+   * @return a snapshot of the metrics for this bit set.
+   */
+  public Metrics getMetrics(final boolean includeMemory) {
+    return includeMemory
+	? new Metrics(metrics, memoryUsage(), cardinality())
+	: new Metrics(metrics, -1, -1);
+  }
+
+  /**
+   * Returns an estimate of the heap memory used by the segment map, the
+   * segments, and the pages of this bit set in bytes. This walks every
+   * segment.
+   *
+   * @return the estimated memory usage in bytes.
+   */
+  public long memoryUsage() {
+    final SegmentMapEntry[] map = segmentMap;
+    long result = PageContainer.align(ARRAY_HEADER_SIZE + map.length * REFERENCE_SIZE);
+    for ( final SegmentMapEntry entry : map ) {
+      final BitMapSegment segment = entry.get();
+      result += SegmentMapEntry.MEMORY_USAGE;
+      if ( segment != null ) {
+	result += segment.memoryUsage();
+      }
+    }
+    return result;
   }
 
   /**
    * Returns the segment containing the specified bit. If the segment does not
-   * exist and require is true, create a new segment.
+   * exist and require is true, create a new segment. The index must be no
+   * greater than maxBitIndex, so the segment index fits in an int.
    *
    * @param index    the desired bit.
    * @param require  true if a nonexistent segment should be created.
    * @return the segment containing the specified bit.
    */
   BitMapSegment getSegment(final long index, final boolean require) {
-    final int segmentIndex = (int) index >>> logSegmentSize;
-    if ( segmentIndex > currentMapSize ) {
-      resize(segmentIndex);
+    return getSegmentAt((int) (index >>> logSegmentSize), require);
+  }
+
+  /**
+   * Returns the segment at the specified index in the segment map. If the
+   * segment does not exist and require is true, create a new segment.
+   * If the index is beyond the end of the map and require is false, the
+   * map is not resized.
+   *
+   * @param segmentIndex  the index of the desired segment.
+   * @param require       true if a nonexistent segment should be created.
+   * @return the segment at the specified index.
+   */
+  BitMapSegment getSegmentAt(final int segmentIndex, final boolean require) {
+    SegmentMapEntry[] map = segmentMap;
+    if ( segmentIndex >= map.length ) {
+      if ( !require ) {
+	return null;
+      }
+      map = resize(segmentIndex + 1);
     }
-    final SegmentMapEntry entry = segmentMap[segmentIndex];
+    final SegmentMapEntry entry = map[segmentIndex];
     BitMapSegment segment = entry.get();
     if ( segment == null && require ) {
       synchronized ( entry ) {
 	segment = entry.get();
 	if ( segment == null ) {
-	  segment = new BitMapSegment(this, logSegmentSize);
+	  segment = new BitMapSegment(this, logSegmentSize, segmentIndex);
 	  entry.set(segment);
 	  metrics.segmentCreated();
 	}
@@ -238,29 +936,45 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
     return segment;
   }
 
+  /**
+   * Returns the page with the specified index within the whole bit set.
+   *
+   * @param pageIndex  the index of the desired page.
+   * @return the page, or null if it does not exist.
+   */
+  PageContainer getPageAt(final long pageIndex) {
+    final long index = pageIndex << LOG2_BITS_PER_PAGE;
+    final BitMapSegment segment = getSegment(index, false);
+    return segment == null ? null : segment.getPage(pageOffset(index), false);
+  }
+
   /**
    * Resize the segment map by creating a new, larger map that is a copy of the
    * old map and initialize the additional entries with new segment map entries.
    * All old map entries remain the same. To avoid frequent resizes, the new
-   * size is computed by doubling the current size until it is greater than the
-   * requested size.
+   * size is computed by doubling the current size until it is at least the
+   * requested size. The new map is fully initialized before it is published,
+   * so readers never need the segment map lock.
    *
    * @param size the new minimum size.
+   * @return the current segment map.
    */
-  void resize(final long size) {
+  SegmentMapEntry[] resize(final long size) {
     try {
       segmentMapLock.lock();
       // Check again since the map may already be resized by another thread.
-      if ( size > currentMapSize ) {
-	int newSize = currentMapSize;
-	do {
+      SegmentMapEntry[] map = segmentMap;
+      if ( size > map.length ) {
+	final int currentSize = map.length;
+	int newSize = Math.max(currentSize, 1);
+	while ( size > newSize ) {
 	  newSize *= 2;
-	} while ( size > newSize );
-	final SegmentMapEntry[] map = Arrays.copyOf(segmentMap, newSize);
-	initMap(map, currentMapSize, newSize);
+	}
+	map = Arrays.copyOf(map, newSize);
+	initMap(map, currentSize, newSize);
 	segmentMap = map;
-	currentMapSize = newSize;
       }
+      return map;
     }
     finally {
       segmentMapLock.unlock();
@@ -287,21 +1001,26 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
    */
   @Override
   public Joiner doJoin(final Joiner joiner) {
-    joiner.append("currentMapSize", currentMapSize)
+    final SegmentMapEntry[] map = segmentMap;
+    joiner.append("currentMapSize", map.length)
           .append("logSegmentSize", logSegmentSize)
-          .append("segmentMap", (Object[]) segmentMap);
+	  .append("segmentMap", (Object[]) map);
     return joiner;
   }
 
   /**
    * SegmentMapEntry encapsulates an entry in the segment map (a reference to a
    * segment). It reduces thread contention by allowing us to synchronize on one
-   * entry rather than the entire segment map.
+   * entry rather than the entire segment map when creating a segment. The
+   * reference is volatile so the segment can be read without locking, and
+   * entries are shared by every copy of the segment map so a segment created
+   * during a resize is visible through both the old and new maps.
    */
   static class SegmentMapEntry extends AbstractJoinableObject implements Joinable {
     final static int SEGMAP_BUFFER_SIZE = 8192;
+    final static int MEMORY_USAGE = PageContainer.align(OBJECT_HEADER_SIZE + REFERENCE_SIZE);
 
-    private BitMapSegment segment;
+    private volatile BitMapSegment segment;
 
     /**
      * Get the segment for this map entry.
@@ -309,11 +1028,7 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
      * @return the segment.
      */
     public BitMapSegment get() {
-      BitMapSegment result;
-      synchronized (this) {
-	result = this.segment;
-      }
-      return result;
+      return segment;
     }
 
     /**
@@ -322,9 +1037,7 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
      * @param segment the new segment for this map entry.
      */
     public void set(final BitMapSegment segment) {
-      synchronized (this) {
-	this.segment = segment;
-      }
+      this.segment = segment;
     }
 
     /**
@@ -352,27 +1065,428 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
 
 
 
+  /**
+   * BulkOperation enumerates the operations that combine two bit sets.
+   * Each operation computes the new contents of a page from the current
+   * page (the target) and the corresponding page of the other bit set
+   * (the source), either of which may be null if the page does not exist.
+   */
+  enum BulkOperation {
+    AND {
+      @Override
+      PageContainer apply(final PageContainer target, final PageContainer source) {
+	return target == null || source == null ? null : target.and(source);
+      }
+    },
+    OR {
+      @Override
+      PageContainer apply(final PageContainer target, final PageContainer source) {
+	return source == null ? target : target == null ? source.copy() : target.or(source);
+      }
+    },
+    XOR {
+      @Override
+      PageContainer apply(final PageContainer target, final PageContainer source) {
+	return source == null ? target : target == null ? source.copy() : target.xor(source);
+      }
+    },
+    AND_NOT {
+      @Override
+      PageContainer apply(final PageContainer target, final PageContainer source) {
+	return target == null || source == null ? target : target.andNot(source);
+      }
+    };
+
+    /**
+     * Returns the container for the target page after combining it with
+     * the source page. The target is updated in place if it is mutable.
+     *
+     * @param target  the page being updated, or null.
+     * @param source  the page from the other bit set, or null.
+     * @return the new container for the target page, or null if empty.
+     */
+    abstract PageContainer apply(PageContainer target, PageContainer source);
+  }
+
+  /**
+   * PageVisitor is applied to each page of a snapshot.
+   */
+  interface PageVisitor {
+    /**
+     * Visit a page of the snapshot.
+     *
+     * @param segmentIndex  the index of the segment containing the page.
+     * @param pageIndex     the index of the page within the segment.
+     * @param page          the contents of the page.
+     * @throws IOException if an I/O error occurs.
+     */
+    void visit(int segmentIndex, int pageIndex, PageContainer page) throws IOException;
+
+    /**
+     * Called after the last page has been visited.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void finish() throws IOException;
+  }
+
+  /**
+   * Snapshot records the contents of pages modified while a snapshot is
+   * in progress. Publishing the snapshot marks the point in time that it
+   * represents. Before modifying a page, a writer saves the current
+   * contents of the page unless they have already been saved or the
+   * snapshot has already passed that page. The snapshot reads each page
+   * and then uses the saved contents instead if there are any; since a
+   * writer saves a page before modifying it, the saved contents never
+   * include a modification made after the snapshot began.
+   */
+  static class Snapshot {
+    private final static Object EMPTY = new Object();
+
+    private final ConcurrentHashMap<Long, Object> pages;
+    private volatile long position;
+
+    /**
+     * Construct a Snapshot.
+     */
+    Snapshot() {
+      pages = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Save the current contents of a page that is about to be modified.
+     *
+     * @param pageIndex  the index of the page within the whole bit set.
+     * @param page       the current contents of the page, or null.
+     */
+    void preserve(final long pageIndex, final PageContainer page) {
+      if ( pageIndex >= position && !pages.containsKey(pageIndex) ) {
+	pages.putIfAbsent(pageIndex, page == null ? EMPTY : page.copy());
+      }
+    }
+
+    /**
+     * Returns the contents of a page as of the start of the snapshot and
+     * advance the snapshot past that page.
+     *
+     * @param pageIndex  the index of the page within the whole bit set.
+     * @param page       the current contents of the page, or null.
+     * @return the contents of the page for the snapshot, or null.
+     */
+    PageContainer capture(final long pageIndex, final PageContainer page) {
+      PageContainer result = page == null ? null : page.copy();
+      final Object saved = pages.remove(pageIndex);
+      if ( saved != null ) {
+	result = saved == EMPTY ? null : (PageContainer) saved;
+      }
+      position = pageIndex + 1;
+      return result;
+    }
+  }
+
+  /**
+   * BitSpliterator traverses the indices of the set bits in a range of a
+   * bit set. It splits at a segment boundary while the range spans more
+   * than one segment and at a page boundary after that, so each part
+   * visits whole pages.
+   */
+  static class BitSpliterator implements Spliterator.OfLong {
+    private final ConcurrentBitSet bitSet;
+    private long index;
+    private final long fence;
+
+    /**
+     * Construct a BitSpliterator for the bits from index to fence
+     * (exclusive).
+     *
+     * @param bitSet  the bit set.
+     * @param index   the index of the first bit.
+     * @param fence   the index after the last bit.
+     */
+    BitSpliterator(final ConcurrentBitSet bitSet, final long index, final long fence) {
+      this.bitSet = bitSet;
+      this.index = index;
+      this.fence = fence;
+    }
+
+    /**
+     * Pass the index of the next set bit to the action.
+     *
+     * @param action  the action.
+     * @return false if there are no more set bits.
+     */
+    @Override
+    public boolean tryAdvance(final LongConsumer action) {
+      final long next = index < fence ? bitSet.nextSetBit(index, fence) : -1;
+      if ( next < 0 ) {
+	index = fence;
+	return false;
+      }
+      index = next + 1;
+      action.accept(next);
+      return true;
+    }
+
+    /**
+     * Pass the index of every remaining set bit to the action, reading
+     * each page a word at a time.
+     *
+     * @param action  the action.
+     */
+    @Override
+    public void forEachRemaining(final LongConsumer action) {
+      long position = index;
+      index = fence;
+      while ( position < fence ) {
+	position = bitSet.nextSetBit(position, fence);
+	if ( position < 0 ) {
+	  break;
+	}
+	final PageContainer page = bitSet.getPageAt(position >>> LOG2_BITS_PER_PAGE);
+	final long pageStart = position & ~PAGE_MASK;
+	final long pageEnd = Math.min(pageStart + BITS_PER_PAGE, fence);
+	for ( int i = (int) (position - pageStart) >>> LOG2_BITS_PER_LONG;
+	      page != null && i < WORDS_PER_PAGE; ++i ) {
+	  final long wordStart = pageStart + ((long) i << LOG2_BITS_PER_LONG);
+	  long word = page.word(i);
+	  if ( wordStart < position ) {
+	    word &= -1L << position;
+	  }
+	  while ( word != 0 ) {
+	    final long bit = wordStart + Long.numberOfTrailingZeros(word);
+	    if ( bit >= pageEnd ) {
+	      break;
+	    }
+	    action.accept(bit);
+	    word &= word - 1;
+	  }
+	}
+	position = pageEnd;
+      }
+    }
+
+    /**
+     * Split off the first part of the remaining range.
+     *
+     * @return a spliterator for the first part, or null if the range
+     *         is a single page.
+     */
+    @Override
+    public Spliterator.OfLong trySplit() {
+      final long size = fence - index > 1L << bitSet.logSegmentSize
+	  ? 1L << bitSet.logSegmentSize : BITS_PER_PAGE;
+      long middle = ((index + fence) >>> 1) & -size;
+      if ( middle <= index ) {
+	middle = (index & -size) + size;
+      }
+      Spliterator.OfLong result = null;
+      if ( middle < fence ) {
+	result = new BitSpliterator(bitSet, index, middle);
+	index = middle;
+      }
+      return result;
+    }
+
+    /**
+     * Returns the number of bits remaining in the range, which is an
+     * upper bound on the number of set bits.
+     *
+     * @return the estimated number of remaining elements.
+     */
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    /**
+     * Returns the characteristics of this spliterator.
+     *
+     * @return the characteristics of this spliterator.
+     */
+    @Override
+    public int characteristics() {
+      return ORDERED | DISTINCT | SORTED | NONNULL | CONCURRENT;
+    }
+
+    /**
+     * Returns null since the indices are in natural order.
+     *
+     * @return null.
+     */
+    @Override
+    public Comparator<? super Long> getComparator() {
+      return null;
+    }
+  }
+
+  /**
+   * SegmentVisitor is applied to each segment by a bulk operation.
+   */
+  interface SegmentVisitor {
+    /**
+     * Visit the segment with the specified index.
+     *
+     * @param segmentIndex  the index of the segment.
+     * @return a partial result to be summed with the other segments.
+     */
+    long visit(int segmentIndex);
+  }
+
+  /**
+   * SegmentTask visits a range of segments, splitting the range in half
+   * until each task visits a single segment.
+   */
+  static class SegmentTask extends RecursiveTask<Long> {
+    private final static long serialVersionUID = 1L;
+
+    private final int start;
+    private final int end;
+    private final transient SegmentVisitor visitor;
+
+    /**
+     * Construct a SegmentTask to visit segments from start to end
+     * (exclusive).
+     *
+     * @param visitor  the visitor to apply to each segment.
+     * @param start    the index of the first segment.
+     * @param end      the index after the last segment.
+     */
+    SegmentTask(final SegmentVisitor visitor, final int start, final int end) {
+      this.visitor = visitor;
+      this.start = start;
+      this.end = end;
+    }
+
+    /**
+     * Visit the segments, forking a task for the upper half of the range.
+     *
+     * @return the sum of the visitor results.
+     */
+    @Override
+    protected Long compute() {
+      long result;
+      if ( end - start == 1 ) {
+	result = visitor.visit(start);
+      }
+      else {
+	final int middle = (start + end) >>> 1;
+	final SegmentTask upper = new SegmentTask(visitor, middle, end);
+	upper.fork();
+	result = new SegmentTask(visitor, start, middle).compute();
+	result += upper.join();
+      }
+      return result;
+    }
+  }
+
   /**
    * Metrics is a public snapshot of the internal metrics.
    */
   public static class Metrics extends AbstractJoinableObject implements Joinable {
     private final static int METRICS_BUFFER_SIZE = 128;
 
+    private final long cardinality;
+    private final long clears;
+    private final long gets;
+    private final long memoryUsage;
+    private final long pageHits;
+    private final long pageMisses;
     private final long pagesCreated;
     private final long segmentMapLocks;
     private final long segmentsCreated;
-    private final long totalOperations;
+    private final long sets;
 
     /**
-     * Construct a snapshot of the internal metrics.
+     * Construct a snapshot of the internal metrics. The counters are read
+     * one at a time while the bit set may be in use, so the snapshot is
+     * not atomic.
      * 
-     * @param metrics the internal metrics.
+     * @param metrics      the internal metrics.
+     * @param memoryUsage  the estimated memory usage in bytes, or -1.
+     * @param cardinality  the number of set bits, or -1.
+     */
+    Metrics(final InternalMetrics metrics, final long memoryUsage, final long cardinality) {
+      this.cardinality = cardinality;
+      this.memoryUsage = memoryUsage;
+      clears = metrics.clears.sum();
+      gets = metrics.gets.sum();
+      pageHits = metrics.pageHits.sum();
+      pageMisses = metrics.pageMisses.sum();
+      pagesCreated = metrics.pagesCreated.sum();
+      segmentMapLocks = metrics.segmentMapLocks.sum();
+      segmentsCreated = metrics.segmentsCreated.sum();
+      sets = metrics.sets.sum();
+    }
+
+    /**
+     * Returns the number of set bits when the snapshot was taken, or -1 if
+     * the snapshot does not include the memory usage.
+     *
+     * @return the number of set bits, or -1.
+     */
+    public long getCardinality() {
+      return cardinality;
+    }
+
+    /**
+     * Returns the estimated heap memory used by the bit set in bytes when
+     * the snapshot was taken, or -1 if the snapshot does not include the
+     * memory usage.
+     *
+     * @return the estimated memory usage in bytes, or -1.
+     */
+    public long getMemoryUsage() {
+      return memoryUsage;
+    }
+
+    /**
+     * Returns the estimated number of bytes of heap memory used per set
+     * bit, or zero if no bits are set or the snapshot does not include the
+     * memory usage.
+     *
+     * @return the estimated memory usage per set bit in bytes.
+     */
+    public double getMemoryPerBit() {
+      return cardinality <= 0 ? 0 : (double) memoryUsage / cardinality;
+    }
+
+    /**
+     * Returns the number of clear operations (single bit or range) since
+     * the bit set was created.
+     *
+     * @return the number of clear operations.
      */
-    Metrics(final InternalMetrics metrics) {
-      pagesCreated = metrics.pagesCreated.get();
-      segmentMapLocks = metrics.segmentMapLocks.get();
-      segmentsCreated = metrics.segmentsCreated.get();
-      totalOperations = metrics.totalOperations.get();
+    public long getClears() {
+      return clears;
+    }
+
+    /**
+     * Returns the number of get operations since the bit set was created.
+     *
+     * @return the number of get operations.
+     */
+    public long getGets() {
+      return gets;
+    }
+
+    /**
+     * Returns the number of single bit operations that found an existing
+     * page.
+     *
+     * @return the number of page hits.
+     */
+    public long getPageHits() {
+      return pageHits;
+    }
+
+    /**
+     * Returns the number of single bit operations that found no page
+     * (or no segment) for the requested bit.
+     *
+     * @return the number of page misses.
+     */
+    public long getPageMisses() {
+      return pageMisses;
     }
 
     /**
@@ -403,13 +1517,23 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
       return segmentsCreated;
     }
 
+    /**
+     * Returns the number of set operations (single bit or range) since
+     * the bit set was created.
+     *
+     * @return the number of set operations.
+     */
+    public long getSets() {
+      return sets;
+    }
+
     /**
      * Returns the total number of operations since the bit set was created.
      *
      * @return the total number of operations.
      */
     public long getTotalOperations() {
-      return totalOperations;
+      return gets + sets + clears;
     }
 
     /**
@@ -435,58 +1559,119 @@ public class ConcurrentBitSet extends AbstractJoinableObject implements Joinable
 	  .append("pc",  pagesCreated)
 	  .append("sc",  segmentsCreated)
 	  .append("sel", segmentMapLocks)
-	  .append("ops", totalOperations)
-	  .appendRaw(" }");
+	  .append("ops", getTotalOperations())
+	  .append("get", gets)
+	  .append("set", sets)
+	  .append("clr", clears)
+	  .append("ph",  pageHits)
+	  .append("pm",  pageMisses);
+      if ( memoryUsage >= 0 ) {
+	joiner.append("mem", memoryUsage)
+	      .append("bits", cardinality);
+      }
+      joiner.appendRaw(" }");
       return joiner;
     }
   }
 
   /**
    * InternalMetrics encapsulates the counters used to collect metrics on the
-   * performance of ConcurrentBitSet.
+   * performance of ConcurrentBitSet. The counters are striped (LongAdder) so
+   * that threads updating them do not contend for a single cache line. If
+   * metrics are disabled, every update is a no-op.
    */
   static class InternalMetrics {
-    private final AtomicLong pagesCreated;
-    private final AtomicLong segmentMapLocks;
-    private final AtomicLong segmentsCreated;
-    private final AtomicLong totalOperations;
+    private final boolean enabled;
+    private final LongAdder clears;
+    private final LongAdder gets;
+    private final LongAdder pageHits;
+    private final LongAdder pageMisses;
+    private final LongAdder pagesCreated;
+    private final LongAdder segmentMapLocks;
+    private final LongAdder segmentsCreated;
+    private final LongAdder sets;
 
     /**
      * Construct an InternalMetrics.
+     *
+     * @param enabled  true if metrics should be collected.
+     */
+    InternalMetrics(final boolean enabled) {
+      this.enabled    = enabled;
+      clears          = new LongAdder();
+      gets            = new LongAdder();
+      pageHits        = new LongAdder();
+      pageMisses      = new LongAdder();
+      pagesCreated    = new LongAdder();
+      segmentMapLocks = new LongAdder();
+      segmentsCreated = new LongAdder();
+      sets            = new LongAdder();
+    }
+
+    /**
+     * Increment the counter for get operations.
+     */
+    public void get() {
+      if ( enabled ) {
+	gets.increment();
+      }
+    }
+
+    /**
+     * Increment the counter for set operations if value is true,
+     * otherwise increment the counter for clear operations.
+     *
+     * @param value  the value being stored.
      */
-    InternalMetrics() {
-      pagesCreated    = new AtomicLong();
-      segmentMapLocks = new AtomicLong();
-      segmentsCreated = new AtomicLong();
-      totalOperations = new AtomicLong();
+    public void set(final boolean value) {
+      if ( enabled ) {
+	(value ? sets : clears).increment();
+      }
     }
 
     /**
-     * Increment the counter for total operations (bit get and set operations).
+     * Increment the counter for operations that found an existing page.
      */
-    public void incrementOperations() {
-      totalOperations.incrementAndGet();
+    public void pageHit() {
+      if ( enabled ) {
+	pageHits.increment();
+      }
+    }
+
+    /**
+     * Increment the counter for operations that found no page.
+     */
+    public void pageMiss() {
+      if ( enabled ) {
+	pageMisses.increment();
+      }
     }
 
     /**
      * Increment the counter for pages created.
      */
     public void pageCreated() {
-      pagesCreated.incrementAndGet();
+      if ( enabled ) {
+	pagesCreated.increment();
+      }
     }
 
     /**
      * Increment the counter for segment map locks.
      */
     public void segmentMapLocked() {
-      segmentMapLocks.incrementAndGet();
+      if ( enabled ) {
+	segmentMapLocks.increment();
+      }
     }
 
     /**
      * Increment the counter for segments created.
      */
     public void segmentCreated() {
-      segmentsCreated.incrementAndGet();
+      if ( enabled ) {
+	segmentsCreated.increment();
+      }
     }
   }
 
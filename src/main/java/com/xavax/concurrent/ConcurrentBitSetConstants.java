@@ -5,13 +5,26 @@ public class ConcurrentBitSetConstants {
   final static int LOG2_BITS_PER_INT  = 5;
   final static int LOG2_BITS_PER_LONG = 6;
   final static int LOG2_BITS_PER_PAGE = 9;
+  final static int BITS_PER_BYTE = 1 << LOG2_BITS_PER_BYTE;
   final static int BITS_PER_INT = 1 << LOG2_BITS_PER_INT;
   final static int BITS_PER_LONG = 1 << LOG2_BITS_PER_LONG;
   final static int BITS_PER_PAGE = 1 << LOG2_BITS_PER_PAGE;
+  final static int WORDS_PER_PAGE = 1 << (LOG2_BITS_PER_PAGE - LOG2_BITS_PER_LONG);
+  final static int BYTES_PER_LONG = BITS_PER_LONG / BITS_PER_BYTE;
   final static int BITSET_BUFFER_SIZE = 32768;
 
+  // Estimated object layout of a 64-bit JVM with compressed references.
+  final static int OBJECT_HEADER_SIZE = 12;
+  final static int ARRAY_HEADER_SIZE = 16;
+  final static int REFERENCE_SIZE = 4;
+  final static int OBJECT_ALIGNMENT = 8;
+
   final static int LOG2_DEFAULT_SEGMENT_SIZE = 16;
-  final static int LOG2_MAX_SEGMENT_SIZE = BITS_PER_INT + LOG2_BITS_PER_PAGE;
-  final static long MAX_SEGMENT_SIZE = 1 << LOG2_MAX_SEGMENT_SIZE;
+  final static int LOG2_MIN_SEGMENT_SIZE = LOG2_BITS_PER_PAGE;
+  final static int LOG2_MAX_SEGMENT_SIZE = BITS_PER_INT - 1;
+  final static long MAX_SEGMENT_SIZE = 1L << LOG2_MAX_SEGMENT_SIZE;
+  // The segment map doubles as it grows, so its length stays a power of two.
+  final static int LOG2_MAX_SEGMENTS = BITS_PER_INT - 2;
+  final static int MAX_SEGMENTS = 1 << LOG2_MAX_SEGMENTS;
   final static long DEFAULT_INITIAL_SIZE = 1 << 24;
 }
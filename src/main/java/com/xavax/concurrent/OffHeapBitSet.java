@@ -0,0 +1,512 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.xavax.exception.RangeException;
+import com.xavax.util.AbstractJoinableObject;
+import com.xavax.util.Joinable;
+import com.xavax.util.Joiner;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * OffHeapBitSet is a fixed-size concurrent bit set whose words are stored
+ * outside the Java heap in direct or memory-mapped byte buffers, so a very
+ * large bit set adds almost nothing to garbage collection. A bit set mapped
+ * from a file is persistent: a restarted process can map the same file and
+ * use the bits immediately.
+ *
+ * The bit set is divided into regions of at most 1 GB (one buffer each).
+ * Reading a bit never locks, and bits are set or cleared with
+ * compare-and-set on the word containing them (see WordBuffer; on Java 8
+ * words are accessed under striped locks instead). Bit i is
+ * bit (i % 64) of word (i / 64), and words are stored in native byte order,
+ * so a mapped file should only be shared between machines with the same
+ * byte order. Bits at or beyond the capacity are always clear and cannot
+ * be set.
+ *
+ * @author alvitar@xavax.com Phillip L Harbison
+ */
+public class OffHeapBitSet extends AbstractJoinableObject implements Joinable {
+  final static int LOG2_BYTES_PER_REGION = 30;
+  final static int LOG2_BYTES_PER_WORD = LOG2_BITS_PER_LONG - LOG2_BITS_PER_BYTE;
+  final static int WORD_INDEX_MASK = BITS_PER_LONG - 1;
+
+  private final static int BUFFER_SIZE = 256;
+
+  private final int log2WordsPerRegion;
+  private final long regionMask;
+  private final long capacity;
+  private final WordBuffer[] regions;
+  private final ByteBuffer[] buffers;
+
+  /**
+   * Construct an OffHeapBitSet that stores its words in the specified
+   * buffer. The capacity is the buffer capacity rounded down to a whole
+   * number of words. The current contents of the buffer are preserved.
+   *
+   * @param buffer  the buffer used to store the bit set.
+   */
+  public OffHeapBitSet(final ByteBuffer buffer) {
+    this(buffer, LOG2_BYTES_PER_REGION);
+  }
+
+  /**
+   * Construct an OffHeapBitSet that stores its words in the specified
+   * buffer, divided into regions of 2^log2BytesPerRegion bytes.
+   *
+   * @param buffer              the buffer used to store the bit set.
+   * @param log2BytesPerRegion  log2 of the size of a region in bytes.
+   */
+  OffHeapBitSet(final ByteBuffer buffer, final int log2BytesPerRegion) {
+    this(slice(buffer, log2BytesPerRegion), log2BytesPerRegion);
+  }
+
+  /**
+   * Construct an OffHeapBitSet that stores its words in the specified
+   * regions. Every region but the last must hold exactly
+   * 2^log2BytesPerRegion bytes.
+   *
+   * @param buffers             the buffers used to store the bit set.
+   * @param log2BytesPerRegion  log2 of the size of a region in bytes.
+   */
+  private OffHeapBitSet(final ByteBuffer[] buffers, final int log2BytesPerRegion) {
+    this.buffers = buffers;
+    this.regions = new WordBuffer[buffers.length];
+    this.log2WordsPerRegion = log2BytesPerRegion - LOG2_BYTES_PER_WORD;
+    this.regionMask = (1L << log2WordsPerRegion) - 1;
+    long words = 0;
+    for ( int i = 0; i < buffers.length; ++i ) {
+      regions[i] = WordBuffer.create(buffers[i]);
+      words += regions[i].size();
+    }
+    this.capacity = words << LOG2_BITS_PER_LONG;
+  }
+
+  /**
+   * Divide a buffer into regions of 2^log2BytesPerRegion bytes. The last
+   * region holds the rest of the buffer rounded down to a whole number of
+   * words.
+   *
+   * @param buffer              the buffer to divide.
+   * @param log2BytesPerRegion  log2 of the size of a region in bytes.
+   * @return the regions of the buffer.
+   */
+  private static ByteBuffer[] slice(final ByteBuffer buffer, final int log2BytesPerRegion) {
+    final long bytes = (long) buffer.capacity() >>> LOG2_BYTES_PER_WORD << LOG2_BYTES_PER_WORD;
+    final ByteBuffer[] result = new ByteBuffer[regionCount(bytes, log2BytesPerRegion)];
+    for ( int i = 0; i < result.length; ++i ) {
+      final ByteBuffer region = buffer.duplicate();
+      final int start = i << log2BytesPerRegion;
+      ((Buffer) region).limit(start + regionSize(bytes, i, log2BytesPerRegion));
+      ((Buffer) region).position(start);
+      result[i] = region.slice();
+    }
+    return result;
+  }
+
+  /**
+   * Create an OffHeapBitSet with the specified capacity in direct buffers.
+   *
+   * @param size  the number of bits in the bit set.
+   * @return the new bit set.
+   */
+  public static OffHeapBitSet allocate(final long size) {
+    final long bytes = bytesFor(size);
+    final ByteBuffer[] buffers = new ByteBuffer[regionCount(bytes, LOG2_BYTES_PER_REGION)];
+    for ( int i = 0; i < buffers.length; ++i ) {
+      buffers[i] = ByteBuffer.allocateDirect(regionSize(bytes, i, LOG2_BYTES_PER_REGION));
+    }
+    return new OffHeapBitSet(buffers, LOG2_BYTES_PER_REGION);
+  }
+
+  /**
+   * Create an OffHeapBitSet mapped from the specified file. The file is
+   * created if it does not exist and extended if it is smaller than the
+   * requested size; if it is larger, the whole file is mapped so that a
+   * bit set can be reopened without knowing its size.
+   *
+   * @param path  the file containing the bit set.
+   * @param size  the minimum number of bits in the bit set.
+   * @return the new bit set.
+   * @throws IOException if the file cannot be opened or mapped.
+   */
+  public static OffHeapBitSet map(final Path path, final long size) throws IOException {
+    try ( FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+						 StandardOpenOption.READ, StandardOpenOption.WRITE) ) {
+      final long bytes = Math.max(bytesFor(size), bytesFor(channel.size() << LOG2_BITS_PER_BYTE));
+      final ByteBuffer[] buffers = new ByteBuffer[regionCount(bytes, LOG2_BYTES_PER_REGION)];
+      for ( int i = 0; i < buffers.length; ++i ) {
+	buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << LOG2_BYTES_PER_REGION,
+				 regionSize(bytes, i, LOG2_BYTES_PER_REGION));
+      }
+      return new OffHeapBitSet(buffers, LOG2_BYTES_PER_REGION);
+    }
+  }
+
+  /**
+   * Returns the number of bytes needed to store the specified number of
+   * bits in whole words.
+   *
+   * @param size  the number of bits.
+   * @return the number of bytes.
+   */
+  private static long bytesFor(final long size) {
+    if ( size < 0 ) {
+      throw new RangeException(0, Long.MAX_VALUE, size);
+    }
+    return ((size + BITS_PER_LONG - 1) >>> LOG2_BITS_PER_LONG) * BYTES_PER_LONG;
+  }
+
+  /**
+   * Returns the number of regions needed to store the specified number of
+   * bytes.
+   *
+   * @param bytes               the number of bytes.
+   * @param log2BytesPerRegion  log2 of the size of a region in bytes.
+   * @return the number of regions.
+   */
+  private static int regionCount(final long bytes, final int log2BytesPerRegion) {
+    return (int) ((bytes + (1L << log2BytesPerRegion) - 1) >>> log2BytesPerRegion);
+  }
+
+  /**
+   * Returns the size in bytes of the region with the specified index.
+   *
+   * @param bytes               the total number of bytes.
+   * @param index               the index of the region.
+   * @param log2BytesPerRegion  log2 of the size of a region in bytes.
+   * @return the size of the region in bytes.
+   */
+  private static int regionSize(final long bytes, final int index, final int log2BytesPerRegion) {
+    return (int) Math.min(bytes - ((long) index << log2BytesPerRegion), 1L << log2BytesPerRegion);
+  }
+
+  /**
+   * Returns the number of bits in this bit set.
+   *
+   * @return the capacity of this bit set.
+   */
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the value of the bit at the specified index. Bits beyond the
+   * capacity are always clear.
+   *
+   * @param index  the index of the desired bit.
+   * @return the value of the bit at the specified index.
+   */
+  public boolean get(final long index) {
+    if ( index < 0 ) {
+      throw new RangeException(0, Long.MAX_VALUE, index);
+    }
+    return index < capacity && (word(index >>> LOG2_BITS_PER_LONG) & (1L << index)) != 0;
+  }
+
+  /**
+   * Sets the value of the bit at the specified index.
+   *
+   * @param index  the index of the bit to be set.
+   * @param value  the new value of the specified bit.
+   */
+  public void set(final long index, final boolean value) {
+    if ( index < 0 || (value && index >= capacity) ) {
+      throw new RangeException(0, capacity - 1, index);
+    }
+    if ( index < capacity ) {
+      final long mask = 1L << index;
+      if ( value ) {
+	setBits(index >>> LOG2_BITS_PER_LONG, mask);
+      }
+      else {
+	clearBits(index >>> LOG2_BITS_PER_LONG, mask);
+      }
+    }
+  }
+
+  /**
+   * Sets the value of the bit at the specified index.
+   *
+   * @param index  the index of the bit to be set.
+   */
+  public void set(final long index) {
+    set(index, true);
+  }
+
+  /**
+   * Clears the value of the bit at the specified index.
+   *
+   * @param index  the index of the bit to be cleared.
+   */
+  public void clear(final long index) {
+    set(index, false);
+  }
+
+  /**
+   * Sets a range of bits beginning with the bit at fromIndex and
+   * ending with the bit at toIndex (exclusive).
+   *
+   * @param fromIndex  index of the first bit to set.
+   * @param toIndex    index after the last bit to set.
+   */
+  public void set(final long fromIndex, final long toIndex) {
+    checkRange(fromIndex, toIndex);
+    if ( toIndex > capacity ) {
+      throw new RangeException(fromIndex + 1, capacity, toIndex);
+    }
+    update(fromIndex, toIndex - 1, true);
+  }
+
+  /**
+   * Clears a range of bits beginning with the bit at fromIndex and
+   * ending with the bit at toIndex (exclusive). Bits beyond the capacity
+   * are already clear and are ignored.
+   *
+   * @param fromIndex  index of the first bit to clear.
+   * @param toIndex    index after the last bit to clear.
+   */
+  public void clear(final long fromIndex, final long toIndex) {
+    checkRange(fromIndex, toIndex);
+    if ( fromIndex < capacity ) {
+      update(fromIndex, Math.min(toIndex, capacity) - 1, false);
+    }
+  }
+
+  /**
+   * Finds the next set bit beginning with the bit at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin the search.
+   * @return the index of the next set bit, or -1 if there is none.
+   */
+  public long nextSetBit(final long fromIndex) {
+    if ( fromIndex < 0 ) {
+      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+    }
+    long result = -1;
+    if ( fromIndex < capacity ) {
+      final long words = capacity >>> LOG2_BITS_PER_LONG;
+      long wordIndex = fromIndex >>> LOG2_BITS_PER_LONG;
+      long word = word(wordIndex) & (-1L << fromIndex);
+      while ( word == 0 && ++wordIndex < words ) {
+	word = word(wordIndex);
+      }
+      if ( word != 0 ) {
+	result = (wordIndex << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the next clear bit beginning with the bit at fromIndex. If
+   * every bit from fromIndex to the end of the bit set is set, the
+   * result is the capacity, since bits beyond the capacity are clear.
+   *
+   * @param fromIndex  the index of the bit to begin the search.
+   * @return the index of the next clear bit.
+   */
+  public long nextClearBit(final long fromIndex) {
+    if ( fromIndex < 0 ) {
+      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+    }
+    long result = Math.max(fromIndex, capacity);
+    if ( fromIndex < capacity ) {
+      final long words = capacity >>> LOG2_BITS_PER_LONG;
+      long wordIndex = fromIndex >>> LOG2_BITS_PER_LONG;
+      long word = ~word(wordIndex) & (-1L << fromIndex);
+      while ( word == 0 && ++wordIndex < words ) {
+	word = ~word(wordIndex);
+      }
+      if ( word != 0 ) {
+	result = (wordIndex << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bits set to true in this bit set.
+   *
+   * @return the number of set bits.
+   */
+  public long cardinality() {
+    long result = 0;
+    for ( final WordBuffer region : regions ) {
+      for ( int i = 0; i < region.size(); ++i ) {
+	result += Long.bitCount(region.get(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes any changes to a memory-mapped bit set to the storage device
+   * containing the file. This has no effect on a bit set that is not
+   * mapped from a file.
+   */
+  public void force() {
+    for ( final ByteBuffer buffer : buffers ) {
+      if ( buffer instanceof MappedByteBuffer ) {
+	((MappedByteBuffer) buffer).force();
+      }
+    }
+  }
+
+  /**
+   * Set or clear the bits from fromIndex to toIndex (inclusive). Whole
+   * words in the range are written without reading them.
+   *
+   * @param fromIndex  index of the first bit to update.
+   * @param toIndex    index of the last bit to update.
+   * @param value      true if the bits should be set.
+   */
+  private void update(final long fromIndex, final long toIndex, final boolean value) {
+    final long firstWord = fromIndex >>> LOG2_BITS_PER_LONG;
+    final long lastWord = toIndex >>> LOG2_BITS_PER_LONG;
+    final long leftMask = -1L << fromIndex;
+    final long rightMask = -1L >>> (WORD_INDEX_MASK - (toIndex & WORD_INDEX_MASK));
+    if ( firstWord == lastWord ) {
+      updateBits(firstWord, leftMask & rightMask, value);
+    }
+    else {
+      updateBits(firstWord, leftMask, value);
+      for ( long i = firstWord + 1; i < lastWord; ++i ) {
+	region(i).set(offset(i), value ? -1L : 0);
+      }
+      updateBits(lastWord, rightMask, value);
+    }
+  }
+
+  /**
+   * Atomically set or clear the bits selected by mask in the specified
+   * word.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be updated.
+   * @param value      true if the bits should be set.
+   */
+  private void updateBits(final long wordIndex, final long mask, final boolean value) {
+    if ( value ) {
+      setBits(wordIndex, mask);
+    }
+    else {
+      clearBits(wordIndex, mask);
+    }
+  }
+
+  /**
+   * Atomically set the bits selected by mask in the specified word.
+   * The word is not written if the bits are already set.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be set.
+   */
+  private void setBits(final long wordIndex, final long mask) {
+    final WordBuffer region = region(wordIndex);
+    final int index = offset(wordIndex);
+    long current = region.get(index);
+    while ( (current & mask) != mask
+	    && !region.compareAndSet(index, current, current | mask) ) {
+      current = region.get(index);
+    }
+  }
+
+  /**
+   * Atomically clear the bits selected by mask in the specified word.
+   * The word is not written if the bits are already clear.
+   *
+   * @param wordIndex  the index of the word to update.
+   * @param mask       the bits to be cleared.
+   */
+  private void clearBits(final long wordIndex, final long mask) {
+    final WordBuffer region = region(wordIndex);
+    final int index = offset(wordIndex);
+    long current = region.get(index);
+    while ( (current & mask) != 0
+	    && !region.compareAndSet(index, current, current & ~mask) ) {
+      current = region.get(index);
+    }
+  }
+
+  /**
+   * Returns the word with the specified index.
+   *
+   * @param wordIndex  the index of the word.
+   * @return the word.
+   */
+  private long word(final long wordIndex) {
+    return region(wordIndex).get(offset(wordIndex));
+  }
+
+  /**
+   * Returns the region containing the word with the specified index.
+   *
+   * @param wordIndex  the index of the word.
+   * @return the region containing the word.
+   */
+  private WordBuffer region(final long wordIndex) {
+    return regions[(int) (wordIndex >>> log2WordsPerRegion)];
+  }
+
+  /**
+   * Returns the index of a word within its region.
+   *
+   * @param wordIndex  the index of the word.
+   * @return the index of the word within its region.
+   */
+  private int offset(final long wordIndex) {
+    return (int) (wordIndex & regionMask);
+  }
+
+  /**
+   * Verify that fromIndex and toIndex describe a valid range.
+   *
+   * @param fromIndex  index of the first bit in the range.
+   * @param toIndex    index after the last bit in the range.
+   */
+  private void checkRange(final long fromIndex, final long toIndex) {
+    if ( fromIndex < 0 ) {
+      throw new RangeException(0, Long.MAX_VALUE, fromIndex);
+    }
+    if ( toIndex <= fromIndex ) {
+      throw new RangeException(fromIndex + 1, Long.MAX_VALUE, toIndex);
+    }
+  }
+
+  /**
+   * Returns a string representation of this bit set.
+   *
+   * @return a string representation of this bit set.
+   */
+  @Override
+  public String toString() {
+    return doJoin(Joiner.create(BUFFER_SIZE)).toString();
+  }
+
+  /**
+   * Join this object to the specified joiner.
+   *
+   * @param joiner  the joiner to use.
+   * @return the joiner.
+   */
+  @Override
+  public Joiner doJoin(final Joiner joiner) {
+    joiner.append("capacity", capacity)
+	  .append("regions", regions.length);
+    return joiner;
+  }
+}
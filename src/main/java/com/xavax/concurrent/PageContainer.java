@@ -0,0 +1,437 @@
+package com.xavax.concurrent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.xavax.util.AbstractJoinableObject;
+import com.xavax.util.Joinable;
+import com.xavax.util.Joiner;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+import static com.xavax.util.Constants.*;
+
+/**
+ * PageContainer is the base class for the representations of one page of
+ * a bit set. A page may be stored as a bitmap (BitSetPage), a sorted array
+ * of bit indices (ArrayPage), or a list of runs of set bits (RunPage).
+ *
+ * The bitmap is mutable and is updated in place with compare-and-swap.
+ * The array and run containers are immutable; an update returns a new
+ * container which the segment installs in its page map with
+ * compare-and-swap. Methods that update a page return the container that
+ * should occupy the page map slot afterwards: the same container if it
+ * was updated in place (or not changed at all), a new container, or null
+ * if the page is now empty. New containers are always encoded in the
+ * representation that uses the least memory.
+ */
+abstract class PageContainer extends AbstractJoinableObject implements Joinable {
+  final static int PAGE_BUFFER_SIZE = 8192;
+  final static int WORD_INDEX_MASK = BITS_PER_LONG - 1;
+  final static int LAST_BIT = BITS_PER_PAGE - 1;
+
+  // Container types in the serialized form of a page.
+  final static int TYPE_BITMAP = 0;
+  final static int TYPE_ARRAY = 1;
+  final static int TYPE_RUN = 2;
+  final static int TYPE_FULL = 3;
+
+  private final static char ZERO_BIT = '0';
+  private final static char ONE_BIT = '1';
+
+  /**
+   * Returns the value of the specified bit as a boolean.
+   *
+   * @param index  the index of a bit within the page.
+   * @return the value of the specified bit.
+   */
+  public abstract boolean get(int index);
+
+  /**
+   * Returns the word of the page with the specified index. Bit i of the
+   * page is bit (i % 64) of word (i / 64).
+   *
+   * @param wordIndex  the index of the desired word.
+   * @return the word with the specified index.
+   */
+  public abstract long word(int wordIndex);
+
+  /**
+   * Finds the next set bit starting at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next set bit, or -1 if not found.
+   */
+  public abstract int nextSetBit(int fromIndex);
+
+  /**
+   * Finds the next clear bit starting at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next clear bit, or -1 if not found.
+   */
+  public abstract int nextClearBit(int fromIndex);
+
+  /**
+   * Returns the number of set bits in this page.
+   *
+   * @return the number of set bits in this page.
+   */
+  public abstract int cardinality();
+
+  /**
+   * Returns an estimate of the heap memory used by this container in
+   * bytes.
+   *
+   * @return the estimated size of this container in bytes.
+   */
+  public abstract int memoryUsage();
+
+  /**
+   * Returns a container with the same bits as this one that may be
+   * installed in another bit set. Immutable containers return themselves.
+   *
+   * @return a container that is not shared with this bit set.
+   */
+  public abstract PageContainer copy();
+
+  /**
+   * Writes the serialized form of this page: the container type followed
+   * by the contents of the container.
+   *
+   * @param output  the output to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  public abstract void write(DataOutput output) throws IOException;
+
+  /**
+   * Reads a page in the form written by write.
+   *
+   * @param input  the input to read from.
+   * @return the page.
+   * @throws IOException if an I/O error occurs or the page is invalid.
+   */
+  static PageContainer read(final DataInput input) throws IOException {
+    final PageContainer result;
+    final int type = input.readUnsignedByte();
+    switch ( type ) {
+    case TYPE_BITMAP:
+      final long[] words = new long[WORDS_PER_PAGE];
+      for ( int i = 0; i < words.length; ++i ) {
+	words[i] = input.readLong();
+      }
+      result = new BitSetPage(words);
+      break;
+    case TYPE_ARRAY:
+      result = ArrayPage.create(readShorts(input, input.readUnsignedShort(), false));
+      break;
+    case TYPE_RUN:
+      result = RunPage.create(readShorts(input, input.readUnsignedShort() * 2, true));
+      break;
+    case TYPE_FULL:
+      result = RunPage.FULL;
+      break;
+    default:
+      throw new IOException("invalid page type " + type);
+    }
+    return result;
+  }
+
+  /**
+   * Writes an array of shorts preceded by its length (or the specified
+   * count).
+   *
+   * @param output  the output to write to.
+   * @param count   the count to write before the values.
+   * @param values  the values to write.
+   * @throws IOException if an I/O error occurs.
+   */
+  static void writeShorts(final DataOutput output, final int count, final short[] values)
+      throws IOException {
+    output.writeShort(count);
+    for ( final short value : values ) {
+      output.writeShort(value);
+    }
+  }
+
+  /**
+   * Reads an array of bit indices and verifies that each is a valid
+   * index within a page and that they are in ascending order. Indices
+   * must increase strictly, except that the two ends of a run may be
+   * equal.
+   *
+   * @param input  the input to read from.
+   * @param count  the number of values to read.
+   * @param runs   true if the values are the first and last index of runs.
+   * @return the values.
+   * @throws IOException if an I/O error occurs or a value is invalid.
+   */
+  private static short[] readShorts(final DataInput input, final int count, final boolean runs)
+      throws IOException {
+    final short[] values = new short[count];
+    for ( int i = 0; i < count; ++i ) {
+      values[i] = input.readShort();
+      if ( values[i] < 0 || values[i] > LAST_BIT ) {
+	throw new IOException("invalid bit index " + values[i]);
+      }
+      if ( i > 0 && (values[i] < values[i - 1]
+		     || values[i] == values[i - 1] && !(runs && (i & 1) == 1)) ) {
+	throw new IOException("bit index " + values[i] + " out of order");
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Sets the value of the specified bit.
+   *
+   * @param index  the index of a bit within the page.
+   * @param flag   the new value of the specified bit.
+   * @return the container for the page after the update.
+   */
+  public PageContainer set(final int index, final boolean flag) {
+    PageContainer result = this;
+    if ( get(index) != flag ) {
+      final long[] words = words();
+      words[index >>> LOG2_BITS_PER_LONG] ^= 1L << index;
+      result = encode(words);
+    }
+    return result;
+  }
+
+  /**
+   * Sets a range of bits beginning with the bit at fromIndex and
+   * ending with the bit at toIndex (inclusive).
+   *
+   * @param fromIndex  index of the first bit to set.
+   * @param toIndex    index of the last bit to set.
+   * @return the container for the page after the update.
+   */
+  public PageContainer set(final int fromIndex, final int toIndex) {
+    final long[] words = words();
+    return fill(words, fromIndex, toIndex, true) ? encode(words) : this;
+  }
+
+  /**
+   * Clears a range of bits beginning with the bit at fromIndex and
+   * ending with the bit at toIndex (inclusive).
+   *
+   * @param fromIndex  index of the first bit to clear.
+   * @param toIndex    index of the last bit to clear.
+   * @return the container for the page after the update.
+   */
+  public PageContainer clear(final int fromIndex, final int toIndex) {
+    final long[] words = words();
+    return fill(words, fromIndex, toIndex, false) ? encode(words) : this;
+  }
+
+  /**
+   * Performs a logical AND of this page with another page. Bits that are
+   * clear in the other page are cleared in this page.
+   *
+   * @param other  the other page.
+   * @return the container for the page after the update.
+   */
+  public PageContainer and(final PageContainer other) {
+    final long[] words = words();
+    boolean changed = false;
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = words[i] & other.word(i);
+      changed |= word != words[i];
+      words[i] = word;
+    }
+    return changed ? encode(words) : this;
+  }
+
+  /**
+   * Performs a logical OR of this page with another page.
+   *
+   * @param other  the other page.
+   * @return the container for the page after the update.
+   */
+  public PageContainer or(final PageContainer other) {
+    final long[] words = words();
+    boolean changed = false;
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = words[i] | other.word(i);
+      changed |= word != words[i];
+      words[i] = word;
+    }
+    return changed ? encode(words) : this;
+  }
+
+  /**
+   * Performs a logical XOR of this page with another page.
+   *
+   * @param other  the other page.
+   * @return the container for the page after the update.
+   */
+  public PageContainer xor(final PageContainer other) {
+    final long[] words = words();
+    boolean changed = false;
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = other.word(i);
+      changed |= word != 0;
+      words[i] ^= word;
+    }
+    return changed ? encode(words) : this;
+  }
+
+  /**
+   * Clears all bits in this page that are set in another page.
+   *
+   * @param other  the other page.
+   * @return the container for the page after the update.
+   */
+  public PageContainer andNot(final PageContainer other) {
+    final long[] words = words();
+    boolean changed = false;
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      final long word = words[i] & ~other.word(i);
+      changed |= word != words[i];
+      words[i] = word;
+    }
+    return changed ? encode(words) : this;
+  }
+
+  /**
+   * Returns true if this page and another page have any set bits in
+   * common.
+   *
+   * @param other  the other page.
+   * @return true if the pages intersect.
+   */
+  public boolean intersects(final PageContainer other) {
+    boolean result = false;
+    for ( int i = 0; !result && i < WORDS_PER_PAGE; ++i ) {
+      result = (word(i) & other.word(i)) != 0;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a copy of the words of this page.
+   *
+   * @return a copy of the words of this page.
+   */
+  public long[] words() {
+    final long[] words = new long[WORDS_PER_PAGE];
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      words[i] = word(i);
+    }
+    return words;
+  }
+
+  /**
+   * Set or clear a range of bits in an array of words.
+   *
+   * @param words      the words to update.
+   * @param fromIndex  index of the first bit to update.
+   * @param toIndex    index of the last bit to update.
+   * @param flag       true if the bits should be set.
+   * @return true if any of the words changed.
+   */
+  static boolean fill(final long[] words, final int fromIndex, final int toIndex,
+		      final boolean flag) {
+    boolean changed = false;
+    final int firstWord = fromIndex >>> LOG2_BITS_PER_LONG;
+    final int lastWord = toIndex >>> LOG2_BITS_PER_LONG;
+    for ( int i = firstWord; i <= lastWord; ++i ) {
+      long mask = -1L;
+      if ( i == firstWord ) {
+	mask &= -1L << fromIndex;
+      }
+      if ( i == lastWord ) {
+	mask &= -1L >>> (WORD_INDEX_MASK - (toIndex & WORD_INDEX_MASK));
+      }
+      final long word = flag ? words[i] | mask : words[i] & ~mask;
+      changed |= word != words[i];
+      words[i] = word;
+    }
+    return changed;
+  }
+
+  /**
+   * Returns a new container holding the specified words, using the
+   * representation that needs the least memory: null for an empty page,
+   * the shared full page, an array of bit indices, a list of runs, or
+   * a bitmap.
+   *
+   * @param words  the words of the page.
+   * @return the new container, or null if no bits are set.
+   */
+  static PageContainer encode(final long[] words) {
+    int cardinality = 0;
+    int runs = 0;
+    long carry = 0;
+    for ( final long word : words ) {
+      cardinality += Long.bitCount(word);
+      runs += Long.bitCount(word & ~((word << 1) | carry));
+      carry = word >>> WORD_INDEX_MASK;
+    }
+    final PageContainer result;
+    if ( cardinality == 0 ) {
+      result = null;
+    }
+    else if ( cardinality == BITS_PER_PAGE ) {
+      result = RunPage.FULL;
+    }
+    else {
+      final int arraySize = ArrayPage.memoryUsage(cardinality);
+      final int runSize = RunPage.memoryUsage(runs);
+      if ( arraySize <= runSize && arraySize < BitSetPage.MEMORY_USAGE ) {
+	result = ArrayPage.create(words, cardinality);
+      }
+      else if ( runSize < BitSetPage.MEMORY_USAGE ) {
+	result = RunPage.create(words, runs);
+      }
+      else {
+	result = new BitSetPage(words);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the size of an object or array rounded up to the JVM object
+   * alignment.
+   *
+   * @param size  the unaligned size in bytes.
+   * @return the aligned size in bytes.
+   */
+  static int align(final int size) {
+    return (size + OBJECT_ALIGNMENT - 1) & -OBJECT_ALIGNMENT;
+  }
+
+  /**
+   * Returns a string representation of this page.
+   *
+   * @return a string representation of this page.
+   */
+  @Override
+  public String toString() {
+    return doJoin(Joiner.create(PAGE_BUFFER_SIZE)).toString();
+  }
+
+  /**
+   * Join this object to the specified joiner. The bits are shown in
+   * index order in groups of eight separated by periods.
+   *
+   * @param joiner  the joiner to use.
+   * @return the joiner.
+   */
+  @Override
+  public Joiner doJoin(final Joiner joiner) {
+    joiner.appendRaw(LEFT_BRACKET);
+    for ( int i = 0; i < BITS_PER_PAGE; i += BITS_PER_BYTE ) {
+      if ( i > 0 ) {
+	joiner.appendRaw(PERIOD);
+      }
+      for ( int j = i; j < i + BITS_PER_BYTE; ++j ) {
+	joiner.appendRaw(get(j) ? ONE_BIT : ZERO_BIT);
+      }
+    }
+    joiner.appendRaw(RIGHT_BRACKET);
+    return joiner;
+  }
+}
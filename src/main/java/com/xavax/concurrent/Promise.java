@@ -5,19 +5,65 @@
 //
 package com.xavax.concurrent;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
 /**
  * Promise<T> is an interface for a promise to return a result that
  * may not yet be calculated. On any attempt to access the result,
  * implementations of Promise wait until the result is available.
+ * <p>
+ * Only get, getName, isReady, set, and wasInterrupted must be
+ * implemented. The default timed get and onComplete are built on get; the
+ * default fail and cancel return false, so a promise that does not
+ * override them is never failed or cancelled.
  *
  * param <T>  the type of the result.
  */
 public interface Promise<T> {
   /**
-   * Returns the result of type T, waiting if necessary.
+   * Returns the result of type T, waiting if necessary. If the thread is
+   * interrupted while waiting, returns null with the interrupt status set,
+   * and wasInterrupted returns true. (The timed get throws
+   * InterruptedPromiseException instead.)
+   *
+   * @return the result of type T, or null if the thread was interrupted.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
    */
   T get();
 
+  /**
+   * Returns the result of type T, waiting at most the specified time.
+   *
+   * <p>
+   * The default implementation waits for an action registered with
+   * onComplete, then returns the result with get.
+   *
+   * @param timeout  the maximum time to wait.
+   * @param unit     the unit of the timeout.
+   * @return the result of type T.
+   * @throws PromiseTimeoutException if the time expires first.
+   * @throws PromiseFailedException if the promise failed or was cancelled.
+   * @throws InterruptedPromiseException if the thread is interrupted.
+   */
+  default T get(final long timeout, final TimeUnit unit) {
+    if ( !isReady() ) {
+      final CountDownLatch latch = new CountDownLatch(1);
+      onComplete((result, cause) -> latch.countDown());
+      try {
+	if ( !latch.await(timeout, unit) ) {
+	  throw new PromiseTimeoutException(this, timeout, unit);
+	}
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+	throw new InterruptedPromiseException(e, this);
+      }
+    }
+    return get();
+  }
+
   /**
    * Returns the name or description of this promise.
    *
@@ -33,12 +79,85 @@ public interface Promise<T> {
   boolean isReady();
 
   /**
-   * Sets the result making it available.
+   * Sets the result making it available. If a result was already set, the
+   * new result replaces it for later calls to get; actions registered
+   * with onComplete have already run and do not run again. Has no effect
+   * if the promise failed or was cancelled.
    *
    * @param result  the result.
    */
   void set(final T result);
 
+  /**
+   * Completes this promise with a failure if it is not already complete.
+   *
+   * <p>
+   * The default implementation does not support failure and returns false.
+   *
+   * @param cause  the cause of the failure.
+   * @return true if this call completed the promise.
+   */
+  default boolean fail(final Throwable cause) {
+    return false;
+  }
+
+  /**
+   * Cancels this promise if it is not already complete.
+   *
+   * <p>
+   * The default implementation does not support cancellation and returns
+   * false.
+   *
+   * @return true if this call cancelled the promise.
+   */
+  default boolean cancel() {
+    return false;
+  }
+
+  /**
+   * Returns true if this promise failed or was cancelled.
+   *
+   * @return true if this promise failed or was cancelled.
+   */
+  default boolean isFailed() {
+    return false;
+  }
+
+  /**
+   * Returns true if this promise was cancelled.
+   *
+   * @return true if this promise was cancelled.
+   */
+  default boolean isCancelled() {
+    return false;
+  }
+
+  /**
+   * Register an action to run when this promise completes, without
+   * waiting. The action receives the result and a null cause, or a null
+   * result and the cause of the failure or cancellation.
+   *
+   * <p>
+   * The default implementation runs the action immediately if the promise
+   * is ready, and otherwise waits for the result with get on a thread from
+   * TaskExecutors.defaultExecutor, so it works for any implementation of
+   * get but occupies a (virtual, if supported) thread until the promise
+   * completes. Implementations that can notify waiters directly should
+   * override it.
+   *
+   * @param action  the action to run.
+   * @return this promise.
+   */
+  default Promise<T> onComplete(final BiConsumer<? super T, ? super Throwable> action) {
+    if ( isReady() ) {
+      Promises.notify(this, action);
+    }
+    else {
+      TaskExecutors.defaultExecutor().execute(() -> Promises.notify(this, action));
+    }
+    return this;
+  }
+
   /**
    * Returns true if the promise was interrupted.
    *
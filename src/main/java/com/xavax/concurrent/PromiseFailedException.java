@@ -0,0 +1,32 @@
+package com.xavax.concurrent;
+
+/**
+ * PromiseFailedException is thrown when a thread requests the result of a
+ * promise that was completed with a failure. The cause of this exception is
+ * the cause of the failure.
+ */
+public class PromiseFailedException extends RuntimeException {
+  private final static long serialVersionUID = 1L;
+  private final Promise<?> promise;
+
+  /**
+   * Construct a PromiseFailedException.
+   *
+   * @param cause    the cause of the failure.
+   * @param promise  the promise that failed.
+   */
+  public PromiseFailedException(final Throwable cause,
+				final Promise<?> promise) {
+    super(cause);
+    this.promise = promise;
+  }
+
+  /**
+   * Returns the promise that failed.
+   *
+   * @return the promise that failed.
+   */
+  public Promise<?> getPromise() {
+    return promise;
+  }
+}
@@ -0,0 +1,35 @@
+package com.xavax.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PromiseTimeoutException is thrown when the time allowed to wait for a
+ * promise expires before the promise is complete.
+ */
+public class PromiseTimeoutException extends RuntimeException {
+  private final static long serialVersionUID = 1L;
+  private final static String MESSAGE = "timed out after %d %s waiting for %s";
+  private final Promise<?> promise;
+
+  /**
+   * Construct a PromiseTimeoutException.
+   *
+   * @param promise  the promise that was not complete.
+   * @param timeout  the time allowed to wait.
+   * @param unit     the unit of the timeout.
+   */
+  public PromiseTimeoutException(final Promise<?> promise,
+				 final long timeout, final TimeUnit unit) {
+    super(String.format(MESSAGE, timeout, unit, promise.getName()));
+    this.promise = promise;
+  }
+
+  /**
+   * Returns the promise that was not complete.
+   *
+   * @return the promise that was not complete.
+   */
+  public Promise<?> getPromise() {
+    return promise;
+  }
+}
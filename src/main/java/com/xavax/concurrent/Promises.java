@@ -0,0 +1,218 @@
+//
+// Copyright 2018 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+import com.xavax.exception.RangeException;
+
+/**
+ * Promises provides combinators that gather the results of a group of
+ * promises into a single promise. The combined promise completes when all,
+ * any, or a quorum of the promises complete, so a caller waiting for a
+ * scatter-gather request parks once and is woken up once, and an overall
+ * deadline is enforced by waiting for the combined promise with
+ * get(long, TimeUnit). No threads wait for the individual promises; each
+ * one reports its outcome through onComplete.
+ */
+public final class Promises {
+
+  /**
+   * Private constructor provided to keep the compiler from generating
+   * a public default constructor.
+   */
+  private Promises() {}
+
+  /**
+   * Returns a promise of the results of all the specified promises, in the
+   * order of the collection. The combined promise fails as soon as any of
+   * the promises fails.
+   *
+   * @param name      the name of the combined promise.
+   * @param promises  the promises to combine.
+   * @param <T>       the class of object promised.
+   * @return a promise of a list of results.
+   */
+  public static <T> BasicPromise<List<T>> allOf(final String name,
+						final Collection<? extends Promise<? extends T>> promises) {
+    final BasicPromise<List<T>> result = new BasicPromise<>(name);
+    final Gather<T> gather = new Gather<>(result, promises.size(), promises.size(), true);
+    int index = 0;
+    for ( final Promise<? extends T> promise : promises ) {
+      final int slot = index++;
+      promise.onComplete((value, cause) -> gather.accept(slot, value, cause));
+    }
+    return result;
+  }
+
+  /**
+   * Returns a promise of the first result of the specified promises. The
+   * combined promise fails only if all the promises fail, with the cause
+   * of the last failure.
+   *
+   * @param name      the name of the combined promise.
+   * @param promises  the promises to combine.
+   * @param <T>       the class of object promised.
+   * @return a promise of the first result.
+   * @throws RangeException if there are no promises.
+   */
+  public static <T> BasicPromise<T> anyOf(final String name,
+					  final Collection<? extends Promise<? extends T>> promises) {
+    final BasicPromise<T> result = new BasicPromise<>(name);
+    quorum(name, 1, promises).onComplete((values, cause) -> {
+      if ( cause == null ) {
+	result.set(values.get(0));
+      }
+      else {
+	result.fail(cause);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Returns a promise of the first count results of the specified promises,
+   * in the order they completed. The combined promise fails as soon as so
+   * many promises have failed that count results are no longer possible.
+   *
+   * @param name      the name of the combined promise.
+   * @param count     the number of results required.
+   * @param promises  the promises to combine.
+   * @param <T>       the class of object promised.
+   * @return a promise of a list of count results.
+   * @throws RangeException if count is negative or exceeds the number of
+   *         promises.
+   */
+  public static <T> BasicPromise<List<T>> quorum(final String name, final int count,
+						 final Collection<? extends Promise<? extends T>> promises) {
+    final int size = promises.size();
+    if ( count < 0 || count > size ) {
+      throw new RangeException(0, size, count);
+    }
+    final BasicPromise<List<T>> result = new BasicPromise<>(name);
+    final Gather<T> gather = new Gather<>(result, size, count, false);
+    for ( final Promise<? extends T> promise : promises ) {
+      promise.onComplete((value, cause) -> gather.accept(-1, value, cause));
+    }
+    return result;
+  }
+
+  /**
+   * Wait for the outcome of a promise and pass it to an action: the result
+   * and a null cause, or a null result and the cause of the failure.
+   * Exceptions thrown by the action are ignored, as they are when
+   * BasicPromise runs its actions.
+   *
+   * @param promise  the promise.
+   * @param action   the action to run.
+   * @param <T>      the class of object promised.
+   */
+  @SuppressWarnings("PMD.AvoidCatchingGenericException")
+  static <T> void notify(final Promise<T> promise,
+			 final BiConsumer<? super T, ? super Throwable> action) {
+    T result = null;
+    Throwable cause = null;
+    try {
+      result = promise.get();
+    }
+    catch (PromiseFailedException e) {
+      cause = e.getCause();
+    }
+    catch (RuntimeException e) {
+      cause = e;
+    }
+    try {
+      action.accept(result, cause);
+    }
+    catch (RuntimeException e) {
+      // Ignored, like exceptions thrown by BasicPromise actions.
+    }
+  }
+
+  /**
+   * Gather collects the outcomes of a group of promises and completes the
+   * combined promise exactly once: with the results when the required
+   * number of promises succeed, or with a failure when too many fail.
+   *
+   * @param <T>  the class of object promised.
+   */
+  private final static class Gather<T> {
+    private final AtomicInteger claimed;
+    private final AtomicInteger stored;
+    private final AtomicInteger failures;
+    private final AtomicReferenceArray<T> results;
+    private final BasicPromise<List<T>> promise;
+    private final boolean ordered;
+    private final int allowed;
+    private final int count;
+
+    /**
+     * Construct a Gather.
+     *
+     * @param promise  the combined promise.
+     * @param size     the number of promises.
+     * @param count    the number of results required.
+     * @param ordered  true if results are stored by the index of the promise.
+     */
+    Gather(final BasicPromise<List<T>> promise, final int size,
+	   final int count, final boolean ordered) {
+      this.promise = promise;
+      this.count = count;
+      this.ordered = ordered;
+      this.allowed = size - count;
+      this.claimed = new AtomicInteger();
+      this.stored = new AtomicInteger();
+      this.failures = new AtomicInteger();
+      this.results = new AtomicReferenceArray<>(ordered ? size : count);
+      if ( count == 0 ) {
+	promise.set(Collections.<T>emptyList());
+      }
+    }
+
+    /**
+     * Accept the outcome of one promise.
+     *
+     * @param index  the index of the promise, if results are ordered.
+     * @param value  the result of the promise.
+     * @param cause  the cause of the failure, or null.
+     */
+    void accept(final int index, final T value, final Throwable cause) {
+      if ( cause != null ) {
+	if ( failures.incrementAndGet() == allowed + 1 ) {
+	  promise.fail(cause);
+	}
+      }
+      else {
+	final int slot = ordered ? index : claimed.getAndIncrement();
+	if ( slot < results.length() ) {
+	  results.set(slot, value);
+	  if ( stored.incrementAndGet() == count ) {
+	    promise.set(list());
+	  }
+	}
+      }
+    }
+
+    /**
+     * Returns the gathered results as a list.
+     *
+     * @return the gathered results.
+     */
+    private List<T> list() {
+      final List<T> list = new ArrayList<>(results.length());
+      for ( int i = 0; i < results.length(); ++i ) {
+	list.add(results.get(i));
+      }
+      return list;
+    }
+  }
+}
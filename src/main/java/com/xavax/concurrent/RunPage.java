@@ -0,0 +1,229 @@
+package com.xavax.concurrent;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * RunPage is an immutable page container that stores runs of set bits as
+ * pairs of first and last bit indices. It is used for pages filled by long
+ * ranges, and a single shared instance represents every full page.
+ */
+final class RunPage extends PageContainer {
+  final static RunPage FULL = new RunPage(new short[] { 0, LAST_BIT });
+
+  private final short[] runs;
+
+  /**
+   * Construct a RunPage with the specified runs.
+   *
+   * @param runs  the first and last index of each run in ascending order.
+   */
+  private RunPage(final short[] runs) {
+    this.runs = runs;
+  }
+
+  /**
+   * Create a RunPage with a single run of set bits.
+   *
+   * @param fromIndex  the index of the first set bit.
+   * @param toIndex    the index of the last set bit.
+   * @return the new page.
+   */
+  static RunPage create(final int fromIndex, final int toIndex) {
+    return fromIndex == 0 && toIndex == LAST_BIT ? FULL
+	: new RunPage(new short[] { (short) fromIndex, (short) toIndex });
+  }
+
+  /**
+   * Create a RunPage with the specified runs.
+   *
+   * @param runs  the first and last index of each run in ascending order.
+   * @return the new page.
+   */
+  static RunPage create(final short[] runs) {
+    return new RunPage(runs);
+  }
+
+  /**
+   * Create a RunPage containing the set bits of the specified words.
+   *
+   * @param words  the words of the page.
+   * @param count  the number of runs in the words.
+   * @return the new page.
+   */
+  static RunPage create(final long[] words, final int count) {
+    final short[] runs = new short[count * 2];
+    int index = 0;
+    for ( int i = 0; i < runs.length; i += 2 ) {
+      final int first = scan(words, index, true);
+      final int end = scan(words, first, false);
+      index = end < 0 ? BITS_PER_PAGE : end;
+      runs[i] = (short) first;
+      runs[i + 1] = (short) (index - 1);
+    }
+    return new RunPage(runs);
+  }
+
+  /**
+   * Returns the estimated size in bytes of a RunPage with the specified
+   * number of runs.
+   *
+   * @param count  the number of runs.
+   * @return the estimated size in bytes.
+   */
+  static int memoryUsage(final int count) {
+    return align(OBJECT_HEADER_SIZE + REFERENCE_SIZE)
+	 + align(ARRAY_HEADER_SIZE + count * 2 * Short.BYTES);
+  }
+
+  /**
+   * Returns the value of the specified bit as a boolean.
+   *
+   * @param index  the index of a bit within the page.
+   * @return the value of the specified bit.
+   */
+  @Override
+  public boolean get(final int index) {
+    for ( int i = 0; i < runs.length && index >= runs[i]; i += 2 ) {
+      if ( index <= runs[i + 1] ) {
+	return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the word of the page with the specified index.
+   *
+   * @param wordIndex  the index of the desired word.
+   * @return the word with the specified index.
+   */
+  @Override
+  public long word(final int wordIndex) {
+    final int first = wordIndex << LOG2_BITS_PER_LONG;
+    final int last = first + WORD_INDEX_MASK;
+    long result = 0;
+    for ( int i = 0; i < runs.length && runs[i] <= last; i += 2 ) {
+      final int start = Math.max(runs[i], first);
+      final int end = Math.min(runs[i + 1], last);
+      if ( start <= end ) {
+	result |= (-1L << start) & (-1L >>> (WORD_INDEX_MASK - (end & WORD_INDEX_MASK)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the next set bit starting at fromIndex.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next set bit, or -1 if not found.
+   */
+  @Override
+  public int nextSetBit(final int fromIndex) {
+    for ( int i = 0; i < runs.length; i += 2 ) {
+      if ( fromIndex <= runs[i + 1] ) {
+	return Math.max(fromIndex, runs[i]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the next clear bit starting at fromIndex. Runs are never
+   * adjacent, so the bit following a run is always clear.
+   *
+   * @param fromIndex  the index of the bit to begin searching.
+   * @return the index of the next clear bit, or -1 if not found.
+   */
+  @Override
+  public int nextClearBit(final int fromIndex) {
+    int result = fromIndex;
+    for ( int i = 0; i < runs.length && result >= runs[i]; i += 2 ) {
+      if ( result <= runs[i + 1] ) {
+	result = runs[i + 1] + 1;
+	break;
+      }
+    }
+    return result < BITS_PER_PAGE ? result : -1;
+  }
+
+  /**
+   * Returns the number of set bits in this page.
+   *
+   * @return the number of set bits in this page.
+   */
+  @Override
+  public int cardinality() {
+    int result = 0;
+    for ( int i = 0; i < runs.length; i += 2 ) {
+      result += runs[i + 1] - runs[i] + 1;
+    }
+    return result;
+  }
+
+  /**
+   * Returns an estimate of the heap memory used by this page in bytes.
+   * The full page is shared, so it is not charged to any bit set.
+   *
+   * @return the estimated size of this page in bytes.
+   */
+  @Override
+  public int memoryUsage() {
+    return this == FULL ? 0 : memoryUsage(runs.length / 2);
+  }
+
+  /**
+   * Writes the serialized form of this page. The full page is written
+   * as a type with no contents.
+   *
+   * @param output  the output to write to.
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  public void write(final DataOutput output) throws IOException {
+    if ( this == FULL ) {
+      output.writeByte(TYPE_FULL);
+    }
+    else {
+      output.writeByte(TYPE_RUN);
+      writeShorts(output, runs.length / 2, runs);
+    }
+  }
+
+  /**
+   * Returns this page, since it is immutable and may be shared.
+   *
+   * @return this page.
+   */
+  @Override
+  public RunPage copy() {
+    return this;
+  }
+
+  /**
+   * Returns the index of the first bit at or after fromIndex with the
+   * specified value.
+   *
+   * @param words      the words of the page.
+   * @param fromIndex  the index of the bit to begin searching.
+   * @param value      the value to search for.
+   * @return the index of the bit, or -1 if not found.
+   */
+  private static int scan(final long[] words, final int fromIndex, final boolean value) {
+    int result = -1;
+    if ( fromIndex < BITS_PER_PAGE ) {
+      int wordIndex = fromIndex >>> LOG2_BITS_PER_LONG;
+      long word = (value ? words[wordIndex] : ~words[wordIndex]) & (-1L << fromIndex);
+      while ( word == 0 && ++wordIndex < WORDS_PER_PAGE ) {
+	word = value ? words[wordIndex] : ~words[wordIndex];
+      }
+      if ( word != 0 ) {
+	result = (wordIndex << LOG2_BITS_PER_LONG) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return result;
+  }
+}
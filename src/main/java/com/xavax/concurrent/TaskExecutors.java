@@ -0,0 +1,192 @@
+//
+// Copyright 2018 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TaskExecutors creates the threads and executors used to run promise
+ * continuations and deliver events. When the JVM supports virtual threads,
+ * every task runs on its own virtual thread, so hundreds of thousands of
+ * tasks may block at once without a thread pool cap. Otherwise tasks run
+ * on daemon platform threads from an unbounded pool that reuses idle
+ * threads.
+ *
+ * Virtual threads are found with reflection, so this class compiles and
+ * runs on Java 8. Code that may run on a virtual thread should block with
+ * LockSupport or java.util.concurrent locks rather than synchronized,
+ * which pins the carrier thread.
+ */
+public final class TaskExecutors {
+  private final static long KEEP_ALIVE_SECONDS = 60;
+  private final static String DEFAULT_NAME = "xavax-task";
+  private final static String SEPARATOR = "-";
+
+  private final static Method IS_VIRTUAL;
+  private final static Method OF_VIRTUAL;
+  private final static Method BUILDER_NAME;
+  private final static Method BUILDER_FACTORY;
+  private final static Method THREAD_PER_TASK;
+
+  static {
+    Method isVirtual = null;
+    Method ofVirtual = null;
+    Method builderName = null;
+    Method builderFactory = null;
+    Method threadPerTask = null;
+    try {
+      final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      isVirtual = Thread.class.getMethod("isVirtual");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      builderName = builder.getMethod("name", String.class, long.class);
+      builderFactory = builder.getMethod("factory");
+      threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      // Virtual threads are a preview feature in some releases; make sure
+      // they can actually be created.
+      builderFactory.invoke(ofVirtual.invoke(null));
+    }
+    catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      ofVirtual = null;
+    }
+    IS_VIRTUAL = ofVirtual == null ? null : isVirtual;
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = builderName;
+    BUILDER_FACTORY = builderFactory;
+    THREAD_PER_TASK = threadPerTask;
+  }
+
+  /**
+   * Private constructor provided to keep the compiler from generating
+   * a public default constructor.
+   */
+  private TaskExecutors() {}
+
+  /**
+   * Returns true if the JVM supports virtual threads.
+   *
+   * @return true if the JVM supports virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Returns true if the specified thread is a virtual thread.
+   *
+   * @param thread  the thread.
+   * @return true if the thread is a virtual thread.
+   */
+  public static boolean isVirtual(final Thread thread) {
+    boolean result = false;
+    if ( IS_VIRTUAL != null ) {
+      try {
+	result = (Boolean) IS_VIRTUAL.invoke(thread);
+      }
+      catch (ReflectiveOperationException e) {
+	result = false;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a thread factory that creates virtual threads if they are
+   * supported, or daemon platform threads. Threads are named with the
+   * specified prefix followed by a sequence number.
+   *
+   * @param name  the prefix of the thread names.
+   * @return a thread factory.
+   */
+  public static ThreadFactory threadFactory(final String name) {
+    ThreadFactory factory = null;
+    if ( OF_VIRTUAL != null ) {
+      try {
+	final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + SEPARATOR, 0L);
+	factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+      }
+      catch (ReflectiveOperationException e) {
+	factory = null;
+      }
+    }
+    return factory == null ? new DaemonThreadFactory(name) : factory;
+  }
+
+  /**
+   * Returns a new executor that runs each task on its own virtual thread
+   * if virtual threads are supported, or on a daemon platform thread from
+   * an unbounded pool.
+   *
+   * @param name  the prefix of the thread names.
+   * @return a new executor.
+   */
+  public static ExecutorService newTaskExecutor(final String name) {
+    final ThreadFactory factory = threadFactory(name);
+    ExecutorService executor = null;
+    if ( OF_VIRTUAL != null ) {
+      try {
+	executor = (ExecutorService) THREAD_PER_TASK.invoke(null, factory);
+      }
+      catch (ReflectiveOperationException e) {
+	executor = null;
+      }
+    }
+    return executor == null
+	? new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				 new SynchronousQueue<Runnable>(), factory)
+	: executor;
+  }
+
+  /**
+   * Returns a shared executor created by newTaskExecutor. The executor
+   * is never shut down; its platform threads, if any, are daemon threads.
+   *
+   * @return the shared executor.
+   */
+  public static Executor defaultExecutor() {
+    return DefaultExecutorHolder.EXECUTOR;
+  }
+
+  /**
+   * DefaultExecutorHolder creates the shared executor on first use.
+   */
+  private final static class DefaultExecutorHolder {
+    final static Executor EXECUTOR = newTaskExecutor(DEFAULT_NAME);
+  }
+
+  /**
+   * DaemonThreadFactory creates named daemon platform threads.
+   */
+  private final static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicLong sequence;
+    private final String name;
+
+    /**
+     * Construct a DaemonThreadFactory.
+     *
+     * @param name  the prefix of the thread names.
+     */
+    DaemonThreadFactory(final String name) {
+      this.name = name;
+      this.sequence = new AtomicLong();
+    }
+
+    @Override
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    public Thread newThread(final Runnable task) {
+      final Thread thread = new Thread(task, name + SEPARATOR + sequence.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
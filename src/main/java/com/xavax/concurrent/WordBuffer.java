@@ -0,0 +1,281 @@
+package com.xavax.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * WordBuffer provides atomic access to the 64-bit words of a ByteBuffer.
+ * Words are always stored in native byte order.
+ * <p>
+ * On Java 9 and later, words are read and written with the volatile and
+ * compare-and-set access modes of a byte buffer view VarHandle, so no
+ * operation ever blocks, and updates are atomic even for a mapped file
+ * shared with another process. The VarHandle is found with reflection
+ * (as TaskExecutors finds virtual threads), so this class compiles and
+ * runs on Java 8.
+ * <p>
+ * On Java 8, or if the buffer does not support atomic access (a heap
+ * buffer whose array is not aligned, for example), words are accessed
+ * through the buffer while holding one of a small set of striped locks.
+ * The locks only exclude other threads of the same JVM; two processes
+ * updating the same mapped file on Java 8 may lose updates.
+ */
+abstract class WordBuffer {
+  private final static MethodHandle GET;
+  private final static MethodHandle SET;
+  private final static MethodHandle COMPARE_AND_SET;
+
+  static {
+    MethodHandle get = null;
+    MethodHandle set = null;
+    MethodHandle compareAndSet = null;
+    try {
+      final Method view = MethodHandles.class.getMethod("byteBufferViewVarHandle",
+							Class.class, ByteOrder.class);
+      final Object handle = view.invoke(null, long[].class, ByteOrder.nativeOrder());
+      final Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+      final Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+      final Method toMethodHandle = varHandle.getMethod("toMethodHandle", accessMode);
+      get = (MethodHandle) toMethodHandle.invoke(handle, accessMode.getField("GET_VOLATILE").get(null));
+      set = (MethodHandle) toMethodHandle.invoke(handle, accessMode.getField("SET_VOLATILE").get(null));
+      compareAndSet = (MethodHandle) toMethodHandle.invoke(handle,
+							   accessMode.getField("COMPARE_AND_SET").get(null));
+    }
+    catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      get = null;
+    }
+    GET = get;
+    SET = set;
+    COMPARE_AND_SET = compareAndSet;
+  }
+
+  /**
+   * Create a WordBuffer for the specified buffer, using lock-free atomic
+   * operations when the platform and the buffer support them.
+   *
+   * @param buffer  the buffer holding the words.
+   * @return a new WordBuffer.
+   */
+  static WordBuffer create(final ByteBuffer buffer) {
+    WordBuffer result = null;
+    if ( GET != null ) {
+      result = new AtomicWordBuffer(buffer);
+      try {
+	// Atomic access fails for every word if it fails for one.
+	if ( result.size() > 0 ) {
+	  result.get(0);
+	}
+      }
+      catch (IllegalStateException | UnsupportedOperationException e) {
+	result = null;
+      }
+    }
+    return result == null ? new LockingWordBuffer(buffer) : result;
+  }
+
+  /**
+   * Returns true if this buffer updates words without locks.
+   *
+   * @return true if this buffer is lock-free.
+   */
+  abstract boolean isLockFree();
+
+  /**
+   * Returns the number of words in this buffer.
+   *
+   * @return the number of words in this buffer.
+   */
+  abstract int size();
+
+  /**
+   * Returns the word at the specified index with volatile semantics.
+   *
+   * @param index  the index of the word.
+   * @return the word at the specified index.
+   */
+  abstract long get(int index);
+
+  /**
+   * Sets the word at the specified index with volatile semantics.
+   *
+   * @param index  the index of the word.
+   * @param value  the new value of the word.
+   */
+  abstract void set(int index, long value);
+
+  /**
+   * Atomically sets the word at the specified index to value if it
+   * currently equals expected.
+   *
+   * @param index     the index of the word.
+   * @param expected  the expected value.
+   * @param value     the new value.
+   * @return true if the word was updated.
+   */
+  abstract boolean compareAndSet(int index, long expected, long value);
+
+  /**
+   * AtomicWordBuffer accesses the words of a buffer through a byte buffer
+   * view VarHandle.
+   */
+  static final class AtomicWordBuffer extends WordBuffer {
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Construct an AtomicWordBuffer.
+     *
+     * @param buffer  the buffer holding the words.
+     */
+    AtomicWordBuffer(final ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.size = buffer.capacity() / BYTES_PER_LONG;
+    }
+
+    @Override
+    boolean isLockFree() {
+      return true;
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    long get(final int index) {
+      try {
+	return (long) GET.invokeExact(buffer, index * BYTES_PER_LONG);
+      }
+      catch (Throwable e) {
+	throw rethrow(e);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    void set(final int index, final long value) {
+      try {
+	SET.invokeExact(buffer, index * BYTES_PER_LONG, value);
+      }
+      catch (Throwable e) {
+	throw rethrow(e);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    boolean compareAndSet(final int index, final long expected, final long value) {
+      try {
+	return (boolean) COMPARE_AND_SET.invokeExact(buffer, index * BYTES_PER_LONG, expected, value);
+      }
+      catch (Throwable e) {
+	throw rethrow(e);
+      }
+    }
+
+    /**
+     * Returns an unchecked exception to throw for an exception thrown by
+     * a method handle. The access modes only throw unchecked exceptions.
+     *
+     * @param cause  the exception thrown by the method handle.
+     * @return the exception to throw.
+     */
+    private static RuntimeException rethrow(final Throwable cause) {
+      if ( cause instanceof Error ) {
+	throw (Error) cause;
+      }
+      return cause instanceof RuntimeException
+	  ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+
+    @Override
+    public String toString() {
+      return buffer.toString();
+    }
+  }
+
+  /**
+   * LockingWordBuffer accesses the words of any buffer while holding a
+   * lock selected by the word index.
+   */
+  static final class LockingWordBuffer extends WordBuffer {
+    private final static int LOG2_LOCK_STRIPES = 6;
+    private final static int LOCK_STRIPE_MASK = (1 << LOG2_LOCK_STRIPES) - 1;
+
+    private final ByteBuffer buffer;
+    private final Object[] locks;
+    private final int size;
+
+    /**
+     * Construct a LockingWordBuffer.
+     *
+     * @param buffer  the buffer holding the words.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    LockingWordBuffer(final ByteBuffer buffer) {
+      this.buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+      this.size = buffer.capacity() / BYTES_PER_LONG;
+      this.locks = new Object[1 << LOG2_LOCK_STRIPES];
+      for ( int i = 0; i < locks.length; ++i ) {
+	locks[i] = new Object();
+      }
+    }
+
+    @Override
+    boolean isLockFree() {
+      return false;
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    long get(final int index) {
+      synchronized ( lock(index) ) {
+	return buffer.getLong(index * BYTES_PER_LONG);
+      }
+    }
+
+    @Override
+    void set(final int index, final long value) {
+      synchronized ( lock(index) ) {
+	buffer.putLong(index * BYTES_PER_LONG, value);
+      }
+    }
+
+    @Override
+    boolean compareAndSet(final int index, final long expected, final long value) {
+      synchronized ( lock(index) ) {
+	final boolean result = buffer.getLong(index * BYTES_PER_LONG) == expected;
+	if ( result ) {
+	  buffer.putLong(index * BYTES_PER_LONG, value);
+	}
+	return result;
+      }
+    }
+
+    /**
+     * Returns the lock for the word at the specified index.
+     *
+     * @param index  the index of the word.
+     * @return the lock for the word.
+     */
+    private Object lock(final int index) {
+      return locks[index & LOCK_STRIPE_MASK];
+    }
+
+    @Override
+    public String toString() {
+      return buffer.toString();
+    }
+  }
+}
@@ -0,0 +1,473 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.xavax.concurrent.TaskExecutors;
+import com.xavax.exception.RangeException;
+import com.xavax.util.AbstractJoinableObject;
+import com.xavax.util.Joinable;
+import com.xavax.util.Joiner;
+
+/**
+ * AsyncObserver delivers events to another observer on a worker thread of
+ * its own. Events are placed in a bounded queue by the broadcasting thread
+ * and delivered in order by the worker, so a slow observer never stalls a
+ * broadcaster. When the queue is full, the <i>OverflowPolicy</i> decides
+ * whether the broadcaster blocks or an event is discarded or coalesced.
+ * <p>
+ * An AsyncObserver may be attached to several broadcasters or for several
+ * event types, in which case it serves as the queue and worker for that
+ * group of subscriptions. The worker is created by a thread factory from
+ * <i>TaskExecutors</i> by default, so it is a virtual thread when the JVM
+ * supports them. Closing an AsyncObserver discards later events and stops
+ * the worker once the queued events have been delivered.
+ * <p>
+ * The metrics report the queue depth, the number of events delivered,
+ * dropped, and coalesced, and the delivery latency: the time from when an
+ * event is queued until it is handed to the observer.
+ */
+public class AsyncObserver extends AbstractJoinableObject implements Observer, AutoCloseable {
+  public final static int DEFAULT_CAPACITY = 1024;
+  private final static String THREAD_NAME = "xavax-observer";
+
+  private final int capacity;
+  private final Observer target;
+  private final OverflowPolicy policy;
+  private final ArrayDeque<Entry> queue;
+  private final IntMap<Entry> pending;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final CountDownLatch terminated;
+  private final InternalMetrics metrics;
+  private boolean closed;
+
+  /**
+   * Construct an AsyncObserver with the default capacity that blocks
+   * broadcasters when the queue is full.
+   *
+   * @param target  the observer to which events are delivered.
+   */
+  public AsyncObserver(final Observer target) {
+    this(target, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Construct an AsyncObserver.
+   *
+   * @param target    the observer to which events are delivered.
+   * @param capacity  the maximum number of queued events.
+   * @param policy    the policy applied when the queue is full.
+   */
+  public AsyncObserver(final Observer target, final int capacity, final OverflowPolicy policy) {
+    this(target, capacity, policy, TaskExecutors.threadFactory(THREAD_NAME));
+  }
+
+  /**
+   * Construct an AsyncObserver whose worker is created by the specified
+   * thread factory.
+   *
+   * @param target    the observer to which events are delivered.
+   * @param capacity  the maximum number of queued events.
+   * @param policy    the policy applied when the queue is full.
+   * @param factory   the factory used to create the worker thread.
+   */
+  public AsyncObserver(final Observer target, final int capacity,
+		       final OverflowPolicy policy, final ThreadFactory factory) {
+    if ( capacity < 1 ) {
+      throw new RangeException(1, Integer.MAX_VALUE, capacity);
+    }
+    this.target = target;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.queue = new ArrayDeque<>(Math.min(capacity, DEFAULT_CAPACITY));
+    this.pending = policy == OverflowPolicy.COALESCE ? new IntMap<>() : null;
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.notFull = lock.newCondition();
+    this.terminated = new CountDownLatch(1);
+    this.metrics = new InternalMetrics();
+    this.closed = false;
+    factory.newThread(this::deliver).start();
+  }
+
+  /**
+   * Queue an event for delivery to the observer, applying the overflow
+   * policy if the queue is full. Events received after this observer is
+   * closed, or while a blocked broadcaster is interrupted, are dropped.
+   *
+   * @param event  the event being broadcast.
+   */
+  @Override
+  public void notify(final Event event) {
+    final long now = System.nanoTime();
+    final int type = event.type();
+    lock.lock();
+    try {
+      if ( pending != null ) {
+	final Entry entry = pending.get(type);
+	if ( entry != null ) {
+	  entry.event = event;
+	  metrics.coalesced.increment();
+	  return;
+	}
+      }
+      while ( !closed && queue.size() >= capacity ) {
+	if ( policy == OverflowPolicy.DROP_NEWEST ) {
+	  metrics.dropped.increment();
+	  return;
+	}
+	else if ( policy == OverflowPolicy.BLOCK ) {
+	  try {
+	    notFull.await();
+	  }
+	  catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    metrics.dropped.increment();
+	    return;
+	  }
+	}
+	else {
+	  remove(queue.poll());
+	  metrics.dropped.increment();
+	}
+      }
+      if ( closed ) {
+	metrics.dropped.increment();
+	return;
+      }
+      final Entry entry = new Entry(event, type, now);
+      queue.add(entry);
+      if ( pending != null ) {
+	pending.put(type, entry);
+      }
+      metrics.queued.increment();
+      notEmpty.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stop accepting events. The worker exits after delivering the events
+   * already queued, and broadcasters blocked on a full queue return.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until the worker has exited after this observer was closed.
+   *
+   * @param timeout  the maximum time to wait.
+   * @param unit     the unit of the timeout.
+   * @return true if the worker exited.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  /**
+   * Returns the number of events waiting in the queue.
+   *
+   * @return the number of events waiting in the queue.
+   */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return queue.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the metrics for this observer.
+   *
+   * @return a snapshot of the metrics.
+   */
+  public Metrics getMetrics() {
+    return new Metrics(metrics, getQueueDepth());
+  }
+
+  /**
+   * Deliver queued events to the observer until this observer is closed
+   * and the queue is empty. Runs on the worker thread.
+   */
+  @SuppressWarnings("PMD.AvoidCatchingGenericException")
+  private void deliver() {
+    try {
+      Entry entry;
+      while ( (entry = take()) != null ) {
+	final long latency = System.nanoTime() - entry.time;
+	metrics.totalLatency.add(latency);
+	metrics.maxLatency.accumulate(latency);
+	try {
+	  target.notify(entry.event);
+	}
+	catch (RuntimeException e) {
+	  metrics.failures.increment();
+	}
+	metrics.delivered.increment();
+      }
+    }
+    finally {
+      terminated.countDown();
+    }
+  }
+
+  /**
+   * Remove and return the next queued event, waiting if necessary.
+   *
+   * @return the next queued event, or null if this observer is closed
+   *         and the queue is empty.
+   */
+  private Entry take() {
+    lock.lock();
+    try {
+      while ( queue.isEmpty() ) {
+	if ( closed ) {
+	  return null;
+	}
+	notEmpty.awaitUninterruptibly();
+      }
+      final Entry entry = queue.poll();
+      remove(entry);
+      notFull.signal();
+      return entry;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Forget an entry that has left the queue so it is no longer coalesced.
+   *
+   * @param entry  the entry.
+   */
+  private void remove(final Entry entry) {
+    if ( pending != null ) {
+      pending.remove(entry.type);
+    }
+  }
+
+  /**
+   * Output this object to the specified joiner.
+   *
+   * @param joiner  the joiner to use for output.
+   * @return this joiner.
+   */
+  @Override
+  protected Joiner doJoin(final Joiner joiner) {
+    joiner.append("policy", policy.name())
+	  .append("capacity", capacity)
+	  .append("depth", getQueueDepth());
+    return joiner;
+  }
+
+  /**
+   * Entry is a queued event and the time it was queued. A coalesced entry
+   * keeps its place in the queue and its time, and receives the new event.
+   */
+  private final static class Entry {
+    Event event;
+    final int type;
+    final long time;
+
+    /**
+     * Construct an Entry.
+     *
+     * @param event  the event.
+     * @param type   the type of the event.
+     * @param time   the time the event was queued in nanoseconds.
+     */
+    Entry(final Event event, final int type, final long time) {
+      this.event = event;
+      this.type = type;
+      this.time = time;
+    }
+  }
+
+  /**
+   * Metrics is a snapshot of the metrics for an AsyncObserver.
+   */
+  public static class Metrics extends AbstractJoinableObject implements Joinable {
+    private final static int METRICS_BUFFER_SIZE = 128;
+
+    private final int queueDepth;
+    private final long coalesced;
+    private final long delivered;
+    private final long dropped;
+    private final long failures;
+    private final long maxLatency;
+    private final long queued;
+    private final long totalLatency;
+
+    /**
+     * Construct a snapshot of the internal metrics. The counters are read
+     * one at a time while events are delivered, so the snapshot is not
+     * atomic.
+     *
+     * @param metrics     the internal metrics.
+     * @param queueDepth  the number of queued events.
+     */
+    Metrics(final InternalMetrics metrics, final int queueDepth) {
+      this.queueDepth = queueDepth;
+      coalesced = metrics.coalesced.sum();
+      delivered = metrics.delivered.sum();
+      dropped = metrics.dropped.sum();
+      failures = metrics.failures.sum();
+      maxLatency = metrics.maxLatency.get();
+      queued = metrics.queued.sum();
+      totalLatency = metrics.totalLatency.sum();
+    }
+
+    /**
+     * Returns the number of events waiting in the queue.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * Returns the number of events queued.
+     *
+     * @return the number of events queued.
+     */
+    public long getQueued() {
+      return queued;
+    }
+
+    /**
+     * Returns the number of events delivered to the observer.
+     *
+     * @return the number of events delivered.
+     */
+    public long getDelivered() {
+      return delivered;
+    }
+
+    /**
+     * Returns the number of events discarded because the queue was full
+     * or the observer was closed.
+     *
+     * @return the number of events dropped.
+     */
+    public long getDropped() {
+      return dropped;
+    }
+
+    /**
+     * Returns the number of events that replaced a queued event of the
+     * same type.
+     *
+     * @return the number of events coalesced.
+     */
+    public long getCoalesced() {
+      return coalesced;
+    }
+
+    /**
+     * Returns the number of deliveries in which the observer threw an
+     * exception.
+     *
+     * @return the number of failed deliveries.
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    /**
+     * Returns the mean delivery latency in nanoseconds, or zero if no
+     * events were delivered.
+     *
+     * @return the mean delivery latency in nanoseconds.
+     */
+    public long getMeanLatency() {
+      return delivered == 0 ? 0 : totalLatency / delivered;
+    }
+
+    /**
+     * Returns the maximum delivery latency in nanoseconds.
+     *
+     * @return the maximum delivery latency in nanoseconds.
+     */
+    public long getMaxLatency() {
+      return maxLatency;
+    }
+
+    /**
+     * Returns the metrics as a string.
+     *
+     * @return the metrics as a string.
+     */
+    @Override
+    public String toString() {
+      return doJoin(Joiner.create(METRICS_BUFFER_SIZE)).toString();
+    }
+
+    /**
+     * Join this object to the specified joiner.
+     *
+     * @param joiner  the joiner to use.
+     * @return the joiner.
+     */
+    @Override
+    public Joiner doJoin(final Joiner joiner) {
+      joiner.appendRaw("{ ")
+	  .append("depth", queueDepth)
+	  .append("queued", queued)
+	  .append("delivered", delivered)
+	  .append("dropped", dropped)
+	  .append("coalesced", coalesced)
+	  .append("failures", failures)
+	  .append("mean", getMeanLatency())
+	  .append("max", maxLatency)
+	  .appendRaw(" }");
+      return joiner;
+    }
+  }
+
+  /**
+   * InternalMetrics holds the counters updated by broadcasters and the
+   * worker.
+   */
+  static class InternalMetrics {
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+  }
+}
@@ -6,8 +6,12 @@
 
 package com.xavax.event;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.xavax.util.CollectionFactory;
 import com.xavax.util.Joinable;
@@ -17,18 +21,52 @@ import com.xavax.util.Joiner;
  * BroadcastHelper is a basic broadcaster of events. The development
  * of a broadcaster is simplified by delegating  all <i>Broadcaster</i>
  * methods to an instance of BroadcastHelper. Broadcast helper maintains
- * a <i>Map</i> of observers indexed by event type. Each map entry is a
- * <i>List</i> of observers for that event type.
+ * a map of observers indexed by event type. Each map entry is an array
+ * of observers for that event type.
+ * <p>
+ * The map and its arrays are never modified once published. Attach and
+ * detach build a modified copy while holding a lock and then publish it
+ * through a volatile field, so broadcast never takes a lock: broadcasts
+ * from different threads run concurrently, and a slow observer delays
+ * neither other broadcasters nor attach and detach. A broadcast uses the
+ * observers attached when it started, so an observer detached during a
+ * broadcast may still receive that event.
+ * <p>
+ * By default, observers are notified on the broadcasting thread. If an
+ * <i>Executor</i> is provided, each notification is submitted to the
+ * executor instead; an executor from <i>TaskExecutors</i> delivers every
+ * notification on its own virtual thread when the JVM supports them. The
+ * writer lock is a <i>ReentrantLock</i> rather than a monitor so that it
+ * does not pin the carrier of a virtual thread.
  */
 public class BroadcastHelper implements Broadcaster, Joinable {
-  protected Map<Integer,List<Observer>> observerMap;
+  private final static Observer[] NO_OBSERVERS = new Observer[0];
+
+  private volatile IntMap<Observer[]> observerMap;
+  private final ReentrantLock lock;
+  private final Executor executor;
 
   /**
-   * Construct a BroadcastHelper.
+   * Construct a BroadcastHelper that notifies observers on the
+   * broadcasting thread.
    */
   public BroadcastHelper()
   {
-    observerMap = CollectionFactory.treeMap();
+    this(null);
+  }
+
+  /**
+   * Construct a BroadcastHelper that notifies observers using the
+   * specified executor.
+   *
+   * @param executor  the executor used to notify observers, or null to
+   *                  notify them on the broadcasting thread.
+   */
+  public BroadcastHelper(final Executor executor)
+  {
+    this.executor = executor;
+    observerMap = new IntMap<>();
+    lock = new ReentrantLock();
   }
 
   /**
@@ -39,14 +77,19 @@ public class BroadcastHelper implements Broadcaster, Joinable {
    */
   public void attach(final int type, final Observer observer)
   {
-    final Integer key = Integer.valueOf(type);
-    synchronized (this) {
-      List<Observer> observers = observerMap.get(key);
-      if ( observers == null ) {
-	observers = CollectionFactory.arrayList();
-	observerMap.put(key, observers);
-      }
-      observers.add(observer);
+    lock.lock();
+    try {
+      final IntMap<Observer[]> map = new IntMap<>(observerMap);
+      final Observer[] observers = map.get(type);
+      final Observer[] updated = observers == null
+	  ? new Observer[] { observer }
+	  : Arrays.copyOf(observers, observers.length + 1);
+      updated[updated.length - 1] = observer;
+      map.put(type, updated);
+      observerMap = map;
+    }
+    finally {
+      lock.unlock();
     }
   }
 
@@ -58,13 +101,57 @@ public class BroadcastHelper implements Broadcaster, Joinable {
    */
   public void detach(final int type, final Observer observer)
   {
-    final Integer key = Integer.valueOf(type);
-    synchronized ( this ) {
-      final List<Observer> observers = observerMap.get(key);
-      if ( observers != null ) {
-	observers.remove(observer);
+    lock.lock();
+    try {
+      final Observer[] observers = observerMap.get(type);
+      final int index = observers == null ? -1 : indexOf(observers, observer);
+      if ( index >= 0 ) {
+	final IntMap<Observer[]> map = new IntMap<>(observerMap);
+	if ( observers.length == 1 ) {
+	  map.remove(type);
+	}
+	else {
+	  final Observer[] updated = new Observer[observers.length - 1];
+	  System.arraycopy(observers, 0, updated, 0, index);
+	  System.arraycopy(observers, index + 1, updated, index, updated.length - index);
+	  map.put(type, updated);
+	}
+	observerMap = map;
       }
     }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the observers currently attached for the specified event type.
+   *
+   * @param type  the event type.
+   * @return the observers of the event type.
+   */
+  public Observer[] observers(final int type)
+  {
+    final Observer[] observers = observerMap.get(type);
+    return observers == null ? NO_OBSERVERS : observers.clone();
+  }
+
+  /**
+   * Returns a snapshot of the observers attached for each event type,
+   * ordered by event type. This replaces the observerMap field that
+   * subclasses could read before; the snapshot cannot be modified and
+   * does not change when observers are attached or detached later.
+   *
+   * @return the observers attached for each event type.
+   */
+  protected Map<Integer, List<Observer>> observerMap()
+  {
+    final IntMap<Observer[]> map = observerMap;
+    final Map<Integer, List<Observer>> result = CollectionFactory.treeMap();
+    for ( final int type : map.keys() ) {
+      result.put(type, Collections.unmodifiableList(Arrays.asList(map.get(type))));
+    }
+    return Collections.unmodifiableMap(result);
   }
 
   /**
@@ -74,16 +161,34 @@ public class BroadcastHelper implements Broadcaster, Joinable {
    */
   public void broadcast(final Event event)
   {
-    final int type = event.type();
-    final Integer key = Integer.valueOf(type);
-    synchronized ( this ) {
-      final List<Observer> observers = observerMap.get(key);
-      if ( observers != null ) {
-	for ( final Observer observer : observers ) {
+    final Observer[] observers = observerMap.get(event.type());
+    if ( observers != null ) {
+      for ( final Observer observer : observers ) {
+	if ( executor == null ) {
 	  observer.notify(event);
 	}
+	else {
+	  executor.execute(() -> observer.notify(event));
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the first occurrence of an observer in an array.
+   *
+   * @param observers  the array of observers.
+   * @param observer   the observer to find.
+   * @return the index of the observer, or -1 if it is not found.
+   */
+  private static int indexOf(final Observer[] observers, final Observer observer)
+  {
+    for ( int i = 0; i < observers.length; ++i ) {
+      if ( observers[i].equals(observer) ) {
+	return i;
       }
     }
+    return -1;
   }
 
   /**
@@ -6,8 +6,13 @@
 
 package com.xavax.event;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.xavax.util.CollectionFactory;
@@ -16,19 +21,28 @@ import com.xavax.util.CollectionFactory;
  * EventQueue manages a queue of events. Rather than broadcasting the events to
  * a list of observers, EventQueue saves the event in a FIFO queue until a
  * client requests the next event of a specific type. EventQueue maintains a map
- * of FIFO queues keyed by the event type.
+ * of FIFO queues keyed by the event type. The map never boxes a type and
+ * never locks a reader: see <i>TypeMap</i>.
+ * <p>
+ * A consumer may poll for an event, wait until an event of one type or of
+ * any of several types arrives, or drain a batch of events in one call.
+ * Enqueuing an event only takes a lock when a consumer is waiting.
  */
 public class EventQueue {
-  final ReentrantLock mapLock;
-  final protected Map<Integer, ConcurrentLinkedQueue<Event>> queueMap;
+  private final TypeMap<ConcurrentLinkedQueue<Event>> queueMap;
+  private final ReentrantLock lock;
+  private final Condition available;
+  private final AtomicInteger waiting;
 
   /**
    * Construct an EventQueue.
    */
   public EventQueue()
   {
-    mapLock = new ReentrantLock();
-    queueMap = CollectionFactory.hashMap();
+    queueMap = new TypeMap<>();
+    lock = new ReentrantLock();
+    available = lock.newCondition();
+    waiting = new AtomicInteger();
   }
 
   /**
@@ -42,6 +56,15 @@ public class EventQueue {
     if ( event != null ) {
       final ConcurrentLinkedQueue<Event> queue = getQueue(event.type(), true);
       queue.add(event);
+      if ( waiting.get() > 0 ) {
+	try {
+	  lock.lock();
+	  available.signalAll();
+	}
+	finally {
+	  lock.unlock();
+	}
+      }
     }
   }
 
@@ -64,6 +87,91 @@ public class EventQueue {
     return result;
   }
 
+  /**
+   * Dequeue and return an event of the specified type, waiting until one
+   * is enqueued if necessary.
+   *
+   * @param type the type of event to dequeue.
+   * @return an event of the specified type.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public Event take(final int type) throws InterruptedException
+  {
+    return await(new int[] { type }, false, 0);
+  }
+
+  /**
+   * Dequeue and return an event of the specified type, waiting up to the
+   * specified time for one to be enqueued if necessary.
+   *
+   * @param type     the type of event to dequeue.
+   * @param timeout  the maximum time to wait.
+   * @param unit     the unit of the timeout.
+   * @return an event of the specified type, or null if none was enqueued
+   *         before the timeout.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public Event poll(final int type, final long timeout, final TimeUnit unit)
+      throws InterruptedException
+  {
+    return await(new int[] { type }, true, unit.toNanos(timeout));
+  }
+
+  /**
+   * Dequeue and return an event of any of the specified types, waiting
+   * until one is enqueued if necessary. If events of several types are
+   * waiting, the types are tried in the order given.
+   *
+   * @param types the types of event to dequeue.
+   * @return an event of one of the specified types.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public Event takeAny(final int... types) throws InterruptedException
+  {
+    return await(types, false, 0);
+  }
+
+  /**
+   * Dequeue and return an event of any of the specified types, waiting up
+   * to the specified time for one to be enqueued if necessary. If events
+   * of several types are waiting, the types are tried in the order given.
+   *
+   * @param timeout  the maximum time to wait.
+   * @param unit     the unit of the timeout.
+   * @param types    the types of event to dequeue.
+   * @return an event of one of the specified types, or null if none was
+   *         enqueued before the timeout.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public Event pollAny(final long timeout, final TimeUnit unit, final int... types)
+      throws InterruptedException
+  {
+    return await(types, true, unit.toNanos(timeout));
+  }
+
+  /**
+   * Dequeue up to max events of the specified type, oldest first, and add
+   * them to the specified collection. This never waits.
+   *
+   * @param type    the type of event to dequeue.
+   * @param target  the collection to which the events are added.
+   * @param max     the maximum number of events to dequeue.
+   * @return the number of events dequeued.
+   */
+  public int drain(final int type, final Collection<? super Event> target, final int max)
+  {
+    int count = 0;
+    final ConcurrentLinkedQueue<Event> queue = getQueue(type, false);
+    if ( queue != null ) {
+      Event event;
+      while ( count < max && (event = queue.poll()) != null ) {
+	target.add(event);
+	++count;
+      }
+    }
+    return count;
+  }
+
   /**
    * Flush all events of the specified type.
    *
@@ -77,14 +185,81 @@ public class EventQueue {
     }
   }
 
+  /**
+   * Returns a snapshot of the queues of events, keyed by event type. This
+   * replaces the queueMap field that subclasses could read before. The
+   * map cannot be modified and does not include queues created later,
+   * but the queues in it are the live queues of this EventQueue. An event
+   * added to one of them directly does not wake a consumer waiting in
+   * dequeue; use enqueue instead.
+   *
+   * @return the queues of events keyed by event type.
+   */
+  protected Map<Integer, ConcurrentLinkedQueue<Event>> queueMap()
+  {
+    final Map<Integer, ConcurrentLinkedQueue<Event>> result = CollectionFactory.treeMap();
+    queueMap.forEachType((queue, type) -> result.put(type, queue));
+    return Collections.unmodifiableMap(result);
+  }
+
   /**
    * Flush all events.
    */
   public void flush()
   {
-    for ( final ConcurrentLinkedQueue<Event> queue : queueMap.values() ) {
-      queue.clear();
+    queueMap.forEach(ConcurrentLinkedQueue::clear);
+  }
+
+  /**
+   * Dequeue an event of any of the specified types, waiting if necessary.
+   * A waiting consumer is counted before it checks the queues again, so an
+   * enqueue either sees the count and signals, or is seen by the check.
+   *
+   * @param types  the types of event to dequeue.
+   * @param timed  true if the wait is limited by a timeout.
+   * @param nanos  the timeout in nanoseconds.
+   * @return an event of one of the specified types, or null on timeout.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private Event await(final int[] types, final boolean timed, final long nanos)
+      throws InterruptedException
+  {
+    Event result = pollFirst(types);
+    if ( result == null ) {
+      long remaining = nanos;
+      lock.lockInterruptibly();
+      waiting.incrementAndGet();
+      try {
+	while ( (result = pollFirst(types)) == null && (!timed || remaining > 0) ) {
+	  if ( timed ) {
+	    remaining = available.awaitNanos(remaining);
+	  }
+	  else {
+	    available.await();
+	  }
+	}
+      }
+      finally {
+	waiting.decrementAndGet();
+	lock.unlock();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Dequeue an event of the first of the specified types that has one.
+   *
+   * @param types  the types of event to dequeue.
+   * @return an event of one of the specified types, or null.
+   */
+  private Event pollFirst(final int[] types)
+  {
+    Event result = null;
+    for ( int i = 0; result == null && i < types.length; ++i ) {
+      result = dequeue(types[i]);
     }
+    return result;
   }
 
   /**
@@ -96,21 +271,8 @@ public class EventQueue {
    * @return the specified queue from the queue map.
    */
   private ConcurrentLinkedQueue<Event> getQueue(final int type, final boolean create) {
-    final Integer key = type;
-    ConcurrentLinkedQueue<Event> queue = queueMap.get(key);
-    if ( queue == null && create ) {
-      try {
-	mapLock.lock();
-	queue = queueMap.get(key);
-	if ( queue == null ) {
-	  queue = CollectionFactory.concurrentLinkedQueue();
-	  queueMap.put(key, queue);
-	}
-      }
-      finally {
-	mapLock.unlock();
-      }
-    }
-    return queue;
+    return create
+	? queueMap.computeIfAbsent(type, key -> CollectionFactory.concurrentLinkedQueue())
+	: queueMap.get(type);
   }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.Arrays;
+
+/**
+ * IntMap is a map from primitive int keys to non-null values that never
+ * boxes a key. It uses open addressing with linear probing in a table
+ * whose capacity is a power of two, at most half full. IntMap is not
+ * thread-safe; callers that share one either guard it with a lock or
+ * copy it on write and never modify it after publishing it.
+ *
+ * @param <V>  the class of the values.
+ */
+final class IntMap<V> {
+  private final static int MIN_CAPACITY = 8;
+  private final static int HASH_MULTIPLIER = 0x9E3779B9;
+
+  private int[] keys;
+  private Object[] values;
+  private int shift;
+  private int size;
+
+  /**
+   * Construct an empty IntMap.
+   */
+  IntMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  /**
+   * Construct an IntMap holding the same entries as another IntMap.
+   *
+   * @param other  the map to copy.
+   */
+  IntMap(final IntMap<V> other) {
+    keys = other.keys.clone();
+    values = other.values.clone();
+    shift = other.shift;
+    size = other.size;
+  }
+
+  /**
+   * Returns the number of entries in this map.
+   *
+   * @return the number of entries in this map.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value for the specified key, or null.
+   *
+   * @param key  the key.
+   * @return the value for the key, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  V get(final int key) {
+    final int mask = values.length - 1;
+    for ( int i = slot(key); ; i = (i + 1) & mask ) {
+      final Object value = values[i];
+      if ( value == null || keys[i] == key ) {
+	return (V) value;
+      }
+    }
+  }
+
+  /**
+   * Associates the specified value with the specified key.
+   *
+   * @param key    the key.
+   * @param value  the value (not null).
+   * @return the previous value for the key, or null.
+   */
+  @SuppressWarnings("unchecked")
+  V put(final int key, final V value) {
+    final int mask = values.length - 1;
+    int i = slot(key);
+    while ( values[i] != null && keys[i] != key ) {
+      i = (i + 1) & mask;
+    }
+    final V previous = (V) values[i];
+    keys[i] = key;
+    values[i] = value;
+    if ( previous == null && ++size > values.length >>> 1 ) {
+      resize(values.length << 1);
+    }
+    return previous;
+  }
+
+  /**
+   * Removes the entry for the specified key.
+   *
+   * @param key  the key.
+   * @return the previous value for the key, or null.
+   */
+  @SuppressWarnings("unchecked")
+  V remove(final int key) {
+    final int mask = values.length - 1;
+    int i = slot(key);
+    while ( values[i] != null && keys[i] != key ) {
+      i = (i + 1) & mask;
+    }
+    final V previous = (V) values[i];
+    if ( previous != null ) {
+      --size;
+      // Shift back any later entry whose probe sequence passes through i.
+      int hole = i;
+      for ( int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask ) {
+	final int home = slot(keys[j]);
+	if ( ((j - home) & mask) >= ((j - hole) & mask) ) {
+	  keys[hole] = keys[j];
+	  values[hole] = values[j];
+	  hole = j;
+	}
+      }
+      values[hole] = null;
+    }
+    return previous;
+  }
+
+  /**
+   * Returns the keys in this map in ascending order.
+   *
+   * @return the keys in this map.
+   */
+  int[] keys() {
+    final int[] result = new int[size];
+    int count = 0;
+    for ( int i = 0; i < values.length; ++i ) {
+      if ( values[i] != null ) {
+	result[count++] = keys[i];
+      }
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Returns the home slot of the specified key.
+   *
+   * @param key  the key.
+   * @return the home slot of the key.
+   */
+  private int slot(final int key) {
+    return (key * HASH_MULTIPLIER) >>> shift;
+  }
+
+  /**
+   * Allocate empty tables of the specified capacity.
+   *
+   * @param capacity  the capacity (a power of two).
+   */
+  private void allocate(final int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+  }
+
+  /**
+   * Rehash the entries into tables of the specified capacity.
+   *
+   * @param capacity  the new capacity (a power of two).
+   */
+  private void resize(final int capacity) {
+    final int[] oldKeys = keys;
+    final Object[] oldValues = values;
+    allocate(capacity);
+    final int mask = capacity - 1;
+    for ( int i = 0; i < oldValues.length; ++i ) {
+      if ( oldValues[i] != null ) {
+	int j = slot(oldKeys[i]);
+	while ( values[j] != null ) {
+	  j = (j + 1) & mask;
+	}
+	keys[j] = oldKeys[i];
+	values[j] = oldValues[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import com.xavax.util.Joinable;
+import com.xavax.util.Joiner;
+
+/**
+ * MutableEvent is an event whose type, source, and value may be changed,
+ * so one instance can carry many events. A <i>RingEventQueue</i> keeps a
+ * MutableEvent in each slot of its rings and copies events into and out
+ * of them, and a consumer may reuse one MutableEvent for every event it
+ * dequeues.
+ */
+public class MutableEvent implements Event, Joinable {
+  private int type;
+  private Broadcaster source;
+  private Object value;
+
+  /**
+   * Construct an empty MutableEvent.
+   */
+  public MutableEvent()
+  {
+    this(0, null, null);
+  }
+
+  /**
+   * Construct a MutableEvent.
+   *
+   * @param type    the type of this event.
+   * @param source  the source of this event.
+   * @param value   the value carried by this event.
+   */
+  public MutableEvent(final int type, final Broadcaster source, final Object value)
+  {
+    set(type, source, value);
+  }
+
+  /**
+   * Returns the type of this event.
+   *
+   * @return the type of this event.
+   */
+  public int type()
+  {
+    return this.type;
+  }
+
+  /**
+   * Returns the source of this event.
+   *
+   * @return the source of this event.
+   */
+  public Broadcaster source()
+  {
+    return this.source;
+  }
+
+  /**
+   * Sets the source of this event.
+   *
+   * @param source  the source of this event.
+   */
+  public void source(final Broadcaster source)
+  {
+    this.source = source;
+  }
+
+  /**
+   * Returns the value carried by this event.
+   *
+   * @return the value carried by this event.
+   */
+  public Object value()
+  {
+    return this.value;
+  }
+
+  /**
+   * Sets the type, source, and value of this event.
+   *
+   * @param type    the type of this event.
+   * @param source  the source of this event.
+   * @param value   the value carried by this event.
+   * @return this event.
+   */
+  public MutableEvent set(final int type, final Broadcaster source, final Object value)
+  {
+    this.type = type;
+    this.source = source;
+    this.value = value;
+    return this;
+  }
+
+  /**
+   * Copy the specified event into this event. The value is copied if the
+   * event is a MutableEvent; otherwise the event itself becomes the value.
+   *
+   * @param event  the event to copy.
+   * @return this event.
+   */
+  public MutableEvent copy(final Event event)
+  {
+    final Object eventValue = event instanceof MutableEvent ? ((MutableEvent) event).value : event;
+    return set(event.type(), event.source(), eventValue);
+  }
+
+  /**
+   * Clear the source and value of this event so they may be collected.
+   */
+  public void clear()
+  {
+    this.source = null;
+    this.value = null;
+  }
+
+  /**
+   * Returns a string representation of this event.
+   *
+   * @return a string representation of this event.
+   */
+  public String toString()
+  {
+    return join(Joiner.create()).toString();
+  }
+
+  /**
+   * Join this object to the specified joiner.
+   *
+   * @param joiner  the joiner to use.
+   * @return the joiner.
+   */
+  public Joiner join(final Joiner joiner) {
+    joiner.appendField("type", type)
+	  .appendField("source", source)
+	  .appendField("value", value);
+    return joiner;
+  }
+}
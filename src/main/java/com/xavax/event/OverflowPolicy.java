@@ -0,0 +1,35 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+/**
+ * OverflowPolicy determines what an <i>AsyncObserver</i> does with an
+ * event when its delivery queue is full.
+ */
+public enum OverflowPolicy {
+  /**
+   * Block the broadcasting thread until there is room in the queue.
+   */
+  BLOCK,
+
+  /**
+   * Discard the oldest queued event to make room for the new event.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Discard the new event.
+   */
+  DROP_NEWEST,
+
+  /**
+   * Replace a queued event of the same type with the new event, so at most
+   * one event of each type is queued. If the queue is full and holds no
+   * event of the same type, discard the oldest queued event.
+   */
+  COALESCE
+}
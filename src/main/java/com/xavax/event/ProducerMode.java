@@ -0,0 +1,25 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+/**
+ * ProducerMode tells a <i>RingEventQueue</i> how many threads enqueue
+ * events, which determines how a producer claims a slot in a ring.
+ */
+public enum ProducerMode {
+  /**
+   * Only one thread enqueues events. A slot is claimed by incrementing a
+   * counter owned by that thread, with no atomic read-modify-write.
+   */
+  SINGLE,
+
+  /**
+   * Any number of threads enqueue events. A slot is claimed with a
+   * compare-and-set on a shared counter.
+   */
+  MULTI
+}
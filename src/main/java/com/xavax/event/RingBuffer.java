@@ -0,0 +1,286 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RingBuffer is a bounded FIFO queue of events in a preallocated array of
+ * mutable event slots. Events are numbered by a sequence that increases
+ * forever; sequence s lives in slot (s mod capacity). Producers claim a
+ * sequence, copy an event into its slot, and publish it. Consumers claim
+ * a run of published sequences, read the slots, and release them back to
+ * the producers in order. Nothing is allocated after construction.
+ * <p>
+ * In SINGLE producer mode, the producer owns the claim counter and
+ * publishes by advancing a cursor. In MULTI producer mode, producers claim
+ * with a compare-and-set and publish each slot by storing its lap number
+ * (the sequence divided by the capacity) in a flag array, so a consumer
+ * never reads a slot whose producer has not finished with it.
+ * <p>
+ * Slots are released strictly in sequence order. A consumer that finishes
+ * a run before a consumer holding an earlier run must wait for that run to
+ * be released before releasing its own, and the producers cannot reuse
+ * any of those slots until then. A consumer waiting this way yields for a
+ * few attempts and then parks briefly between checks, so an observer that
+ * is slow to process its run delays the consumers behind it without
+ * keeping them busy.
+ */
+final class RingBuffer {
+  private final static int RELEASE_SPINS = 64;
+  private final static long RELEASE_PARK_NANOS = 10000;
+
+  private final int capacity;
+  private final int mask;
+  private final int shift;
+  private final boolean multi;
+  private final MutableEvent[] slots;
+  private final AtomicIntegerArray available;
+  private final Sequence claimed;
+  private final Sequence cursor;
+  private final Sequence head;
+  private final Sequence released;
+  private long next;
+  private long releasedCache;
+
+  /**
+   * Construct a RingBuffer.
+   *
+   * @param capacity  the number of slots (a power of two).
+   * @param mode      the producer mode.
+   */
+  RingBuffer(final int capacity, final ProducerMode mode) {
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.shift = Integer.numberOfTrailingZeros(capacity);
+    this.multi = mode == ProducerMode.MULTI;
+    this.slots = new MutableEvent[capacity];
+    for ( int i = 0; i < capacity; ++i ) {
+      slots[i] = new MutableEvent();
+    }
+    this.available = multi ? new AtomicIntegerArray(capacity) : null;
+    if ( multi ) {
+      for ( int i = 0; i < capacity; ++i ) {
+	available.set(i, -1);
+      }
+    }
+    this.claimed = new Sequence();
+    this.cursor = new Sequence();
+    this.head = new Sequence();
+    this.released = new Sequence();
+  }
+
+  /**
+   * Returns the number of slots in this ring.
+   *
+   * @return the number of slots in this ring.
+   */
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of events in this ring. The result is only an
+   * estimate while other threads are enqueuing or dequeuing events.
+   *
+   * @return the number of events in this ring.
+   */
+  int size() {
+    final long tail = multi ? claimed.get() : cursor.get();
+    return (int) Math.max(0, Math.min(capacity, tail - head.get()));
+  }
+
+  /**
+   * Copy an event into the next slot and publish it.
+   *
+   * @param type    the type of the event.
+   * @param source  the source of the event.
+   * @param value   the value carried by the event.
+   * @return false if the ring is full.
+   */
+  boolean offer(final int type, final Broadcaster source, final Object value) {
+    final long sequence = multi ? claimMulti() : claimSingle();
+    final boolean result = sequence >= 0;
+    if ( result ) {
+      slots[(int) sequence & mask].set(type, source, value);
+      if ( multi ) {
+	available.lazySet((int) sequence & mask, lap(sequence));
+      }
+      else {
+	cursor.lazySet(sequence + 1);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copy an event into the next slot and publish it.
+   *
+   * @param event  the event.
+   * @return false if the ring is full.
+   */
+  boolean offer(final Event event) {
+    final Object value = event instanceof MutableEvent ? ((MutableEvent) event).value() : event;
+    return offer(event.type(), event.source(), value);
+  }
+
+  /**
+   * Remove the oldest event and copy it into the specified event.
+   *
+   * @param into  the event into which the oldest event is copied.
+   * @return false if the ring is empty.
+   */
+  boolean poll(final MutableEvent into) {
+    long sequence;
+    do {
+      sequence = head.get();
+      if ( !isAvailable(sequence) ) {
+	return false;
+      }
+    } while ( !head.compareAndSet(sequence, sequence + 1) );
+    final MutableEvent slot = slots[(int) sequence & mask];
+    into.set(slot.type(), slot.source(), slot.value());
+    slot.clear();
+    release(sequence, sequence + 1);
+    return true;
+  }
+
+  /**
+   * Remove up to max events and pass each one to the specified observer.
+   * The observer receives the slot itself, which is reused as soon as the
+   * observer returns, so it must copy anything it keeps.
+   *
+   * @param observer  the observer to notify, or null to discard the events.
+   * @param max       the maximum number of events to remove.
+   * @return the number of events removed.
+   */
+  int drainTo(final Observer observer, final int max) {
+    long start;
+    int count;
+    do {
+      start = head.get();
+      count = 0;
+      if ( multi ) {
+	while ( count < max && isAvailable(start + count) ) {
+	  ++count;
+	}
+      }
+      else {
+	count = (int) Math.min(max, cursor.get() - start);
+      }
+      if ( count <= 0 ) {
+	return 0;
+      }
+    } while ( !head.compareAndSet(start, start + count) );
+    try {
+      for ( long sequence = start; sequence < start + count; ++sequence ) {
+	final MutableEvent slot = slots[(int) sequence & mask];
+	try {
+	  if ( observer != null ) {
+	    observer.notify(slot);
+	  }
+	}
+	finally {
+	  slot.clear();
+	}
+      }
+    }
+    finally {
+      release(start, start + count);
+    }
+    return count;
+  }
+
+  /**
+   * Returns true if the event with the specified sequence is published.
+   *
+   * @param sequence  the sequence.
+   * @return true if the event is published.
+   */
+  private boolean isAvailable(final long sequence) {
+    return multi
+	? available.get((int) sequence & mask) == lap(sequence)
+	: sequence < cursor.get();
+  }
+
+  /**
+   * Claim the next sequence for the only producer.
+   *
+   * @return the sequence, or -1 if the ring is full.
+   */
+  private long claimSingle() {
+    final long sequence = next;
+    final long wrap = sequence - capacity;
+    if ( wrap >= releasedCache ) {
+      releasedCache = released.get();
+      if ( wrap >= releasedCache ) {
+	return -1;
+      }
+    }
+    next = sequence + 1;
+    return sequence;
+  }
+
+  /**
+   * Claim the next sequence for one of several producers.
+   *
+   * @return the sequence, or -1 if the ring is full.
+   */
+  private long claimMulti() {
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if ( sequence - capacity >= released.get() ) {
+	return -1;
+      }
+    } while ( !claimed.compareAndSet(sequence, sequence + 1) );
+    return sequence;
+  }
+
+  /**
+   * Release a run of consumed slots to the producers. Consumers release in
+   * the order they claimed, so wait for earlier runs to be released first,
+   * yielding for a few attempts and then parking between checks.
+   *
+   * @param start  the first sequence of the run.
+   * @param end    the sequence after the last one in the run.
+   */
+  private void release(final long start, final long end) {
+    int spins = 0;
+    while ( released.get() != start ) {
+      if ( spins < RELEASE_SPINS ) {
+	++spins;
+	Thread.yield();
+      }
+      else {
+	LockSupport.parkNanos(this, RELEASE_PARK_NANOS);
+      }
+    }
+    released.lazySet(end);
+  }
+
+  /**
+   * Returns the lap number of the specified sequence.
+   *
+   * @param sequence  the sequence.
+   * @return the lap number of the sequence.
+   */
+  private int lap(final long sequence) {
+    return (int) (sequence >>> shift);
+  }
+
+  /**
+   * Sequence is a counter padded so it does not share a cache line with
+   * the other counters of the ring, which are written by other threads.
+   */
+  @SuppressWarnings({ "serial", "PMD.UnusedPrivateField" })
+  private final static class Sequence extends AtomicLong {
+    private long p1, p2, p3, p4, p5, p6, p7;
+  }
+}
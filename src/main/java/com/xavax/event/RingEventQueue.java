@@ -0,0 +1,177 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import com.xavax.exception.RangeException;
+
+/**
+ * RingEventQueue is an alternative to <i>EventQueue</i> for high event
+ * rates. Like EventQueue, it keeps a FIFO queue of events for each event
+ * type, but each queue is a preallocated ring of mutable event slots with
+ * sequence counters rather than a linked list, so enqueuing and dequeuing
+ * an event allocates nothing once the ring for its type exists.
+ * <p>
+ * Events are copied into the ring: the type and source of the event are
+ * stored in a slot, along with the value of a <i>MutableEvent</i> or the
+ * event itself for other events, so a producer may reuse one MutableEvent
+ * for every event it enqueues. Consumers either copy the oldest event into
+ * a MutableEvent of their own, or drain a batch of events through an
+ * observer that reads the slots in place.
+ * <p>
+ * Each ring has a fixed capacity; enqueue returns false when the ring for
+ * the event type is full. In SINGLE producer mode, only one thread at a
+ * time may enqueue events. Any number of threads may dequeue events.
+ */
+public class RingEventQueue {
+  public final static int DEFAULT_CAPACITY = 1024;
+  public final static int MAX_CAPACITY = 1 << 30;
+
+  private final int capacity;
+  private final ProducerMode mode;
+  private final TypeMap<RingBuffer> ringMap;
+
+  /**
+   * Construct a RingEventQueue with the default capacity for any number
+   * of producers.
+   */
+  public RingEventQueue()
+  {
+    this(DEFAULT_CAPACITY, ProducerMode.MULTI);
+  }
+
+  /**
+   * Construct a RingEventQueue. The capacity is rounded up to a power of
+   * two.
+   *
+   * @param capacity  the capacity of the queue for each event type.
+   * @param mode      the producer mode.
+   * @throws RangeException if the capacity is less than 1 or greater than
+   *         MAX_CAPACITY.
+   */
+  public RingEventQueue(final int capacity, final ProducerMode mode)
+  {
+    if ( capacity < 1 || capacity > MAX_CAPACITY ) {
+      throw new RangeException(1, MAX_CAPACITY, capacity);
+    }
+    this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mode = mode;
+    this.ringMap = new TypeMap<>();
+  }
+
+  /**
+   * Returns the capacity of the queue for each event type.
+   *
+   * @return the capacity of the queue for each event type.
+   */
+  public int capacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Enqueue an event. The event is copied to the tail of the FIFO queue
+   * of events of the same type.
+   *
+   * @param event the event to be enqueued.
+   * @return false if the event is null or the queue for its type is full.
+   */
+  public boolean enqueue(final Event event)
+  {
+    return event != null && getRing(event.type(), true).offer(event);
+  }
+
+  /**
+   * Enqueue an event with the specified type, source, and value.
+   *
+   * @param type    the type of the event.
+   * @param source  the source of the event.
+   * @param value   the value carried by the event.
+   * @return false if the queue for the type is full.
+   */
+  public boolean enqueue(final int type, final Broadcaster source, final Object value)
+  {
+    return getRing(type, true).offer(type, source, value);
+  }
+
+  /**
+   * Dequeue the oldest event of the specified type and copy it into the
+   * specified event.
+   *
+   * @param type  the type of event to dequeue.
+   * @param into  the event into which the dequeued event is copied.
+   * @return false if there are no events of the type in the queue.
+   */
+  public boolean dequeue(final int type, final MutableEvent into)
+  {
+    final RingBuffer ring = getRing(type, false);
+    return ring != null && ring.poll(into);
+  }
+
+  /**
+   * Dequeue up to max events of the specified type, oldest first, and
+   * pass each one to the specified observer. The observer receives a slot
+   * of the queue, which is reused as soon as the observer returns, so the
+   * observer must copy anything it keeps.
+   *
+   * @param type      the type of event to dequeue.
+   * @param observer  the observer to notify.
+   * @param max       the maximum number of events to dequeue.
+   * @return the number of events dequeued.
+   */
+  public int drainTo(final int type, final Observer observer, final int max)
+  {
+    final RingBuffer ring = getRing(type, false);
+    return ring == null ? 0 : ring.drainTo(observer, max);
+  }
+
+  /**
+   * Returns the number of events of the specified type in the queue.
+   *
+   * @param type  the event type.
+   * @return the number of events of the type in the queue.
+   */
+  public int size(final int type)
+  {
+    final RingBuffer ring = getRing(type, false);
+    return ring == null ? 0 : ring.size();
+  }
+
+  /**
+   * Flush all events of the specified type.
+   *
+   * @param type the type of event to flush.
+   */
+  public void flush(final int type)
+  {
+    drainTo(type, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Flush all events.
+   */
+  public void flush()
+  {
+    ringMap.forEach(ring -> ring.drainTo(null, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Get the ring for the specified type from the ring map. If the ring
+   * does not exist and the create flag is true, create it. The factory
+   * captures this queue, so it is only created when the ring is missing.
+   *
+   * @param type    the event type.
+   * @param create  true if a non-existent ring should be created.
+   * @return the ring for the specified type.
+   */
+  private RingBuffer getRing(final int type, final boolean create) {
+    RingBuffer ring = ringMap.get(type);
+    if ( ring == null && create ) {
+      ring = ringMap.computeIfAbsent(type, key -> new RingBuffer(capacity, mode));
+    }
+    return ring;
+  }
+}
@@ -0,0 +1,140 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.event;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * TypeMap is a thread-safe map from event types to values that never
+ * boxes a type and never locks a reader. Types from 0 to DENSE_SIZE - 1
+ * index an array directly; other types are spread over a set of stripes,
+ * each holding an <i>IntMap</i> that is copied on write under the lock of
+ * its stripe. Values are only added, never removed, so a reader sees
+ * either no value or the one value that will ever exist for a type.
+ *
+ * @param <V>  the class of the values.
+ */
+final class TypeMap<V> {
+  final static int DENSE_SIZE = 256;
+  private final static int STRIPES = 16;
+  private final static int HASH_MULTIPLIER = 0x9E3779B9;
+
+  private final AtomicReferenceArray<V> dense;
+  private final Stripe<V>[] stripes;
+
+  /**
+   * Construct an empty TypeMap.
+   */
+  @SuppressWarnings("unchecked")
+  TypeMap() {
+    dense = new AtomicReferenceArray<>(DENSE_SIZE);
+    stripes = (Stripe<V>[]) new Stripe<?>[STRIPES];
+    for ( int i = 0; i < STRIPES; ++i ) {
+      stripes[i] = new Stripe<>();
+    }
+  }
+
+  /**
+   * Returns the value for the specified type, or null.
+   *
+   * @param type  the event type.
+   * @return the value for the type, or null if there is none.
+   */
+  V get(final int type) {
+    return type >= 0 && type < DENSE_SIZE
+	? dense.get(type)
+	: stripe(type).map.get(type);
+  }
+
+  /**
+   * Returns the value for the specified type, creating it with the
+   * specified factory if there is none. The factory is called at most
+   * once for each type.
+   *
+   * @param type     the event type.
+   * @param factory  the factory that creates a value for a type.
+   * @return the value for the type.
+   */
+  V computeIfAbsent(final int type, final IntFunction<? extends V> factory) {
+    V value = get(type);
+    if ( value == null ) {
+      final Stripe<V> stripe = stripe(type);
+      try {
+	stripe.lock.lock();
+	value = get(type);
+	if ( value == null ) {
+	  value = factory.apply(type);
+	  if ( type >= 0 && type < DENSE_SIZE ) {
+	    dense.set(type, value);
+	  }
+	  else {
+	    final IntMap<V> map = new IntMap<>(stripe.map);
+	    map.put(type, value);
+	    stripe.map = map;
+	  }
+	}
+      }
+      finally {
+	stripe.lock.unlock();
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Pass each value in this map to the specified action.
+   *
+   * @param action  the action.
+   */
+  void forEach(final Consumer<? super V> action) {
+    forEachType((value, type) -> action.accept(value));
+  }
+
+  /**
+   * Pass each value in this map and its type to the specified action.
+   *
+   * @param action  the action.
+   */
+  void forEachType(final ObjIntConsumer<? super V> action) {
+    for ( int i = 0; i < DENSE_SIZE; ++i ) {
+      final V value = dense.get(i);
+      if ( value != null ) {
+	action.accept(value, i);
+      }
+    }
+    for ( final Stripe<V> stripe : stripes ) {
+      final IntMap<V> map = stripe.map;
+      for ( final int type : map.keys() ) {
+	action.accept(map.get(type), type);
+      }
+    }
+  }
+
+  /**
+   * Returns the stripe for the specified type.
+   *
+   * @param type  the event type.
+   * @return the stripe for the type.
+   */
+  private Stripe<V> stripe(final int type) {
+    return stripes[(type * HASH_MULTIPLIER) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES))];
+  }
+
+  /**
+   * Stripe holds the lock and the copy-on-write map for a group of types.
+   *
+   * @param <V>  the class of the values.
+   */
+  private final static class Stripe<V> {
+    final ReentrantLock lock = new ReentrantLock();
+    volatile IntMap<V> map = new IntMap<>();
+  }
+}
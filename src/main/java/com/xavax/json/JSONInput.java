@@ -0,0 +1,537 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.xavax.json.JSONParser.UnexpectedEndOfInputException;
+
+import static com.xavax.util.Constants.*;
+
+/**
+ * JSONInput is the input of a JSON parser: a window of characters that is
+ * refilled from a reader, or copied from a string, as it is consumed. The
+ * window is allocated once and reused whenever the input is reset to a new
+ * source. JSONInput keeps one character of history so the parser can push
+ * back the last character it read, and tracks line numbers as newlines are
+ * consumed for use in error messages.
+ * <p>
+ * Input in UTF-8 may be read from a byte array, a byte buffer (including
+ * direct and memory-mapped buffers), or an input stream. JSONInput decodes
+ * the bytes straight into the window without a CharsetDecoder. Runs of
+ * ASCII are copied eight bytes at a time: one long is read from the bytes,
+ * and if no byte in it has the high bit set, each byte is widened to a
+ * char. Malformed sequences decode to the replacement character U+FFFD.
+ */
+final class JSONInput {
+  private final static char NULL_CHARACTER = (char) 0;
+  private final static int ERROR_CONTEXT = 72;
+  private final static int WINDOW_SIZE = 8192;
+  private final static int CHUNK_SIZE = 8192;
+  private final static int MAX_SEQUENCE = 4;
+  private final static long HIGH_BITS = 0x8080808080808080L;
+  private final static char REPLACEMENT = '\uFFFD';
+
+  private boolean endOfInput;
+  private int cursor;
+  private int length;
+  private int line;
+  private int inputOffset;
+  private long base;
+  private long lineStart;
+  private long previousLineStart;
+  private char[] buffer;
+  private String input;
+  private Reader reader;
+  private ByteBuffer bytes;
+  private InputStream stream;
+  private byte[] chunk;
+  private boolean endOfStream;
+
+  /**
+   * Construct a JSONInput with no source.
+   */
+  JSONInput() {
+    reset();
+  }
+
+  /**
+   * Reset this input to read the specified string.
+   *
+   * @param input  the string to read.
+   * @return this input.
+   */
+  JSONInput reset(final String input) {
+    clear();
+    this.input = input;
+    return reset();
+  }
+
+  /**
+   * Reset this input to read from the specified reader.
+   *
+   * @param reader  the reader.
+   * @return this input.
+   */
+  JSONInput reset(final Reader reader) {
+    clear();
+    this.reader = reader;
+    return reset();
+  }
+
+  /**
+   * Reset this input to read UTF-8 from the specified part of a byte array.
+   *
+   * @param array   the byte array.
+   * @param offset  the offset of the first byte.
+   * @param count   the number of bytes.
+   * @return this input.
+   */
+  JSONInput reset(final byte[] array, final int offset, final int count) {
+    clear();
+    this.bytes = ByteBuffer.wrap(array, offset, count).order(ByteOrder.LITTLE_ENDIAN);
+    return reset();
+  }
+
+  /**
+   * Reset this input to read UTF-8 from the remaining bytes of the
+   * specified buffer. The position of the buffer is not changed.
+   *
+   * @param buffer  the byte buffer.
+   * @return this input.
+   */
+  JSONInput reset(final ByteBuffer buffer) {
+    clear();
+    this.bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    return reset();
+  }
+
+  /**
+   * Reset this input to read UTF-8 from the specified stream.
+   *
+   * @param stream  the input stream.
+   * @return this input.
+   */
+  JSONInput reset(final InputStream stream) {
+    clear();
+    if ( chunk == null ) {
+      chunk = new byte[CHUNK_SIZE];
+    }
+    this.stream = stream;
+    this.bytes = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+    ((Buffer) bytes).limit(0);
+    return reset();
+  }
+
+  /**
+   * Forget the current source.
+   */
+  private void clear() {
+    input = null;
+    reader = null;
+    bytes = null;
+    stream = null;
+    endOfStream = false;
+  }
+
+  /**
+   * Reset the position of this input.
+   *
+   * @return this input.
+   */
+  private JSONInput reset() {
+    line = 1;
+    cursor = 0;
+    length = 0;
+    base = 0;
+    lineStart = 0;
+    previousLineStart = 0;
+    inputOffset = 0;
+    endOfInput = false;
+    return this;
+  }
+
+  /**
+   * Returns true if there is more input.
+   *
+   * @return true if there is more input.
+   */
+  boolean hasNext() {
+    return cursor < length || fill();
+  }
+
+  /**
+   * Skip whitespace and return true if any input remains.
+   *
+   * @return true if any input remains after whitespace.
+   */
+  boolean hasMore() {
+    boolean result = false;
+    while ( !result && hasNext() ) {
+      result = !Character.isWhitespace(next(false));
+    }
+    if ( result ) {
+      pushback();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the next character, optionally skipping whitespace.
+   *
+   * @param skipWhitespace  true if whitespace should be skipped.
+   * @return the next character.
+   * @throws UnexpectedEndOfInputException at the end of input.
+   */
+  char next(final boolean skipWhitespace) {
+    char result = NULL_CHARACTER;
+    do {
+      if ( hasNext() ) {
+	result = buffer[cursor++];
+	if ( result == NEWLINE ) {
+	  ++line;
+	  previousLineStart = lineStart;
+	  lineStart = base + cursor;
+	}
+      }
+      else {
+	throw new UnexpectedEndOfInputException();
+      }
+    } while ( skipWhitespace && Character.isWhitespace(result) );
+    return result;
+  }
+
+  /**
+   * Push back the last character read.
+   */
+  void pushback() {
+    if ( buffer[--cursor] == NEWLINE ) {
+      --line;
+      lineStart = previousLineStart;
+    }
+  }
+
+  /**
+   * Advance to the next occurrence of the specified quote or a backslash,
+   * without consuming it, and append the characters skipped to the
+   * specified builder. The characters are examined one at a time (a char
+   * array cannot be read a word at a time without Unsafe or a VarHandle,
+   * neither of which is available on Java 8); only the copy is done in
+   * bulk, with one append for each window of input scanned.
+   *
+   * @param quote   the quote that ends a string.
+   * @param target  the builder, or null if the characters are not kept.
+   * @return false if the end of input was reached first.
+   */
+  boolean skipTo(final char quote, final StringBuilder target) {
+    boolean result = false;
+    while ( !result && hasNext() ) {
+      int index = cursor;
+      while ( index < length ) {
+	final char input = buffer[index];
+	if ( input == quote || input == BACKSLASH ) {
+	  result = true;
+	  break;
+	}
+	else if ( input == NEWLINE ) {
+	  ++line;
+	  previousLineStart = lineStart;
+	  lineStart = base + index + 1;
+	}
+	++index;
+      }
+      if ( target != null ) {
+	target.append(buffer, cursor, index - cursor);
+      }
+      cursor = index;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the position in the input of the next character.
+   *
+   * @return the position of the next character.
+   */
+  long position() {
+    return base + cursor;
+  }
+
+  /**
+   * Returns the current line number, starting from 1.
+   *
+   * @return the current line number.
+   */
+  int line() {
+    return line;
+  }
+
+  /**
+   * Returns the column of the specified position in the current line,
+   * starting from 0.
+   *
+   * @param mark  the position.
+   * @return the column of the position.
+   */
+  long column(final long mark) {
+    return Math.max(0, mark - lineStart);
+  }
+
+  /**
+   * Returns the input from the specified position to the current position,
+   * or the part of it still in the window.
+   *
+   * @param mark  the position.
+   * @return the input from the position to the current position.
+   */
+  String text(final long mark) {
+    final int start = (int) Math.max(0, Math.min(cursor, mark - base));
+    return buffer == null ? EMPTY_STRING : new String(buffer, start, cursor - start);
+  }
+
+  /**
+   * Append the part of the current line that is still in the window, with
+   * a caret under the character at the specified position.
+   *
+   * @param builder  the builder to which the context is appended.
+   * @param mark     the position of the character in error.
+   */
+  void appendContext(final StringBuilder builder, final long mark) {
+    if ( buffer != null && length > 0 ) {
+      final int caret = (int) Math.max(0, Math.min(length, mark - base));
+      int start = (int) Math.max(0, Math.max(lineStart - base, caret - ERROR_CONTEXT));
+      start = Math.min(start, caret);
+      int end = caret;
+      while ( end < length && end - caret < ERROR_CONTEXT && buffer[end] != NEWLINE ) {
+	++end;
+      }
+      builder.append(NEWLINE)
+	     .append(buffer, start, end - start).append(NEWLINE);
+      for ( int i = start; i < caret; ++i ) {
+	builder.append(SPACE);
+      }
+      builder.append(CARET);
+    }
+  }
+
+  /**
+   * Close the reader, if any.
+   *
+   * @throws IOException if the reader fails to close.
+   */
+  void close() throws IOException {
+    endOfInput = true;
+    if ( reader != null ) {
+      reader.close();
+    }
+    if ( stream != null ) {
+      stream.close();
+    }
+  }
+
+  /**
+   * Refill the window with the next block of input. The last character
+   * of the window is kept at the start so it can still be pushed back.
+   *
+   * @return true if more input was read.
+   */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  private boolean fill() {
+    boolean result = false;
+    if ( !endOfInput ) {
+      if ( buffer == null ) {
+	buffer = new char[WINDOW_SIZE];
+      }
+      final int keep = length > 0 ? 1 : 0;
+      if ( keep > 0 ) {
+	buffer[0] = buffer[length - 1];
+      }
+      base += length - keep;
+      cursor = keep;
+      length = keep;
+      int count = -1;
+      try {
+	count = read(buffer, keep, buffer.length - keep);
+      }
+      catch (IOException e) {
+	// Ignore this exception and assume there is no more input.
+      }
+      if ( count > 0 ) {
+	length += count;
+	result = true;
+      }
+      else {
+	endOfInput = true;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read characters from the input string or reader into the window.
+   *
+   * @param target  the window.
+   * @param offset  the offset in the window of the first character read.
+   * @param count   the maximum number of characters to read.
+   * @return the number of characters read, or -1 at the end of input.
+   * @throws IOException if the reader fails.
+   */
+  private int read(final char[] target, final int offset, final int count) throws IOException {
+    int result = -1;
+    if ( input != null ) {
+      final int end = Math.min(input.length(), inputOffset + count);
+      if ( end > inputOffset ) {
+	input.getChars(inputOffset, end, target, offset);
+	result = end - inputOffset;
+	inputOffset = end;
+      }
+    }
+    else if ( reader != null ) {
+      result = reader.read(target, offset, count);
+    }
+    else if ( bytes != null ) {
+      result = decode(target, offset, count);
+    }
+    return result;
+  }
+
+  /**
+   * Decode UTF-8 bytes into the window, reading more bytes from the
+   * stream, if any, whenever fewer than a full sequence remain.
+   *
+   * @param target  the window.
+   * @param offset  the offset in the window of the first character.
+   * @param count   the maximum number of characters to decode.
+   * @return the number of characters decoded, or -1 at the end of input.
+   * @throws IOException if the stream fails.
+   */
+  private int decode(final char[] target, final int offset, final int count) throws IOException {
+    int result = 0;
+    while ( result == 0 ) {
+      if ( stream != null && !endOfStream && bytes.remaining() < MAX_SEQUENCE ) {
+	readChunk();
+      }
+      if ( !bytes.hasRemaining() ) {
+	break;
+      }
+      result = decodeBytes(target, offset, count);
+    }
+    return result == 0 ? -1 : result;
+  }
+
+  /**
+   * Read the next chunk of bytes from the stream, keeping any bytes not
+   * yet decoded.
+   *
+   * @throws IOException if the stream fails.
+   */
+  private void readChunk() throws IOException {
+    bytes.compact();
+    final int count = stream.read(chunk, bytes.position(), bytes.remaining());
+    if ( count < 0 ) {
+      endOfStream = true;
+    }
+    else {
+      ((Buffer) bytes).position(bytes.position() + count);
+    }
+    ((Buffer) bytes).flip();
+  }
+
+  /**
+   * Decode as many bytes as fit in the window. A sequence cut off at the
+   * end of the bytes is left for the next call unless no more bytes will
+   * arrive, in which case it decodes to the replacement character.
+   *
+   * @param target  the window.
+   * @param offset  the offset in the window of the first character.
+   * @param count   the maximum number of characters to decode.
+   * @return the number of characters decoded.
+   */
+  @SuppressWarnings({ "PMD.CyclomaticComplexity", "PMD.NPathComplexity" })
+  private int decodeBytes(final char[] target, final int offset, final int count) {
+    final ByteBuffer source = bytes;
+    final int limit = source.limit();
+    final int end = offset + count;
+    final boolean more = stream != null && !endOfStream;
+    int position = source.position();
+    int index = offset;
+    while ( index < end && position < limit ) {
+      // Copy eight ASCII bytes at a time.
+      while ( index + Long.BYTES <= end && position + Long.BYTES <= limit ) {
+	final long word = source.getLong(position);
+	if ( (word & HIGH_BITS) != 0 ) {
+	  break;
+	}
+	for ( int i = 0; i < Long.BYTES; ++i ) {
+	  target[index + i] = (char) (word >>> (i << 3) & 0x7F);
+	}
+	position += Long.BYTES;
+	index += Long.BYTES;
+      }
+      if ( index >= end || position >= limit ) {
+	break;
+      }
+      final int first = source.get(position);
+      if ( first >= 0 ) {
+	target[index++] = (char) first;
+	++position;
+	continue;
+      }
+      final int size = (first & 0xE0) == 0xC0 ? 2 : (first & 0xF0) == 0xE0 ? 3 : (first & 0xF8) == 0xF0 ? 4 : 1;
+      if ( position + size > limit && more ) {
+	break;
+      }
+      if ( size == 4 && index + 1 >= end ) {
+	break;
+      }
+      int codePoint = size == 2 ? first & 0x1F : size == 3 ? first & 0x0F : first & 0x07;
+      int used = 1;
+      while ( used < size && position + used < limit ) {
+	final int next = source.get(position + used);
+	if ( (next & 0xC0) != 0x80 ) {
+	  break;
+	}
+	codePoint = codePoint << 6 | next & 0x3F;
+	++used;
+      }
+      if ( used < size || size == 1 || !isValid(codePoint, size) ) {
+	target[index++] = REPLACEMENT;
+	position += Math.max(1, used);
+      }
+      else if ( size == 4 ) {
+	target[index++] = Character.highSurrogate(codePoint);
+	target[index++] = Character.lowSurrogate(codePoint);
+	position += size;
+      }
+      else {
+	target[index++] = (char) codePoint;
+	position += size;
+      }
+    }
+    ((Buffer) source).position(position);
+    return index - offset;
+  }
+
+  /**
+   * Returns true if the code point decoded from a sequence of the specified
+   * size is valid: not an overlong encoding, not a surrogate, and not
+   * beyond the last code point.
+   *
+   * @param codePoint  the code point.
+   * @param size       the number of bytes in the sequence.
+   * @return true if the code point is valid.
+   */
+  private static boolean isValid(final int codePoint, final int size) {
+    return size == 2 ? codePoint >= 0x80
+	: size == 3 ? codePoint >= 0x800 && !Character.isSurrogate((char) codePoint)
+	: codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT;
+  }
+}
@@ -5,10 +5,9 @@
 //
 package com.xavax.json;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Locale;
 
@@ -18,6 +17,27 @@ import static com.xavax.util.Constants.*;
 
 /**
  * JSONParser is a parser for strings in JSON format.
+ * <p>
+ * The parser scans its input in a single pass through a window of
+ * characters that is refilled from the reader (or copied from the input
+ * string) as it is consumed, so the input is never split into lines or
+ * copied into intermediate strings. The window is allocated once and
+ * reused for every input the parser reads. Line and column numbers for
+ * error messages are tracked as newlines are consumed.
+ * <p>
+ * Numbers are accumulated as they are scanned (see NumberAccumulator), so
+ * they are never copied into a string and converted. Integers that do not
+ * fit in a long, and numbers too large or too small for a double, are
+ * reported as invalid unless the bigNumbers option is set, in which case
+ * they are parsed as a BigInteger or a BigDecimal.
+ * <p>
+ * Field names are interned in a SymbolTable, so every object in a document
+ * that has a field of the same name shares one String for its key. Each
+ * parser has its own table by default; parsers that read documents of the
+ * same shape may share one with symbolTable(table).
+ * <p>
+ * To process a document without building it in memory, use a
+ * <i>JSONReader</i>, which accepts the same grammar.
  */
 @SuppressWarnings({
   "PMD.CyclomaticComplexity",
@@ -68,26 +88,24 @@ public class JSONParser {
 
   private boolean abortOnError;
   private boolean allowCompoundIdentifiers;
+  private boolean bigNumbers;
   private boolean ignoreCase;
   private boolean quiet = true;
-  private int cursor;
-  private int length;
   private int level;
-  private int line;
-  private char[] array;
-  private String lineBuffer;
   private String source;
   private List<String> errors;
   private Locale locale;
-  private BufferedReader reader;
+  private final JSONInput input;
+  private final NumberAccumulator number;
+  private final StringBuilder numberText;
+  private final StringBuilder keyText;
+  private SymbolTable symbols;
 
   /**
    * Construct a JSONParser.
    */
   public JSONParser() {
-    this.source = null;
-    this.reader = null;
-    init();
+    this(new JSONInput(), null);
   }
 
   /**
@@ -97,8 +115,33 @@ public class JSONParser {
    * @param source  the source name to associate with the input.
    */
   public JSONParser(final Reader reader, final String source) {
+    this(new JSONInput().reset(reader), source);
+  }
+
+  /**
+   * Construct a JSONParser with the specified input stream of UTF-8 and
+   * source.
+   *
+   * @param stream  the input stream to use for input.
+   * @param source  the source name to associate with the input.
+   */
+  public JSONParser(final InputStream stream, final String source) {
+    this(new JSONInput().reset(stream), source);
+  }
+
+  /**
+   * Construct a JSONParser with the specified input and source.
+   *
+   * @param input   the input.
+   * @param source  the source name to associate with the input.
+   */
+  private JSONParser(final JSONInput input, final String source) {
     this.source = source;
-    this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    this.input = input;
+    this.number = new NumberAccumulator();
+    this.numberText = new StringBuilder(DEFAULT_BUFFER_SIZE);
+    this.keyText = new StringBuilder(DEFAULT_BUFFER_SIZE);
+    this.symbols = new SymbolTable();
     init();
   }
 
@@ -106,12 +149,7 @@ public class JSONParser {
    * Initialize this parser.
    */
   private void init() {
-    line = 0;
     level = 0;
-    cursor = 0;
-    length = 0;
-    array = null;
-    lineBuffer = null;
     errors = null;
     locale = Locale.getDefault();
   }
@@ -139,7 +177,7 @@ public class JSONParser {
    */
   private void init(final String input) {
     source = null;
-    reader = new BufferedReader(new StringReader(input));
+    this.input.reset(input);
     init();
   }
 
@@ -154,6 +192,34 @@ public class JSONParser {
     return parse();
   }
 
+  /**
+   * Parse a byte array of UTF-8 in JSON format.
+   *
+   * @param input  a byte array of UTF-8 in JSON format.
+   * @return the JSON resulting from parsing the input.
+   */
+  public JSON parse(final byte[] input) {
+    source = null;
+    this.input.reset(input, 0, input.length);
+    init();
+    return parse();
+  }
+
+  /**
+   * Parse the remaining bytes of a buffer of UTF-8 in JSON format. The
+   * buffer may be a direct or memory-mapped buffer; its position is not
+   * changed.
+   *
+   * @param input  a byte buffer of UTF-8 in JSON format.
+   * @return the JSON resulting from parsing the input.
+   */
+  public JSON parse(final ByteBuffer input) {
+    source = null;
+    this.input.reset(input);
+    init();
+    return parse();
+  }
+
   /**
    * Parse the input and return a JSON.
    *
@@ -176,7 +242,7 @@ public class JSONParser {
     catch (ParserException e) {
       // Ignore Exception.
     }
-    if ( flag && !abortOnError && hasNext() ) {
+    if ( flag && !abortOnError && hasMore() ) {
       addError(UNEXPECTED_CHARACTERS);
     }
     return json;
@@ -207,7 +273,7 @@ public class JSONParser {
     catch (ParserException e) {
       // Ignore Exception.
     }
-    if ( !abortOnError && hasNext() ) {
+    if ( !abortOnError && hasMore() ) {
       addError(UNEXPECTED_CHARACTERS);
     }
     return list;
@@ -276,15 +342,19 @@ public class JSONParser {
   }
 
   private String parseIdentifier(final boolean mustMatch, final char opening) {
-    final StringBuilder builder = new StringBuilder();
-    final int mark = cursor;
+    final StringBuilder builder = keyText;
+    builder.setLength(0);
+    int hash = 0;
+    final long mark = input.position();
     char input = next(false);
     if ( checkIdentifier(input, true) ) {
       builder.append(input);
+      hash = input;
       while ( hasNext() ) {
 	input = next(false);
 	if ( checkIdentifier(input, false) ) {
 	  builder.append(input);
+	  hash = 31 * hash + input;
 	}
 	else {
 	  if ( mustMatch ) {
@@ -314,7 +384,7 @@ public class JSONParser {
 	skipToNextItem(true);
       }
     }
-    return builder.toString();
+    return symbols == null ? builder.toString() : symbols.intern(builder, hash);
   }
 
   @SuppressWarnings("PMD.NcssCount")
@@ -357,15 +427,16 @@ public class JSONParser {
 	  result = parseNumber();
 	}
 	else if ( Character.isLetter(input) ) {
-	  final int mark = cursor - 1;
+	  final StringBuilder builder = new StringBuilder().append(input);
 	  while ( hasNext() ) {
 	    input = next(false);
 	    if ( !Character.isLetter(input) ) {
 	      pushback();
 	      break;
 	    }
+	    builder.append(input);
 	  }
-	  String word = lineBuffer.substring(mark, cursor);
+	  String word = builder.toString();
 	  if ( ignoreCase ) {
 	    word = word.toLowerCase(locale);
 	  }
@@ -412,45 +483,51 @@ public class JSONParser {
   @SuppressWarnings({ "PMD.NPathComplexity", "PMD.NcssCount" })
   private Object parseNumber() {
     boolean done = false;
-    boolean isDouble = false;
+    boolean invalid = false;
     boolean leadingZero = false;
     ScannerState state = ScannerState.ACCEPT_DIGIT_SIGN_RADIX;
-    final int mark = cursor;
-    final StringBuilder builder = new StringBuilder();
+    final long mark = input.position();
+    number.reset();
+    numberText.setLength(0);
     while ( !done && hasNext() ) {
       // Skip whitespace only for first character of number.
       final char input = next(state == ScannerState.ACCEPT_DIGIT_SIGN_RADIX);
       switch ( state ) {
       case ACCEPT_DIGIT_SIGN_RADIX:
-	if ( Character.isDigit(input) ) {
+	if ( isDigit(input) ) {
 	  state = ScannerState.ACCUMULATE_DIGITS;
 	  if ( input == ZERO ) {
 	    leadingZero = true;
 	  }
+	  number.digit(input);
 	}
 	else if ( input == MINUS ) {
 	  state = ScannerState.ACCEPT_DIGIT_RADIX;
+	  number.negate();
 	}
 	else if ( input == PERIOD ) {
 	  state = ScannerState.ACCUMULATE_FRACTION;
+	  number.point();
 	}
 	else {
-	  unexpectedNumericInput(mark, input);
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
       case ACCEPT_DIGIT_RADIX:
-	if ( Character.isDigit(input) ) {
+	if ( isDigit(input) ) {
 	  state = ScannerState.ACCUMULATE_DIGITS;
 	  if ( input == ZERO ) {
 	    leadingZero = true;
 	  }
+	  number.digit(input);
 	}
 	else if ( input == PERIOD ) {
 	  state = ScannerState.ACCUMULATE_FRACTION;
+	  number.point();
 	}
 	else {
-	  unexpectedNumericInput(mark, input);
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
@@ -458,43 +535,58 @@ public class JSONParser {
 	// Accumulating initial digits.
 	if ( input == PERIOD ) {
 	  state = ScannerState.ACCUMULATE_FRACTION;
+	  number.point();
 	}
 	else if ( input == 'e' || input == 'E' ) {
 	  state = ScannerState.ACCEPT_EXPONENT_SIGN;
+	  number.exponent();
 	}
-	else if ( Character.isDigit(input) ) {
+	else if ( isDigit(input) ) {
 	  if ( leadingZero ) {
 	    invalid(mark, LEADING_ZERO);
 	  }
+	  number.digit(input);
 	}
 	else {
-	  unexpectedNumericInput(mark, input);
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
       case ACCUMULATE_FRACTION:
-	isDouble = true;
 	if ( input == 'e' || input == 'E' ) {
 	  state = ScannerState.ACCEPT_EXPONENT_SIGN;
+	  number.exponent();
+	}
+	else if ( isDigit(input) ) {
+	  number.digit(input);
 	}
-	else if ( !Character.isDigit(input) ) {
-	  unexpectedNumericInput(mark, input);
+	else {
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
       case ACCEPT_EXPONENT_SIGN:
-	isDouble = true;
 	if ( input == MINUS || input == PLUS ) {
 	  state = ScannerState.ACCUMULATE_EXPONENT;
+	  if ( input == MINUS ) {
+	    number.negate();
+	  }
 	}
-	else if ( !Character.isDigit(input) ) {
-	  unexpectedNumericInput(mark, input);
+	else if ( isDigit(input) ) {
+	  state = ScannerState.ACCUMULATE_EXPONENT;
+	  number.digit(input);
+	}
+	else {
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
       case ACCUMULATE_EXPONENT:
-	if ( !Character.isDigit(input) ) {
-	  unexpectedNumericInput(mark, input);
+	if ( isDigit(input) ) {
+	  number.digit(input);
+	}
+	else {
+	  invalid = unexpectedNumericInput(mark, input);
 	  done = true;
 	}
 	break;
@@ -502,15 +594,49 @@ public class JSONParser {
 	break;
       }
       if ( !done ) {
-	builder.append(input);
+	numberText.append(input);
       }
     }
-    final String value = builder.toString();
-    // The casting is necessary to keep Java from converting the Long to a Double.
-    return isDouble ? (Object) Double.valueOf(value) : (Object) Long.valueOf(value);
+    return numberValue(mark, invalid);
+  }
+
+  /**
+   * Returns the value of the number just scanned: a Long or a Double, or
+   * if the bigNumbers option is set and the number is out of range, a
+   * BigInteger or a BigDecimal.
+   *
+   * @param mark     the position of the number.
+   * @param invalid  true if the number was already reported as invalid.
+   * @return the value of the number, or null if it is not valid.
+   */
+  private Object numberValue(final long mark, final boolean invalid) {
+    Object result = null;
+    if ( !number.hasDigits() ) {
+      if ( !invalid ) {
+	invalidNumber(mark);
+      }
+    }
+    else if ( number.isLong() ) {
+      result = Long.valueOf(number.longValue());
+    }
+    else if ( number.isInteger() ) {
+      if ( bigNumbers ) {
+	result = number.bigIntegerValue(numberText);
+      }
+      else {
+	invalidNumber(mark);
+      }
+    }
+    else {
+      final double value = number.doubleValue(numberText);
+      result = bigNumbers && number.isOutOfRange(value)
+	  ? number.bigDecimalValue(numberText) : Double.valueOf(value);
+    }
+    return result;
   }
 
-  private void unexpectedNumericInput(final int mark, final char input) {
+  private boolean unexpectedNumericInput(final long mark, final char input) {
+    boolean invalid = false;
     if ( Character.isWhitespace(input) || input == COMMA
 	|| input == RIGHT_BRACE || input == RIGHT_BRACKET ) {
       pushback();
@@ -518,18 +644,28 @@ public class JSONParser {
     else {
       skipToNextItem(false);
       invalidNumber(mark);
+      invalid = true;
     }
+    return invalid;
+  }
+
+  private static boolean isDigit(final char input) {
+    return input >= ZERO && input <= '9';
   }
 
   private String parseString(final char sentinel) {
-    boolean escape = false;
     String result = null;
     final StringBuilder builder = new StringBuilder();
-    while ( hasNext() ) {
+    while ( input.skipTo(sentinel, builder) ) {
       final char input = next(false);
-      char[] chars = EMPTY_ARRAY;
-      if ( escape ) {
-	switch ( input ) {
+      if ( input == sentinel ) {
+	result = builder.toString();
+	break;
+      }
+      else if ( hasNext() ) {
+	final char escaped = next(false);
+	char[] chars = EMPTY_ARRAY;
+	switch ( escaped ) {
 	case 'b':
 	  chars = BACKSPACE_ARRAY;
 	  break;
@@ -549,21 +685,10 @@ public class JSONParser {
 	  chars = getUnicodeChar();
 	  break;
 	default:
-	  builder.append(input);
+	  builder.append(escaped);
 	  break;
 	}
 	builder.append(chars);
-	escape = false;
-      }
-      else if ( input == BACKSLASH ) {
-	escape = true;
-      }
-      else if ( input == sentinel ) {
-	result = builder.toString();
-	break;
-      }
-      else {
-	builder.append(input);
       }
     }
     return result;
@@ -571,7 +696,7 @@ public class JSONParser {
 
   private char[] getUnicodeChar() {
     char[] result = EMPTY_ARRAY;
-    final int mark = cursor - 2;
+    final long mark = input.position() - 2;
     int codePoint = 0;
     int count = 4;
     while ( count > 0 && hasNext() ) {
@@ -618,46 +743,19 @@ public class JSONParser {
   }
 
   private boolean hasNext() {
-    return cursor < length || readNextLine();
+    return input.hasNext();
   }
 
-  @SuppressWarnings("PMD.EmptyCatchBlock")
-  private boolean readNextLine() {
-    boolean result = false;
-    try {
-      if ( reader.ready() ) {
-	lineBuffer = reader.readLine();
-	if ( lineBuffer != null ) {
-	  ++line;
-	  cursor = 0;
-	  length = lineBuffer.length();
-	  array = new char[length];
-	  lineBuffer.getChars(0, length, array, 0);
-	  result = true;
-	}
-      }
-    }
-    catch (IOException e) {
-      // Ignore this exception and assume there is no more input.
-    }
-    return result;
+  private boolean hasMore() {
+    return input.hasMore();
   }
 
   private char next(final boolean skipWhitespace) {
-    char result = NULL_CHARACTER;
-    do {
-      if ( hasNext() ) {
-	result = array[cursor++];
-      }
-      else {
-	throw new UnexpectedEndOfInputException();
-      }
-    } while ( skipWhitespace && Character.isWhitespace(result) );
-    return result;
+    return input.next(skipWhitespace);
   }
 
   private void pushback() {
-    --cursor;
+    input.pushback();
   }
 
   private void skipToNextItem(final boolean skipWhitespace) {
@@ -687,44 +785,37 @@ public class JSONParser {
     addError(String.format(EXPECTED_FORMAT3, expected, received));
   }
 
-  private void invalidIdentifier(final int mark) {
+  private void invalidIdentifier(final long mark) {
     invalid(mark, IDENTIFIER);
   }
 
-  private void invalidNumber(final int mark) {
+  private void invalidNumber(final long mark) {
     invalid(mark, NUMBER);
   }
 
-  private void invalidUnicode(final int mark) {
+  private void invalidUnicode(final long mark) {
     invalid(mark, UNICODE_ESCAPE_SEQUENCE);
   }
 
-  private void invalid(final int mark, final String detail) {
-    final String rejected = lineBuffer == null ? EMPTY_STRING : lineBuffer.substring(mark, cursor);
+  private void invalid(final long mark, final String detail) {
+    final String rejected = input.text(mark);
     final String msg = String.format(INVALID_INPUT_FORMAT, detail, rejected);
     addError(mark, msg);
   }
 
   private void addError(final String msg) {
-    addError(cursor - 1, msg);
+    addError(input.position() - 1, msg);
   }
 
   @SuppressWarnings("PMD.SystemPrintln")
-  private void addError(final int mark, final String message) {
+  private void addError(final long mark, final String message) {
     final StringBuilder builder = new StringBuilder(DEFAULT_BUFFER_SIZE);
 
     final String intro =
 	String.format(ERROR_FORMAT, source == null ? JSON : source,
-		      line, mark, message);
+		      input.line(), input.column(mark), message);
     builder.append(intro);
-    if ( lineBuffer != null ) {
-      builder.append(NEWLINE)
-      	     .append(lineBuffer).append(NEWLINE);
-      for ( int i = 0; i < mark ; ++i ) {
-	builder.append(SPACE);
-      }
-      builder.append(CARET);
-    }
+    input.appendContext(builder, mark);
     final String msg = builder.toString();
     if ( errors == null ) {
       errors = CollectionFactory.arrayList();
@@ -806,6 +897,51 @@ public class JSONParser {
     return this;
   }
 
+  /**
+   * Return true if numbers out of the range of a long or a double are
+   * parsed as a BigInteger or a BigDecimal.
+   *
+   * @return true if the parser produces big numbers.
+   */
+  public boolean bigNumbers() {
+    return this.bigNumbers;
+  }
+
+  /**
+   * Set the bigNumbers flag. If true, integers that do not fit in a long
+   * are parsed as a BigInteger, and numbers too large or too small for a
+   * double are parsed as a BigDecimal. Otherwise, such integers are
+   * reported as invalid numbers.
+   *
+   * @param bigNumbers  if true, parse out-of-range numbers as big numbers.
+   * @return this parser.
+   */
+  public JSONParser bigNumbers(final boolean bigNumbers) {
+    this.bigNumbers = bigNumbers;
+    return this;
+  }
+
+  /**
+   * Returns the symbol table used to intern field names.
+   *
+   * @return the symbol table, or null if field names are not interned.
+   */
+  public SymbolTable symbolTable() {
+    return this.symbols;
+  }
+
+  /**
+   * Set the symbol table used to intern field names. A table may be
+   * shared by several parsers.
+   *
+   * @param symbols  the symbol table, or null to not intern field names.
+   * @return this parser.
+   */
+  public JSONParser symbolTable(final SymbolTable symbols) {
+    this.symbols = symbols;
+    return this;
+  }
+
   /**
    * Return true if the parser is ignoring case.
    *
@@ -867,5 +1003,21 @@ public class JSONParser {
    */
   public static class ParserException extends RuntimeException {
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct a ParserException.
+     */
+    public ParserException() {
+      super();
+    }
+
+    /**
+     * Construct a ParserException with the specified message.
+     *
+     * @param message  the message describing the error.
+     */
+    public ParserException(final String message) {
+      super(message);
+    }
   }
 }
@@ -0,0 +1,905 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import com.xavax.json.JSONParser.ParserException;
+import com.xavax.json.JSONParser.UnexpectedEndOfInputException;
+
+import static com.xavax.util.Constants.*;
+
+/**
+ * JSONReader is a streaming parser for input in JSON format. Rather than
+ * building a <i>JSON</i> in memory, it returns the input one token at a
+ * time, so a document of any size can be processed in constant memory.
+ * A caller can skip the children of an object or array it is not
+ * interested in, or read the current value into a JSON or JSONArray.
+ * <p>
+ * JSONReader accepts the same grammar as <i>JSONParser</i>: field names
+ * may be unquoted identifiers, strings may be enclosed in single quotes,
+ * and words may optionally ignore case. The input may hold any number of
+ * values one after another. Unlike JSONParser, JSONReader does not try to
+ * recover from errors; it throws a ParserException at the first error.
+ */
+@SuppressWarnings({ "PMD.GodClass", "PMD.TooManyMethods" })
+public class JSONReader implements Closeable {
+  private final static String ERROR_FORMAT = "%s: error at line %d position %d - %s";
+  private final static String EXPECTED_FORMAT1 = "expected [%s] but received [%c]";
+  private final static String EXPECTED_FORMAT2 = "expected [%s] but received [%s]";
+  private final static String COLON_STRING = ":";
+  private final static String COMMA_OR_END = "comma or end";
+  private final static String IDENTIFIER = "identifier";
+  private final static String INVALID_NUMBER = "invalid number";
+  private final static String JSON = "JSON";
+  private final static String TRUE_FALSE_OR_NULL = "true, false, or null";
+  private final static String UNEXPECTED_END_OF_INPUT = "unexpected end of input";
+  private final static String UNICODE_ESCAPE_SEQUENCE = "invalid Unicode escape sequence";
+  private final static String VALUE = "value";
+  private final static char NULL_CHARACTER = (char) 0;
+  private final static int DEFAULT_BUFFER_SIZE = 64;
+  private final static int INITIAL_DEPTH = 16;
+  private final static byte ARRAY = 1;
+  private final static byte OBJECT = 2;
+
+  private boolean allowCompoundIdentifiers;
+  private boolean bigNumbers;
+  private boolean ignoreCase;
+  private boolean afterName;
+  private boolean needComma;
+  private boolean skipping;
+  private int depth;
+  private byte[] stack;
+  private String fieldName;
+  private String text;
+  private JSONToken token;
+  private final String source;
+  private final StringBuilder builder;
+  private final JSONInput in;
+  private final NumberAccumulator number;
+  private SymbolTable symbols;
+
+  /**
+   * Construct a JSONReader to read the specified string.
+   *
+   * @param input  a string in JSON format.
+   */
+  public JSONReader(final String input) {
+    this(new JSONInput().reset(input), null);
+  }
+
+  /**
+   * Construct a JSONReader to read from the specified reader.
+   *
+   * @param reader  the reader to use for input.
+   * @param source  the source name to associate with the input.
+   */
+  public JSONReader(final Reader reader, final String source) {
+    this(new JSONInput().reset(reader), source);
+  }
+
+  /**
+   * Construct a JSONReader to read a byte array of UTF-8.
+   *
+   * @param input  a byte array of UTF-8 in JSON format.
+   */
+  public JSONReader(final byte[] input) {
+    this(new JSONInput().reset(input, 0, input.length), null);
+  }
+
+  /**
+   * Construct a JSONReader to read the remaining bytes of a buffer of
+   * UTF-8. The buffer may be a direct or memory-mapped buffer; its
+   * position is not changed.
+   *
+   * @param input  a byte buffer of UTF-8 in JSON format.
+   */
+  public JSONReader(final ByteBuffer input) {
+    this(new JSONInput().reset(input), null);
+  }
+
+  /**
+   * Construct a JSONReader to read from the specified input stream of
+   * UTF-8.
+   *
+   * @param stream  the input stream to use for input.
+   * @param source  the source name to associate with the input.
+   */
+  public JSONReader(final InputStream stream, final String source) {
+    this(new JSONInput().reset(stream), source);
+  }
+
+  /**
+   * Construct a JSONReader for the specified input.
+   *
+   * @param input   the input.
+   * @param source  the source name to associate with the input.
+   */
+  JSONReader(final JSONInput input, final String source) {
+    this.in = input;
+    this.source = source;
+    this.builder = new StringBuilder(DEFAULT_BUFFER_SIZE);
+    this.number = new NumberAccumulator();
+    this.symbols = new SymbolTable();
+    this.stack = new byte[INITIAL_DEPTH];
+  }
+
+  /**
+   * Advance to the next token and return it.
+   *
+   * @return the next token, or null at the end of input.
+   * @throws ParserException if the input is not valid.
+   */
+  public JSONToken nextToken() {
+    text = null;
+    try {
+      if ( afterName ) {
+	afterName = false;
+	token = value(in.next(true));
+      }
+      else if ( depth == 0 ) {
+	token = in.hasMore() ? value(in.next(true)) : null;
+      }
+      else {
+	token = element(in.next(true));
+      }
+    }
+    catch (UnexpectedEndOfInputException e) {
+      throw error(in.position(), UNEXPECTED_END_OF_INPUT);
+    }
+    return token;
+  }
+
+  /**
+   * Returns the current token.
+   *
+   * @return the current token, or null before the first token and at the
+   *         end of input.
+   */
+  public JSONToken currentToken() {
+    return token;
+  }
+
+  /**
+   * Returns the number of objects and arrays enclosing the current token.
+   * The start and end of an object or array are inside it.
+   *
+   * @return the nesting depth of the current token.
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Returns the name of the last field read. For a FIELD_NAME token, this
+   * is the field name; for the value that follows it, this is the name of
+   * the value.
+   *
+   * @return the name of the last field read.
+   */
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * Returns the text of the current token: the value of a string, the
+   * digits of a number, the name of a field, or the text of any other
+   * token.
+   *
+   * @return the text of the current token.
+   */
+  public String getText() {
+    if ( text == null && token != null ) {
+      switch ( token ) {
+      case FIELD_NAME:
+	text = fieldName;
+	break;
+      case VALUE_STRING:
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+	text = builder.toString();
+	break;
+      case VALUE_TRUE:
+	text = TRUE_STRING;
+	break;
+      case VALUE_FALSE:
+	text = FALSE_STRING;
+	break;
+      case VALUE_NULL:
+	text = NULL_STRING;
+	break;
+      case START_OBJECT:
+	text = String.valueOf(LEFT_BRACE);
+	break;
+      case END_OBJECT:
+	text = String.valueOf(RIGHT_BRACE);
+	break;
+      case START_ARRAY:
+	text = String.valueOf(LEFT_BRACKET);
+	break;
+      default:
+	text = String.valueOf(RIGHT_BRACKET);
+	break;
+      }
+    }
+    return text;
+  }
+
+  /**
+   * Returns the value of the current number as a long.
+   *
+   * @return the value of the current number.
+   * @throws NumberFormatException if the current token is not a number
+   *         that fits in a long.
+   */
+  public long getLong() {
+    long result;
+    if ( token == JSONToken.VALUE_NUMBER_INT && number.isLong() ) {
+      result = number.longValue();
+    }
+    else if ( isNumber() ) {
+      throw new NumberFormatException(getText());
+    }
+    else {
+      result = Long.parseLong(getText());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value of the current number as a double.
+   *
+   * @return the value of the current number.
+   * @throws NumberFormatException if the current token is not a number.
+   */
+  public double getDouble() {
+    return isNumber() ? number.doubleValue(builder) : Double.parseDouble(getText());
+  }
+
+  /**
+   * Returns the value of the current number as a BigInteger.
+   *
+   * @return the value of the current number.
+   * @throws NumberFormatException if the current token is not an integer.
+   */
+  public BigInteger getBigInteger() {
+    return token == JSONToken.VALUE_NUMBER_INT ? number.bigIntegerValue(builder) : new BigInteger(getText());
+  }
+
+  /**
+   * Returns the value of the current number as a BigDecimal.
+   *
+   * @return the value of the current number.
+   * @throws NumberFormatException if the current token is not a number.
+   */
+  public BigDecimal getBigDecimal() {
+    return new BigDecimal(getText());
+  }
+
+  /**
+   * Returns the value of the current number: a Long or a Double, or if the
+   * bigNumbers option is set and the number is out of range, a BigInteger
+   * or a BigDecimal.
+   *
+   * @return the value of the current number, or null if the current token
+   *         is not a number.
+   * @throws NumberFormatException if the current number is an integer
+   *         that does not fit in a long and bigNumbers is not set.
+   */
+  public Number getNumber() {
+    Number result = null;
+    if ( token == JSONToken.VALUE_NUMBER_INT ) {
+      result = number.isLong() || !bigNumbers ? (Number) Long.valueOf(getLong()) : getBigInteger();
+    }
+    else if ( token == JSONToken.VALUE_NUMBER_FLOAT ) {
+      final double value = number.doubleValue(builder);
+      result = bigNumbers && number.isOutOfRange(value) ? (Number) getBigDecimal() : Double.valueOf(value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value of the current scalar token as JSONParser would
+   * store it: a String, Long, Double, Boolean, or null. For a FIELD_NAME
+   * token, returns the name.
+   *
+   * @return the value of the current token.
+   */
+  public Object getValue() {
+    Object result = null;
+    if ( token != null ) {
+      switch ( token ) {
+      case FIELD_NAME:
+      case VALUE_STRING:
+	result = getText();
+	break;
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+	result = getNumber();
+	break;
+      case VALUE_TRUE:
+	result = Boolean.TRUE;
+	break;
+      case VALUE_FALSE:
+	result = Boolean.FALSE;
+	break;
+      default:
+	break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read the value that starts with the current token. An object is read
+   * into a JSON and an array into a JSONArray, leaving the matching end
+   * token as the current token; any other value is returned as by
+   * getValue.
+   *
+   * @return the value that starts with the current token.
+   * @throws ParserException if the input is not valid.
+   */
+  public Object readValue() {
+    Object result = null;
+    if ( token == JSONToken.START_OBJECT ) {
+      final JSON json = new JSON();
+      while ( nextToken() != JSONToken.END_OBJECT ) {
+	final String name = fieldName;
+	nextToken();
+	json.put(name, readValue());
+      }
+      result = json;
+    }
+    else if ( token == JSONToken.START_ARRAY ) {
+      final JSONArray array = new JSONArray();
+      while ( nextToken() != JSONToken.END_ARRAY ) {
+	array.add(readValue());
+      }
+      result = array;
+    }
+    else {
+      result = getValue();
+    }
+    return result;
+  }
+
+  /**
+   * Advance to the next token and read the value that starts with it.
+   *
+   * @return the next value, or null at the end of input.
+   * @throws ParserException if the input is not valid.
+   */
+  public Object nextValue() {
+    nextToken();
+    return readValue();
+  }
+
+  /**
+   * If the current token starts an object or array, skip to the matching
+   * end token. The text of strings inside the object or array is not
+   * kept.
+   *
+   * @return this reader.
+   * @throws ParserException if the input is not valid.
+   */
+  public JSONReader skipChildren() {
+    if ( token == JSONToken.START_OBJECT || token == JSONToken.START_ARRAY ) {
+      final int target = depth - 1;
+      skipping = true;
+      try {
+	while ( depth > target ) {
+	  nextToken();
+	}
+      }
+      finally {
+	skipping = false;
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Close the underlying reader.
+   *
+   * @throws IOException if the reader fails to close.
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Returns true if compound identifiers are allowed.
+   *
+   * @return true if compound identifiers are allowed.
+   */
+  public boolean allowCompoundIdentifiers() {
+    return this.allowCompoundIdentifiers;
+  }
+
+  /**
+   * Set the allowCompoundIdentifiers flag. Compound identifiers are of the
+   * form "id.name".
+   *
+   * @param allowCompoundIdentifiers  if true, allow compound identifiers.
+   * @return this reader.
+   */
+  public JSONReader allowCompoundIdentifiers(final boolean allowCompoundIdentifiers) {
+    this.allowCompoundIdentifiers = allowCompoundIdentifiers;
+    return this;
+  }
+
+  /**
+   * Return true if numbers out of the range of a long or a double are
+   * read as a BigInteger or a BigDecimal by getNumber and getValue.
+   *
+   * @return true if the reader produces big numbers.
+   */
+  public boolean bigNumbers() {
+    return this.bigNumbers;
+  }
+
+  /**
+   * Set the bigNumbers flag. If true, getNumber and getValue return a
+   * BigInteger for integers that do not fit in a long, and a BigDecimal
+   * for numbers too large or too small for a double.
+   *
+   * @param bigNumbers  if true, read out-of-range numbers as big numbers.
+   * @return this reader.
+   */
+  public JSONReader bigNumbers(final boolean bigNumbers) {
+    this.bigNumbers = bigNumbers;
+    return this;
+  }
+
+  /**
+   * Returns the symbol table used to intern field names.
+   *
+   * @return the symbol table, or null if field names are not interned.
+   */
+  public SymbolTable symbolTable() {
+    return this.symbols;
+  }
+
+  /**
+   * Set the symbol table used to intern field names. A table may be
+   * shared by several readers and parsers.
+   *
+   * @param symbols  the symbol table, or null to not intern field names.
+   * @return this reader.
+   */
+  public JSONReader symbolTable(final SymbolTable symbols) {
+    this.symbols = symbols;
+    return this;
+  }
+
+  /**
+   * Return true if the reader is ignoring the case of true, false, and null.
+   *
+   * @return true if the reader is ignoring case.
+   */
+  public boolean ignoreCase() {
+    return this.ignoreCase;
+  }
+
+  /**
+   * Set the ignoreCase flag.
+   *
+   * @param ignoreCase  if true, ignore the case of true, false, and null.
+   * @return this reader.
+   */
+  public JSONReader ignoreCase(final boolean ignoreCase) {
+    this.ignoreCase = ignoreCase;
+    return this;
+  }
+
+  /**
+   * Read the next element of the current object or array.
+   *
+   * @param first  the first character of the element.
+   * @return the token that starts the element.
+   */
+  private JSONToken element(final char first) {
+    JSONToken result = null;
+    final boolean object = stack[depth - 1] == OBJECT;
+    char input = first;
+    if ( input == (object ? RIGHT_BRACE : RIGHT_BRACKET) ) {
+      --depth;
+      needComma = true;
+      result = object ? JSONToken.END_OBJECT : JSONToken.END_ARRAY;
+    }
+    else {
+      if ( needComma ) {
+	if ( input != COMMA ) {
+	  throw expected(COMMA_OR_END, input);
+	}
+	input = in.next(true);
+      }
+      result = object ? field(input) : value(input);
+    }
+    return result;
+  }
+
+  /**
+   * Read a field name and the colon that follows it.
+   *
+   * @param first  the first character of the field name.
+   * @return FIELD_NAME.
+   */
+  private JSONToken field(final char first) {
+    if ( first == DOUBLE_QUOTE || first == SINGLE_QUOTE ) {
+      scanString(first, true);
+    }
+    else {
+      scanIdentifier(first);
+    }
+    fieldName = symbols == null ? builder.toString() : symbols.intern(builder);
+    final char input = in.next(true);
+    if ( input != COLON ) {
+      throw expected(COLON_STRING, input);
+    }
+    afterName = true;
+    needComma = true;
+    return JSONToken.FIELD_NAME;
+  }
+
+  /**
+   * Read a value.
+   *
+   * @param first  the first character of the value.
+   * @return the token that starts the value.
+   */
+  private JSONToken value(final char first) {
+    JSONToken result = null;
+    needComma = true;
+    switch ( first ) {
+    case LEFT_BRACE:
+      push(OBJECT);
+      result = JSONToken.START_OBJECT;
+      break;
+    case LEFT_BRACKET:
+      push(ARRAY);
+      result = JSONToken.START_ARRAY;
+      break;
+    case DOUBLE_QUOTE:
+    case SINGLE_QUOTE:
+      scanString(first, !skipping);
+      result = JSONToken.VALUE_STRING;
+      break;
+    default:
+      if ( first == MINUS || first == PERIOD || isDigit(first) ) {
+	result = scanNumber(first);
+      }
+      else if ( Character.isLetter(first) ) {
+	result = scanWord(first);
+      }
+      else {
+	throw expected(VALUE, first);
+      }
+      break;
+    }
+    return result;
+  }
+
+  /**
+   * Enter an object or array.
+   *
+   * @param kind  OBJECT or ARRAY.
+   */
+  private void push(final byte kind) {
+    if ( depth == stack.length ) {
+      final byte[] larger = new byte[depth * 2];
+      System.arraycopy(stack, 0, larger, 0, depth);
+      stack = larger;
+    }
+    stack[depth++] = kind;
+    needComma = false;
+  }
+
+  /**
+   * Scan the rest of a quoted string into the builder.
+   *
+   * @param quote  the opening quote.
+   * @param keep   false if the characters need not be kept.
+   */
+  private void scanString(final char quote, final boolean keep) {
+    builder.setLength(0);
+    final StringBuilder target = keep ? builder : null;
+    if ( !in.skipTo(quote, target) ) {
+      throw new UnexpectedEndOfInputException();
+    }
+    char input = in.next(false);
+    while ( input != quote ) {
+      if ( input == BACKSLASH ) {
+	input = in.next(false);
+	switch ( input ) {
+	case 'b':
+	  input = BACKSPACE;
+	  break;
+	case 'f':
+	  input = FORMFEED;
+	  break;
+	case 'n':
+	  input = NEWLINE;
+	  break;
+	case 'r':
+	  input = CRETURN;
+	  break;
+	case 't':
+	  input = TAB;
+	  break;
+	case 'u':
+	  input = scanUnicode();
+	  break;
+	default:
+	  break;
+	}
+      }
+      if ( keep ) {
+	builder.append(input);
+      }
+      if ( !in.skipTo(quote, target) ) {
+	throw new UnexpectedEndOfInputException();
+      }
+      input = in.next(false);
+    }
+  }
+
+  /**
+   * Scan the four hex digits of a Unicode escape sequence.
+   *
+   * @return the character.
+   */
+  private char scanUnicode() {
+    final long mark = in.position() - 2;
+    int value = 0;
+    for ( int i = 0; i < 4; ++i ) {
+      final int digit = Character.digit(in.next(false), 16);
+      if ( digit < 0 ) {
+	throw error(mark, UNICODE_ESCAPE_SEQUENCE);
+      }
+      value = (value << 4) + digit;
+    }
+    return (char) value;
+  }
+
+  /**
+   * Scan an unquoted identifier into the builder.
+   *
+   * @param first  the first character of the identifier.
+   */
+  private void scanIdentifier(final char first) {
+    if ( !Character.isLetter(first) && first != UNDERSCORE && first != DOLLAR ) {
+      throw expected(IDENTIFIER, first);
+    }
+    builder.setLength(0);
+    builder.append(first);
+    while ( in.hasNext() ) {
+      final char input = in.next(false);
+      if ( Character.isLetterOrDigit(input) || input == UNDERSCORE || input == DOLLAR
+	   || input == PERIOD && allowCompoundIdentifiers ) {
+	builder.append(input);
+      }
+      else {
+	in.pushback();
+	break;
+      }
+    }
+  }
+
+  /**
+   * Scan a number into the builder. A number is an optional minus sign,
+   * digits with no leading zero, an optional fraction, and an optional
+   * exponent; either the digits or the fraction may be omitted.
+   *
+   * @param first  the first character of the number.
+   * @return VALUE_NUMBER_INT or VALUE_NUMBER_FLOAT.
+   */
+  @SuppressWarnings("PMD.NPathComplexity")
+  private JSONToken scanNumber(final char first) {
+    final long mark = in.position() - 1;
+    builder.setLength(0);
+    builder.append(first);
+    number.reset();
+    boolean isDouble = first == PERIOD;
+    int digits = 0;
+    if ( first == MINUS ) {
+      number.negate();
+    }
+    else if ( isDouble ) {
+      number.point();
+    }
+    else {
+      number.digit(first);
+      digits = 1;
+    }
+    char input = next();
+    if ( first == MINUS && input == PERIOD ) {
+      isDouble = true;
+      number.point();
+      builder.append(input);
+      input = next();
+    }
+    if ( !isDouble ) {
+      final boolean leadingZero = first == ZERO || first == MINUS && input == ZERO;
+      while ( isDigit(input) ) {
+	if ( leadingZero && digits > 0 ) {
+	  throw error(mark, INVALID_NUMBER);
+	}
+	++digits;
+	number.digit(input);
+	builder.append(input);
+	input = next();
+      }
+      if ( input == PERIOD ) {
+	isDouble = true;
+	number.point();
+	builder.append(input);
+	input = next();
+      }
+    }
+    if ( isDouble ) {
+      while ( isDigit(input) ) {
+	++digits;
+	number.digit(input);
+	builder.append(input);
+	input = next();
+      }
+    }
+    if ( digits > 0 && (input == 'e' || input == 'E') ) {
+      isDouble = true;
+      number.exponent();
+      builder.append(input);
+      input = next();
+      if ( input == MINUS || input == PLUS ) {
+	if ( input == MINUS ) {
+	  number.negate();
+	}
+	builder.append(input);
+	input = next();
+      }
+      int exponent = 0;
+      while ( isDigit(input) ) {
+	++exponent;
+	number.digit(input);
+	builder.append(input);
+	input = next();
+      }
+      digits = exponent > 0 ? digits : 0;
+    }
+    if ( digits == 0 || !isDelimiter(input) ) {
+      throw error(mark, INVALID_NUMBER);
+    }
+    if ( input != NULL_CHARACTER ) {
+      in.pushback();
+    }
+    return isDouble ? JSONToken.VALUE_NUMBER_FLOAT : JSONToken.VALUE_NUMBER_INT;
+  }
+
+  /**
+   * Scan true, false, or null.
+   *
+   * @param first  the first character of the word.
+   * @return the token for the word.
+   */
+  private JSONToken scanWord(final char first) {
+    final long mark = in.position() - 1;
+    builder.setLength(0);
+    builder.append(first);
+    char input = next();
+    while ( Character.isLetter(input) ) {
+      builder.append(input);
+      input = next();
+    }
+    if ( input != NULL_CHARACTER ) {
+      in.pushback();
+    }
+    JSONToken result = null;
+    if ( matches(TRUE_STRING) ) {
+      result = JSONToken.VALUE_TRUE;
+    }
+    else if ( matches(FALSE_STRING) ) {
+      result = JSONToken.VALUE_FALSE;
+    }
+    else if ( matches(NULL_STRING) ) {
+      result = JSONToken.VALUE_NULL;
+    }
+    else {
+      throw error(mark, String.format(EXPECTED_FORMAT2, TRUE_FALSE_OR_NULL, builder));
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if the builder holds the specified word, ignoring case
+   * if the ignoreCase flag is set.
+   *
+   * @param word  the word.
+   * @return true if the builder holds the word.
+   */
+  private boolean matches(final String word) {
+    boolean result = builder.length() == word.length();
+    for ( int i = 0; result && i < word.length(); ++i ) {
+      final char input = builder.charAt(i);
+      result = input == word.charAt(i)
+	  || ignoreCase && Character.toLowerCase(input) == word.charAt(i);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the next character, or the null character at the end of input.
+   *
+   * @return the next character.
+   */
+  private char next() {
+    return in.hasNext() ? in.next(false) : NULL_CHARACTER;
+  }
+
+  /**
+   * Returns true if the current token is a number.
+   *
+   * @return true if the current token is a number.
+   */
+  private boolean isNumber() {
+    return token == JSONToken.VALUE_NUMBER_INT || token == JSONToken.VALUE_NUMBER_FLOAT;
+  }
+
+  /**
+   * Returns true if the character is an ASCII digit.
+   *
+   * @param input  the character.
+   * @return true if the character is a digit.
+   */
+  private static boolean isDigit(final char input) {
+    return input >= ZERO && input <= '9';
+  }
+
+  /**
+   * Returns true if the character may follow a number or word.
+   *
+   * @param input  the character.
+   * @return true if the character may follow a number or word.
+   */
+  private static boolean isDelimiter(final char input) {
+    return input == NULL_CHARACTER || input == COMMA || input == RIGHT_BRACE
+	|| input == RIGHT_BRACKET || Character.isWhitespace(input);
+  }
+
+  /**
+   * Returns an exception reporting that the input was not what was
+   * expected.
+   *
+   * @param expected  a description of the expected input.
+   * @param received  the character received.
+   * @return a ParserException.
+   */
+  private ParserException expected(final String expected, final char received) {
+    return error(in.position() - 1, String.format(EXPECTED_FORMAT1, expected, received));
+  }
+
+  /**
+   * Returns an exception reporting an error at the specified position.
+   *
+   * @param mark     the position of the error.
+   * @param message  the description of the error.
+   * @return a ParserException.
+   */
+  private ParserException error(final long mark, final String message) {
+    final StringBuilder result = new StringBuilder(DEFAULT_BUFFER_SIZE);
+    result.append(String.format(ERROR_FORMAT, source == null ? JSON : source,
+				in.line(), in.column(mark), message));
+    in.appendContext(result, mark);
+    return new ParserException(result.toString());
+  }
+
+}
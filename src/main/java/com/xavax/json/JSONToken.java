@@ -0,0 +1,66 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+/**
+ * JSONToken enumerates the tokens returned by a <i>JSONReader</i>.
+ */
+public enum JSONToken {
+  /**
+   * The start of an object (a left brace).
+   */
+  START_OBJECT,
+
+  /**
+   * The end of an object (a right brace).
+   */
+  END_OBJECT,
+
+  /**
+   * The start of an array (a left bracket).
+   */
+  START_ARRAY,
+
+  /**
+   * The end of an array (a right bracket).
+   */
+  END_ARRAY,
+
+  /**
+   * The name of a field in an object.
+   */
+  FIELD_NAME,
+
+  /**
+   * A string value.
+   */
+  VALUE_STRING,
+
+  /**
+   * A number with no fraction or exponent.
+   */
+  VALUE_NUMBER_INT,
+
+  /**
+   * A number with a fraction or exponent.
+   */
+  VALUE_NUMBER_FLOAT,
+
+  /**
+   * The value true.
+   */
+  VALUE_TRUE,
+
+  /**
+   * The value false.
+   */
+  VALUE_FALSE,
+
+  /**
+   * The value null.
+   */
+  VALUE_NULL
+}
@@ -0,0 +1,362 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * NumberAccumulator builds the value of a number from its characters as a
+ * parser scans them, so the number is never converted from a string. The
+ * first 19 significant digits are accumulated in a long, and the decimal
+ * exponent is adjusted for digits after the point and for any digits
+ * dropped beyond the first 19.
+ * <p>
+ * Doubles are converted with the Clinger fast path when the significand
+ * and the power of ten are both exactly representable, and otherwise with
+ * the Eisel-Lemire algorithm, which multiplies the significand by a 128-bit
+ * approximation of the power of ten. The few numbers neither can round
+ * correctly (those with more than 19 significant digits, or that fall too
+ * close to halfway between two doubles) are converted from their text
+ * with Double.parseDouble.
+ */
+final class NumberAccumulator {
+  private final static int MAX_DIGITS = 19;
+  private final static int MAX_EXPONENT = 100000;
+  private final static int MIN_POWER = -342;
+  private final static int MAX_POWER = 308;
+  private final static int MAX_EXACT_POWER = 22;
+  private final static long MAX_EXACT_SIGNIFICAND = 1L << 53;
+  private final static int MANTISSA_BITS = 52;
+  private final static int EXPONENT_BIAS = 1023;
+  private final static int INFINITE_EXPONENT = 0x7FF;
+  private final static long PRECISION_MASK = 0x1FF;
+  private final static double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private final static long[] POWERS_OF_FIVE = powersOfFive();
+
+  private boolean negative;
+  private boolean isInteger;
+  private boolean inExponent;
+  private boolean inFraction;
+  private boolean negativeExponent;
+  private boolean truncated;
+  private int count;
+  private int digits;
+  private int scale;
+  private int exponent;
+  private long significand;
+
+  /**
+   * Construct a NumberAccumulator.
+   */
+  NumberAccumulator() {
+    reset();
+  }
+
+  /**
+   * Reset this accumulator to begin a new number.
+   *
+   * @return this accumulator.
+   */
+  NumberAccumulator reset() {
+    negative = false;
+    isInteger = true;
+    inExponent = false;
+    inFraction = false;
+    negativeExponent = false;
+    truncated = false;
+    count = 0;
+    digits = 0;
+    scale = 0;
+    exponent = 0;
+    significand = 0;
+    return this;
+  }
+
+  /**
+   * Make the number negative, or the exponent if one has begun.
+   */
+  void negate() {
+    if ( inExponent ) {
+      negativeExponent = true;
+    }
+    else {
+      negative = true;
+    }
+  }
+
+  /**
+   * Begin the fraction of the number.
+   */
+  void point() {
+    isInteger = false;
+    inFraction = true;
+  }
+
+  /**
+   * Begin the exponent of the number.
+   */
+  void exponent() {
+    isInteger = false;
+    inExponent = true;
+  }
+
+  /**
+   * Accumulate the next digit of the significand or of the exponent.
+   *
+   * @param input  a digit from '0' to '9'.
+   */
+  void digit(final char input) {
+    final int digit = input - '0';
+    if ( inExponent ) {
+      if ( exponent < MAX_EXPONENT ) {
+	exponent = exponent * 10 + digit;
+      }
+    }
+    else {
+      ++count;
+      if ( digits < MAX_DIGITS ) {
+	if ( digits > 0 || digit != 0 ) {
+	  significand = significand * 10 + digit;
+	  ++digits;
+	}
+	if ( inFraction ) {
+	  --scale;
+	}
+      }
+      else {
+	truncated |= digit != 0;
+	if ( !inFraction ) {
+	  ++scale;
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns true if the significand has at least one digit.
+   *
+   * @return true if the significand has at least one digit.
+   */
+  boolean hasDigits() {
+    return count > 0;
+  }
+
+  /**
+   * Returns true if the number has neither a fraction nor an exponent.
+   *
+   * @return true if the number is an integer.
+   */
+  boolean isInteger() {
+    return isInteger;
+  }
+
+  /**
+   * Returns true if the number is an integer that fits in a long.
+   *
+   * @return true if the number is an integer that fits in a long.
+   */
+  boolean isLong() {
+    return isInteger && !truncated && scale == 0
+	&& (significand >= 0 || negative && significand == Long.MIN_VALUE);
+  }
+
+  /**
+   * Returns the value of the number as a long. The result is only valid
+   * if isLong is true.
+   *
+   * @return the value of the number.
+   */
+  long longValue() {
+    return negative ? -significand : significand;
+  }
+
+  /**
+   * Returns the value of the number as a double.
+   *
+   * @param text  the text of the number, used only if the number cannot
+   *              be converted from its digits.
+   * @return the value of the number.
+   */
+  double doubleValue(final CharSequence text) {
+    final int power = scale + (negativeExponent ? -exponent : exponent);
+    double result = Double.NaN;
+    if ( significand == 0 ) {
+      result = 0.0;
+    }
+    else if ( !truncated ) {
+      result = toDouble(significand, power);
+    }
+    if ( Double.isNaN(result) ) {
+      result = Double.parseDouble(text.toString());
+    }
+    else if ( negative ) {
+      result = -result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if the number is not zero but its double value is zero
+   * or infinite.
+   *
+   * @param value  the double value of the number.
+   * @return true if the number is out of the range of a double.
+   */
+  boolean isOutOfRange(final double value) {
+    return Double.isInfinite(value) || value == 0.0 && significand != 0;
+  }
+
+  /**
+   * Returns the value of the number as a BigInteger.
+   *
+   * @param text  the text of the number.
+   * @return the value of the number.
+   */
+  BigInteger bigIntegerValue(final CharSequence text) {
+    return isLong() ? BigInteger.valueOf(longValue()) : new BigInteger(text.toString());
+  }
+
+  /**
+   * Returns the value of the number as a BigDecimal.
+   *
+   * @param text  the text of the number.
+   * @return the value of the number.
+   */
+  BigDecimal bigDecimalValue(final CharSequence text) {
+    return new BigDecimal(text.toString());
+  }
+
+  /**
+   * Convert a significand and a power of ten to the nearest double.
+   *
+   * @param value  the significand (unsigned, not zero).
+   * @param power  the power of ten.
+   * @return the nearest double, or NaN if it cannot be determined.
+   */
+  private static double toDouble(final long value, final int power) {
+    double result;
+    if ( value > 0 && value <= MAX_EXACT_SIGNIFICAND && power >= -MAX_EXACT_POWER && power <= MAX_EXACT_POWER ) {
+      result = power < 0 ? value / POWERS_OF_TEN[-power] : value * POWERS_OF_TEN[power];
+    }
+    else {
+      result = eiselLemire(value, power);
+    }
+    return result;
+  }
+
+  /**
+   * Convert a significand and a power of ten to the nearest double with
+   * the Eisel-Lemire algorithm.
+   *
+   * @param value  the significand (unsigned, not zero).
+   * @param power  the power of ten.
+   * @return the nearest double, or NaN if it cannot be determined.
+   */
+  @SuppressWarnings("PMD.CyclomaticComplexity")
+  private static double eiselLemire(final long value, final int power) {
+    if ( power < MIN_POWER ) {
+      return 0.0;
+    }
+    if ( power > MAX_POWER ) {
+      return Double.POSITIVE_INFINITY;
+    }
+    final int zeros = Long.numberOfLeadingZeros(value);
+    final long normalized = value << zeros;
+    final int index = (power - MIN_POWER) << 1;
+    long low = normalized * POWERS_OF_FIVE[index];
+    long high = multiplyHigh(normalized, POWERS_OF_FIVE[index]);
+    if ( (high & PRECISION_MASK) == PRECISION_MASK ) {
+      final long carry = multiplyHigh(normalized, POWERS_OF_FIVE[index + 1]);
+      low += carry;
+      if ( Long.compareUnsigned(carry, low) > 0 ) {
+	++high;
+      }
+    }
+    if ( low == -1L && (power < -27 || power > 55) ) {
+      return Double.NaN;
+    }
+    final int upper = (int) (high >>> 63);
+    final int shift = upper + 64 - MANTISSA_BITS - 3;
+    long mantissa = high >>> shift;
+    int binaryExponent = (((152170 + 65536) * power) >> 16) + 63 + upper - zeros + EXPONENT_BIAS;
+    if ( binaryExponent <= 0 ) {
+      if ( -binaryExponent + 1 >= 64 ) {
+	return 0.0;
+      }
+      mantissa >>>= -binaryExponent + 1;
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      binaryExponent = mantissa < 1L << MANTISSA_BITS ? 0 : 1;
+      return Double.longBitsToDouble(mantissa | (long) binaryExponent << MANTISSA_BITS);
+    }
+    if ( Long.compareUnsigned(low, 1) <= 0 && power >= -4 && power <= 23
+	 && (mantissa & 3) == 1 && mantissa << shift == high ) {
+      // Exactly halfway between two doubles: round to even.
+      mantissa &= ~1L;
+    }
+    mantissa += mantissa & 1;
+    mantissa >>>= 1;
+    if ( mantissa >= 2L << MANTISSA_BITS ) {
+      mantissa = 1L << MANTISSA_BITS;
+      ++binaryExponent;
+    }
+    mantissa &= ~(1L << MANTISSA_BITS);
+    return binaryExponent >= INFINITE_EXPONENT
+	? Double.POSITIVE_INFINITY
+	: Double.longBitsToDouble(mantissa | (long) binaryExponent << MANTISSA_BITS);
+  }
+
+  /**
+   * Returns the high 64 bits of the unsigned 128-bit product of two longs.
+   *
+   * @param x  the first factor.
+   * @param y  the second factor.
+   * @return the high 64 bits of the product.
+   */
+  private static long multiplyHigh(final long x, final long y) {
+    final long x0 = x & 0xFFFFFFFFL;
+    final long x1 = x >>> 32;
+    final long y0 = y & 0xFFFFFFFFL;
+    final long y1 = y >>> 32;
+    final long p01 = x0 * y1;
+    final long middle = x1 * y0 + (x0 * y0 >>> 32) + (p01 & 0xFFFFFFFFL);
+    return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+  }
+
+  /**
+   * Returns the 128-bit approximations of the powers of five from
+   * MIN_POWER to MAX_POWER, normalized so the high bit is set, as pairs of
+   * longs (high half first).
+   *
+   * @return the powers of five.
+   */
+  private static long[] powersOfFive() {
+    final long[] table = new long[(MAX_POWER - MIN_POWER + 1) << 1];
+    final BigInteger five = BigInteger.valueOf(5);
+    for ( int power = MIN_POWER; power <= MAX_POWER; ++power ) {
+      BigInteger value;
+      if ( power < 0 ) {
+	final BigInteger divisor = five.pow(-power);
+	final int bits = divisor.bitLength();
+	final int shift = power >= -27 ? bits + 127 : 2 * bits + 128;
+	value = BigInteger.ONE.shiftLeft(shift).divide(divisor).add(BigInteger.ONE);
+      }
+      else {
+	value = five.pow(power);
+	value = value.shiftLeft(Math.max(0, 128 - value.bitLength()));
+      }
+      value = value.shiftRight(Math.max(0, value.bitLength() - 128));
+      final int index = (power - MIN_POWER) << 1;
+      table[index] = value.shiftRight(64).longValue();
+      table[index + 1] = value.longValue();
+    }
+    return table;
+  }
+}
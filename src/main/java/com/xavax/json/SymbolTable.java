@@ -0,0 +1,184 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import com.xavax.exception.RangeException;
+
+/**
+ * SymbolTable maps the characters of a field name to a canonical String,
+ * so a parser that reads the same field names over and over returns the
+ * same String instances instead of allocating a new one for every key.
+ * A symbol is found by hashing the characters where they are, with the
+ * same hash function as String.hashCode, and comparing them to the
+ * candidate strings; a String is created only when the symbol is new.
+ * <p>
+ * The table starts small and doubles as symbols are added, up to a fixed
+ * capacity, so a parser that reads only a few field names never pays for
+ * a full table. Each symbol may occupy one of a few slots near its hash;
+ * when all of them are taken, the new symbol replaces the one in its
+ * first slot, so a document with an unbounded number of distinct keys
+ * cannot grow the table past its capacity. A SymbolTable may be shared by
+ * parsers running in different threads. Slots are read and written
+ * without locks: a thread that misses a symbol another thread just added
+ * simply creates its own copy, and because String is immutable, a String
+ * seen through a racing read is always complete. A symbol added while
+ * another thread is growing the table may be dropped, which only costs a
+ * later copy.
+ */
+public final class SymbolTable {
+  public final static int DEFAULT_CAPACITY = 1024;
+  public final static int MIN_CAPACITY = 16;
+  public final static int MAX_CAPACITY = 1 << 20;
+  public final static int MAX_SYMBOL_LENGTH = 64;
+
+  private final static int PROBES = 4;
+
+  private final int capacity;
+  private volatile String[] symbols;
+  private int count;
+
+  /**
+   * Construct a SymbolTable with the default capacity.
+   */
+  public SymbolTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Construct a SymbolTable with the specified capacity, rounded up to a
+   * power of two.
+   *
+   * @param capacity  the maximum number of symbols.
+   * @throws RangeException if the capacity is out of range.
+   */
+  public SymbolTable(final int capacity) {
+    if ( capacity < MIN_CAPACITY || capacity > MAX_CAPACITY ) {
+      throw new RangeException(MIN_CAPACITY, MAX_CAPACITY, capacity);
+    }
+    this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+    this.symbols = new String[MIN_CAPACITY];
+  }
+
+  /**
+   * Returns the capacity of this table.
+   *
+   * @return the capacity of this table.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of slots currently allocated, which grows toward
+   * the capacity as symbols are added.
+   *
+   * @return the number of slots currently allocated.
+   */
+  int size() {
+    return symbols.length;
+  }
+
+  /**
+   * Returns the canonical String with the specified characters.
+   *
+   * @param chars  the characters of the symbol.
+   * @return the canonical String.
+   */
+  public String intern(final CharSequence chars) {
+    int hash = 0;
+    final int length = chars.length();
+    for ( int i = 0; i < length; ++i ) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    return intern(chars, hash);
+  }
+
+  /**
+   * Returns the canonical String with the specified characters, whose
+   * String.hashCode has already been computed. Symbols longer than
+   * MAX_SYMBOL_LENGTH are not kept in the table.
+   *
+   * @param chars  the characters of the symbol.
+   * @param hash   the hash code of the characters.
+   * @return the canonical String.
+   */
+  String intern(final CharSequence chars, final int hash) {
+    final int length = chars.length();
+    String result = null;
+    if ( length <= MAX_SYMBOL_LENGTH ) {
+      final String[] table = this.symbols;
+      final int mask = table.length - 1;
+      final int home = (hash ^ hash >>> 16) & mask;
+      int free = -1;
+      for ( int probe = 0; probe < PROBES; ++probe ) {
+	final int index = (home + probe) & mask;
+	final String symbol = table[index];
+	if ( symbol == null ) {
+	  free = free < 0 ? index : free;
+	}
+	else if ( symbol.hashCode() == hash && matches(symbol, chars, length) ) {
+	  result = symbol;
+	  break;
+	}
+      }
+      if ( result == null ) {
+	result = chars.toString();
+	table[free < 0 ? home : free] = result;
+	if ( free >= 0 && ++count > table.length >> 1 && table.length < capacity ) {
+	  grow(table);
+	}
+      }
+    }
+    else {
+      result = chars.toString();
+    }
+    return result;
+  }
+
+  /**
+   * Replace the table with one twice the size holding the same symbols.
+   * A symbol with no free slot near its hash in the new table is dropped.
+   *
+   * @param table  the current table.
+   */
+  private void grow(final String[] table) {
+    final String[] larger = new String[table.length << 1];
+    final int mask = larger.length - 1;
+    int entries = 0;
+    for ( final String symbol : table ) {
+      if ( symbol != null ) {
+	final int hash = symbol.hashCode();
+	final int home = (hash ^ hash >>> 16) & mask;
+	for ( int probe = 0; probe < PROBES; ++probe ) {
+	  final int index = (home + probe) & mask;
+	  if ( larger[index] == null ) {
+	    larger[index] = symbol;
+	    ++entries;
+	    break;
+	  }
+	}
+      }
+    }
+    this.count = entries;
+    this.symbols = larger;
+  }
+
+  /**
+   * Returns true if a symbol has the specified characters.
+   *
+   * @param symbol  the symbol.
+   * @param chars   the characters.
+   * @param length  the number of characters.
+   * @return true if the symbol has the characters.
+   */
+  private static boolean matches(final String symbol, final CharSequence chars, final int length) {
+    boolean result = symbol.length() == length;
+    for ( int i = 0; result && i < length; ++i ) {
+      result = symbol.charAt(i) == chars.charAt(i);
+    }
+    return result;
+  }
+}
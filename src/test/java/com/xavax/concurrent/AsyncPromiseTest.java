@@ -0,0 +1,199 @@
+package com.xavax.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+import org.testng.annotations.BeforeMethod;
+
+import static org.testng.Assert.*;
+import static com.xavax.concurrent.DelayedWriter.delayedWrite;
+
+/**
+ * Test cases for the AsyncPromise class.
+ */
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.SignatureDeclareThrowsException" })
+public class AsyncPromiseTest {
+  private final static long SLEEP_TIME = 20;
+  private final static int CHAIN_LENGTH = 10000;
+  private final static String NAME = "Test1";
+  private final static String RESULT = "Test Results";
+  private final static String EXPECTED = "name: \"Test1\", ready: false, result: <null>, failure: false";
+
+  private AsyncPromise<String> promise;
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @BeforeMethod
+  public void setUp() throws Exception {
+    promise = new AsyncPromise<>(NAME);
+  }
+
+  /**
+   * Test set, get, and isReady.
+   */
+  @Test
+  public void testGet() {
+    assertFalse(promise.isReady());
+    delayedWrite(SLEEP_TIME, promise, RESULT);
+    assertEquals(promise.get(), RESULT);
+    assertTrue(promise.isReady());
+    assertFalse(promise.isFailed());
+    assertEquals(promise.getName(), NAME);
+    assertTrue(promise.toString().contains(NAME));
+    assertTrue(new AsyncPromise<String>(NAME).toString().contains(EXPECTED));
+  }
+
+  /**
+   * Test that continuations run when the promise is fulfilled.
+   */
+  @Test
+  public void testContinuations() {
+    final AtomicReference<String> seen = new AtomicReference<>();
+    final AsyncPromise<Integer> length = promise.thenApply(String::length);
+    final AsyncPromise<Integer> doubled =
+	length.thenCompose(n -> AsyncPromise.completed(NAME, n * 2));
+    promise.onComplete((result, cause) -> seen.set(result));
+    assertFalse(doubled.isReady());
+    assertNull(seen.get());
+    promise.set(RESULT);
+    assertEquals(seen.get(), RESULT);
+    assertEquals(length.get().intValue(), RESULT.length());
+    assertEquals(doubled.get().intValue(), RESULT.length() * 2);
+    assertEquals(doubled.getName(), NAME);
+  }
+
+  /**
+   * Test that setting the result again replaces it without running the
+   * continuations again, as BasicPromise does.
+   */
+  @Test
+  public void testReplace() {
+    final AtomicInteger calls = new AtomicInteger();
+    promise.onComplete((result, cause) -> calls.incrementAndGet());
+    promise.set(RESULT);
+    promise.set(NAME);
+    assertEquals(promise.get(), NAME);
+    assertEquals(calls.get(), 1);
+    final BasicPromise<String> basic = new BasicPromise<>(NAME);
+    basic.set(RESULT);
+    basic.set(NAME);
+    assertEquals(basic.get(), NAME);
+  }
+
+  /**
+   * Test that a failure propagates through continuations.
+   */
+  @Test
+  public void testFailure() {
+    final IllegalStateException failure = new IllegalStateException();
+    final AtomicReference<Throwable> seen = new AtomicReference<>();
+    final AsyncPromise<Integer> length = promise.thenApply(String::length);
+    length.onComplete((result, cause) -> seen.set(cause));
+    assertTrue(promise.fail(failure));
+    assertFalse(promise.fail(failure));
+    promise.set(RESULT);
+    assertTrue(promise.isFailed());
+    assertTrue(length.isFailed());
+    assertSame(seen.get(), failure);
+    try {
+      length.get();
+      fail("expected PromiseFailedException");
+    }
+    catch (PromiseFailedException e) {
+      assertSame(e.getCause(), failure);
+      assertSame(e.getPromise(), length);
+    }
+    assertEquals(length.exceptionally(cause -> -1).get().intValue(), -1);
+    assertSame(AsyncPromise.failed(NAME, failure).toCompletableFuture().handle((r, e) -> e).join(),
+	       failure);
+  }
+
+  /**
+   * Test interoperation with CompletableFuture.
+   */
+  @Test
+  public void testInterop() {
+    final CompletableFuture<String> future = new CompletableFuture<>();
+    final AsyncPromise<String> converted = AsyncPromise.from(NAME, future);
+    final CompletableFuture<String> combined =
+	CompletableFuture.completedFuture(RESULT).thenCombine(promise, (a, b) -> a + b);
+    assertFalse(converted.isReady());
+    future.complete(RESULT);
+    assertEquals(converted.get(), RESULT);
+    promise.set(RESULT);
+    assertEquals(combined.join(), RESULT + RESULT);
+    promise.toCompletableFuture().complete(NAME);
+    assertEquals(promise.get(), RESULT);
+  }
+
+  /**
+   * Test that a long chain of pending promises needs no waiting threads.
+   */
+  @Test
+  public void testLongChain() {
+    final AtomicInteger count = new AtomicInteger();
+    final AsyncPromise<Integer> head = new AsyncPromise<>(NAME);
+    AsyncPromise<Integer> tail = head;
+    for ( int i = 0; i < CHAIN_LENGTH; ++i ) {
+      tail = tail.thenApply(n -> n + 1);
+      tail.onComplete((result, cause) -> count.incrementAndGet());
+    }
+    assertEquals(count.get(), 0);
+    head.set(0);
+    assertEquals(tail.get().intValue(), CHAIN_LENGTH);
+    assertEquals(count.get(), CHAIN_LENGTH);
+  }
+
+  /**
+   * Test interrupted promise.
+   */
+  @Test
+  public void testInterruptedPromise() throws Exception {
+    final AtomicReference<String> result = new AtomicReference<>(RESULT);
+    final AtomicBoolean status = new AtomicBoolean();
+    final Thread thread = new Thread(() -> {
+      result.set(promise.get());
+      status.set(Thread.currentThread().isInterrupted());
+    });
+    thread.start();
+    Thread.sleep(SLEEP_TIME);
+    thread.interrupt();
+    thread.join();
+    assertTrue(promise.wasInterrupted());
+    assertNull(result.get());
+    assertTrue(status.get());
+  }
+
+  /**
+   * Test get with a deadline and cancellation.
+   */
+  @Test
+  public void testDeadlineAndCancel() {
+    final AtomicReference<Throwable> seen = new AtomicReference<>();
+    promise.onComplete((result, cause) -> seen.set(cause));
+    try {
+      promise.get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+      fail("expected PromiseTimeoutException");
+    }
+    catch (PromiseTimeoutException e) {
+      assertSame(e.getPromise(), promise);
+    }
+    assertTrue(promise.cancel());
+    assertTrue(promise.isCancelled());
+    assertTrue(promise.isFailed());
+    assertTrue(seen.get() instanceof CancellationException);
+    try {
+      promise.get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+      fail("expected PromiseFailedException");
+    }
+    catch (PromiseFailedException e) {
+      assertTrue(e.getCause() instanceof CancellationException);
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package com.xavax.concurrent;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
 
@@ -13,7 +17,8 @@ import static com.xavax.concurrent.DelayedWriter.delayedWrite;
 public class BasicPromiseTest {
   private final static long TIMEOUT = 50000;
   private final static long SLEEP_TIME = 20;
-  private final static String EXPECTED = "name: \"Test1\", ready: false, result: <null>, sentinel: ";
+  private final static int WAITERS = 8;
+  private final static String EXPECTED = "name: \"Test1\", ready: false, result: <null>, waiters: 0";
   private final static String NAME1 = "Test1";
   private final static String NAME2 = "Test12";
   private final static String RESULT = "Test Results";
@@ -68,7 +73,8 @@ public class BasicPromiseTest {
   @Test
   public void testGet() {
     delayedWrite(SLEEP_TIME, promise1, RESULT);
-    delayedWrite(SLEEP_TIME, promise2, RESULT);
+    // promise2 waits only TIMEOUT nanoseconds, so set it before waiting.
+    promise2.set(RESULT);
     assertEquals(promise1.get(), RESULT);
     assertEquals(promise2.get(), RESULT);
   }
@@ -101,4 +107,144 @@ public class BasicPromiseTest {
     Thread.sleep(SLEEP_TIME);
     assertTrue(promise1.wasInterrupted());
   }
+
+  /**
+   * Test that setting the result wakes every waiting thread.
+   */
+  @Test
+  public void testManyWaiters() throws Exception {
+    final Thread[] threads = new Thread[WAITERS];
+    final String[] results = new String[WAITERS];
+    for ( int i = 0; i < WAITERS; ++i ) {
+      final int index = i;
+      threads[i] = new Thread(() -> results[index] = promise1.get());
+      threads[i].start();
+    }
+    Thread.sleep(SLEEP_TIME);
+    assertFalse(promise1.isReady());
+    promise1.set(RESULT);
+    for ( int i = 0; i < WAITERS; ++i ) {
+      threads[i].join();
+      assertEquals(results[i], RESULT);
+    }
+    assertTrue(promise1.toString().contains("waiters: 0"));
+    assertFalse(promise1.wasInterrupted());
+  }
+
+  /**
+   * Test get with a deadline.
+   */
+  @Test
+  public void testGetWithDeadline() {
+    final long start = System.nanoTime();
+    try {
+      promise1.get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+      fail("expected PromiseTimeoutException");
+    }
+    catch (PromiseTimeoutException e) {
+      assertSame(e.getPromise(), promise1);
+    }
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(SLEEP_TIME));
+    assertTrue(promise1.toString().contains("waiters: 0"));
+    promise1.set(null);
+    assertNull(promise1.get(0, TimeUnit.NANOSECONDS));
+    delayedWrite(SLEEP_TIME, promise2, RESULT);
+    assertEquals(promise2.get(1, TimeUnit.MINUTES), RESULT);
+  }
+
+  /**
+   * Test cancelling a promise.
+   */
+  @Test
+  public void testCancel() throws Exception {
+    final AtomicReference<Throwable> thrown = new AtomicReference<>();
+    final Thread thread = new Thread(() -> {
+      try {
+	promise1.get(1, TimeUnit.MINUTES);
+      }
+      catch (PromiseFailedException e) {
+	thrown.set(e.getCause());
+      }
+    });
+    thread.start();
+    Thread.sleep(SLEEP_TIME);
+    assertTrue(promise1.cancel());
+    assertFalse(promise1.cancel());
+    promise1.set(RESULT);
+    thread.join();
+    assertTrue(thrown.get() instanceof CancellationException);
+    assertTrue(promise1.isReady());
+    assertTrue(promise1.isCancelled());
+    assertTrue(promise1.isFailed());
+    promise2.set(RESULT);
+    assertFalse(promise2.cancel());
+    assertEquals(promise2.get(), RESULT);
+  }
+
+  /**
+   * Test completing a promise with a failure.
+   */
+  @Test
+  public void testFail() {
+    final IllegalStateException failure = new IllegalStateException();
+    assertTrue(promise1.fail(failure));
+    assertFalse(promise1.fail(new IllegalStateException()));
+    assertTrue(promise1.isFailed());
+    assertFalse(promise1.isCancelled());
+    assertTrue(promise1.toString().contains("failed: true"));
+    try {
+      promise1.get();
+      fail("expected PromiseFailedException");
+    }
+    catch (PromiseFailedException e) {
+      assertSame(e.getCause(), failure);
+    }
+  }
+
+  /**
+   * Test interrupting a thread waiting with a deadline.
+   */
+  @Test
+  public void testInterruptedDeadline() throws Exception {
+    final AtomicReference<Throwable> thrown = new AtomicReference<>();
+    final AtomicReference<Boolean> status = new AtomicReference<>();
+    final Thread thread = new Thread(() -> {
+      try {
+	promise1.get(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedPromiseException e) {
+	thrown.set(e);
+	status.set(Thread.currentThread().isInterrupted());
+      }
+    });
+    thread.start();
+    Thread.sleep(SLEEP_TIME);
+    thread.interrupt();
+    thread.join();
+    assertTrue(thrown.get() instanceof InterruptedPromiseException);
+    assertTrue(status.get());
+    assertTrue(promise1.wasInterrupted());
+  }
+
+  /**
+   * Test actions registered with onComplete.
+   */
+  @Test
+  public void testOnComplete() {
+    final AtomicReference<String> before = new AtomicReference<>();
+    final AtomicReference<String> after = new AtomicReference<>();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    promise1.onComplete((result, cause) -> {
+      throw new IllegalStateException();
+    });
+    promise1.onComplete((result, cause) -> before.set(result));
+    assertNull(before.get());
+    promise1.set(RESULT);
+    assertEquals(before.get(), RESULT);
+    promise1.onComplete((result, cause) -> after.set(result));
+    assertEquals(after.get(), RESULT);
+    promise2.onComplete((result, cause) -> failure.set(cause));
+    promise2.cancel();
+    assertTrue(failure.get() instanceof CancellationException);
+  }
 }
@@ -0,0 +1,71 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.BITS_PER_PAGE;
+
+/**
+ * Test that BitSetPage loses no updates when many threads set and clear
+ * bits in the same page, and in the same words of that page.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class BitSetPageContentionTest {
+  private final static int THREAD_COUNT = 8;
+  private final static int ITERATIONS = 200000;
+
+  /**
+   * Run the threads at once and verify the final state of the page.
+   * Thread t owns the bits whose index is t modulo the thread count, so
+   * every word is updated by every thread; it repeatedly sets each of its
+   * bits and then clears the odd ones.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  public void testContention() throws InterruptedException {
+    final BitSetPage page = new BitSetPage();
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[THREAD_COUNT];
+    for ( int t = 0; t < THREAD_COUNT; ++t ) {
+      final int first = t;
+      threads[t] = new Thread() {
+	public void run() {
+	  try {
+	    start.await();
+	  }
+	  catch (InterruptedException e) {
+	    return;
+	  }
+	  for ( int i = 0; i < ITERATIONS; ++i ) {
+	    final int index = (first + i * THREAD_COUNT) % BITS_PER_PAGE;
+	    page.set(index, true);
+	    page.set(index, (index & 1) == 0);
+	  }
+	}
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for ( final Thread thread : threads ) {
+      thread.join();
+    }
+    for ( int i = 0; i < BITS_PER_PAGE; ++i ) {
+      if ( (i & 1) == 0 ) {
+	assertTrue(page.get(i), "bit " + i);
+      }
+      else {
+	assertFalse(page.get(i), "bit " + i);
+      }
+    }
+  }
+}
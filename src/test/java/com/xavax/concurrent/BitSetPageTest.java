@@ -95,6 +95,59 @@ public class BitSetPageTest {
     assertEquals(result, EXPECTED6);
   }
 
+  /**
+   * Test setting and clearing ranges that span several words.
+   */
+  @Test
+  public void testWordRanges() {
+    page.set(60, 200);
+    assertFalse(page.get(59));
+    assertTrue(page.get(60));
+    assertTrue(page.get(128));
+    assertTrue(page.get(200));
+    assertFalse(page.get(201));
+    page.clear(64, 127);
+    assertTrue(page.get(63));
+    assertFalse(page.get(64));
+    assertFalse(page.get(127));
+    assertTrue(page.get(128));
+    page.clear(100, 100);
+    page.clear(200, 200);
+    assertFalse(page.get(200));
+    assertEquals(page.nextSetBit(64), 128);
+    assertEquals(page.nextClearBit(60), 64);
+    assertEquals(page.nextClearBit(128), 200);
+    page.set(0, BITS_PER_PAGE - 1);
+    assertEquals(page.nextClearBit(0), -1);
+    assertEquals(page.nextSetBit(BITS_PER_PAGE - 1), BITS_PER_PAGE - 1);
+  }
+
+  /**
+   * Test the logical operations between pages and cardinality.
+   */
+  @Test
+  public void testLogicalOperations() {
+    final BitSetPage other = new BitSetPage();
+    page.set(0, 127);
+    other.set(64, 255);
+    assertEquals(page.cardinality(), 128);
+    assertTrue(page.intersects(other));
+    page.and(other);
+    assertEquals(page.cardinality(), 64);
+    assertEquals(page.nextSetBit(0), 64);
+    page.or(other);
+    assertEquals(page.cardinality(), 192);
+    page.set(0, 63);
+    page.xor(other);
+    assertEquals(page.cardinality(), 64);
+    assertEquals(page.nextSetBit(64), -1);
+    assertFalse(page.intersects(other));
+    page.set(0, BITS_PER_PAGE - 1);
+    page.andNot(other);
+    assertEquals(page.cardinality(), BITS_PER_PAGE - 192);
+    assertEquals(page.nextClearBit(0), 64);
+  }
+
   /**
    * Test the nextSetBit method.
    */
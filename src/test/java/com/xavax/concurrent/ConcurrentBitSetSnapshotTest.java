@@ -0,0 +1,340 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * Test writing, reading, and copying snapshots of a ConcurrentBitSet.
+ */
+public class ConcurrentBitSetSnapshotTest {
+  private final static int LOG2_SEGMENT_SIZE = 12;
+  private final static int RANDOM_BOUNDS = 1 << 22;
+  private final static int RANDOM_COUNT = 5000;
+  private final static int SEED = 2468;
+  private final static long RANGE_START = 100000;
+  private final static long RANGE_END = 300000;
+  private final static long LARGE_INDEX = (1L << 34) + 17;
+  private final static int STRIDE = 97;
+  private final static int WRITER_COUNT = 200000;
+  private final static int SNAPSHOTS = 20;
+  private final static int COMPRESSION = 8;
+
+  /**
+   * Test writing a bit set to a stream and reading it back.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    final ConcurrentBitSet bitSet = createBitSet();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    bitSet.writeTo(output);
+    final byte[] bytes = output.toByteArray();
+    checkEqual(ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes)), bitSet);
+    assertTrue(bytes.length < RANDOM_BOUNDS / BITS_PER_BYTE / COMPRESSION);
+  }
+
+  /**
+   * Test writing a bit set to a channel and reading it back.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Test
+  public void testChannels() throws IOException {
+    final ConcurrentBitSet bitSet = createBitSet();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    bitSet.writeTo(Channels.newChannel(output));
+    final ConcurrentBitSet result = ConcurrentBitSet.readFrom(
+	Channels.newChannel(new ByteArrayInputStream(output.toByteArray())));
+    checkEqual(result, bitSet);
+  }
+
+  /**
+   * Test that an empty bit set round trips and that invalid data is
+   * rejected.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Test
+  public void testEmptyAndInvalid() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new ConcurrentBitSet().writeTo(output);
+    final byte[] bytes = output.toByteArray();
+    assertEquals(ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes)).cardinality(), 0);
+    bytes[0] = 0;
+    try {
+      ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes));
+      fail("expected IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that corrupt headers, segment indices, page indices, and pages
+   * are reported as IOException without resizing the segment map for
+   * them.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Test
+  public void testCorruptStreams() throws IOException {
+    // Invalid segment sizes.
+    assertInvalid(snapshot(LOG2_MAX_SEGMENT_SIZE + 1));
+    assertInvalid(snapshot(-1));
+    // Segment indices that are negative, too large, out of order, or empty.
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, -2, 0, PageContainer.TYPE_FULL, -1, -1));
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, MAX_SEGMENTS, 0, PageContainer.TYPE_FULL, -1, -1));
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, 5, 0, PageContainer.TYPE_FULL, -1,
+			   3, 0, PageContainer.TYPE_FULL, -1, -1));
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, 5, -1, -1));
+    // A huge segment index followed by a truncated page.
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, MAX_SEGMENTS - 1, 0));
+    // Invalid and duplicate page indices.
+    final int pages = 1 << (LOG2_SEGMENT_SIZE - LOG2_BITS_PER_PAGE);
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, 0, pages, PageContainer.TYPE_FULL, -1, -1));
+    assertInvalid(snapshot(LOG2_SEGMENT_SIZE, 0, 1, PageContainer.TYPE_FULL,
+			   1, PageContainer.TYPE_FULL, -1, -1));
+    // A segment beyond the size limit.
+    final ConcurrentBitSet bitSet = new ConcurrentBitSet(0, LOG2_SEGMENT_SIZE);
+    bitSet.set(LARGE_INDEX);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    bitSet.writeTo(output);
+    final byte[] bytes = output.toByteArray();
+    try {
+      // The limit ends where the segment holding LARGE_INDEX begins.
+      ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes),
+				LARGE_INDEX >>> LOG2_SEGMENT_SIZE << LOG2_SEGMENT_SIZE);
+      fail("expected IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertTrue(ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes), LARGE_INDEX + 1)
+	       .get(LARGE_INDEX));
+  }
+
+  /**
+   * Test that pages with bit indices out of order are rejected.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Test
+  public void testCorruptPages() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final DataOutputStream data = new DataOutputStream(output);
+    data.writeByte(PageContainer.TYPE_ARRAY);
+    data.writeShort(2);
+    data.writeShort(7);
+    data.writeShort(3);
+    assertInvalidPage(output.toByteArray());
+    output.reset();
+    data.writeByte(PageContainer.TYPE_RUN);
+    data.writeShort(2);
+    data.writeShort(1);
+    data.writeShort(4);
+    data.writeShort(4);
+    data.writeShort(9);
+    assertInvalidPage(output.toByteArray());
+    output.reset();
+    data.writeByte(PageContainer.TYPE_RUN);
+    data.writeShort(2);
+    data.writeShort(1);
+    data.writeShort(1);
+    data.writeShort(5);
+    data.writeShort(9);
+    assertEquals(PageContainer.read(new DataInputStream(
+	new ByteArrayInputStream(output.toByteArray()))).cardinality(), 6);
+  }
+
+  /**
+   * Returns a snapshot with the specified segment size followed by the
+   * specified ints; a value of PageContainer.TYPE_FULL following a page
+   * index is written as the one-byte type of a full page.
+   *
+   * @param logSegmentSize  log2 of the segment size.
+   * @param values          the values following the header.
+   * @return the bytes of the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static byte[] snapshot(final int logSegmentSize, final int... values)
+      throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final DataOutputStream data = new DataOutputStream(output);
+    data.writeInt(ConcurrentBitSet.SNAPSHOT_MAGIC);
+    data.writeInt(ConcurrentBitSet.SNAPSHOT_VERSION);
+    data.writeInt(logSegmentSize);
+    boolean page = false;
+    for ( final int value : values ) {
+      if ( page && value == PageContainer.TYPE_FULL ) {
+	data.writeByte(value);
+	page = false;
+      }
+      else {
+	data.writeInt(value);
+	page = value >= 0;
+      }
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Assert that reading the specified snapshot throws an IOException.
+   *
+   * @param bytes  the bytes of the snapshot.
+   */
+  private static void assertInvalid(final byte[] bytes) {
+    try {
+      ConcurrentBitSet.readFrom(new ByteArrayInputStream(bytes));
+      fail("expected IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Assert that reading the specified page throws an IOException.
+   *
+   * @param bytes  the bytes of the page.
+   */
+  private static void assertInvalidPage(final byte[] bytes) {
+    try {
+      PageContainer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+      fail("expected IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that the copy made by snapshot is independent of the original.
+   */
+  @Test
+  public void testSnapshotCopy() {
+    final ConcurrentBitSet bitSet = createBitSet();
+    final ConcurrentBitSet copy = bitSet.snapshot();
+    checkEqual(copy, bitSet);
+    bitSet.clear(RANGE_START, RANGE_END);
+    bitSet.set(0);
+    assertTrue(copy.get(RANGE_START));
+    copy.set(1);
+    assertFalse(bitSet.get(1));
+  }
+
+  /**
+   * Test that snapshots taken while another thread sets bits in
+   * ascending order always contain a prefix of those bits (that is,
+   * a consistent point in time).
+   *
+   * @throws Exception if the writer fails.
+   */
+  @Test
+  public void testConsistentSnapshot() throws Exception {
+    final ConcurrentBitSet bitSet = new ConcurrentBitSet(0, LOG2_SEGMENT_SIZE);
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final Thread writer = new Thread() {
+      @Override
+      public void run() {
+	for ( int pass = 0; running.get(); ++pass ) {
+	  final boolean value = (pass & 1) == 0;
+	  for ( long i = 0; i < WRITER_COUNT; ++i ) {
+	    bitSet.set(index(i), value);
+	  }
+	}
+      }
+    };
+    writer.start();
+    try {
+      for ( int i = 0; i < SNAPSHOTS; ++i ) {
+	final ByteArrayOutputStream output = new ByteArrayOutputStream();
+	bitSet.writeTo(output);
+	checkPrefix(ConcurrentBitSet.readFrom(new ByteArrayInputStream(output.toByteArray())));
+	checkPrefix(bitSet.snapshot());
+      }
+    }
+    finally {
+      running.set(false);
+      writer.join();
+    }
+  }
+
+  /**
+   * Verify that a snapshot from testConsistentSnapshot holds a consistent
+   * state: bits 0..k-1 of the sequence have one value and the rest have
+   * the other value.
+   *
+   * @param snapshot  the snapshot to check.
+   */
+  private void checkPrefix(final ConcurrentBitSet snapshot) {
+    final boolean first = snapshot.get(index(0));
+    boolean changed = false;
+    for ( long i = 1; i < WRITER_COUNT; ++i ) {
+      final boolean value = snapshot.get(index(i));
+      if ( value != first ) {
+	changed = true;
+      }
+      else if ( changed ) {
+	fail("inconsistent snapshot at " + i);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the i'th bit updated by the writer thread.
+   *
+   * @param i  the sequence number.
+   * @return the bit index.
+   */
+  private long index(final long i) {
+    return i * STRIDE;
+  }
+
+  /**
+   * Create a bit set with random bits, a range, and a distant bit.
+   *
+   * @return the new bit set.
+   */
+  private ConcurrentBitSet createBitSet() {
+    final ConcurrentBitSet bitSet = new ConcurrentBitSet(0, LOG2_SEGMENT_SIZE);
+    final Random random = new Random(SEED);
+    for ( int i = 0; i < RANDOM_COUNT; ++i ) {
+      bitSet.set(random.nextInt(RANDOM_BOUNDS));
+    }
+    bitSet.set(RANGE_START, RANGE_END);
+    bitSet.set(LARGE_INDEX);
+    return bitSet;
+  }
+
+  /**
+   * Verify that two bit sets have the same set bits.
+   *
+   * @param actual    the bit set being checked.
+   * @param expected  the expected bit set.
+   */
+  private void checkEqual(final ConcurrentBitSet actual, final ConcurrentBitSet expected) {
+    assertEquals(actual.cardinality(), expected.cardinality());
+    for ( long i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1) ) {
+      assertEquals(actual.nextSetBit(i), i);
+    }
+  }
+}
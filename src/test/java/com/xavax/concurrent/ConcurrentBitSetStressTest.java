@@ -0,0 +1,120 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.LOG2_MIN_SEGMENT_SIZE;
+
+/**
+ * Stress test ConcurrentBitSet with concurrent readers and writers while
+ * the segment map is repeatedly resized.
+ */
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.AvoidInstantiatingObjectsInLoops" })
+public class ConcurrentBitSetStressTest {
+  private final static int WRITER_COUNT = 4;
+  private final static int READER_COUNT = 4;
+  private final static int BITS_PER_WRITER = 50000;
+  private final static int READS_PER_READER = 200000;
+  private final static int STRIDE = 7;
+
+  /**
+   * Each writer sets bits at increasing indices, forcing the segment map
+   * to grow, and publishes how far it has progressed. Readers repeatedly
+   * check that every bit a writer has published is visible.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  public void testVisibilityAcrossResizes() throws InterruptedException {
+    final ConcurrentBitSet bitSet = new ConcurrentBitSet(0, LOG2_MIN_SEGMENT_SIZE);
+    final AtomicLongArray progress = new AtomicLongArray(WRITER_COUNT);
+    final AtomicInteger failures = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[WRITER_COUNT + READER_COUNT];
+    for ( int w = 0; w < WRITER_COUNT; ++w ) {
+      final int writer = w;
+      threads[w] = new Thread() {
+	public void run() {
+	  await(start);
+	  for ( int k = 0; k < BITS_PER_WRITER; ++k ) {
+	    bitSet.set(index(writer, k));
+	    progress.set(writer, k + 1);
+	  }
+	}
+      };
+    }
+    for ( int r = 0; r < READER_COUNT; ++r ) {
+      final long seed = r;
+      threads[WRITER_COUNT + r] = new Thread() {
+	public void run() {
+	  final Random random = new Random(seed);
+	  await(start);
+	  for ( int i = 0; i < READS_PER_READER; ++i ) {
+	    final int writer = random.nextInt(WRITER_COUNT);
+	    final long published = progress.get(writer);
+	    if ( published > 0 ) {
+	      final int k = random.nextInt((int) published);
+	      if ( !bitSet.get(index(writer, k)) ) {
+		failures.incrementAndGet();
+	      }
+	      if ( bitSet.nextSetBit(index(writer, k)) != index(writer, k) ) {
+		failures.incrementAndGet();
+	      }
+	    }
+	  }
+	}
+      };
+    }
+    for ( final Thread thread : threads ) {
+      thread.start();
+    }
+    start.countDown();
+    for ( final Thread thread : threads ) {
+      thread.join();
+    }
+    assertEquals(failures.get(), 0);
+    for ( int w = 0; w < WRITER_COUNT; ++w ) {
+      for ( int k = 0; k < BITS_PER_WRITER; ++k ) {
+	assertTrue(bitSet.get(index(w, k)));
+      }
+    }
+    assertTrue(bitSet.getMetrics().getSegmentMapLocks() > 0);
+  }
+
+  /**
+   * Returns the index of the kth bit set by a writer.
+   *
+   * @param writer  the writer number.
+   * @param k       the sequence number of the bit.
+   * @return the index of the bit.
+   */
+  private static long index(final int writer, final int k) {
+    return ((long) k * WRITER_COUNT + writer) * STRIDE;
+  }
+
+  /**
+   * Wait for the latch to open.
+   *
+   * @param latch  the latch.
+   */
+  private static void await(final CountDownLatch latch) {
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -6,7 +6,10 @@
 
 package com.xavax.concurrent;
 
+import java.util.BitSet;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
@@ -14,6 +17,9 @@ import org.testng.annotations.BeforeMethod;
 import com.xavax.exception.RangeException;
 
 import static org.testng.Assert.*;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.BITS_PER_BYTE;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.BITS_PER_PAGE;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.LOG2_MAX_SEGMENTS;
 
 /**
  * Test cases for ConcurrentBitSet.
@@ -24,9 +30,17 @@ public class ConcurrentBitSetTest {
   private final static long SMALL_BIT_SET_SIZE = 1 << 20;
   private final static long LARGE_BIT_SET_SIZE = 1 << 32;
   private final static int LOG2_SEGMENT_SIZE = 18;
+  private final static int LOG2_LARGE_SEGMENT_SIZE = 20;
+  private final static long RANGE_START = 1000;
+  private final static long RANGE_END = 200000;
+  private final static long SPARSE_STRIDE = 1000;
+  private final static long LARGE_INDEX = (3L << 32) + 5;
   private final static int INVALID_SEGMENT_SIZE = 99;
   private final static int RANDOM_BOUNDS = 4000000;
   private final static int RANDOM_COUNT = 1000000;
+  private final static int ALGEBRA_BOUNDS = 1 << 21;
+  private final static int ALGEBRA_COUNT = 20000;
+  private final static int PARALLELISM = 4;
   private final static String EXPECTED =
       "currentMapSize: 16, logSegmentSize: 16, segmentMap: [(segment: (pageCount: 2, map: [([11111111.";
 
@@ -89,6 +103,81 @@ public class ConcurrentBitSetTest {
     assertEquals(metrics.getTotalOperations(), 0);
   }
 
+  /**
+   * Test the operation and page counters.
+   */
+  @Test
+  public void testMetricsCounts() {
+    bitSet.get(RANGE_START);
+    bitSet.set(RANGE_START);
+    bitSet.get(RANGE_START);
+    bitSet.clear(RANGE_START);
+    bitSet.clear(RANGE_END);
+    bitSet.set(RANGE_START, RANGE_END);
+    final ConcurrentBitSet.Metrics metrics = bitSet.getMetrics();
+    assertEquals(metrics.getGets(), 2);
+    assertEquals(metrics.getSets(), 2);
+    assertEquals(metrics.getClears(), 2);
+    assertEquals(metrics.getTotalOperations(), 6);
+    assertEquals(metrics.getPageHits(), 2);
+    assertEquals(metrics.getPageMisses(), 3);
+    assertEquals(metrics.getSegmentsCreated(), 4);
+  }
+
+  /**
+   * Test that no metrics are collected when they are disabled.
+   */
+  @Test
+  public void testMetricsDisabled() {
+    bitSet = new ConcurrentBitSet(SMALL_BIT_SET_SIZE, LOG2_SEGMENT_SIZE, false);
+    bitSet.set(RANGE_START);
+    bitSet.get(RANGE_START);
+    bitSet.set(RANGE_START, RANGE_END);
+    bitSet.set(LARGE_INDEX);
+    final ConcurrentBitSet.Metrics metrics = bitSet.getMetrics();
+    assertEquals(metrics.getTotalOperations(), 0);
+    assertEquals(metrics.getPagesCreated(), 0);
+    assertEquals(metrics.getSegmentsCreated(), 0);
+    assertEquals(metrics.getSegmentMapLocks(), 0);
+    assertTrue(bitSet.get(RANGE_START));
+  }
+
+  /**
+   * Test that sparse pages and filled ranges use compact containers and
+   * that the metrics report the memory used per set bit.
+   */
+  @Test
+  public void testMemoryPerBit() {
+    bitSet = new ConcurrentBitSet(0, LOG2_SEGMENT_SIZE);
+    bitSet.set(RANGE_START, RANGE_END);
+    ConcurrentBitSet.Metrics metrics = bitSet.getMetrics(true);
+    assertEquals(metrics.getCardinality(), RANGE_END - RANGE_START);
+    assertTrue(metrics.getMemoryPerBit() < 1.0 / BITS_PER_BYTE);
+    assertEquals(metrics.getMemoryUsage(), bitSet.memoryUsage());
+    assertSame(bitSet.getPageAt(RANGE_END / BITS_PER_PAGE / 2), RunPage.FULL);
+    assertTrue(bitSet.getPageAt(RANGE_START / BITS_PER_PAGE) instanceof RunPage);
+    bitSet.clear(RANGE_START, RANGE_END);
+    metrics = bitSet.getMetrics(true);
+    assertEquals(metrics.getCardinality(), 0);
+    assertEquals(metrics.getMemoryPerBit(), 0.0);
+    assertNull(bitSet.getPageAt(RANGE_END / BITS_PER_PAGE / 2));
+    for ( long index = RANGE_START; index < RANGE_END; index += SPARSE_STRIDE ) {
+      bitSet.set(index);
+    }
+    for ( long index = RANGE_START; index < RANGE_END; index += SPARSE_STRIDE ) {
+      assertTrue(bitSet.get(index));
+      assertTrue(bitSet.getPageAt(index / BITS_PER_PAGE) instanceof ArrayPage);
+    }
+    metrics = bitSet.getMetrics(true);
+    assertEquals(metrics.getCardinality(), (RANGE_END - RANGE_START) / SPARSE_STRIDE);
+    assertTrue(metrics.getMemoryUsage() < metrics.getCardinality() * BitSetPage.MEMORY_USAGE);
+    // The counter snapshot does not walk the segments.
+    metrics = bitSet.getMetrics();
+    assertEquals(metrics.getCardinality(), -1);
+    assertEquals(metrics.getMemoryUsage(), -1);
+    assertEquals(metrics.getMemoryPerBit(), 0.0);
+  }
+
   /**
    * Test setting a small block of bits.
    */
@@ -138,6 +227,224 @@ public class ConcurrentBitSetTest {
     showMetrics();
   }
 
+  /**
+   * Test setting and clearing ranges of bits that span segments.
+   */
+  @Test
+  public void testRanges() {
+    bitSet.set(RANGE_START, RANGE_END);
+    assertFalse(bitSet.get(RANGE_START - 1));
+    assertTrue(bitSet.get(RANGE_START));
+    assertTrue(bitSet.get(RANGE_END - 1));
+    assertFalse(bitSet.get(RANGE_END));
+    assertEquals(bitSet.nextSetBit(0), RANGE_START);
+    assertEquals(bitSet.nextClearBit(RANGE_START), RANGE_END);
+    bitSet.clear(RANGE_START + 1, RANGE_END - 1);
+    assertTrue(bitSet.get(RANGE_START));
+    assertFalse(bitSet.get(RANGE_START + 1));
+    assertFalse(bitSet.get(RANGE_END - 2));
+    assertTrue(bitSet.get(RANGE_END - 1));
+    assertEquals(bitSet.nextSetBit(RANGE_START + 1), RANGE_END - 1);
+    assertEquals(bitSet.nextClearBit(RANGE_START), RANGE_START + 1);
+    bitSet.clear(0, LARGE_INDEX);
+    assertEquals(bitSet.nextSetBit(0), -1);
+  }
+
+  /**
+   * Test the error of having an empty range.
+   */
+  @Test(expectedExceptions = RangeException.class)
+  public void testEmptyRange() {
+    bitSet.set(RANGE_START, RANGE_START);
+  }
+
+  /**
+   * Test nextSetBit and nextClearBit with indices beyond 32 bits.
+   */
+  @Test
+  public void testLongIndices() {
+    bitSet = new ConcurrentBitSet(SMALL_BIT_SET_SIZE, LOG2_LARGE_SEGMENT_SIZE);
+    assertEquals(bitSet.nextSetBit(0), -1);
+    assertEquals(bitSet.nextClearBit(LARGE_INDEX), LARGE_INDEX);
+    bitSet.set(LARGE_INDEX);
+    assertTrue(bitSet.get(LARGE_INDEX));
+    assertFalse(bitSet.get(LARGE_INDEX & 0xFFFFFFFFL));
+    assertEquals(bitSet.nextSetBit(0), LARGE_INDEX);
+    assertEquals(bitSet.nextSetBit(LARGE_INDEX + 1), -1);
+    assertEquals(bitSet.nextClearBit(LARGE_INDEX), LARGE_INDEX + 1);
+    bitSet.set(LARGE_INDEX - BITS_PER_PAGE, LARGE_INDEX);
+    assertEquals(bitSet.nextClearBit(LARGE_INDEX - BITS_PER_PAGE), LARGE_INDEX + 1);
+    assertEquals(bitSet.nextSetBit(0), LARGE_INDEX - BITS_PER_PAGE);
+  }
+
+  /**
+   * Test indices at and beyond the largest addressable bit. Nothing is
+   * set at the limit, which would allocate the whole segment map.
+   */
+  @Test
+  public void testMaxBitIndex() {
+    bitSet = new ConcurrentBitSet(SMALL_BIT_SET_SIZE, LOG2_SEGMENT_SIZE);
+    final long max = bitSet.maxBitIndex();
+    assertEquals(max, (1L << (LOG2_MAX_SEGMENTS + LOG2_SEGMENT_SIZE)) - 1);
+    assertFalse(bitSet.get(max));
+    assertEquals(bitSet.nextSetBit(max), -1);
+    assertEquals(bitSet.nextClearBit(max), max);
+    bitSet.clear(max);
+    bitSet.clear(max - BITS_PER_PAGE, max + 1);
+    final long[] invalid = { max + 1, Long.MAX_VALUE, Long.MIN_VALUE };
+    for ( final long index : invalid ) {
+      assertRangeException(() -> bitSet.get(index));
+      assertRangeException(() -> bitSet.set(index));
+      assertRangeException(() -> bitSet.clear(index));
+      assertRangeException(() -> bitSet.nextSetBit(index));
+      assertRangeException(() -> bitSet.nextClearBit(index));
+    }
+    assertRangeException(() -> bitSet.set(max, max + 2));
+    assertRangeException(() -> bitSet.clear(0, Long.MAX_VALUE));
+    assertRangeException(() -> new ConcurrentBitSet(max + 2, LOG2_SEGMENT_SIZE));
+  }
+
+  /**
+   * Assert that the specified operation throws a RangeException.
+   *
+   * @param operation  the operation.
+   */
+  private static void assertRangeException(final Runnable operation) {
+    try {
+      operation.run();
+      fail("expected RangeException");
+    }
+    catch (RangeException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test the cardinality method.
+   */
+  @Test
+  public void testCardinality() {
+    assertEquals(bitSet.cardinality(), 0);
+    bitSet.set(RANGE_START, RANGE_END);
+    bitSet.set(LARGE_INDEX);
+    assertEquals(bitSet.cardinality(), RANGE_END - RANGE_START + 1);
+    final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+    assertEquals(bitSet.cardinality(pool), RANGE_END - RANGE_START + 1);
+    pool.shutdown();
+  }
+
+  /**
+   * Test and, or, xor, andNot, and intersects against java.util.BitSet
+   * using bit sets with different segment sizes.
+   */
+  @Test
+  public void testSetAlgebra() {
+    final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+    final Random random = new Random(ALGEBRA_COUNT);
+    final BitSet left = randomBits(random);
+    final BitSet right = randomBits(random);
+    for ( final ConcurrentBitSet.BulkOperation operation
+	    : ConcurrentBitSet.BulkOperation.values() ) {
+      for ( final ForkJoinPool parallel : new ForkJoinPool[] { null, pool } ) {
+	final ConcurrentBitSet target = copy(left, LOG2_SEGMENT_SIZE);
+	final ConcurrentBitSet other = copy(right, LOG2_LARGE_SEGMENT_SIZE);
+	final BitSet expected = (BitSet) left.clone();
+	switch ( operation ) {
+	case AND:
+	  target.and(other, parallel);
+	  expected.and(right);
+	  break;
+	case OR:
+	  target.or(other, parallel);
+	  expected.or(right);
+	  break;
+	case XOR:
+	  target.xor(other, parallel);
+	  expected.xor(right);
+	  break;
+	default:
+	  target.andNot(other, parallel);
+	  expected.andNot(right);
+	  break;
+	}
+	assertEquals(target.cardinality(), expected.cardinality());
+	for ( int i = 0; i < ALGEBRA_BOUNDS; ++i ) {
+	  assertEquals(target.get(i), expected.get(i));
+	}
+      }
+    }
+    pool.shutdown();
+    final ConcurrentBitSet target = copy(left, LOG2_SEGMENT_SIZE);
+    assertTrue(target.intersects(copy(right, LOG2_LARGE_SEGMENT_SIZE)));
+    final ConcurrentBitSet other = copy(right, LOG2_LARGE_SEGMENT_SIZE);
+    other.andNot(target);
+    assertFalse(target.intersects(other));
+    assertFalse(target.intersects(new ConcurrentBitSet()));
+  }
+
+  /**
+   * Test the stream method, sequentially, in parallel, and one element
+   * at a time, against java.util.BitSet.
+   */
+  @Test
+  public void testStream() {
+    final Random random = new Random(RANDOM_COUNT);
+    final BitSet expected = randomBits(random);
+    final ConcurrentBitSet bits = copy(expected, LOG2_SEGMENT_SIZE);
+    final long[] indices = expected.stream().asLongStream().toArray();
+    assertEquals(bits.stream().toArray(), indices);
+    assertEquals(bits.stream().parallel().toArray(), indices);
+    assertEquals(bits.stream().parallel().sum(), expected.stream().asLongStream().sum());
+    assertEquals(bits.stream().skip(1).limit(2).toArray(),
+		 new long[] { indices[1], indices[2] });
+    final Spliterator.OfLong spliterator = bits.stream().spliterator();
+    final Spliterator.OfLong prefix = spliterator.trySplit();
+    assertEquals(prefix.estimateSize() & ((1L << LOG2_SEGMENT_SIZE) - 1), 0);
+    final long[] first = new long[1];
+    assertTrue(prefix.tryAdvance((long index) -> first[0] = index));
+    assertEquals(first[0], indices[0]);
+    final long[] count = new long[1];
+    prefix.forEachRemaining((long index) -> ++count[0]);
+    spliterator.forEachRemaining((long index) -> ++count[0]);
+    assertEquals(count[0], indices.length - 1);
+    assertEquals(new ConcurrentBitSet().stream().count(), 0);
+  }
+
+  /**
+   * Returns a java.util.BitSet with random bits set in clusters.
+   *
+   * @param random  the random number generator.
+   * @return a new bit set.
+   */
+  private BitSet randomBits(final Random random) {
+    final BitSet result = new BitSet(ALGEBRA_BOUNDS);
+    for ( int i = 0; i < ALGEBRA_COUNT; ++i ) {
+      final int index = random.nextInt(ALGEBRA_BOUNDS - BITS_PER_PAGE);
+      if ( (i & 0xFF) == 0 ) {
+	result.set(index, index + BITS_PER_PAGE);
+      }
+      else {
+	result.set(index);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a ConcurrentBitSet with the same bits as a java.util.BitSet.
+   *
+   * @param bits            the bits to copy.
+   * @param logSegmentSize  log2 of the segment size.
+   * @return a new bit set.
+   */
+  private ConcurrentBitSet copy(final BitSet bits, final int logSegmentSize) {
+    final ConcurrentBitSet result = new ConcurrentBitSet(0, logSegmentSize);
+    for ( int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1) ) {
+      result.set(i);
+    }
+    return result;
+  }
+
   @SuppressWarnings("PMD.SystemPrintln")
   private void showMetrics() {
     System.out.println("metrics: " + bitSet.getMetrics().toString());
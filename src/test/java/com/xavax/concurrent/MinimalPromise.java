@@ -0,0 +1,55 @@
+package com.xavax.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * MinimalPromise implements only the abstract methods of Promise, like a
+ * promise written before the optional methods were added, so tests can
+ * exercise the default methods.
+ *
+ * @param <T>  the type of the promised result.
+ */
+public class MinimalPromise<T> implements Promise<T> {
+  private final CountDownLatch latch = new CountDownLatch(1);
+  private volatile T result;
+  private volatile boolean interrupted;
+
+  /**
+   * Returns the result, waiting if necessary. Returns null with the
+   * interrupt status set if the thread is interrupted.
+   *
+   * @return the result.
+   */
+  @Override
+  public T get() {
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      interrupted = true;
+      Thread.currentThread().interrupt();
+    }
+    return result;
+  }
+
+  @Override
+  public String getName() {
+    return "minimal";
+  }
+
+  @Override
+  public boolean isReady() {
+    return latch.getCount() == 0;
+  }
+
+  @Override
+  public void set(final T result) {
+    this.result = result;
+    latch.countDown();
+  }
+
+  @Override
+  public boolean wasInterrupted() {
+    return interrupted;
+  }
+}
@@ -0,0 +1,225 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.xavax.exception.RangeException;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test the OffHeapBitSet class.
+ */
+public class OffHeapBitSetTest {
+  private final static int SIZE = 1 << 20;
+  private final static int RANDOM_COUNT = 20000;
+  private final static int SEED = 4321;
+  private final static long RANGE_START = 1000;
+  private final static long RANGE_END = 200000;
+  private final static int THREADS = 4;
+  private final static int THREAD_BITS = 1 << 16;
+  private final static int WORDS = 16;
+  private final static int LOG2_SMALL_REGION = 12;
+  private final static int SMALL_REGION = 1 << LOG2_SMALL_REGION;
+
+  /**
+   * Test get and set against java.util.BitSet with a direct buffer.
+   */
+  @Test
+  public void testDirect() {
+    checkBitSet(OffHeapBitSet.allocate(SIZE));
+  }
+
+  /**
+   * Test get and set against java.util.BitSet with a heap buffer.
+   */
+  @Test
+  public void testHeapBuffer() {
+    checkBitSet(new OffHeapBitSet(ByteBuffer.allocate(SIZE / Byte.SIZE)));
+  }
+
+  /**
+   * Test the lock-free and the locking word buffers. The lock-free buffer
+   * is used whenever the JVM provides byte buffer view VarHandles.
+   */
+  @Test
+  public void testWordBuffers() {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(WORDS * Long.BYTES);
+    final WordBuffer atomic = WordBuffer.create(buffer);
+    assertEquals(atomic.isLockFree(), !System.getProperty("java.specification.version").startsWith("1."));
+    final WordBuffer[] words = { atomic, new WordBuffer.LockingWordBuffer(buffer) };
+    for ( final WordBuffer word : words ) {
+      assertEquals(word.size(), WORDS);
+      word.set(WORDS - 1, -1L);
+      assertEquals(word.get(WORDS - 1), -1L);
+      assertTrue(word.compareAndSet(WORDS - 1, -1L, 5L));
+      assertFalse(word.compareAndSet(WORDS - 1, -1L, 6L));
+      assertEquals(word.get(WORDS - 1), 5L);
+      word.set(WORDS - 1, 0);
+    }
+    // Both buffers see the same words in native byte order.
+    atomic.set(0, 1L);
+    assertEquals(buffer.order(ByteOrder.nativeOrder()).getLong(0), 1L);
+    assertEquals(words[1].get(0), 1L);
+  }
+
+  /**
+   * Test that a buffer is divided into regions and that ranges and scans
+   * cross the boundaries between them.
+   */
+  @Test
+  public void testRegions() {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE / Byte.SIZE + SMALL_REGION / 2 + 3);
+    final OffHeapBitSet bitSet = new OffHeapBitSet(buffer, LOG2_SMALL_REGION);
+    assertEquals(bitSet.capacity(), SIZE + SMALL_REGION / 2 * Byte.SIZE);
+    checkBitSet(bitSet);
+    final long boundary = SMALL_REGION * Byte.SIZE;
+    bitSet.clear(0, bitSet.capacity());
+    bitSet.set(boundary - 3, boundary + 3);
+    assertEquals(bitSet.cardinality(), 6);
+    assertEquals(bitSet.nextSetBit(0), boundary - 3);
+    assertEquals(bitSet.nextClearBit(boundary - 3), boundary + 3);
+    assertTrue(bitSet.get(boundary));
+    assertFalse(bitSet.get(boundary + 3));
+    final long last = bitSet.capacity() - 1;
+    bitSet.set(last);
+    assertEquals(bitSet.nextSetBit(boundary + 3), last);
+    // The words are stored in the caller's buffer.
+    final OffHeapBitSet reopened = new OffHeapBitSet(buffer, LOG2_SMALL_REGION);
+    assertTrue(reopened.get(boundary - 1));
+    assertTrue(reopened.get(last));
+    assertEquals(reopened.cardinality(), 7);
+  }
+
+  /**
+   * Test setting and clearing ranges and scanning for bits.
+   */
+  @Test
+  public void testRanges() {
+    final OffHeapBitSet bitSet = OffHeapBitSet.allocate(SIZE);
+    assertEquals(bitSet.capacity(), SIZE);
+    bitSet.set(RANGE_START, RANGE_END);
+    assertFalse(bitSet.get(RANGE_START - 1));
+    assertTrue(bitSet.get(RANGE_START));
+    assertTrue(bitSet.get(RANGE_END - 1));
+    assertFalse(bitSet.get(RANGE_END));
+    assertEquals(bitSet.cardinality(), RANGE_END - RANGE_START);
+    assertEquals(bitSet.nextSetBit(0), RANGE_START);
+    assertEquals(bitSet.nextClearBit(RANGE_START), RANGE_END);
+    bitSet.clear(RANGE_START + 1, RANGE_END - 1);
+    assertEquals(bitSet.cardinality(), 2);
+    assertEquals(bitSet.nextSetBit(RANGE_START + 1), RANGE_END - 1);
+    assertEquals(bitSet.nextSetBit(RANGE_END), -1);
+    bitSet.set(0, SIZE);
+    assertEquals(bitSet.nextClearBit(0), SIZE);
+    assertFalse(bitSet.get(SIZE));
+    bitSet.clear(SIZE - 1, SIZE * 2L);
+    assertEquals(bitSet.nextClearBit(0), SIZE - 1);
+  }
+
+  /**
+   * Test that setting a bit beyond the capacity throws RangeException.
+   */
+  @Test(expectedExceptions = RangeException.class)
+  public void testSetBeyondCapacity() {
+    OffHeapBitSet.allocate(SIZE).set(SIZE);
+  }
+
+  /**
+   * Test that a mapped bit set persists when the file is mapped again.
+   *
+   * @throws IOException if the file cannot be mapped.
+   */
+  @Test
+  public void testMappedFile() throws IOException {
+    final Path path = Files.createTempFile("bitset", ".map");
+    try {
+      OffHeapBitSet bitSet = OffHeapBitSet.map(path, SIZE);
+      bitSet.set(RANGE_START, RANGE_END);
+      bitSet.set(SIZE - 1);
+      bitSet.force();
+      assertEquals(Files.size(path), SIZE / Byte.SIZE);
+      bitSet = OffHeapBitSet.map(path, 0);
+      assertEquals(bitSet.capacity(), SIZE);
+      assertEquals(bitSet.cardinality(), RANGE_END - RANGE_START + 1);
+      assertTrue(bitSet.get(SIZE - 1));
+      assertEquals(bitSet.nextClearBit(RANGE_START), RANGE_END);
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Test that threads setting different bits of the same words do not
+   * lose updates.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+    final OffHeapBitSet bitSet = OffHeapBitSet.allocate(THREAD_BITS);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    final AtomicInteger failures = new AtomicInteger();
+    for ( int t = 0; t < THREADS; ++t ) {
+      final int offset = t;
+      new Thread() {
+	@Override
+	public void run() {
+	  try {
+	    for ( int i = offset; i < THREAD_BITS; i += THREADS ) {
+	      bitSet.set(i);
+	    }
+	  }
+	  catch (RuntimeException e) {
+	    failures.incrementAndGet();
+	  }
+	  finally {
+	    done.countDown();
+	  }
+	}
+      }.start();
+    }
+    done.await();
+    assertEquals(failures.get(), 0);
+    assertEquals(bitSet.cardinality(), THREAD_BITS);
+  }
+
+  /**
+   * Set and clear random bits in a bit set and a java.util.BitSet and
+   * verify that they agree.
+   *
+   * @param bitSet  the bit set to test.
+   */
+  private void checkBitSet(final OffHeapBitSet bitSet) {
+    final BitSet expected = new BitSet(SIZE);
+    final Random random = new Random(SEED);
+    for ( int i = 0; i < RANDOM_COUNT; ++i ) {
+      final int index = random.nextInt(SIZE);
+      final boolean value = random.nextInt(4) != 0;
+      bitSet.set(index, value);
+      expected.set(index, value);
+    }
+    assertEquals(bitSet.cardinality(), expected.cardinality());
+    for ( int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1) ) {
+      assertTrue(bitSet.get(i));
+      assertEquals(bitSet.nextSetBit(i), i);
+      assertEquals(bitSet.nextClearBit(i), expected.nextClearBit(i));
+    }
+  }
+}
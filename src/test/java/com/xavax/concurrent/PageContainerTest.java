@@ -0,0 +1,132 @@
+//
+// Copyright 2015 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+
+package com.xavax.concurrent;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+import static com.xavax.concurrent.ConcurrentBitSetConstants.*;
+
+/**
+ * Test the page containers (ArrayPage, RunPage, and BitSetPage).
+ */
+public class PageContainerTest {
+  private final static int SEED = 12345;
+  private final static int SPARSE_COUNT = 10;
+  private final static int DENSE_COUNT = 200;
+  private final static int RUN_START = 100;
+  private final static int RUN_END = 300;
+  private final static int STRIDE = 7;
+
+  /**
+   * Test that encode chooses the smallest container.
+   */
+  @Test
+  public void testEncode() {
+    final long[] words = new long[WORDS_PER_PAGE];
+    assertNull(PageContainer.encode(words));
+    PageContainer.fill(words, 0, BITS_PER_PAGE - 1, true);
+    assertSame(PageContainer.encode(words), RunPage.FULL);
+    assertTrue(PageContainer.encode(randomWords(SPARSE_COUNT)) instanceof ArrayPage);
+    assertTrue(PageContainer.encode(randomWords(DENSE_COUNT)) instanceof BitSetPage);
+    final long[] run = new long[WORDS_PER_PAGE];
+    PageContainer.fill(run, RUN_START, RUN_END, true);
+    final PageContainer page = PageContainer.encode(run);
+    assertTrue(page instanceof RunPage);
+    assertEquals(page.cardinality(), RUN_END - RUN_START + 1);
+    assertTrue(page.memoryUsage() < BitSetPage.MEMORY_USAGE);
+  }
+
+  /**
+   * Test that every container type answers queries the same way for
+   * the same bits.
+   */
+  @Test
+  public void testContainersAgree() {
+    final long[] sparse = randomWords(SPARSE_COUNT);
+    final long[] runs = new long[WORDS_PER_PAGE];
+    PageContainer.fill(runs, 3, 70, true);
+    PageContainer.fill(runs, RUN_START, RUN_END, true);
+    PageContainer.fill(runs, BITS_PER_PAGE - 2, BITS_PER_PAGE - 1, true);
+    final BitSetPage expected1 = new BitSetPage(sparse);
+    final BitSetPage expected2 = new BitSetPage(runs);
+    checkPage(ArrayPage.create(sparse, expected1.cardinality()), expected1);
+    checkPage(RunPage.create(runs, 3), expected2);
+    checkPage(ArrayPage.create(runs, expected2.cardinality()), expected2);
+  }
+
+  /**
+   * Test that updates switch between containers as the page fills.
+   */
+  @Test
+  public void testTransitions() {
+    PageContainer page = ArrayPage.create(0);
+    for ( int i = STRIDE; i < BITS_PER_PAGE; i += STRIDE ) {
+      page = page.set(i, true);
+    }
+    assertTrue(page instanceof BitSetPage);
+    assertEquals(page.cardinality(), (BITS_PER_PAGE + STRIDE - 1) / STRIDE);
+    assertSame(page.set(1, true), page);
+
+    page = RunPage.FULL.set(RUN_START, false);
+    assertTrue(page instanceof RunPage);
+    assertFalse(page.get(RUN_START));
+    assertEquals(page.cardinality(), BITS_PER_PAGE - 1);
+    assertSame(page.set(RUN_START, true), RunPage.FULL);
+    assertNull(page.clear(0, BITS_PER_PAGE - 1));
+    assertNull(ArrayPage.create(RUN_START).set(RUN_START, false));
+
+    page = RunPage.create(RUN_START, RUN_END).and(ArrayPage.create(RUN_END));
+    assertTrue(page instanceof ArrayPage);
+    assertEquals(page.nextSetBit(0), RUN_END);
+    page = page.or(RunPage.FULL);
+    assertSame(page, RunPage.FULL);
+    page = page.xor(RunPage.create(0, RUN_END)).andNot(ArrayPage.create(RUN_END + 1));
+    assertEquals(page.nextSetBit(0), RUN_END + 2);
+    assertEquals(page.cardinality(), BITS_PER_PAGE - RUN_END - 2);
+  }
+
+  /**
+   * Verify that a page matches the expected bitmap page.
+   *
+   * @param page      the page to check.
+   * @param expected  the expected contents.
+   */
+  private void checkPage(final PageContainer page, final BitSetPage expected) {
+    assertEquals(page.cardinality(), expected.cardinality());
+    for ( int i = 0; i < WORDS_PER_PAGE; ++i ) {
+      assertEquals(page.word(i), expected.word(i));
+    }
+    for ( int i = 0; i <= BITS_PER_PAGE; ++i ) {
+      if ( i < BITS_PER_PAGE ) {
+	assertEquals(page.get(i), expected.get(i));
+      }
+      assertEquals(page.nextSetBit(i), expected.nextSetBit(i));
+      assertEquals(page.nextClearBit(i), expected.nextClearBit(i));
+    }
+    assertEquals(page.toString(), expected.toString());
+    assertTrue(page.intersects(expected));
+  }
+
+  /**
+   * Returns the words of a page with up to count random bits set.
+   *
+   * @param count  the number of random bits to set.
+   * @return the words of the page.
+   */
+  private long[] randomWords(final int count) {
+    final Random random = new Random(SEED);
+    final long[] words = new long[WORDS_PER_PAGE];
+    for ( int i = 0; i < count; ++i ) {
+      final int index = random.nextInt(BITS_PER_PAGE);
+      words[index >>> LOG2_BITS_PER_LONG] |= 1L << index;
+    }
+    return words;
+  }
+}
@@ -0,0 +1,226 @@
+package com.xavax.concurrent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+import org.testng.annotations.BeforeMethod;
+
+import com.xavax.exception.RangeException;
+
+import static org.testng.Assert.*;
+import static com.xavax.concurrent.DelayedWriter.delayedWrite;
+
+/**
+ * Test cases for the Promises class.
+ */
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.SignatureDeclareThrowsException" })
+public class PromisesTest {
+  private final static long SLEEP_TIME = 20;
+  private final static String NAME = "combined";
+  private final static String RESULT1 = "one";
+  private final static String RESULT2 = "two";
+  private final static String RESULT3 = "three";
+
+  private BasicPromise<String> promise1;
+  private BasicPromise<String> promise2;
+  private AsyncPromise<String> promise3;
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @BeforeMethod
+  public void setUp() throws Exception {
+    promise1 = new BasicPromise<>("promise1");
+    promise2 = new BasicPromise<>("promise2");
+    promise3 = new AsyncPromise<>("promise3");
+  }
+
+  /**
+   * Test that allOf returns the results in order once all are ready.
+   */
+  @Test
+  public void testAllOf() {
+    final BasicPromise<List<String>> all = Promises.allOf(NAME, Arrays.asList(promise1, promise2, promise3));
+    promise3.set(RESULT3);
+    promise1.set(RESULT1);
+    assertFalse(all.isReady());
+    delayedWrite(SLEEP_TIME, promise2, RESULT2);
+    assertEquals(all.get(1, TimeUnit.MINUTES), Arrays.asList(RESULT1, RESULT2, RESULT3));
+    assertEquals(all.getName(), NAME);
+    assertTrue(Promises.allOf(NAME, Collections.<Promise<String>>emptyList()).get().isEmpty());
+  }
+
+  /**
+   * Test that allOf fails as soon as one promise fails.
+   */
+  @Test
+  public void testAllOfFailure() {
+    final IllegalStateException failure = new IllegalStateException();
+    final BasicPromise<List<String>> all = Promises.allOf(NAME, Arrays.asList(promise1, promise2, promise3));
+    promise1.set(RESULT1);
+    promise3.fail(failure);
+    assertTrue(all.isFailed());
+    try {
+      all.get();
+      fail("expected PromiseFailedException");
+    }
+    catch (PromiseFailedException e) {
+      assertSame(e.getCause(), failure);
+    }
+  }
+
+  /**
+   * Test that anyOf completes with the first result and fails only when
+   * every promise fails.
+   */
+  @Test
+  public void testAnyOf() {
+    final BasicPromise<String> any = Promises.anyOf(NAME, Arrays.asList(promise1, promise2, promise3));
+    promise1.fail(new IllegalStateException());
+    assertFalse(any.isReady());
+    delayedWrite(SLEEP_TIME, promise2, RESULT2);
+    assertEquals(any.get(1, TimeUnit.MINUTES), RESULT2);
+    promise3.set(RESULT3);
+    assertEquals(any.get(), RESULT2);
+    final IllegalStateException failure = new IllegalStateException();
+    final BasicPromise<String> only = new BasicPromise<>(NAME);
+    final BasicPromise<String> none = Promises.anyOf(NAME, Collections.singletonList(only));
+    assertFalse(none.isReady());
+    only.fail(failure);
+    assertTrue(none.isFailed());
+  }
+
+  /**
+   * Test that quorum completes with the first count results in the order
+   * they completed and fails when a quorum is no longer possible.
+   */
+  @Test
+  public void testQuorum() {
+    final BasicPromise<List<String>> two = Promises.quorum(NAME, 2, Arrays.asList(promise1, promise2, promise3));
+    promise3.set(RESULT3);
+    assertFalse(two.isReady());
+    promise1.set(RESULT1);
+    assertEquals(two.get(), Arrays.asList(RESULT3, RESULT1));
+    final BasicPromise<String> other1 = new BasicPromise<>(NAME);
+    final BasicPromise<String> other2 = new BasicPromise<>(NAME);
+    final BasicPromise<String> other3 = new BasicPromise<>(NAME);
+    final BasicPromise<List<String>> failed = Promises.quorum(NAME, 2, Arrays.asList(other1, other2, other3));
+    other1.fail(new IllegalStateException());
+    assertFalse(failed.isReady());
+    other2.cancel();
+    assertTrue(failed.isFailed());
+    assertTrue(Promises.quorum(NAME, 0, Collections.singletonList(other3)).get().isEmpty());
+  }
+
+  /**
+   * Test that a quorum larger than the group is rejected.
+   */
+  @Test(expectedExceptions = RangeException.class)
+  public void testQuorumRange() {
+    Promises.quorum(NAME, 4, Arrays.asList(promise1, promise2, promise3));
+  }
+
+  /**
+   * Test combining promises that rely on the default onComplete.
+   */
+  @Test
+  public void testMinimalPromises() {
+    final MinimalPromise<String> minimal1 = new MinimalPromise<>();
+    final MinimalPromise<String> minimal2 = new MinimalPromise<>();
+    minimal1.set(RESULT1);
+    final BasicPromise<List<String>> all = Promises.allOf(NAME, Arrays.asList(minimal1, minimal2));
+    final BasicPromise<String> any = Promises.anyOf(NAME, Arrays.asList(minimal2, promise1));
+    assertFalse(all.isReady());
+    delayedWrite(SLEEP_TIME, minimal2, RESULT2);
+    assertEquals(all.get(), Arrays.asList(RESULT1, RESULT2));
+    assertEquals(any.get(), RESULT2);
+  }
+
+  /**
+   * Test that every implementation follows the same interrupt contract:
+   * get returns null with the interrupt status set, and the timed get
+   * throws InterruptedPromiseException.
+   */
+  @Test
+  public void testInterruptContract() throws Exception {
+    final List<Promise<String>> promises =
+	Arrays.asList(promise1, promise3, new MinimalPromise<String>());
+    for ( final Promise<String> promise : promises ) {
+      final AtomicReference<String> result = new AtomicReference<>(RESULT1);
+      final AtomicBoolean status = new AtomicBoolean();
+      Thread thread = new Thread(() -> {
+	result.set(promise.get());
+	status.set(Thread.currentThread().isInterrupted());
+      });
+      thread.start();
+      Thread.sleep(SLEEP_TIME);
+      thread.interrupt();
+      thread.join();
+      assertNull(result.get(), promise.getName());
+      assertTrue(status.get(), promise.getName());
+      assertTrue(promise.wasInterrupted(), promise.getName());
+
+      final AtomicReference<Throwable> thrown = new AtomicReference<>();
+      status.set(false);
+      thread = new Thread(() -> {
+	try {
+	  promise.get(1, TimeUnit.MINUTES);
+	}
+	catch (InterruptedPromiseException e) {
+	  thrown.set(e);
+	  status.set(Thread.currentThread().isInterrupted());
+	}
+      });
+      thread.start();
+      Thread.sleep(SLEEP_TIME);
+      thread.interrupt();
+      thread.join();
+      assertTrue(thrown.get() instanceof InterruptedPromiseException, promise.getName());
+      assertTrue(status.get(), promise.getName());
+    }
+  }
+
+  /**
+   * Test the default timed get, fail, and cancel.
+   */
+  @Test
+  public void testMinimalDefaults() {
+    final MinimalPromise<String> minimal = new MinimalPromise<>();
+    try {
+      minimal.get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+      fail("expected PromiseTimeoutException");
+    }
+    catch (PromiseTimeoutException e) {
+      assertSame(e.getPromise(), minimal);
+    }
+    assertFalse(minimal.fail(new IllegalStateException()));
+    assertFalse(minimal.cancel());
+    assertFalse(minimal.isFailed());
+    delayedWrite(SLEEP_TIME, minimal, RESULT1);
+    assertEquals(minimal.get(1, TimeUnit.MINUTES), RESULT1);
+    assertEquals(minimal.get(0, TimeUnit.MILLISECONDS), RESULT1);
+  }
+
+  /**
+   * Test an overall deadline on a combined promise.
+   */
+  @Test
+  public void testDeadline() {
+    final BasicPromise<List<String>> all = Promises.allOf(NAME, Arrays.asList(promise1, promise2));
+    promise1.set(RESULT1);
+    try {
+      all.get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+      fail("expected PromiseTimeoutException");
+    }
+    catch (PromiseTimeoutException e) {
+      assertSame(e.getPromise(), all);
+    }
+    promise2.set(RESULT2);
+    assertEquals(all.get(0, TimeUnit.NANOSECONDS), Arrays.asList(RESULT1, RESULT2));
+  }
+}
@@ -38,7 +38,7 @@ public class SegmentTest {
     assertEquals(segment.pageCount(), 0);
     for ( int index = 0; index < MAX_ENTRY_INDEX; ++index ) {
       final int bitIndex = index << LOG2_BITS_PER_PAGE;
-      BitSetPage entry = segment.getPageContaining(bitIndex, false);
+      PageContainer entry = segment.getPageContaining(bitIndex, false);
       assertNull(entry);
       assertEquals(segment.pageCount(), index);
       entry = segment.getPageContaining(bitIndex, true);
@@ -0,0 +1,69 @@
+package com.xavax.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the TaskExecutors class.
+ */
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.SignatureDeclareThrowsException" })
+public class TaskExecutorsTest {
+  private final static int TASKS = 200;
+  private final static long TIMEOUT = 10;
+  private final static String NAME = "test";
+  private final static String RESULT = "Test Results";
+
+  /**
+   * Test that an executor runs many blocked tasks at once.
+   */
+  @Test
+  public void testBlockingTasks() throws Exception {
+    final ExecutorService executor = TaskExecutors.newTaskExecutor(NAME);
+    final BasicPromise<String> promise = new BasicPromise<>(NAME);
+    final CountDownLatch started = new CountDownLatch(TASKS);
+    final CountDownLatch finished = new CountDownLatch(TASKS);
+    final AtomicBoolean virtual = new AtomicBoolean(true);
+    for ( int i = 0; i < TASKS; ++i ) {
+      executor.execute(() -> {
+	virtual.compareAndSet(true, TaskExecutors.isVirtual(Thread.currentThread()));
+	started.countDown();
+	if ( RESULT.equals(promise.get()) ) {
+	  finished.countDown();
+	}
+      });
+    }
+    assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+    promise.set(RESULT);
+    assertTrue(finished.await(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(virtual.get(), TaskExecutors.isVirtualThreadSupported());
+    assertFalse(TaskExecutors.isVirtual(Thread.currentThread()));
+    executor.shutdown();
+  }
+
+  /**
+   * Test the thread factory and running promise actions on an executor.
+   */
+  @Test
+  public void testThreadFactory() throws Exception {
+    final Thread thread = TaskExecutors.threadFactory(NAME).newThread(() -> {});
+    assertTrue(thread.getName().startsWith(NAME));
+    assertTrue(thread.isDaemon());
+    final AtomicReference<Thread> caller = new AtomicReference<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final BasicPromise<String> promise = new BasicPromise<>(NAME);
+    promise.onComplete((result, cause) -> {
+      caller.set(Thread.currentThread());
+      done.countDown();
+    }, TaskExecutors.defaultExecutor());
+    promise.set(RESULT);
+    assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+    assertNotSame(caller.get(), Thread.currentThread());
+  }
+}
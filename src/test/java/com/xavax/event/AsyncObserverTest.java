@@ -0,0 +1,176 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.xavax.exception.RangeException;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the AsyncObserver class.
+ */
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.SignatureDeclareThrowsException" })
+public class AsyncObserverTest {
+  private final static int CAPACITY = 2;
+  private final static int EVENTS = 100;
+  private final static long TIMEOUT = 10;
+
+  /**
+   * GatedObserver records events after a gate is opened.
+   */
+  private static class GatedObserver implements Observer {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    final List<Event> received = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void notify(final Event event) {
+      entered.countDown();
+      try {
+	gate.await();
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+      }
+      received.add(event);
+    }
+  }
+
+  /**
+   * Test delivery through a broadcaster and the metrics.
+   */
+  @Test
+  public void testDelivery() throws Exception {
+    final BroadcastHelper helper = new BroadcastHelper();
+    final SampleObserver target = new SampleObserver(new BroadcastHelper(), 0);
+    final AsyncObserver observer = new AsyncObserver(target);
+    helper.attach(0, observer);
+    for ( int i = 0; i < EVENTS; ++i ) {
+      helper.broadcast(helper, 0);
+    }
+    observer.close();
+    assertTrue(observer.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(target.count(), EVENTS);
+    final AsyncObserver.Metrics metrics = observer.getMetrics();
+    assertEquals(metrics.getQueued(), EVENTS);
+    assertEquals(metrics.getDelivered(), EVENTS);
+    assertEquals(metrics.getDropped(), 0);
+    assertEquals(metrics.getQueueDepth(), 0);
+    assertTrue(metrics.getMaxLatency() >= metrics.getMeanLatency());
+    assertTrue(metrics.toString().contains("delivered: 100"));
+    helper.broadcast(helper, 0);
+    assertEquals(observer.getMetrics().getDropped(), 1);
+  }
+
+  /**
+   * Test that a blocked observer does not stall the broadcaster when
+   * events are dropped, and which events are kept by each policy.
+   */
+  @Test
+  public void testDropPolicies() throws Exception {
+    assertEquals(kept(OverflowPolicy.DROP_NEWEST), new int[] { 0, 1, 2 });
+    assertEquals(kept(OverflowPolicy.DROP_OLDEST), new int[] { 0, 3, 4 });
+  }
+
+  /**
+   * Test coalescing events by type.
+   */
+  @Test
+  public void testCoalesce() throws Exception {
+    final GatedObserver target = new GatedObserver();
+    final AsyncObserver observer = new AsyncObserver(target, CAPACITY, OverflowPolicy.COALESCE);
+    final BasicEvent first = new BasicEvent(0);
+    observer.notify(first);
+    assertTrue(target.entered.await(TIMEOUT, TimeUnit.SECONDS));
+    final BasicEvent last1 = new BasicEvent(1);
+    final BasicEvent last2 = new BasicEvent(2);
+    observer.notify(new BasicEvent(1));
+    observer.notify(new BasicEvent(2));
+    observer.notify(last1);
+    observer.notify(last2);
+    assertEquals(observer.getQueueDepth(), CAPACITY);
+    final BasicEvent other = new BasicEvent(3);
+    observer.notify(other);
+    target.gate.countDown();
+    observer.close();
+    assertTrue(observer.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(target.received.size(), 3);
+    assertSame(target.received.get(0), first);
+    assertSame(target.received.get(1), last2);
+    assertSame(target.received.get(2), other);
+    final AsyncObserver.Metrics metrics = observer.getMetrics();
+    assertEquals(metrics.getCoalesced(), 2);
+    assertEquals(metrics.getDropped(), 1);
+  }
+
+  /**
+   * Test that the block policy waits for room in the queue.
+   */
+  @Test
+  public void testBlock() throws Exception {
+    final GatedObserver target = new GatedObserver();
+    final AsyncObserver observer = new AsyncObserver(target, CAPACITY, OverflowPolicy.BLOCK);
+    observer.notify(new BasicEvent(0));
+    assertTrue(target.entered.await(TIMEOUT, TimeUnit.SECONDS));
+    observer.notify(new BasicEvent(1));
+    observer.notify(new BasicEvent(2));
+    final CountDownLatch sent = new CountDownLatch(1);
+    final Thread thread = new Thread(() -> {
+      observer.notify(new BasicEvent(3));
+      sent.countDown();
+    });
+    thread.start();
+    assertFalse(sent.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    target.gate.countDown();
+    assertTrue(sent.await(TIMEOUT, TimeUnit.SECONDS));
+    observer.close();
+    assertTrue(observer.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(target.received.size(), 4);
+    assertEquals(observer.getMetrics().getDropped(), 0);
+  }
+
+  /**
+   * Test that the capacity must be positive.
+   */
+  @Test(expectedExceptions = RangeException.class)
+  public void testCapacity() {
+    new AsyncObserver(event -> {}, 0, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Send five events to an observer whose target blocks on the first one
+   * and return the types of the events that were delivered.
+   *
+   * @param policy  the overflow policy.
+   * @return the types of the delivered events.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private int[] kept(final OverflowPolicy policy) throws InterruptedException {
+    final GatedObserver target = new GatedObserver();
+    final AsyncObserver observer = new AsyncObserver(target, CAPACITY, policy);
+    observer.notify(new BasicEvent(0));
+    assertTrue(target.entered.await(TIMEOUT, TimeUnit.SECONDS));
+    for ( int type = 1; type < 5; ++type ) {
+      observer.notify(new BasicEvent(type));
+    }
+    assertEquals(observer.getMetrics().getDropped(), 2);
+    target.gate.countDown();
+    observer.close();
+    assertTrue(observer.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+    final int[] result = new int[target.received.size()];
+    for ( int i = 0; i < result.length; ++i ) {
+      result[i] = target.received.get(i).type();
+    }
+    return result;
+  }
+}
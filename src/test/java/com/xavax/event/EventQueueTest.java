@@ -2,15 +2,25 @@ package com.xavax.event;
 
 import static org.testng.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 /**
  * Test cases for the EventQueue class.
  */
+@SuppressWarnings("PMD.DoNotUseThreads")
 public class EventQueueTest {
   private final static int MAX_EVENT_TYPES = 10;
   private final static int MAX_EVENTS = 5;
+  private final static int SPARSE_TYPE = 100000;
+  private final static long DELAY = 50;
+  private final static long TIMEOUT = 10;
 
   private EventQueue queue;
 
@@ -77,4 +87,96 @@ public class EventQueueTest {
     assertNull(queue.dequeue(1));
     assertNull(queue.dequeue(2));
   }
+
+  /**
+   * Test the snapshot of the queue map, including a sparse type.
+   */
+  @Test
+  public void testQueueMap() {
+    assertTrue(queue.queueMap().isEmpty());
+    addEvents();
+    queue.enqueue(new BasicEvent(SPARSE_TYPE));
+    final Map<Integer, ConcurrentLinkedQueue<Event>> map = queue.queueMap();
+    assertEquals(map.size(), MAX_EVENT_TYPES + 1);
+    assertEquals(map.get(0).size(), MAX_EVENTS);
+    assertEquals(map.get(SPARSE_TYPE).size(), 1);
+    assertNotNull(queue.dequeue(0));
+    assertEquals(map.get(0).size(), MAX_EVENTS - 1);
+  }
+
+  /**
+   * Test draining events in batches.
+   */
+  @Test
+  public void testDrain() {
+    final List<Event> events = new ArrayList<>();
+    assertEquals(queue.drain(MAX_EVENT_TYPES, events, MAX_EVENTS), 0);
+    addEvents();
+    assertEquals(queue.drain(0, events, 2), 2);
+    assertEquals(queue.drain(0, events, MAX_EVENTS), MAX_EVENTS - 2);
+    assertEquals(queue.drain(0, events, MAX_EVENTS), 0);
+    assertEquals(events.size(), MAX_EVENTS);
+    for ( final Event event : events ) {
+      assertEquals(event.type(), 0);
+    }
+  }
+
+  /**
+   * Test waiting for an event of one type.
+   */
+  @Test
+  public void testTake() throws InterruptedException {
+    addEvents();
+    assertEquals(queue.take(1).type(), 1);
+    assertNull(queue.poll(MAX_EVENT_TYPES, DELAY, TimeUnit.MILLISECONDS));
+    enqueueLater(new BasicEvent(MAX_EVENT_TYPES));
+    assertEquals(queue.take(MAX_EVENT_TYPES).type(), MAX_EVENT_TYPES);
+    enqueueLater(new BasicEvent(MAX_EVENT_TYPES));
+    final Event event = queue.poll(MAX_EVENT_TYPES, TIMEOUT, TimeUnit.SECONDS);
+    assertNotNull(event);
+    assertEquals(event.type(), MAX_EVENT_TYPES);
+  }
+
+  /**
+   * Test waiting for an event of any of several types.
+   */
+  @Test
+  public void testTakeAny() throws InterruptedException {
+    final int other = MAX_EVENT_TYPES + 1;
+    assertNull(queue.pollAny(DELAY, TimeUnit.MILLISECONDS, MAX_EVENT_TYPES, other));
+    enqueueLater(new BasicEvent(other));
+    assertEquals(queue.takeAny(MAX_EVENT_TYPES, other).type(), other);
+    enqueueLater(new BasicEvent(MAX_EVENT_TYPES));
+    final Event event = queue.pollAny(TIMEOUT, TimeUnit.SECONDS, MAX_EVENT_TYPES, other);
+    assertNotNull(event);
+    assertEquals(event.type(), MAX_EVENT_TYPES);
+    addEvents();
+    assertEquals(queue.takeAny(other, 2, 1).type(), 2);
+  }
+
+  /**
+   * Test that a waiting consumer can be interrupted.
+   */
+  @Test(expectedExceptions = InterruptedException.class)
+  public void testInterrupt() throws InterruptedException {
+    Thread.currentThread().interrupt();
+    queue.take(MAX_EVENT_TYPES);
+  }
+
+  /**
+   * Enqueue an event from another thread after a short delay.
+   *
+   * @param event  the event to enqueue.
+   */
+  private void enqueueLater(final Event event) {
+    new Thread(() -> {
+      try {
+	Thread.sleep(DELAY);
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+      }
+      queue.enqueue(event);
+    }).start();
+  }
 }
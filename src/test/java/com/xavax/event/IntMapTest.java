@@ -0,0 +1,67 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the IntMap class.
+ */
+public class IntMapTest {
+  private final static int OPERATIONS = 100000;
+  private final static int KEY_RANGE = 512;
+  private final static long SEED = 1234;
+
+  /**
+   * Test put, get, and remove against a HashMap.
+   */
+  @Test
+  public void testRandomOperations() {
+    final Random random = new Random(SEED);
+    final IntMap<Integer> map = new IntMap<>();
+    final Map<Integer, Integer> expected = new HashMap<>();
+    for ( int i = 0; i < OPERATIONS; ++i ) {
+      final int key = random.nextInt(KEY_RANGE) - KEY_RANGE / 2;
+      if ( random.nextInt(3) == 0 ) {
+	assertEquals(map.remove(key), expected.remove(key));
+      }
+      else {
+	assertEquals(map.put(key, i), expected.put(key, i));
+      }
+      assertEquals(map.get(key), expected.get(key));
+      assertEquals(map.size(), expected.size());
+    }
+    for ( int key = -KEY_RANGE; key < KEY_RANGE; ++key ) {
+      assertEquals(map.get(key), expected.get(key));
+    }
+    assertEquals(map.keys().length, expected.size());
+  }
+
+  /**
+   * Test that a copy is independent of the original.
+   */
+  @Test
+  public void testCopy() {
+    final IntMap<String> map = new IntMap<>();
+    map.put(1, "one");
+    map.put(Integer.MIN_VALUE, "min");
+    final IntMap<String> copy = new IntMap<>(map);
+    copy.put(2, "two");
+    copy.remove(1);
+    assertEquals(map.get(1), "one");
+    assertNull(map.get(2));
+    assertNull(copy.get(1));
+    assertEquals(copy.get(2), "two");
+    assertEquals(copy.get(Integer.MIN_VALUE), "min");
+    assertEquals(map.keys(), new int[] { Integer.MIN_VALUE, 1 });
+  }
+}
@@ -0,0 +1,247 @@
+package com.xavax.event;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.xavax.exception.RangeException;
+
+/**
+ * Test cases for the RingEventQueue class.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class RingEventQueueTest {
+  private final static int CAPACITY = 8;
+  private final static int MAX_EVENT_TYPES = 10;
+  private final static int PRODUCERS = 4;
+  private final static int EVENTS = 100000;
+  private final static int BATCH = 64;
+  private final static int TYPE = 1;
+  private final static long RELEASE_WAIT = 100;
+
+  /**
+   * Test enqueuing and dequeuing events of several types.
+   */
+  @Test
+  public void testRingEventQueue() {
+    final RingEventQueue queue = new RingEventQueue(CAPACITY, ProducerMode.SINGLE);
+    final MutableEvent event = new MutableEvent();
+    assertFalse(queue.enqueue(null));
+    assertFalse(queue.dequeue(MAX_EVENT_TYPES, event));
+    for ( int type = 0; type < MAX_EVENT_TYPES; ++type ) {
+      for ( int count = 0; count < CAPACITY; ++count ) {
+	assertTrue(queue.enqueue(event.set(type, null, count)));
+      }
+      assertFalse(queue.enqueue(event.set(type, null, CAPACITY)));
+      assertEquals(queue.size(type), CAPACITY);
+    }
+    for ( int type = 0; type < MAX_EVENT_TYPES; ++type ) {
+      for ( int count = 0; count < CAPACITY; ++count ) {
+	assertTrue(queue.dequeue(type, event));
+	assertEquals(event.type(), type);
+	assertEquals(event.value(), count);
+      }
+      assertFalse(queue.dequeue(type, event));
+    }
+  }
+
+  /**
+   * Test that events other than mutable events are kept as the value.
+   */
+  @Test
+  public void testEventValue() {
+    final RingEventQueue queue = new RingEventQueue();
+    final BroadcastHelper source = new BroadcastHelper();
+    final BasicEvent basic = new BasicEvent(source, TYPE);
+    assertTrue(queue.enqueue(basic));
+    final MutableEvent event = new MutableEvent();
+    assertTrue(queue.dequeue(TYPE, event));
+    assertSame(event.source(), source);
+    assertSame(event.value(), basic);
+    assertEquals(queue.capacity(), RingEventQueue.DEFAULT_CAPACITY);
+    assertEquals(new RingEventQueue(CAPACITY + 1, ProducerMode.MULTI).capacity(), CAPACITY * 2);
+  }
+
+  /**
+   * Test draining events in batches as the ring wraps around.
+   */
+  @Test
+  public void testDrainTo() {
+    final RingEventQueue queue = new RingEventQueue(CAPACITY, ProducerMode.MULTI);
+    final List<Object> values = new ArrayList<>();
+    final Observer observer = event -> values.add(((MutableEvent) event).value());
+    int sent = 0;
+    for ( int round = 0; round < 3; ++round ) {
+      while ( queue.enqueue(TYPE, null, sent) ) {
+	++sent;
+      }
+      assertEquals(queue.drainTo(TYPE, observer, 3), 3);
+      assertEquals(queue.drainTo(TYPE, observer, BATCH), CAPACITY - 3);
+      assertEquals(queue.drainTo(TYPE, observer, BATCH), 0);
+    }
+    assertEquals(values.size(), sent);
+    for ( int i = 0; i < sent; ++i ) {
+      assertEquals(values.get(i), i);
+    }
+    assertEquals(queue.drainTo(MAX_EVENT_TYPES, observer, BATCH), 0);
+  }
+
+  /**
+   * Test that a consumer waits for a slower consumer holding an earlier
+   * run before it releases its own slots.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  public void testOrderedRelease() throws InterruptedException {
+    final RingEventQueue queue = new RingEventQueue(CAPACITY, ProducerMode.SINGLE);
+    for ( int i = 0; i < CAPACITY; ++i ) {
+      assertTrue(queue.enqueue(TYPE, null, i));
+    }
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    final Thread slow = new Thread(() -> queue.drainTo(TYPE, event -> {
+      entered.countDown();
+      try {
+	proceed.await();
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+      }
+    }, 2));
+    slow.start();
+    assertTrue(entered.await(10, TimeUnit.SECONDS));
+    final MutableEvent event = new MutableEvent();
+    final Thread fast = new Thread(() -> queue.dequeue(TYPE, event));
+    fast.start();
+    fast.join(RELEASE_WAIT);
+    assertTrue(fast.isAlive());
+    assertFalse(queue.enqueue(TYPE, null, CAPACITY));
+    proceed.countDown();
+    slow.join();
+    fast.join();
+    assertEquals(event.value(), 2);
+    assertTrue(queue.enqueue(TYPE, null, CAPACITY));
+    assertTrue(queue.enqueue(TYPE, null, CAPACITY + 1));
+    assertTrue(queue.enqueue(TYPE, null, CAPACITY + 2));
+    assertFalse(queue.enqueue(TYPE, null, CAPACITY + 3));
+  }
+
+  /**
+   * Test the flush methods.
+   */
+  @Test
+  public void testFlush() {
+    final RingEventQueue queue = new RingEventQueue();
+    final MutableEvent event = new MutableEvent();
+    queue.flush(MAX_EVENT_TYPES);
+    for ( int type = 0; type < MAX_EVENT_TYPES; ++type ) {
+      queue.enqueue(type, null, null);
+      queue.enqueue(type, null, null);
+    }
+    assertTrue(queue.dequeue(0, event));
+    queue.flush(0);
+    assertFalse(queue.dequeue(0, event));
+    assertTrue(queue.dequeue(1, event));
+    queue.flush();
+    assertFalse(queue.dequeue(1, event));
+    assertEquals(queue.size(2), 0);
+  }
+
+  /**
+   * Test several producers and a consumer running concurrently. Each
+   * producer's events must arrive complete and in order.
+   */
+  @Test
+  public void testMultiProducer() throws InterruptedException {
+    final RingEventQueue queue = new RingEventQueue(CAPACITY, ProducerMode.MULTI);
+    final List<Thread> threads = new ArrayList<>();
+    for ( int p = 0; p < PRODUCERS; ++p ) {
+      final int producer = p;
+      threads.add(new Thread(() -> {
+	final MutableEvent event = new MutableEvent();
+	for ( int i = 0; i < EVENTS; ++i ) {
+	  event.set(TYPE, null, new int[] { producer, i });
+	  while ( !queue.enqueue(event) ) {
+	    Thread.yield();
+	  }
+	}
+      }));
+    }
+    threads.forEach(Thread::start);
+    final int[] expected = new int[PRODUCERS];
+    final int[] received = new int[1];
+    final Observer observer = event -> {
+      final int[] value = (int[]) ((MutableEvent) event).value();
+      assertEquals(value[1], expected[value[0]]++);
+      ++received[0];
+    };
+    while ( received[0] < PRODUCERS * EVENTS ) {
+      if ( queue.drainTo(TYPE, observer, BATCH) == 0 ) {
+	Thread.yield();
+      }
+    }
+    for ( final Thread thread : threads ) {
+      thread.join();
+    }
+    assertEquals(queue.size(TYPE), 0);
+  }
+
+  /**
+   * Test one producer and several consumers running concurrently.
+   */
+  @Test
+  public void testSingleProducer() throws InterruptedException {
+    final RingEventQueue queue = new RingEventQueue(CAPACITY, ProducerMode.SINGLE);
+    final long[] sums = new long[PRODUCERS];
+    final List<Thread> threads = new ArrayList<>();
+    for ( int c = 0; c < PRODUCERS; ++c ) {
+      final int consumer = c;
+      threads.add(new Thread(() -> {
+	final MutableEvent event = new MutableEvent();
+	for ( ;; ) {
+	  if ( queue.dequeue(TYPE, event) ) {
+	    final int value = (Integer) event.value();
+	    if ( value < 0 ) {
+	      break;
+	    }
+	    sums[consumer] += value;
+	  }
+	  else {
+	    Thread.yield();
+	  }
+	}
+      }));
+    }
+    threads.forEach(Thread::start);
+    final MutableEvent event = new MutableEvent();
+    long expected = 0;
+    for ( int i = 0; i < EVENTS + PRODUCERS; ++i ) {
+      final int value = i < EVENTS ? i : -1;
+      expected += Math.max(value, 0);
+      event.set(TYPE, null, value);
+      while ( !queue.enqueue(event) ) {
+	Thread.yield();
+      }
+    }
+    long total = 0;
+    for ( int c = 0; c < PRODUCERS; ++c ) {
+      threads.get(c).join();
+      total += sums[c];
+    }
+    assertEquals(total, expected);
+  }
+
+  /**
+   * Test that the capacity must be positive.
+   */
+  @Test(expectedExceptions = RangeException.class)
+  public void testCapacity() {
+    new RingEventQueue(0, ProducerMode.SINGLE);
+  }
+}
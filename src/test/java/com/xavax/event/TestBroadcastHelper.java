@@ -5,8 +5,17 @@
 //
 package com.xavax.event;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.annotations.Test;
 
+import com.xavax.concurrent.TaskExecutors;
+
 import static org.testng.Assert.*;
 
 /**
@@ -69,6 +78,77 @@ public class TestBroadcastHelper  {
     checkObservers(0);
   }
 
+  /**
+   * Test the snapshot of the observer map.
+   */
+  @Test
+  public void testObserverMap()
+  {
+    final BroadcastHelper helper = new BroadcastHelper();
+    helper.attach(2, observers[0]);
+    helper.attach(1, observers[1]);
+    helper.attach(2, observers[2]);
+    final Map<Integer, List<Observer>> map = helper.observerMap();
+    assertEquals(map.keySet().toString(), "[1, 2]");
+    assertEquals(map.get(2), Arrays.asList(observers[0], observers[2]));
+    helper.detach(1, observers[1]);
+    assertEquals(map.get(1), Arrays.asList(observers[1]));
+    assertFalse(helper.observerMap().containsKey(1));
+  }
+
+  /**
+   * Test delivering events with an executor.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  public void testExecutor() throws InterruptedException {
+    final ExecutorService executor = TaskExecutors.newTaskExecutor("broadcast");
+    final BroadcastHelper helper = new BroadcastHelper(executor);
+    final CountDownLatch latch = new CountDownLatch(MAX_COUNT * MAX_OBSERVERS);
+    for ( int i = 0; i < MAX_OBSERVERS; ++i ) {
+      helper.attach(0, event -> latch.countDown());
+    }
+    for ( int i = 0; i < MAX_COUNT; ++i ) {
+      helper.broadcast(helper, 0);
+    }
+    assertTrue(latch.await(MAX_COUNT, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  /**
+   * Test that a blocked observer delays neither attach nor other broadcasts.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  @Test
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  public void testBlockedObserver() throws InterruptedException {
+    final BroadcastHelper helper = new BroadcastHelper();
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    helper.attach(0, event -> {
+      entered.countDown();
+      try {
+	release.await();
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+      }
+    });
+    final Thread thread = new Thread(() -> helper.broadcast(helper, 0));
+    thread.start();
+    assertTrue(entered.await(MAX_COUNT, TimeUnit.SECONDS));
+    final SampleObserver observer = new SampleObserver(helper, 1);
+    helper.broadcast(helper, 1);
+    assertEquals(observer.count(), 1);
+    assertEquals(helper.observers(0).length, 1);
+    helper.detach(1, observer);
+    assertEquals(helper.observers(1).length, 0);
+    release.countDown();
+    thread.join();
+  }
+
   /**
    * Test the toString method.
    */
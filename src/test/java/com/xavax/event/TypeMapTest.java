@@ -0,0 +1,75 @@
+//
+// Copyright 2006 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.event;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the TypeMap class.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class TypeMapTest {
+  private final static int THREADS = 4;
+  private final static int[] TYPES = {
+    0, 1, TypeMap.DENSE_SIZE - 1, TypeMap.DENSE_SIZE, -1,
+    Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 20
+  };
+
+  /**
+   * Test get, computeIfAbsent, and forEach for dense and sparse types.
+   */
+  @Test
+  public void testTypes() {
+    final TypeMap<String> map = new TypeMap<>();
+    for ( final int type : TYPES ) {
+      assertNull(map.get(type));
+      assertEquals(map.computeIfAbsent(type, String::valueOf), String.valueOf(type));
+      assertEquals(map.computeIfAbsent(type, key -> "other"), String.valueOf(type));
+      assertEquals(map.get(type), String.valueOf(type));
+    }
+    final Set<String> values = new HashSet<>();
+    map.forEach(values::add);
+    assertEquals(values.size(), TYPES.length);
+    for ( final int type : TYPES ) {
+      assertTrue(values.contains(String.valueOf(type)));
+    }
+  }
+
+  /**
+   * Test that concurrent callers of computeIfAbsent see one value.
+   */
+  @Test
+  public void testConcurrentCreate() throws InterruptedException {
+    final TypeMap<Object> map = new TypeMap<>();
+    final AtomicInteger created = new AtomicInteger();
+    final List<Thread> threads = new ArrayList<>();
+    for ( int t = 0; t < THREADS; ++t ) {
+      threads.add(new Thread(() -> {
+	for ( int i = 0; i < TypeMap.DENSE_SIZE * 4; ++i ) {
+	  final int type = i - TypeMap.DENSE_SIZE;
+	  final Object value = map.computeIfAbsent(type, key -> {
+	    created.incrementAndGet();
+	    return new Object();
+	  });
+	  assertSame(map.get(type), value);
+	}
+      }));
+    }
+    threads.forEach(Thread::start);
+    for ( final Thread thread : threads ) {
+      thread.join();
+    }
+    assertEquals(created.get(), TypeMap.DENSE_SIZE * 4);
+  }
+}
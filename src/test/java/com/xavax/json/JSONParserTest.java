@@ -6,11 +6,18 @@
 package com.xavax.json;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -88,6 +95,9 @@ public class JSONParserTest {
   private final static String INPUT12A = "foo: 1.2345, bar: -1, baz: 1.2e03, abc: 'abc' }";
   private final static String INPUT12B = "{ foo: 1.2345, bar: -1, baz: 1.2e03, abc: 'abc'";
   private final static String INPUT12C = "{ inner: { foo: [ 'abc', 'def' }";
+  private final static String INPUT14A = "{\n  foo: 'abc',\n  bar: 12x\n}";
+  private final static String INPUT14B = "{ foo: 'line 1\nline 2' }\n";
+  private final static int LARGE_COUNT = 5000;
   private final static String INPUT13  = "[{$match: {results: {$exists: true}}},{$sort: {'_id.requested_at': -1}},{$limit: 1},{$unwind: {path: \"$results\",includeArrayIndex: \"index\"}},{$group: {_id: {requested_at: '$_id.requested_at',hostname: '$results.appliance_hostname',result: '$results.result'},count: {$sum: 1}}}]";
 
   private JSONParser parser;
@@ -343,4 +353,164 @@ public class JSONParserTest {
     result = JSONParser.parse(null, FILENAME);
     assertNull(result);
   }
+
+  /**
+   * Test that error messages report the line and column of the error.
+   */
+  @Test
+  public void testErrorPosition() {
+    parser.parse(INPUT14A);
+    assertEquals(parser.errorCount(), 1);
+    final String error = parser.getErrors().get(0);
+    assertTrue(error.startsWith("JSON: error at line 3 position 7"), error);
+    assertTrue(error.contains("  bar: 12x\n       ^"), error);
+  }
+
+  /**
+   * Test that newlines in strings are kept and trailing whitespace after
+   * the closing brace is accepted.
+   */
+  @Test
+  public void testMultipleLines() {
+    final JSON result = parser.parse(INPUT14B);
+    assertTrue(parser.isValid());
+    assertEquals(result.getString(FOO), "line 1\nline 2");
+  }
+
+  /**
+   * Test parsing input larger than the parser's window from a reader that
+   * returns a few characters at a time, so tokens span refills.
+   */
+  @Test
+  public void testLargeInput() {
+    final StringBuilder builder = new StringBuilder("{ items: [");
+    for ( int i = 0; i < LARGE_COUNT; ++i ) {
+      builder.append(i == 0 ? "" : ",\n")
+	     .append(String.format(Locale.US, "{ id: %d, name: 'item %d', price: %d.25 }", i, i, i));
+    }
+    final String text = builder.append("] }").toString();
+    final Reader reader = new StringReader(text) {
+      @Override
+      public int read(final char[] target, final int offset, final int count) throws IOException {
+	return super.read(target, offset, Math.min(count, 7));
+      }
+    };
+    final JSONParser parser2 = new JSONParser(reader, SOURCE);
+    final JSON result = parser2.parse();
+    assertTrue(parser2.isValid());
+    final JSONArray items = result.getArray("items");
+    assertEquals(items.size(), LARGE_COUNT);
+    final JSON last = (JSON) items.get(LARGE_COUNT - 1);
+    assertEquals(last.getLong("id").intValue(), LARGE_COUNT - 1);
+    assertEquals(last.getString("name"), "item " + (LARGE_COUNT - 1));
+    assertEquals(last.getDouble("price"), LARGE_COUNT - 1 + 0.25);
+    assertEquals(parser.parse(text).getArray("items").size(), LARGE_COUNT);
+  }
+
+  /**
+   * Test parsing UTF-8 from a byte array, heap and direct buffers, and an
+   * input stream that splits multibyte sequences across reads.
+   */
+  @Test
+  public void testBytes() {
+    final StringBuilder builder = new StringBuilder("{ items: [");
+    for ( int i = 0; i < LARGE_COUNT; ++i ) {
+      builder.append(i == 0 ? "" : ",\n")
+	     .append(String.format(Locale.US, "{ id: %d, name: \"caf\u00e9 \u20ac%d \ud83d\ude00\" }", i, i));
+    }
+    final String text = builder.append("] }").toString();
+    final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    final InputStream stream = new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(final byte[] target, final int offset, final int count) {
+	return super.read(target, offset, Math.min(count, 3));
+      }
+    };
+    final JSON[] results = {
+      new JSONParser().parse(bytes),
+      new JSONParser().parse(ByteBuffer.wrap(bytes)),
+      new JSONParser().parse(direct),
+      new JSONParser(stream, SOURCE).parse()
+    };
+    final String expected = "caf\u00e9 \u20ac" + (LARGE_COUNT - 1) + " \ud83d\ude00";
+    for ( final JSON result : results ) {
+      final JSONArray items = result.getArray("items");
+      assertEquals(items.size(), LARGE_COUNT);
+      assertEquals(((JSON) items.get(LARGE_COUNT - 1)).getString("name"), expected);
+    }
+    assertEquals(direct.position(), 0);
+  }
+
+  /**
+   * Test that malformed UTF-8 decodes to the replacement character.
+   */
+  @Test
+  public void testMalformedBytes() {
+    final byte[] bytes = {
+      '{', 'a', ':', '"', (byte) 0xC3, '"', ',', 'b', ':', '"', (byte) 0xC0, (byte) 0xAF, '"',
+      ',', 'c', ':', '"', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '"', '}'
+    };
+    final JSON result = parser.parse(bytes);
+    assertTrue(parser.isValid());
+    assertEquals(result.getString("a"), "\ufffd");
+    assertEquals(result.getString("b"), "\ufffd");
+    assertEquals(result.getString("c"), "\ufffd");
+  }
+
+  /**
+   * Test parsing numbers, including numbers out of the range of a long or
+   * a double with and without the bigNumbers option.
+   */
+  @Test
+  public void testNumbers() {
+    final String text = "{ a: 0, b: -9223372036854775808, c: .5, d: -0.0, e: 12e+10,"
+	+ " f: 0.1, g: 2.2250738585072011e-308, h: 3.141592653589793238462643383279 }";
+    JSON result = parser.parse(text);
+    assertTrue(parser.isValid());
+    assertEquals(result.getLong("a"), Long.valueOf(0));
+    assertEquals(result.getLong("b"), Long.valueOf(Long.MIN_VALUE));
+    assertEquals(result.getDouble("c"), Double.valueOf(0.5));
+    assertEquals(result.getDouble("d"), Double.valueOf(-0.0));
+    assertEquals(result.getDouble("e"), Double.valueOf(12e10));
+    assertEquals(result.getDouble("f"), Double.valueOf(0.1));
+    assertEquals(result.getDouble("g"), Double.valueOf(2.2250738585072011e-308));
+    assertEquals(result.getDouble("h"), Double.valueOf(Math.PI));
+    final String big = "{ n: 123456789012345678901234567890, x: 1e400, y: -2.5e-400, z: 1.5 }";
+    result = parser.parse(big);
+    assertFalse(parser.isValid());
+    assertEquals(parser.getErrors().size(), 1);
+    assertNull(result.get("n"));
+    assertEquals(result.getDouble("x"), Double.valueOf(Double.POSITIVE_INFINITY));
+    result = parser.bigNumbers(true).parse(big);
+    assertTrue(parser.isValid());
+    assertEquals(result.get("n"), new BigInteger("123456789012345678901234567890"));
+    assertEquals(result.get("x"), new BigDecimal("1e400"));
+    assertEquals(result.get("y"), new BigDecimal("-2.5e-400"));
+    assertEquals(result.getDouble("z"), Double.valueOf(1.5));
+    result = parser.parse("{ n: -, m: 1 }");
+    assertFalse(parser.isValid());
+    assertEquals(result.getLong("m"), Long.valueOf(1));
+  }
+
+  /**
+   * Test that field names are interned, and that a symbol table may be
+   * shared or disabled.
+   */
+  @Test
+  public void testSymbols() {
+    final JSONArray items = parser.parseArray("[ { id: 1, 'name': 'a' }, { id: 2, \"name\": 'b' } ]");
+    final String[] first = ((JSON) items.get(0)).keySet().toArray(new String[0]);
+    for ( final String key : ((JSON) items.get(1)).keySet() ) {
+      assertSame(key, key.equals(first[0]) ? first[0] : first[1]);
+    }
+    final SymbolTable table = new SymbolTable();
+    final JSON one = new JSONParser().symbolTable(table).parse(INPUT1);
+    final JSON two = new JSONParser().symbolTable(table).parse(INPUT1);
+    assertSame(table.intern(FOO), one.keySet().stream().filter(FOO::equals).findFirst().get());
+    assertSame(table.intern(FOO), two.keySet().stream().filter(FOO::equals).findFirst().get());
+    assertNull(parser.symbolTable(null).symbolTable());
+    assertEquals(parser.parse(INPUT1).getString(FOO), "123");
+  }
 }
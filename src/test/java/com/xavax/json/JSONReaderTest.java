@@ -0,0 +1,314 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.xavax.json.JSONParser.ParserException;
+
+import static com.xavax.json.JSONToken.*;
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the JSONReader class.
+ */
+@SuppressWarnings({ "PMD.AvoidFileStream", "PMD.TooManyMethods" })
+public class JSONReaderTest {
+  private final static String FILENAME = "test/data/test.json";
+  private final static String INPUT1 =
+      "{ foo: 'Phil\\'s', \"bar\": [1, -2.5, true, false, null], baz: {}, $x: [] }";
+  private final static String INPUT2 = "{ a: { b: [1, { c: 'skip me' }], d: 'x' }, e: 2 }";
+  private final static String INPUT3 = "{ n: 1 } [ 2 ] 'three'";
+  private final static String INPUT4 = "{ t: True, f: FALSE, n: Null, id.name: 1 }";
+  private final static String INPUT5 = "{ exclamation: '\\u0021', lines: 'a\\nb', zero: 0, fab: .5, xyz: 0., e: 12e+10 }";
+  private final static int LARGE_COUNT = 20000;
+
+  /**
+   * Test the tokens of a document.
+   */
+  @Test
+  public void testTokens() {
+    final JSONReader reader = new JSONReader(INPUT1);
+    final JSONToken[] expected = {
+      START_OBJECT, FIELD_NAME, VALUE_STRING, FIELD_NAME, START_ARRAY,
+      VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE, VALUE_NULL,
+      END_ARRAY, FIELD_NAME, START_OBJECT, END_OBJECT, FIELD_NAME, START_ARRAY,
+      END_ARRAY, END_OBJECT
+    };
+    final List<String> texts = new ArrayList<>();
+    for ( final JSONToken token : expected ) {
+      assertEquals(reader.nextToken(), token);
+      assertEquals(reader.currentToken(), token);
+      texts.add(reader.getText());
+    }
+    assertNull(reader.nextToken());
+    assertNull(reader.nextToken());
+    assertEquals(texts.get(1), "foo");
+    assertEquals(texts.get(2), "Phil's");
+    assertEquals(texts.get(3), "bar");
+    assertEquals(texts.get(5), "1");
+    assertEquals(texts.get(6), "-2.5");
+    assertEquals(texts.get(14), "$x");
+  }
+
+  /**
+   * Test scalar values and field names.
+   */
+  @Test
+  public void testValues() {
+    final JSONReader reader = new JSONReader(INPUT5);
+    assertEquals(reader.nextToken(), START_OBJECT);
+    assertEquals(reader.depth(), 1);
+    assertEquals(reader.nextToken(), FIELD_NAME);
+    assertEquals(reader.nextToken(), VALUE_STRING);
+    assertEquals(reader.getFieldName(), "exclamation");
+    assertEquals(reader.getValue(), "!");
+    reader.nextToken();
+    reader.nextToken();
+    assertEquals(reader.getText(), "a\nb");
+    reader.nextToken();
+    assertEquals(reader.nextToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.getLong(), 0);
+    reader.nextToken();
+    assertEquals(reader.nextToken(), VALUE_NUMBER_FLOAT);
+    assertEquals(reader.getDouble(), 0.5);
+    reader.nextToken();
+    assertEquals(reader.nextToken(), VALUE_NUMBER_FLOAT);
+    assertEquals(reader.getValue(), Double.valueOf(0));
+    reader.nextToken();
+    reader.nextToken();
+    assertEquals(reader.getValue(), Double.valueOf(12e10));
+    assertEquals(reader.nextToken(), END_OBJECT);
+    assertEquals(reader.depth(), 0);
+  }
+
+  /**
+   * Test skipping the children of objects and arrays.
+   */
+  @Test
+  public void testSkipChildren() {
+    final JSONReader reader = new JSONReader(INPUT2);
+    assertEquals(reader.nextToken(), START_OBJECT);
+    assertEquals(reader.nextToken(), FIELD_NAME);
+    assertEquals(reader.nextToken(), START_OBJECT);
+    assertEquals(reader.skipChildren().currentToken(), END_OBJECT);
+    assertEquals(reader.depth(), 1);
+    assertEquals(reader.nextToken(), FIELD_NAME);
+    assertEquals(reader.getText(), "e");
+    assertEquals(reader.nextToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.skipChildren().currentToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.getLong(), 2);
+    assertEquals(reader.nextToken(), END_OBJECT);
+  }
+
+  /**
+   * Test that readValue builds the same JSON as JSONParser.
+   */
+  @Test
+  public void testReadValue() throws IOException {
+    final JSONParser parser = new JSONParser();
+    assertEquals(new JSONReader(INPUT1).nextValue(), parser.parse(INPUT1));
+    assertEquals(new JSONReader(INPUT2).nextValue(), parser.parse(INPUT2));
+    try ( Reader file = new FileReader(FILENAME);
+	  JSONReader reader = new JSONReader(new FileReader(FILENAME), FILENAME) ) {
+      reader.nextToken();
+      assertEquals(reader.readValue(), JSONParser.parse(file, FILENAME));
+      assertNull(reader.nextToken());
+    }
+  }
+
+  /**
+   * Test reading UTF-8 from a byte array, a direct buffer, and a stream.
+   *
+   * @throws IOException if the file cannot be read.
+   */
+  @Test
+  public void testBytes() throws IOException {
+    final String text = "{ name: 'caf\u00e9', emoji: \"\ud83d\ude00\", n: [1, 2] }";
+    final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    final JSON expected = new JSONParser().parse(text);
+    assertEquals(new JSONReader(bytes).nextValue(), expected);
+    assertEquals(new JSONReader(direct).nextValue(), expected);
+    final JSONReader reader = new JSONReader(bytes);
+    assertEquals(reader.nextToken(), START_OBJECT);
+    assertEquals(reader.nextToken(), FIELD_NAME);
+    assertEquals(reader.nextToken(), VALUE_STRING);
+    assertEquals(reader.getText(), "caf\u00e9");
+    try ( Reader file = new FileReader(FILENAME);
+	  JSONReader stream = new JSONReader(new FileInputStream(FILENAME), FILENAME) ) {
+      assertEquals(stream.nextValue(), JSONParser.parse(file, FILENAME));
+    }
+  }
+
+  /**
+   * Test reading numbers as primitives and as big numbers.
+   */
+  @Test
+  public void testNumbers() {
+    final String text = "[ 42, -9223372036854775808, 0.1, 1e400, 123456789012345678901234567890 ]";
+    JSONReader reader = new JSONReader(text);
+    assertEquals(reader.nextToken(), START_ARRAY);
+    assertEquals(reader.nextToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.getLong(), 42);
+    assertEquals(reader.getDouble(), 42.0);
+    assertEquals(reader.getValue(), Long.valueOf(42));
+    assertEquals(reader.nextToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.getLong(), Long.MIN_VALUE);
+    assertEquals(reader.nextToken(), VALUE_NUMBER_FLOAT);
+    assertEquals(reader.getDouble(), 0.1);
+    assertEquals(reader.getBigDecimal(), new BigDecimal("0.1"));
+    try {
+      reader.getLong();
+      fail("expected NumberFormatException");
+    }
+    catch (NumberFormatException e) {
+      assertEquals(e.getMessage(), "0.1");
+    }
+    assertEquals(reader.nextToken(), VALUE_NUMBER_FLOAT);
+    assertEquals(reader.getValue(), Double.valueOf(Double.POSITIVE_INFINITY));
+    assertEquals(reader.nextToken(), VALUE_NUMBER_INT);
+    assertEquals(reader.getBigInteger(), new BigInteger("123456789012345678901234567890"));
+    reader = new JSONReader(text).bigNumbers(true);
+    final JSONArray values = (JSONArray) reader.nextValue();
+    assertEquals(values.get(3), new BigDecimal("1e400"));
+    assertEquals(values.get(4), new BigInteger("123456789012345678901234567890"));
+  }
+
+  /**
+   * Test that field names are interned in the reader's symbol table.
+   */
+  @Test
+  public void testSymbols() {
+    final SymbolTable table = new SymbolTable();
+    final JSONReader reader = new JSONReader("[ { name: 1 }, { 'name': 2 } ]").symbolTable(table);
+    final List<String> names = new ArrayList<>();
+    for ( JSONToken token = reader.nextToken(); token != null; token = reader.nextToken() ) {
+      if ( token == FIELD_NAME ) {
+	names.add(reader.getFieldName());
+      }
+    }
+    assertEquals(names.size(), 2);
+    assertSame(names.get(0), names.get(1));
+    assertSame(names.get(0), table.intern("name"));
+  }
+
+  /**
+   * Test reading several values one after another.
+   */
+  @Test
+  public void testSequence() {
+    final JSONReader reader = new JSONReader(INPUT3);
+    assertTrue(reader.nextValue() instanceof JSON);
+    assertTrue(reader.nextValue() instanceof JSONArray);
+    assertEquals(reader.nextValue(), "three");
+    assertNull(reader.nextToken());
+  }
+
+  /**
+   * Test the ignoreCase and allowCompoundIdentifiers options.
+   */
+  @Test
+  public void testOptions() {
+    expectError(new JSONReader(INPUT4), "true, false, or null");
+    final JSONReader reader = new JSONReader(INPUT4).ignoreCase(true).allowCompoundIdentifiers(true);
+    final JSON json = (JSON) reader.nextValue();
+    assertEquals(json.getBoolean("t"), Boolean.TRUE);
+    assertEquals(json.getBoolean("f"), Boolean.FALSE);
+    assertNull(json.get("n"));
+    assertEquals(json.getLong("id.name"), Long.valueOf(1));
+  }
+
+  /**
+   * Test errors.
+   */
+  @Test
+  public void testErrors() {
+    expectError(new JSONReader("{ foo: 1, }"), "expected [identifier] but received [}]");
+    expectError(new JSONReader("[1, 2,]"), "expected [value] but received []]");
+    expectError(new JSONReader("{ foo 1 }"), "expected [:] but received [1]");
+    expectError(new JSONReader("{ foo: 1 bar: 2 }"), "expected [comma or end] but received [b]");
+    expectError(new JSONReader("{ foo: 01 }"), "invalid number");
+    expectError(new JSONReader("{ foo: 1.2.3 }"), "invalid number");
+    expectError(new JSONReader("{ foo: 12e }"), "invalid number");
+    expectError(new JSONReader("{ foo: '\\u12G4' }"), "invalid Unicode escape sequence");
+    expectError(new JSONReader("{ @foo: 1 }"), "expected [identifier] but received [@]");
+    final String message = expectError(new JSONReader("{\n  foo: [1,\n  2"), "unexpected end of input");
+    assertTrue(message.startsWith("JSON: error at line 3 position 3"), message);
+  }
+
+  /**
+   * Test streaming a document larger than the reader's window from a
+   * reader that returns a few characters at a time.
+   */
+  @Test
+  public void testLargeInput() throws IOException {
+    final StringBuilder builder = new StringBuilder("{ items: [");
+    for ( int i = 0; i < LARGE_COUNT; ++i ) {
+      builder.append(i == 0 ? "" : ",\n")
+	     .append("{ id: ").append(i).append(", tags: ['a', 'b'], name: 'item ").append(i).append("' }");
+    }
+    final Reader chunked = new StringReader(builder.append("] }").toString()) {
+      @Override
+      public int read(final char[] target, final int offset, final int count) throws IOException {
+	return super.read(target, offset, Math.min(count, 7));
+      }
+    };
+    int count = 0;
+    long sum = 0;
+    try ( JSONReader reader = new JSONReader(chunked, null) ) {
+      JSONToken token;
+      while ( (token = reader.nextToken()) != null ) {
+	if ( token == FIELD_NAME && "tags".equals(reader.getText()) ) {
+	  reader.nextToken();
+	  reader.skipChildren();
+	}
+	else if ( token == VALUE_NUMBER_INT && "id".equals(reader.getFieldName()) ) {
+	  ++count;
+	  sum += reader.getLong();
+	}
+      }
+    }
+    assertEquals(count, LARGE_COUNT);
+    assertEquals(sum, (long) LARGE_COUNT * (LARGE_COUNT - 1) / 2);
+  }
+
+  /**
+   * Read tokens until the reader throws a ParserException, and check that
+   * the exception's message contains the specified text.
+   *
+   * @param reader    the reader.
+   * @param expected  the text expected in the message.
+   * @return the message.
+   */
+  private String expectError(final JSONReader reader, final String expected) {
+    String message = null;
+    try {
+      while ( reader.nextToken() != null ) {
+	// Keep reading.
+      }
+      fail("expected a ParserException");
+    }
+    catch (ParserException e) {
+      message = e.getMessage();
+      assertTrue(message.contains(expected), message);
+    }
+    return message;
+  }
+}
@@ -0,0 +1,147 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the NumberAccumulator class.
+ */
+public class NumberAccumulatorTest {
+  private final static int RANDOM_COUNT = 200000;
+  private final static long SEED = 20111017L;
+  private final static String[] DOUBLES = {
+    "0.0", "-0.0", "1.5", ".5", "-.25", "0.", "123.25", "1e22", "1e23", "12e+10", "1E-7",
+    "0.1", "0.3", "3.141592653589793", "2.718281828459045e-3", "9007199254740993e0",
+    "9007199254740993.0", "9007199254740992.5", "18446744073709551615.0", "1.7976931348623157e308",
+    "1.7976931348623158e308", "1e309", "2.2250738585072014E-308", "2.2250738585072011e-308",
+    "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "1e-400",
+    "123456789012345678901234567890.5", "0.000000000000000000000000000001234567890123456789012",
+    "7.2057594037927933e16", "1.00000000000000011102230246251565404236316680908203125",
+    "1.00000000000000011102230246251565404236316680908203124", "6.1e-5", "8.589973e9"
+  };
+
+  /**
+   * Test converting known doubles, including halfway, subnormal, and
+   * out-of-range values.
+   */
+  @Test
+  public void testDoubles() {
+    for ( final String text : DOUBLES ) {
+      final NumberAccumulator number = accumulate(text);
+      assertFalse(number.isInteger(), text);
+      assertEquals(Double.doubleToLongBits(number.doubleValue(text)),
+		   Double.doubleToLongBits(Double.parseDouble(text)), text);
+    }
+  }
+
+  /**
+   * Test converting random doubles and random decimal strings.
+   */
+  @Test
+  public void testRandomDoubles() {
+    final Random random = new Random(SEED);
+    for ( int i = 0; i < RANDOM_COUNT; ++i ) {
+      final double value = Double.longBitsToDouble(random.nextLong());
+      if ( !Double.isNaN(value) && !Double.isInfinite(value) ) {
+	check(Double.toString(value));
+      }
+      final long significand = random.nextLong() >>> random.nextInt(64);
+      check(String.format(Locale.US, "%de%d", significand, random.nextInt(700) - 350));
+      check(String.format(Locale.US, "%d.%de-%d", random.nextInt(1000),
+			  random.nextLong() >>> 1, random.nextInt(40)));
+    }
+  }
+
+  /**
+   * Test accumulating integers.
+   */
+  @Test
+  public void testIntegers() {
+    final String[] integers = {
+      "0", "-0", "7", "-42", "000", "1000000", "9223372036854775807", "-9223372036854775808"
+    };
+    for ( final String text : integers ) {
+      final NumberAccumulator number = accumulate(text);
+      assertTrue(number.isInteger(), text);
+      assertTrue(number.isLong(), text);
+      assertEquals(number.longValue(), Long.parseLong(text), text);
+      assertEquals(number.bigIntegerValue(text), new BigInteger(text), text);
+    }
+    final String[] large = {
+      "9223372036854775808", "-9223372036854775809", "18446744073709551616",
+      "100000000000000000000", "123456789012345678901234567890"
+    };
+    for ( final String text : large ) {
+      final NumberAccumulator number = accumulate(text);
+      assertTrue(number.isInteger(), text);
+      assertFalse(number.isLong(), text);
+      assertEquals(number.bigIntegerValue(text), new BigInteger(text), text);
+      assertEquals(number.doubleValue(text), Double.parseDouble(text), text);
+    }
+  }
+
+  /**
+   * Test detecting doubles that are out of range.
+   */
+  @Test
+  public void testOutOfRange() {
+    final String[] texts = { "1e400", "-1e400", "1e-400" };
+    for ( final String text : texts ) {
+      final NumberAccumulator number = accumulate(text);
+      assertTrue(number.isOutOfRange(number.doubleValue(text)), text);
+      assertEquals(number.bigDecimalValue(text), new BigDecimal(text), text);
+    }
+    final NumberAccumulator zero = accumulate("0e-400");
+    assertFalse(zero.isOutOfRange(zero.doubleValue("0e-400")));
+  }
+
+  /**
+   * Check that the accumulated value of a number matches Double.parseDouble.
+   *
+   * @param text  the text of the number.
+   */
+  private void check(final String text) {
+    final NumberAccumulator number = accumulate(text);
+    final double value = number.doubleValue(text);
+    if ( Double.doubleToLongBits(value) != Double.doubleToLongBits(Double.parseDouble(text)) ) {
+      fail(text + " converted to " + value);
+    }
+  }
+
+  /**
+   * Accumulate the characters of a number.
+   *
+   * @param text  the text of the number.
+   * @return the accumulator.
+   */
+  private NumberAccumulator accumulate(final String text) {
+    final NumberAccumulator number = new NumberAccumulator();
+    for ( int i = 0; i < text.length(); ++i ) {
+      final char input = text.charAt(i);
+      if ( input == '-' ) {
+	number.negate();
+      }
+      else if ( input == '.' ) {
+	number.point();
+      }
+      else if ( input == 'e' || input == 'E' ) {
+	number.exponent();
+      }
+      else if ( input != '+' ) {
+	number.digit(input);
+      }
+    }
+    return number;
+  }
+}
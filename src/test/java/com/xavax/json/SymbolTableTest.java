@@ -0,0 +1,125 @@
+//
+// Copyright 2011 by Xavax, Inc. All Rights Reserved.
+// Use of this software is allowed under the Xavax Open Software License.
+// http://www.xavax.com/xosl.html
+//
+package com.xavax.json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.xavax.exception.RangeException;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test cases for the SymbolTable class.
+ */
+public class SymbolTableTest {
+  private final static int THREADS = 4;
+  private final static int SYMBOLS = 5000;
+
+  /**
+   * Test that equal characters return the same String.
+   */
+  @Test
+  public void testIntern() {
+    final SymbolTable table = new SymbolTable();
+    final String name = table.intern(new StringBuilder("name"));
+    assertEquals(name, "name");
+    assertSame(table.intern(new StringBuilder("name")), name);
+    assertSame(table.intern("name"), name);
+    assertNotSame(table.intern("names"), name);
+    assertEquals(table.intern(""), "");
+    // Strings with the same hash code are different symbols.
+    assertEquals(table.intern("Aa"), "Aa");
+    assertEquals(table.intern("BB"), "BB");
+    assertSame(table.intern("Aa"), table.intern(new StringBuilder("Aa")));
+    final StringBuilder builder = new StringBuilder();
+    for ( int i = 0; i <= SymbolTable.MAX_SYMBOL_LENGTH; ++i ) {
+      builder.append('x');
+    }
+    final String longSymbol = table.intern(builder);
+    assertEquals(longSymbol, builder.toString());
+    assertNotSame(table.intern(builder), longSymbol);
+  }
+
+  /**
+   * Test the capacity of a table.
+   */
+  @Test
+  public void testCapacity() {
+    assertEquals(new SymbolTable().capacity(), SymbolTable.DEFAULT_CAPACITY);
+    assertEquals(new SymbolTable(100).capacity(), 128);
+    assertEquals(new SymbolTable(SymbolTable.MIN_CAPACITY).capacity(), SymbolTable.MIN_CAPACITY);
+    try {
+      new SymbolTable(SymbolTable.MIN_CAPACITY - 1);
+      fail("expected RangeException");
+    }
+    catch (RangeException e) {
+      // expected
+    }
+    // A table that is full keeps returning the right characters.
+    final SymbolTable table = new SymbolTable(SymbolTable.MIN_CAPACITY);
+    for ( int i = 0; i < SYMBOLS; ++i ) {
+      final String symbol = "field" + i;
+      assertEquals(table.intern(new StringBuilder(symbol)), symbol);
+    }
+    final String last = table.intern("field" + (SYMBOLS - 1));
+    assertSame(table.intern("field" + (SYMBOLS - 1)), last);
+  }
+
+  /**
+   * Test that a table starts small and grows to its capacity.
+   */
+  @Test
+  public void testGrowth() {
+    final SymbolTable table = new SymbolTable();
+    assertEquals(table.size(), SymbolTable.MIN_CAPACITY);
+    final String first = table.intern("field0");
+    for ( int i = 1; i < SymbolTable.MIN_CAPACITY; ++i ) {
+      table.intern("field" + i);
+    }
+    assertTrue(table.size() > SymbolTable.MIN_CAPACITY);
+    assertSame(table.intern("field0"), first);
+    for ( int i = 0; i < SYMBOLS; ++i ) {
+      table.intern("field" + i);
+    }
+    assertEquals(table.size(), table.capacity());
+  }
+
+  /**
+   * Test sharing a table between threads.
+   *
+   * @throws ExecutionException if a thread fails.
+   * @throws InterruptedException if the test is interrupted.
+   */
+  @Test
+  public void testShared() throws ExecutionException, InterruptedException {
+    final SymbolTable table = new SymbolTable(256);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for ( int t = 0; t < THREADS; ++t ) {
+	futures.add(executor.submit(() -> {
+	  for ( int i = 0; i < SYMBOLS; ++i ) {
+	    final String symbol = "key" + (i % 500);
+	    assertEquals(table.intern(new StringBuilder(symbol)), symbol);
+	  }
+	}));
+      }
+      for ( final Future<?> future : futures ) {
+	future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+}